@@ -0,0 +1,67 @@
+//=============================================================================
+// Coding sample for Stefaan Heyvaert.
+//=============================================================================
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import util.Similarity;
+import util.SortedIdSet;
+
+/**
+ * Times {@link Similarity#jaccardCoefficient(SortedIdSet, SortedIdSet)} on
+ * follower sets from those of a new account to those of a celebrity. Sets of
+ * the same size are merged; a set a thousand times smaller than the other is
+ * searched for in it by galloping, which is the other path to watch.
+ *
+ * @author sh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class JaccardBenchmark
+{
+    @Setup
+    public void setUp() {
+        SortedIdSet[] sets = new SyntheticData(SEED).idSets(followers,
+                Math.max(1, followers / ratio), OVERLAP);
+        set1 = sets[0];
+        set2 = sets[1];
+    }
+
+    @Benchmark
+    public double jaccardCoefficient() {
+        return Similarity.jaccardCoefficient(set1, set2);
+    }
+
+    private static final long SEED = 20120101L;
+
+    /** Fraction of the smaller set the two sets share */
+    private static final double OVERLAP = 0.1;
+
+    /** Size of the first set */
+    @Param({"10", "1000", "100000", "5000000"})
+    public int followers;
+
+    /** Size of the first set divided by the size of the second */
+    @Param({"1", "1000"})
+    public int ratio;
+
+    private SortedIdSet set1;
+    private SortedIdSet set2;
+}
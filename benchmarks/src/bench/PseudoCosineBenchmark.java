@@ -0,0 +1,98 @@
+//=============================================================================
+// Coding sample for Stefaan Heyvaert.
+//=============================================================================
+package bench;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import text.Segmenter;
+import text.Stopwords;
+import text.Tokenizer;
+import text.TwitterTokenizer;
+import util.Similarity;
+import util.TermDictionary;
+import util.TermVector;
+import util.TermVectorBuilder;
+
+/**
+ * Times {@link Similarity#pseudoCosine(TermVector, TermVector)} on the terms
+ * of two timelines of one to 3200 tweets, the most the API serves, next to
+ * the map-based {@link Similarity#pseudoCosine(Map, Map)} it replaced.
+ *
+ * @author sh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PseudoCosineBenchmark
+{
+    @Setup
+    public void setUp() throws Exception {
+        SyntheticData data = new SyntheticData(SEED);
+        Tokenizer tokenizer = new TwitterTokenizer(
+                new Stopwords("data/stopwords.txt"), Segmenter.TABLE);
+        TermVectorBuilder builder =
+            new TermVectorBuilder(new TermDictionary());
+        vector1 = terms(data.tweets(tweets), tokenizer, builder);
+        vector2 = terms(data.tweets(tweets), tokenizer, builder);
+        map1 = frequencies(data.tweets(tweets), tokenizer);
+        map2 = frequencies(data.tweets(tweets), tokenizer);
+    }
+
+    @Benchmark
+    public double termVectors() {
+        return Similarity.pseudoCosine(vector1, vector2);
+    }
+
+    @Benchmark
+    public double maps() {
+        return Similarity.pseudoCosine(map1, map2);
+    }
+
+    private static TermVector terms(final List<String> timeline,
+            final Tokenizer tokenizer, final TermVectorBuilder builder) {
+        builder.clear();
+        for (String tweet : timeline) {
+            tokenizer.tokenize(tweet, builder);
+        }
+        return builder.build();
+    }
+
+    private static Map<String, Integer> frequencies(
+            final List<String> timeline, final Tokenizer tokenizer) {
+        Map<String, Integer> map = new HashMap<String, Integer>();
+        for (String tweet : timeline) {
+            Similarity.addAllToMap(tokenizer.tokenize(tweet), map);
+        }
+        return map;
+    }
+
+    private static final long SEED = 20120102L;
+
+    /** Number of tweets of each timeline */
+    @Param({"1", "20", "200", "3200"})
+    public int tweets;
+
+    private TermVector vector1;
+    private TermVector vector2;
+    private Map<String, Integer> map1;
+    private Map<String, Integer> map2;
+}
@@ -0,0 +1,222 @@
+//=============================================================================
+// Coding sample for Stefaan Heyvaert.
+//=============================================================================
+package bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import util.SortedIdSet;
+
+/**
+ * Generates follower IDs and tweets that look enough like the real thing for
+ * benchmarks to exercise the same paths at the same sizes, without a
+ * network connection or an API key. The same seed always gives the same
+ * data.
+ * <p>
+ * IDs are drawn from the range of user IDs handed out so far, denser towards
+ * recent ones as younger accounts outnumber old ones. Tweets are made of
+ * words drawn from a vocabulary with Zipf-distributed frequencies, whose most
+ * frequent words are stopwords, mixed with mentions, hashtags, links and
+ * punctuation, and are cut at 140 characters.
+ *
+ * @author sh
+ */
+public final class SyntheticData
+{
+    /**
+     * @param seed seed of the random generator
+     */
+    public SyntheticData(final long seed) {
+        random = new Random(seed);
+        vocabulary = new String[VOCABULARY];
+        System.arraycopy(COMMON, 0, vocabulary, 0, COMMON.length);
+        for (int i = COMMON.length; i < VOCABULARY; i++) {
+            vocabulary[i] = word();
+        }
+        cumulative = zipf(VOCABULARY);
+        userCumulative = zipf(USERS);
+    }
+
+    /**
+     * Generates two sets of IDs, such as the followers of two users.
+     * @param size1 size of the first set
+     * @param size2 size of the second set
+     * @param overlap fraction of the smaller set that is also in the larger
+     * @return the two sets
+     */
+    public SortedIdSet[] idSets(final int size1, final int size2,
+            final double overlap) {
+        long[] ids1 = ids(size1);
+        long[] ids2 = ids(size2);
+        // The IDs are in random order, so the first ones are a random sample
+        int shared = (int) Math.round(overlap * Math.min(size1, size2));
+        if (size1 <= size2) {
+            System.arraycopy(ids1, 0, ids2, 0, shared);
+        }
+        else {
+            System.arraycopy(ids2, 0, ids1, 0, shared);
+        }
+        return new SortedIdSet[] {SortedIdSet.of(ids1), SortedIdSet.of(ids2)};
+    }
+
+    /**
+     * @param count number of tweets
+     * @return a timeline of that many tweets
+     */
+    public List<String> tweets(final int count) {
+        List<String> tweets = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            tweets.add(tweet());
+        }
+        return tweets;
+    }
+
+    /**
+     * @return one tweet
+     */
+    public String tweet() {
+        StringBuilder tweet = new StringBuilder(MAX_TWEET + 32);
+        int words = 4 + random.nextInt(17);
+        for (int i = 0; i < words && tweet.length() < MAX_TWEET; i++) {
+            if (i > 0) {
+                tweet.append(' ');
+            }
+            double kind = random.nextDouble();
+            if (kind < 0.05) {
+                tweet.append("@user").append(sample(userCumulative));
+            }
+            else if (kind < 0.08) {
+                tweet.append('#').append(vocabulary[sample(cumulative)]);
+            }
+            else if (kind < 0.10) {
+                tweet.append("http://t.co/");
+                for (int c = 0; c < 10; c++) {
+                    tweet.append(ALPHANUMERIC.charAt(
+                            random.nextInt(ALPHANUMERIC.length())));
+                }
+            }
+            else {
+                String word = vocabulary[sample(cumulative)];
+                if (i == 0) {
+                    tweet.append(Character.toUpperCase(word.charAt(0)))
+                        .append(word, 1, word.length());
+                }
+                else {
+                    tweet.append(word);
+                }
+                if (random.nextInt(8) == 0) {
+                    tweet.append(PUNCTUATION[
+                            random.nextInt(PUNCTUATION.length)]);
+                }
+            }
+        }
+        tweet.setLength(Math.min(tweet.length(), MAX_TWEET));
+        return tweet.toString();
+    }
+
+    /**
+     * @return distinct IDs in random order
+     */
+    private long[] ids(final int count) {
+        long[] ids = new long[count];
+        int distinct = 0;
+        while (distinct < count) {
+            // Replace the rare duplicates until there are none
+            for (int i = distinct; i < count; i++) {
+                // Square root of a uniform value: density grows with the ID
+                ids[i] = 1 + (long) (MAX_ID * Math.sqrt(random.nextDouble()));
+            }
+            Arrays.sort(ids);
+            distinct = 0;
+            for (int i = 0; i < count; i++) {
+                if (distinct == 0 || ids[i] != ids[distinct - 1]) {
+                    ids[distinct++] = ids[i];
+                }
+            }
+        }
+        shuffle(ids);
+        return ids;
+    }
+
+    private void shuffle(final long[] values) {
+        for (int i = values.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            long swap = values[i];
+            values[i] = values[j];
+            values[j] = swap;
+        }
+    }
+
+    /**
+     * @return a pronounceable made-up word of one to four syllables
+     */
+    private String word() {
+        StringBuilder word = new StringBuilder();
+        int syllables = 1 + random.nextInt(4);
+        for (int i = 0; i < syllables; i++) {
+            word.append(CONSONANTS.charAt(random.nextInt(CONSONANTS.length())));
+            word.append(VOWELS.charAt(random.nextInt(VOWELS.length())));
+        }
+        return word.toString();
+    }
+
+    /**
+     * @return cumulative Zipf probabilities of ranks 1 to n
+     */
+    private static double[] zipf(final int n) {
+        double[] cumulative = new double[n];
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += 1.0 / (i + 1);
+            cumulative[i] = sum;
+        }
+        for (int i = 0; i < n; i++) {
+            cumulative[i] /= sum;
+        }
+        return cumulative;
+    }
+
+    /**
+     * @return a rank drawn from cumulative probabilities
+     */
+    private int sample(final double[] cumulative) {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        return Math.min(index < 0 ? -index - 1 : index, cumulative.length - 1);
+    }
+
+    /** Number of distinct words */
+    private static final int VOCABULARY = 30000;
+
+    /** Number of distinct users mentioned */
+    private static final int USERS = 5000;
+
+    /** Highest user ID handed out */
+    private static final long MAX_ID = 2000000000L;
+
+    private static final int MAX_TWEET = 140;
+
+    /** The most frequent words, in order, most of them stopwords */
+    private static final String[] COMMON = {
+        "the", "i", "to", "a", "and", "is", "in", "it", "you", "of", "for",
+        "on", "my", "that", "me", "this", "with", "so", "be", "at", "just",
+        "have", "are", "was", "not", "but", "your", "what", "all", "love",
+        "good", "like", "day", "now", "get", "new", "today", "lol", "time"
+    };
+
+    private static final String[] PUNCTUATION = {
+        ",", ".", "!", "?", "...", "!!", ":)", ":-("
+    };
+
+    private static final String CONSONANTS = "bcdfghjklmnprstvwz";
+    private static final String VOWELS = "aeiou";
+    private static final String ALPHANUMERIC =
+        "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+
+    private final Random random;
+    private final String[] vocabulary;
+    private final double[] cumulative;
+    private final double[] userCumulative;
+}
@@ -0,0 +1,120 @@
+//=============================================================================
+// Coding sample for Stefaan Heyvaert.
+//=============================================================================
+package bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import text.Segmenter;
+import text.Stopwords;
+import text.TokenSink;
+import text.TokenType;
+import text.Tokenizer;
+import text.TwitterTokenizer;
+import util.TermDictionary;
+import util.TermVector;
+import util.TermVectorBuilder;
+
+/**
+ * Times {@link Tokenizer} and {@link TwitterTokenizer} on timelines of one
+ * to 3200 tweets, with either way of finding words. Tokens go to a sink that
+ * only counts them, so that time and allocations are the tokenizer's, except
+ * in {@link #list()}, which measures the list-returning method kept for old
+ * callers, and {@link #termVector()}, which measures what building a profile
+ * costs.
+ *
+ * @author sh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenizerBenchmark
+{
+    @Setup
+    public void setUp() throws Exception {
+        timeline = new SyntheticData(SEED).tweets(tweets);
+        Stopwords stopwords = new Stopwords("data/stopwords.txt");
+        tokenizer = new Tokenizer(stopwords, segmenter);
+        twitterTokenizer = new TwitterTokenizer(stopwords, segmenter);
+        builder = new TermVectorBuilder(new TermDictionary());
+    }
+
+    @Benchmark
+    public int tokenizer() {
+        return tokenize(tokenizer);
+    }
+
+    @Benchmark
+    public int twitterTokenizer() {
+        return tokenize(twitterTokenizer);
+    }
+
+    @Benchmark
+    public int list() {
+        int count = 0;
+        for (String tweet : timeline) {
+            count += twitterTokenizer.tokenize(tweet).size();
+        }
+        return count;
+    }
+
+    @Benchmark
+    public TermVector termVector() {
+        builder.clear();
+        for (String tweet : timeline) {
+            twitterTokenizer.tokenize(tweet, builder);
+        }
+        return builder.build();
+    }
+
+    private int tokenize(final Tokenizer tokenizer) {
+        sink.count = 0;
+        for (String tweet : timeline) {
+            tokenizer.tokenize(tweet, sink);
+        }
+        return sink.count;
+    }
+
+    /**
+     * Counts tokens, adding their lengths so that they are all read.
+     */
+    private static final class CountingSink implements TokenSink
+    {
+        public void token(final CharSequence token, final TokenType type) {
+            count += 1 + token.length();
+        }
+
+        int count;
+    }
+
+    private static final long SEED = 20120103L;
+
+    /** Number of tweets of the timeline */
+    @Param({"1", "20", "200", "3200"})
+    public int tweets;
+
+    @Param({"BREAK_ITERATOR", "TABLE"})
+    public Segmenter segmenter;
+
+    private List<String> timeline;
+    private Tokenizer tokenizer;
+    private Tokenizer twitterTokenizer;
+    private TermVectorBuilder builder;
+    private final CountingSink sink = new CountingSink();
+}
@@ -0,0 +1,437 @@
+//=============================================================================
+// Coding sample for Stefaan Heyvaert.
+//=============================================================================
+package app;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import client.RequestScheduler;
+import client.TwitterUser;
+
+import text.Tokenizer;
+import util.Similarity;
+import util.SimilarityResult;
+import util.TermDictionary;
+import util.UserProfile;
+
+/**
+ * Scores a list of user pairs without a prompt, for jobs comparing thousands
+ * of pairs. Pairs are read one per line, as two login names separated by
+ * white space or a comma; blank lines and lines starting with {@code #} are
+ * skipped. Results are written one line per pair, in the order of the input,
+ * as CSV or as JSON objects.
+ * <p>
+ * Pairs are read a chunk at a time, so the input can be any length and is
+ * processed as it arrives. Within a chunk, every user is fetched once,
+ * through a {@link RequestScheduler} so that the run stays within the API's
+ * hourly budget, and turned into a {@link UserProfile} once; the user itself
+ * is then dropped. Pairs are scored on a pool of threads as soon as both of
+ * their profiles are ready. The profiles of the most recently seen users are
+ * kept for the following chunks, up to a maximum. Their terms go into a
+ * {@link TermDictionary} of the job's own, which is rebuilt with only the
+ * terms of the profiles kept once it holds more than
+ * {@link #setMaxTerms(int) a set number of terms}, and twice as many as the
+ * last time. Memory is thus bounded by the chunk size and those maximums,
+ * whatever the length of the input.
+ * <p>
+ * A pair whose users can not be fetched is written with the error instead of
+ * the scores, and the run goes on. Progress and throughput are reported
+ * periodically to a stream of choice.
+ *
+ * @author sh
+ */
+public final class BatchCompare
+{
+    /**
+     * How results are written.
+     */
+    public enum Format
+    {
+        /** Comma-separated values, with a header line */
+        CSV,
+
+        /** One JSON object per line */
+        JSON
+    }
+
+    /**
+     * @param scheduler scheduler fetching the users; it must have been
+     * started (see {@link RequestScheduler#start()})
+     * @param tokenizer tokenizer for the text of the users
+     * @param format how results are written
+     * @param threads number of threads building profiles and scoring pairs
+     */
+    public BatchCompare(final RequestScheduler scheduler,
+            final Tokenizer tokenizer, final Format format, final int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread needed");
+        }
+        this.scheduler = scheduler;
+        this.tokenizer = tokenizer;
+        this.format = format;
+        this.threads = threads;
+    }
+
+    /**
+     * @param chunkSize number of pairs read and scored at a time
+     */
+    public void setChunkSize(final int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @param maxProfiles number of profiles kept from one chunk to the next
+     */
+    public void setMaxProfiles(final int maxProfiles) {
+        if (maxProfiles < 0) {
+            throw new IllegalArgumentException("Negative number of profiles");
+        }
+        this.maxProfiles = maxProfiles;
+    }
+
+    /**
+     * @param maxTerms number of terms past which the dictionary is rebuilt
+     * with only the terms of the profiles kept
+     */
+    public void setMaxTerms(final int maxTerms) {
+        if (maxTerms < 1) {
+            throw new IllegalArgumentException("Invalid number of terms: "
+                    + maxTerms);
+        }
+        this.maxTerms = maxTerms;
+    }
+
+    /**
+     * @param out where to report progress, or null for no reports
+     * @param intervalMillis minimum time between reports
+     */
+    public void setProgress(final PrintStream out, final long intervalMillis) {
+        this.progress = out;
+        this.progressInterval = intervalMillis;
+    }
+
+    /**
+     * Scores all the pairs of the input.
+     * @param in the pairs
+     * @param out where to write the results; flushed after every chunk
+     * @throws IOException if reading or writing fails
+     */
+    public void run(final Reader in, final Writer out) throws IOException {
+        BufferedReader reader = new BufferedReader(in);
+        ExecutorService executor = newExecutor(threads);
+        start = System.currentTimeMillis();
+        lastReport = start;
+        try {
+            if (format == Format.CSV) {
+                out.write(CSV_HEADER);
+                out.write('\n');
+            }
+            List<String[]> chunk = readChunk(reader);
+            while (!chunk.isEmpty()) {
+                score(chunk, executor, out);
+                out.flush();
+                report(false);
+                chunk = readChunk(reader);
+            }
+            report(true);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return number of pairs written, with scores or with an error
+     */
+    public long getPairs() {
+        return pairs.get();
+    }
+
+    /**
+     * @return number of pairs written with an error, or skipped as
+     * unreadable
+     */
+    public long getFailures() {
+        return failures.get();
+    }
+
+    /**
+     * @return number of users fetched
+     */
+    public long getUsersFetched() {
+        return usersFetched.get();
+    }
+
+    /**
+     * Reads up to a chunk of pairs, skipping the lines that are not pairs.
+     * @return the pairs, or an empty list at the end of the input
+     */
+    private List<String[]> readChunk(final BufferedReader reader)
+        throws IOException {
+        List<String[]> chunk = new ArrayList<String[]>();
+        while (chunk.size() < chunkSize) {
+            String line = reader.readLine();
+            if (line == null) {
+                break;
+            }
+            lineNumber++;
+            line = line.trim();
+            if (line.length() == 0 || line.charAt(0) == '#') {
+                continue;
+            }
+            String[] names = line.split("[\\s,]+");
+            if (names.length != 2) {
+                failures.incrementAndGet();
+                if (progress != null) {
+                    progress.println("WARNING: line " + lineNumber
+                            + " is not a pair of user names, skipped");
+                }
+                continue;
+            }
+            chunk.add(names);
+        }
+        return chunk;
+    }
+
+    /**
+     * Fetches the users of a chunk, scores its pairs, and writes the results
+     * in order as they complete.
+     */
+    private void score(final List<String[]> chunk,
+            final ExecutorService executor, final Writer out)
+        throws IOException {
+        Map<String, CompletableFuture<UserProfile>> profiles =
+            new HashMap<String, CompletableFuture<UserProfile>>();
+        List<CompletableFuture<SimilarityResult>> results =
+            new ArrayList<CompletableFuture<SimilarityResult>>(chunk.size());
+        for (String[] pair : chunk) {
+            CompletableFuture<UserProfile> p1 =
+                profile(pair[0], profiles, executor);
+            CompletableFuture<UserProfile> p2 =
+                profile(pair[1], profiles, executor);
+            results.add(p1.thenCombineAsync(p2,
+                new BiFunction<UserProfile, UserProfile, SimilarityResult>() {
+                    public SimilarityResult apply(UserProfile u1,
+                            UserProfile u2) {
+                        return Similarity.computeSumilarity(u1, u2);
+                    }
+                }, executor));
+        }
+        for (int i = 0; i < chunk.size(); i++) {
+            String[] pair = chunk.get(i);
+            try {
+                write(out, pair, results.get(i).get(), null);
+            }
+            catch (ExecutionException e) {
+                failures.incrementAndGet();
+                write(out, pair, null, message(e.getCause()));
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while scoring pairs");
+            }
+            pairs.incrementAndGet();
+            report(false);
+        }
+        // Keep what was built for the next chunks
+        for (Map.Entry<String, CompletableFuture<UserProfile>> entry
+                : profiles.entrySet()) {
+            CompletableFuture<UserProfile> profile = entry.getValue();
+            if (!profile.isCompletedExceptionally()) {
+                recent.put(entry.getKey(), profile.join());
+            }
+        }
+        if (dictionary.size() > Math.max(maxTerms, 2 * compactedTerms)) {
+            compactTerms();
+        }
+    }
+
+    /**
+     * Moves the profiles kept to a new dictionary, dropping the terms of the
+     * profiles evicted. Called between chunks, when no profile is being
+     * built.
+     */
+    private void compactTerms() {
+        TermDictionary terms = new TermDictionary();
+        for (Map.Entry<String, UserProfile> entry : recent.entrySet()) {
+            entry.setValue(entry.getValue().withDictionary(terms));
+        }
+        dictionary = terms;
+        compactedTerms = terms.size();
+    }
+
+    /**
+     * @return the profile of a user: one built earlier, or one being built
+     * for the chunk, or else a new request for the user
+     */
+    private CompletableFuture<UserProfile> profile(final String userName,
+            final Map<String, CompletableFuture<UserProfile>> profiles,
+            final ExecutorService executor) {
+        CompletableFuture<UserProfile> profile = profiles.get(userName);
+        if (profile != null) {
+            return profile;
+        }
+        UserProfile known = recent.get(userName);
+        if (known != null) {
+            profile = CompletableFuture.completedFuture(known);
+        }
+        else {
+            final TermDictionary terms = dictionary;
+            profile = scheduler.submit(userName).thenApplyAsync(
+                new Function<TwitterUser, UserProfile>() {
+                    public UserProfile apply(TwitterUser user) {
+                        usersFetched.incrementAndGet();
+                        return new UserProfile(user, tokenizer, terms);
+                    }
+                }, executor);
+        }
+        profiles.put(userName, profile);
+        return profile;
+    }
+
+    private void write(final Writer out, final String[] pair,
+            final SimilarityResult result, final String error)
+        throws IOException {
+        if (format == Format.CSV) {
+            out.write(csv(pair[0]) + "," + csv(pair[1]) + ",");
+            if (result != null) {
+                out.write(String.format(Locale.ROOT,
+                        "%.4f,%.4f,%.4f,%.4f,%.4f,%.4f,%.4f,%.2f,",
+                        result.getScore(), result.getSharedFollowers(),
+                        result.getSharedFriends(), result.getBioSimilarity(),
+                        result.getSharedMentions(),
+                        result.getFavoriteSimilarity(),
+                        result.getTweetSimilarity(), result.getCoverage()));
+            }
+            else {
+                out.write(",,,,,,,," + csv(error));
+            }
+        }
+        else {
+            out.write("{\"user1\":" + Json.quote(pair[0]) + ",\"user2\":"
+                    + Json.quote(pair[1]));
+            if (result != null) {
+                out.write("," + Json.scores(result) + "}");
+            }
+            else {
+                out.write(",\"error\":" + Json.quote(error) + "}");
+            }
+        }
+        out.write('\n');
+    }
+
+    /**
+     * Reports progress if it is time to, or if this is the last report.
+     */
+    private void report(final boolean last) {
+        if (progress == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (!last && now - lastReport < progressInterval) {
+            return;
+        }
+        lastReport = now;
+        double seconds = Math.max(1, now - start) / 1000.0;
+        progress.println(String.format(Locale.ROOT,
+                "%s%d pairs (%.1f/s), %d failed, %d users fetched, "
+                + "%d waiting to be fetched", last ? "Done: " : "",
+                pairs.get(), pairs.get() / seconds, failures.get(),
+                usersFetched.get(), scheduler.getQueueDepth()));
+    }
+
+    private static String message(final Throwable t) {
+        Throwable cause = t;
+        while (cause instanceof CompletionException &&
+                cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause.getMessage() == null ? cause.toString()
+                : cause.getMessage();
+    }
+
+    private static String csv(final String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 &&
+                value.indexOf('\n') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * Creates a pool of daemon threads.
+     */
+    private static ExecutorService newExecutor(final int threads) {
+        final AtomicInteger count = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r,
+                                "batch-compare-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+
+    static final String CSV_HEADER = "user1,user2,score,followers,friends,"
+        + "bio,mentions,favorites,tweets,coverage,error";
+
+    private final RequestScheduler scheduler;
+    private final Tokenizer tokenizer;
+    private final Format format;
+    private final int threads;
+    private int chunkSize = 1000;
+    private int maxProfiles = 10000;
+    private PrintStream progress;
+    private long progressInterval = 10000;
+    private int maxTerms = 1 << 20;
+
+    /** Dictionary of the profiles; only replaced between chunks */
+    private TermDictionary dictionary = new TermDictionary();
+
+    /** Number of terms after the last time the dictionary was rebuilt */
+    private int compactedTerms;
+
+    /** Profiles of the users seen last, least recently used first */
+    private final Map<String, UserProfile> recent =
+        new LinkedHashMap<String, UserProfile>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(
+                    final Map.Entry<String, UserProfile> eldest) {
+                return size() > maxProfiles;
+            }
+        };
+
+    private final AtomicLong pairs = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong usersFetched = new AtomicLong();
+    private int lineNumber;
+    private long start;
+    private long lastReport;
+}
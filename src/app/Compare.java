@@ -4,15 +4,35 @@
 package app;
 
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
+import javax.management.JMException;
+
+import client.FetchLimits;
+import client.RequestScheduler;
 import client.TwitterClient;
 import client.TwitterUser;
+import client.UserCache;
 
+import text.Segmenter;
 import text.Stopwords;
 import text.Tokenizer;
 import text.TwitterTokenizer;
+import util.Metrics;
 import util.Similarity;
 import util.SimilarityResult;
 
@@ -29,8 +49,30 @@ import util.SimilarityResult;
  *   java -cp "./lib/*;similarity.jar" app.Compare login password
  * </code><br>
  * <p>
+ * With {@code --batch <file>} the program instead scores the pairs of user
+ * names listed in the file ({@code -} for standard input), see
+ * {@link BatchCompare}, writing the results to standard output or to the
+ * file given with {@code --output}, as CSV or, with {@code --format json},
+ * as JSON lines. {@code --threads <n>} sets the number of threads scoring.
+ * <p>
+ * With {@code --serve <port>} the program runs until killed as an HTTP
+ * service answering similarity queries, see {@link SimilarityServer}.
+ * <p>
+ * In every mode, {@code --limits <followers>,<friends>,<tweets>,<favorites>}
+ * caps how much of each user is fetched (see {@link FetchLimits}), each cap
+ * a number or {@code all}; for instance {@code --limits 5000,5000,200,20}
+ * fetches each list with a single request. By default all followers and
+ * friends are fetched, with a page of tweets and one of favorites. The
+ * limits in use are printed to standard error on start.
+ * <p>
  * Uses the {@link winterwell.jtwitter.Twitter} API for communicating with the
  * Twitter web service.
+ * <p>
+ * With {@code -Dsimilarity.metrics=true}, the time spent fetching,
+ * tokenizing and scoring is recorded (see {@link Metrics}), published
+ * through JMX, and printed to standard error on exit; add
+ * {@code -Dsimilarity.metrics.dump=<seconds>} to print it periodically as
+ * well, and {@code -Dsimilarity.metrics.format=json} to print JSON.
  * @author sh
  */
 public class Compare 
@@ -40,46 +82,82 @@ public class Compare
             System.err.println("Program requires 2 arguments: screen_name password");
             System.exit(1);
         }
-        initialize(args[0], args[1]);
+        List<String> options = new ArrayList<String>(Arrays.asList(args));
+        FetchLimits limits = FetchLimits.DEFAULT;
+        int at = options.indexOf("--limits");
+        if (at >= 2) {
+            try {
+                if (at + 1 == options.size()) {
+                    throw new IllegalArgumentException(
+                        "Missing value for --limits");
+                }
+                limits = parseLimits(options.get(at + 1));
+            } catch (IllegalArgumentException e) {
+                System.err.println("ERROR: " + e.getMessage());
+                System.err.println("Usage: --limits <followers>,<friends>,"
+                        + "<tweets>,<favorites>, each a number or all");
+                System.exit(1);
+            }
+            options.subList(at, at + 2).clear();
+        }
+        String[] rest = options.toArray(new String[options.size()]);
+        initialize(args[0], args[1], limits);
+        if (rest.length > 2 && rest[2].equals("--serve")) {
+            int status = runServer(rest);
+            if (status != 0) {
+                System.exit(status);
+            }
+            return;
+        }
+        if (rest.length > 2) {
+            System.exit(runBatch(rest));
+        }
         BufferedReader br = new BufferedReader(new InputStreamReader(System.in));
         System.out.println(
             "\nThe programm will attempt to compute the similarity between two" +
             "\nTwitter users on a scale of zero (completely distinct) to 1" + 
             "\n(identical).\n");
         boolean play = true;
-        String username = null;
         while (play) {
             try {
                 TwitterUser t1 = null;
                 TwitterUser t2 = null;
+                String name1 = null;
+                String name2 = null;
                 // It is possible that one or both of the users does not exist
                 // so keep trying until we have two valid names.
                 while (t1 == null || t2 == null) {
-                    try {
-                        if (t1 == null) {
-                            System.out.println(
-                                "\nPlease enter the login name of the first user:\n");
-                            username = br.readLine();
-                            System.out.println("\nGetting information for " +
-                                    username + ". Please wait...");
-                            t1 = client.createUser(username);
-                        }
-                        if (t2 == null) {
-                            System.out.println(
-                                "\nPlease enter the login name of the second user:\n");
-                            username = br.readLine();
-                            System.out.println("\nGetting information for " +
-                                    username + ". Please wait...");
-                            t2 = client.createUser(username);
-                            System.out.println("\nComputing similarity...\n");
-                        }
+                    if (t1 == null) {
+                        System.out.println(
+                            "\nPlease enter the login name of the first user:\n");
+                        name1 = br.readLine();
+                    }
+                    if (t2 == null) {
+                        System.out.println(
+                            "\nPlease enter the login name of the second user:\n");
+                        name2 = br.readLine();
+                    }
+                    // Fetch both users at the same time
+                    CompletableFuture<TwitterUser> f1 = null;
+                    CompletableFuture<TwitterUser> f2 = null;
+                    if (t1 == null) {
+                        System.out.println("\nGetting information for " +
+                                name1 + ". Please wait...");
+                        f1 = client.createUserAsync(name1);
+                    }
+                    if (t2 == null) {
+                        System.out.println("\nGetting information for " +
+                                name2 + ". Please wait...");
+                        f2 = client.createUserAsync(name2);
                     }
-                    catch(Exception e) {
-                        System.out.println("ERROR: could not obtain information "
-                                + "for user '" + username + "'\n'");
-                        continue;
+                    if (f1 != null) {
+                        t1 = await(f1, name1);
+                    }
+                    if (f2 != null) {
+                        t2 = await(f2, name2);
                     }
                 }
+                System.out.println("\nComputing similarity...\n");
                 SimilarityResult result = 
                     Similarity.computeSumilarity(t1, t2, tokenizer);
                 System.out.println("User bio for " + t1.getScreenName() +
@@ -109,21 +187,64 @@ public class Compare
             }
         }
         System.out.println("\nGood-bye.\n");
+        if (Metrics.ENABLED) {
+            System.err.print(Metrics.report(jsonMetrics()));
+        }
     }
     
+    /**
+     * Waits for a user to be fetched.
+     * @return the user, or null if it could not be obtained
+     */
+    private static TwitterUser await(final CompletableFuture<TwitterUser> user,
+            final String username) {
+        try {
+            return user.get();
+        }
+        catch (Exception e) {
+            System.out.println("ERROR: could not obtain information "
+                    + "for user '" + username + "'\n'");
+            return null;
+        }
+    }
+    
+    /**
+     * Parses fetch limits given as four comma-separated caps, each a number
+     * or {@code all}.
+     * @param value the caps of followers, friends, tweets and favorites
+     * @return the limits
+     * @throws IllegalArgumentException if the value is not four such caps
+     */
+    private static FetchLimits parseLimits(final String value) {
+        String[] caps = value.split(",");
+        if (caps.length != 4) {
+            throw new IllegalArgumentException(
+                "Expected four limits, got " + value);
+        }
+        int[] limits = new int[caps.length];
+        for (int i = 0; i < caps.length; i++) {
+            String cap = caps[i].trim();
+            limits[i] = cap.equalsIgnoreCase("all") ? FetchLimits.UNLIMITED
+                : Integer.parseInt(cap);
+        }
+        return new FetchLimits(limits[0], limits[1], limits[2], limits[3]);
+    }
+
     /**
      * Initializes the twitter client, stopword list, and tokenizer
      * @param username valid twitter login name
      * @param password password for the login name
+     * @param limits how much of each user to fetch
      */
-    private static void initialize(final String username, final String password) {
+    private static void initialize(final String username, final String password,
+            final FetchLimits limits) {
         try {
             stopwords = new Stopwords("data/stopwords.txt");
         } catch (Exception e) {
             System.err.println("WARNING: could not instantiate stopwords class.");
             System.err.println("WARNING: proceeding without stopwords.");
         }
-        tokenizer = new TwitterTokenizer(stopwords);
+        tokenizer = new TwitterTokenizer(stopwords, Segmenter.TABLE);
         try {
             client = new TwitterClient(username, password);
         } catch (Exception e) {
@@ -131,8 +252,160 @@ public class Compare
                     + e.getMessage());
             System.exit(1);
         }
+        client.setFetchLimits(limits);
+        // Capped lists change the scores, so say which are in use
+        System.err.println("Fetching " + limits);
+        if (Metrics.ENABLED) {
+            startMetrics();
+        }
+        try {
+            client.setCache(new UserCache(new File(CACHE_DIRECTORY),
+                    CACHE_MEMORY_ENTRIES, CACHE_DISK_ENTRIES, CACHE_TTL));
+        } catch (Exception e) {
+            System.err.println("WARNING: could not open the user cache: "
+                    + e.getMessage());
+            System.err.println("WARNING: proceeding without a cache.");
+        }
     }
     
+    /**
+     * Runs in batch mode.
+     * @param args the command line
+     * @return exit status
+     */
+    private static int runBatch(final String[] args) {
+        String input = null;
+        String output = null;
+        BatchCompare.Format format = BatchCompare.Format.CSV;
+        int threads = Runtime.getRuntime().availableProcessors();
+        try {
+            for (int i = 2; i < args.length; i += 2) {
+                if (i + 1 == args.length) {
+                    throw new IllegalArgumentException(
+                        "Missing value for " + args[i]);
+                }
+                String value = args[i + 1];
+                if (args[i].equals("--batch")) {
+                    input = value;
+                } else if (args[i].equals("--output")) {
+                    output = value;
+                } else if (args[i].equals("--format")) {
+                    format = BatchCompare.Format.valueOf(
+                            value.toUpperCase(Locale.ROOT));
+                } else if (args[i].equals("--threads")) {
+                    threads = Integer.parseInt(value);
+                } else {
+                    throw new IllegalArgumentException(
+                        "Unknown option " + args[i]);
+                }
+            }
+            if (input == null) {
+                throw new IllegalArgumentException("Missing --batch option");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("ERROR: " + e.getMessage());
+            System.err.println("Usage: screen_name password --batch <file|-> "
+                    + "[--output <file>] [--format csv|json] "
+                    + "[--threads <n>]");
+            return 1;
+        }
+        RequestScheduler scheduler = new RequestScheduler(client);
+        scheduler.start();
+        BatchCompare batch = new BatchCompare(scheduler, tokenizer, format,
+                threads);
+        batch.setProgress(System.err, PROGRESS_INTERVAL);
+        try {
+            Reader in = new InputStreamReader(input.equals("-") ? System.in
+                    : new FileInputStream(input), StandardCharsets.UTF_8);
+            Writer out = new OutputStreamWriter(output == null ? System.out
+                    : new FileOutputStream(output), StandardCharsets.UTF_8);
+            try {
+                batch.run(in, out);
+            } finally {
+                in.close();
+                out.close();
+            }
+        } catch (IOException e) {
+            System.err.println("ERROR: " + e.getMessage());
+            return 1;
+        } finally {
+            scheduler.stop();
+        }
+        if (Metrics.ENABLED) {
+            System.err.print(Metrics.report(jsonMetrics()));
+        }
+        return batch.getFailures() == 0 ? 0 : 2;
+    }
+
+    /**
+     * Runs as a server, returning once it listens.
+     * @param args the command line
+     * @return exit status: 0 if the server is running
+     */
+    private static int runServer(final String[] args) {
+        int port;
+        try {
+            if (args.length != 4) {
+                throw new IllegalArgumentException("Wrong number of options");
+            }
+            port = Integer.parseInt(args[3]);
+        } catch (IllegalArgumentException e) {
+            System.err.println("ERROR: " + e.getMessage());
+            System.err.println("Usage: screen_name password --serve <port>");
+            return 1;
+        }
+        SimilarityServer server = new SimilarityServer(client, tokenizer,
+                SERVER_USERS, SERVER_TTL);
+        try {
+            server.start(port);
+        } catch (IOException e) {
+            System.err.println("ERROR: " + e.getMessage());
+            return 1;
+        }
+        System.err.println("Listening on port " + server.getPort());
+        return 0;
+    }
+
+    /**
+     * Publishes the metrics through JMX and starts printing them if asked to.
+     */
+    private static void startMetrics() {
+        try {
+            Metrics.registerMBeans();
+        } catch (JMException e) {
+            System.err.println("WARNING: could not publish metrics: "
+                    + e.getMessage());
+        }
+        int period = Integer.getInteger(METRICS_DUMP_PROPERTY, 0);
+        if (period > 0) {
+            Metrics.startDump(System.err, period, TimeUnit.SECONDS,
+                    jsonMetrics());
+        }
+    }
+
+    private static boolean jsonMetrics() {
+        return "json".equals(System.getProperty(METRICS_FORMAT_PROPERTY));
+    }
+
+    // Users fetched in the last day are read from here rather than twitter.com
+    private static final String CACHE_DIRECTORY = "data/cache";
+    private static final int CACHE_MEMORY_ENTRIES = 100;
+    private static final int CACHE_DISK_ENTRIES = 10000;
+    private static final long CACHE_TTL = 24 * 60 * 60 * 1000L;
+
+    // Milliseconds between progress reports in batch mode
+    private static final long PROGRESS_INTERVAL = 10000;
+
+    // Users kept by the server, and for how long in milliseconds
+    private static final int SERVER_USERS = 10000;
+    private static final long SERVER_TTL = TimeUnit.HOURS.toMillis(1);
+
+    // Seconds between metrics reports, and their format: json or text
+    private static final String METRICS_DUMP_PROPERTY =
+        Metrics.PROPERTY + ".dump";
+    private static final String METRICS_FORMAT_PROPERTY =
+        Metrics.PROPERTY + ".format";
+    
     // To tokenize the text contained in tweets and other strings associated 
     // with a twitter user 
     private static Tokenizer tokenizer;
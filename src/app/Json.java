@@ -0,0 +1,53 @@
+//=============================================================================
+// Coding sample for Stefaan Heyvaert.
+//=============================================================================
+package app;
+
+import java.util.Locale;
+
+import util.SimilarityResult;
+
+/**
+ * Writes the few JSON values the application outputs.
+ *
+ * @author sh
+ */
+final class Json
+{
+    /**
+     * @return a string as a JSON string, quoted and escaped
+     */
+    static String quote(final String value) {
+        StringBuilder json = new StringBuilder(value.length() + 2);
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            }
+            else if (c < ' ') {
+                json.append(String.format("\\u%04x", (int) c));
+            }
+            else {
+                json.append(c);
+            }
+        }
+        return json.append('"').toString();
+    }
+
+    /**
+     * @return the scores of a result as JSON members, without braces
+     */
+    static String scores(final SimilarityResult result) {
+        return String.format(Locale.ROOT, "\"score\":%.4f,"
+                + "\"followers\":%.4f,\"friends\":%.4f,\"bio\":%.4f,"
+                + "\"mentions\":%.4f,\"favorites\":%.4f,"
+                + "\"tweets\":%.4f,\"coverage\":%.2f",
+                result.getScore(), result.getSharedFollowers(),
+                result.getSharedFriends(), result.getBioSimilarity(),
+                result.getSharedMentions(), result.getFavoriteSimilarity(),
+                result.getTweetSimilarity(), result.getCoverage());
+    }
+
+    private Json() {}
+}
@@ -0,0 +1,557 @@
+//=============================================================================
+// Coding sample for Stefaan Heyvaert.
+//=============================================================================
+package app;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import winterwell.jtwitter.TwitterException;
+
+import client.TwitterUser;
+import client.UserSource;
+
+import text.Tokenizer;
+import util.InvertedIndex;
+import util.Similarity;
+import util.SimilarityResult;
+import util.TermDictionary;
+import util.UserProfile;
+
+/**
+ * Serves similarity scores over HTTP from a long-running process, so that
+ * the stopwords, the tokenizer and the users already fetched are reused from
+ * one request to the next. Endpoints, all answering GET with JSON:
+ * <ul>
+ * <li>{@code /score?user1=a&user2=b}: the similarity of two users</li>
+ * <li>{@code /similar?user=a&k=10}: the users most similar to a user among
+ * those the server has fetched so far (see {@link InvertedIndex})</li>
+ * <li>{@code /stats}: what the server holds and has done</li>
+ * </ul>
+ * Unknown users give a 404, bad parameters a 400, and other failures to get
+ * a user a 502.
+ * <p>
+ * Users are kept, with their {@link UserProfile}, for a set time and up to a
+ * set number, the least recently used going first. Requests for a user that
+ * is being fetched wait for that fetch rather than starting another one, so
+ * a burst of requests about the same user costs one fetch.
+ * <p>
+ * The profiles use a {@link TermDictionary} of the server's own rather than
+ * the default one, which never forgets a term. Once it holds more than
+ * {@link #setMaxTerms(int) a set number of terms}, and twice as many as the
+ * last time, the users kept are moved to a new dictionary holding only their
+ * terms, and indexed again.
+ * <p>
+ * Requests are handled on virtual threads when the Java runtime has them,
+ * and on a bounded pool of threads otherwise.
+ *
+ * @author sh
+ */
+public final class SimilarityServer
+{
+    /**
+     * @param source where to get users
+     * @param tokenizer tokenizer for the text of the users
+     * @param maxUsers number of users kept
+     * @param ttlMillis how long a user is kept before being fetched again
+     */
+    public SimilarityServer(final UserSource source, final Tokenizer tokenizer,
+            final int maxUsers, final long ttlMillis) {
+        this.source = source;
+        this.tokenizer = tokenizer;
+        this.maxUsers = maxUsers;
+        this.ttlMillis = ttlMillis;
+        index = new InvertedIndex(tokenizer);
+    }
+
+    /**
+     * @param maxTerms number of terms past which the dictionary is rebuilt
+     * with only the terms of the users kept; defaults to
+     * {@value #DEFAULT_MAX_TERMS}
+     */
+    public void setMaxTerms(final int maxTerms) {
+        if (maxTerms < 1) {
+            throw new IllegalArgumentException("Invalid number of terms: "
+                    + maxTerms);
+        }
+        synchronized (lock) {
+            this.maxTerms = maxTerms;
+        }
+    }
+
+    /**
+     * Starts listening.
+     * @param port port to listen on, or 0 for any free port
+     * @throws IOException if the port can not be bound
+     */
+    public synchronized void start(final int port) throws IOException {
+        if (server != null) {
+            throw new IllegalStateException("Server already started");
+        }
+        executor = newExecutor();
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/score", new Handler() {
+            String handle(final Map<String, String> params) throws Exception {
+                return score(required(params, "user1"),
+                        required(params, "user2"));
+            }
+        });
+        server.createContext("/similar", new Handler() {
+            String handle(final Map<String, String> params) throws Exception {
+                String k = params.get("k");
+                return similar(required(params, "user"),
+                        k == null ? DEFAULT_K : parseK(k));
+            }
+        });
+        server.createContext("/stats", new Handler() {
+            String handle(final Map<String, String> params) {
+                return stats();
+            }
+        });
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * @return port the server listens on
+     */
+    public synchronized int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops listening, letting the requests being handled finish for up to a
+     * second.
+     */
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(1);
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    /**
+     * @return number of times a user was fetched
+     */
+    public long getFetches() {
+        return fetches.get();
+    }
+
+    /**
+     * @return number of requests for a user that waited for a fetch already
+     * under way
+     */
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    private String score(final String name1, final String name2)
+        throws Exception {
+        CompletableFuture<CachedUser> f1 = user(name1);
+        CompletableFuture<CachedUser> f2 = user(name2);
+        UserProfile p1 = await(f1).profile;
+        UserProfile p2 = await(f2).profile;
+        if (p1.getDictionary() != p2.getDictionary()) {
+            // The dictionary was rebuilt between the two
+            synchronized (lock) {
+                p1 = p1.withDictionary(dictionary);
+                p2 = p2.withDictionary(dictionary);
+            }
+        }
+        SimilarityResult result = Similarity.computeSumilarity(p1, p2);
+        return "{\"user1\":" + Json.quote(name1) + ",\"user2\":"
+            + Json.quote(name2) + "," + Json.scores(result) + ",\"reason\":"
+            + Json.quote(result.getReason().trim()) + "}";
+    }
+
+    /**
+     * Finds the candidates under the lock, and compares them in full outside
+     * it.
+     */
+    private String similar(final String name, final int k) throws Exception {
+        UserProfile query = await(user(name)).profile;
+        List<UserProfile> candidates;
+        synchronized (lock) {
+            // The index only knows the term IDs of the current dictionary
+            query = query.withDictionary(dictionary);
+            candidates = index.candidates(query, k);
+        }
+        List<Match> similar = new ArrayList<Match>(candidates.size());
+        for (UserProfile candidate : candidates) {
+            similar.add(new Match(candidate,
+                    Similarity.computeSumilarity(query, candidate)));
+        }
+        Collections.sort(similar);
+        StringBuilder json = new StringBuilder("{\"user\":")
+            .append(Json.quote(name)).append(",\"similar\":[");
+        for (int i = 0; i < similar.size(); i++) {
+            Match match = similar.get(i);
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"user\":")
+                .append(Json.quote(match.profile.getUserName()))
+                .append(',').append(Json.scores(match.result))
+                .append('}');
+        }
+        return json.append("]}").toString();
+    }
+
+    private String stats() {
+        int users;
+        int indexed;
+        int terms;
+        synchronized (lock) {
+            users = cache.size();
+            indexed = index.size();
+            terms = dictionary.size();
+        }
+        return "{\"users\":" + users + ",\"indexed\":" + indexed
+            + ",\"terms\":" + terms + ",\"fetching\":" + fetching.size()
+            + ",\"fetches\":" + fetches.get() + ",\"coalesced\":"
+            + coalesced.get() + "}";
+    }
+
+    /**
+     * Gets a user: from the cache if it is there and fresh, or by joining the
+     * fetch under way, or else by fetching it.
+     */
+    CompletableFuture<CachedUser> user(final String userName) {
+        final String key = userName.toLowerCase(Locale.ROOT);
+        synchronized (lock) {
+            CachedUser entry = cache.get(key);
+            if (entry != null &&
+                    System.currentTimeMillis() - entry.time < ttlMillis) {
+                return CompletableFuture.completedFuture(entry);
+            }
+        }
+        final CompletableFuture<CachedUser> fetch =
+            new CompletableFuture<CachedUser>();
+        CompletableFuture<CachedUser> pending =
+            fetching.putIfAbsent(key, fetch);
+        if (pending != null) {
+            coalesced.incrementAndGet();
+            return pending;
+        }
+        fetches.incrementAndGet();
+        source.createUserAsync(userName).whenComplete(
+            new BiConsumer<TwitterUser, Throwable>() {
+                public void accept(TwitterUser user, Throwable failure) {
+                    try {
+                        if (failure != null) {
+                            fetch.completeExceptionally(failure);
+                            return;
+                        }
+                        // The index keeps the same profile, so users are
+                        // tokenized once and held once
+                        UserProfile profile =
+                            new UserProfile(user, tokenizer, dictionary());
+                        CachedUser entry;
+                        synchronized (lock) {
+                            // Unless the dictionary was rebuilt meanwhile
+                            entry = new CachedUser(
+                                    profile.withDictionary(dictionary),
+                                    System.currentTimeMillis());
+                            CachedUser old = cache.put(key, entry);
+                            if (old != null) {
+                                index.remove(old.profile.getId());
+                            }
+                            index.add(entry.profile);
+                            if (dictionary.size() > Math.max(maxTerms,
+                                    2 * compactedTerms)) {
+                                compactTerms();
+                            }
+                        }
+                        fetch.complete(entry);
+                    }
+                    catch (RuntimeException e) {
+                        fetch.completeExceptionally(e);
+                    }
+                    finally {
+                        fetching.remove(key, fetch);
+                    }
+                }
+            });
+        return fetch;
+    }
+
+    private TermDictionary dictionary() {
+        synchronized (lock) {
+            return dictionary;
+        }
+    }
+
+    /**
+     * Moves the users kept to a new dictionary, dropping the terms of the
+     * users evicted, and indexes them again. Called under the lock.
+     */
+    private void compactTerms() {
+        TermDictionary terms = new TermDictionary();
+        InvertedIndex compacted = new InvertedIndex(tokenizer);
+        for (Map.Entry<String, CachedUser> entry : cache.entrySet()) {
+            CachedUser user = entry.getValue();
+            CachedUser moved = new CachedUser(
+                    user.profile.withDictionary(terms), user.time);
+            entry.setValue(moved);
+            compacted.add(moved.profile);
+        }
+        dictionary = terms;
+        index = compacted;
+        compactedTerms = terms.size();
+    }
+
+    private static CachedUser await(final CompletableFuture<CachedUser> user)
+        throws Exception {
+        try {
+            return user.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+    }
+
+    private static String required(final Map<String, String> params,
+            final String name) {
+        String value = params.get(name);
+        if (value == null || value.length() == 0) {
+            throw new IllegalArgumentException("Missing parameter " + name);
+        }
+        return value;
+    }
+
+    private static int parseK(final String k) {
+        try {
+            int value = Integer.parseInt(k);
+            if (value >= 1 && value <= MAX_K) {
+                return value;
+            }
+        }
+        catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("k must be between 1 and " + MAX_K);
+    }
+
+    /**
+     * @return the parameters of a query string
+     */
+    private static Map<String, String> parse(final String query)
+        throws UnsupportedEncodingException {
+        Map<String, String> params = new HashMap<String, String>();
+        if (query == null) {
+            return params;
+        }
+        for (String param : query.split("&")) {
+            int equals = param.indexOf('=');
+            if (equals > 0) {
+                params.put(URLDecoder.decode(param.substring(0, equals),
+                        "UTF-8"), URLDecoder.decode(
+                        param.substring(equals + 1), "UTF-8"));
+            }
+        }
+        return params;
+    }
+
+    /**
+     * @return true if a user could not be found, as opposed to fetched
+     */
+    private static boolean isNotFound(final Throwable t) {
+        for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+            if (cause instanceof TwitterException.E404) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Runs requests on virtual threads if the runtime has them (Java 21 and
+     * later), or else on a bounded pool of daemon threads.
+     */
+    private static ExecutorService newExecutor() {
+        try {
+            Method method = Executors.class.getMethod(
+                    "newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        }
+        catch (ReflectiveOperationException e) {
+            final AtomicInteger count = new AtomicInteger();
+            return Executors.newFixedThreadPool(MAX_THREADS,
+                new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r,
+                                "similarity-server-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        }
+    }
+
+    /**
+     * The profile of a user, and when the user was fetched. The user itself
+     * is not kept.
+     */
+    static final class CachedUser
+    {
+        CachedUser(final UserProfile profile, final long time) {
+            this.profile = profile;
+            this.time = time;
+        }
+
+        final UserProfile profile;
+        final long time;
+    }
+
+    /**
+     * A candidate compared in full; sorts most similar first.
+     */
+    private static final class Match implements Comparable<Match>
+    {
+        Match(final UserProfile profile, final SimilarityResult result) {
+            this.profile = profile;
+            this.result = result;
+        }
+
+        public int compareTo(final Match other) {
+            int cmp = Double.compare(other.result.getScore(),
+                    result.getScore());
+            return cmp != 0 ? cmp : Long.compare(profile.getId(),
+                    other.profile.getId());
+        }
+
+        final UserProfile profile;
+        final SimilarityResult result;
+    }
+
+    /**
+     * Answers GET requests with the JSON a subclass makes of the query
+     * parameters, turning exceptions into error statuses.
+     */
+    private abstract static class Handler implements HttpHandler
+    {
+        abstract String handle(Map<String, String> params) throws Exception;
+
+        public void handle(final HttpExchange exchange) throws IOException {
+            int status = 200;
+            String body;
+            try {
+                if (!exchange.getRequestMethod().equals("GET")) {
+                    status = 405;
+                    body = error("Only GET is supported");
+                }
+                else {
+                    body = handle(parse(exchange.getRequestURI()
+                            .getRawQuery()));
+                }
+            }
+            catch (IllegalArgumentException e) {
+                status = 400;
+                body = error(e.getMessage());
+            }
+            catch (TimeoutException e) {
+                status = 504;
+                body = error("Timed out getting the user");
+            }
+            catch (Exception e) {
+                status = isNotFound(e) ? 404 : 502;
+                body = error(e.getMessage());
+            }
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type",
+                    "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(status, bytes.length);
+            OutputStream out = exchange.getResponseBody();
+            try {
+                out.write(bytes);
+            }
+            finally {
+                out.close();
+            }
+        }
+
+        private static String error(final String message) {
+            return "{\"error\":" + Json.quote(String.valueOf(message)) + "}";
+        }
+    }
+
+    private static final int DEFAULT_K = 10;
+    private static final int MAX_K = 100;
+    private static final long TIMEOUT_SECONDS = 60;
+    private static final int MAX_THREADS = 64;
+    private static final int DEFAULT_MAX_TERMS = 1 << 20;
+
+    private final UserSource source;
+    private final Tokenizer tokenizer;
+    private final int maxUsers;
+    private final long ttlMillis;
+
+    /** Guards the cache, the index and the dictionary */
+    private final Object lock = new Object();
+
+    /** Users fetched, least recently used first; evicted users leave the
+     * index too */
+    private final Map<String, CachedUser> cache =
+        new LinkedHashMap<String, CachedUser>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(
+                    final Map.Entry<String, CachedUser> eldest) {
+                if (size() > maxUsers) {
+                    index.remove(eldest.getValue().profile.getId());
+                    return true;
+                }
+                return false;
+            }
+        };
+
+    /** Users fetched so far for the similar endpoint; not synchronized */
+    private InvertedIndex index;
+
+    /** Dictionary of the profiles kept */
+    private TermDictionary dictionary = new TermDictionary();
+
+    private int maxTerms = DEFAULT_MAX_TERMS;
+
+    /** Number of terms after the last time the dictionary was rebuilt */
+    private int compactedTerms;
+
+    /** Fetches under way, by lowercased user name */
+    private final ConcurrentMap<String, CompletableFuture<CachedUser>>
+        fetching =
+            new ConcurrentHashMap<String, CompletableFuture<CachedUser>>();
+
+    private final AtomicLong fetches = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    private HttpServer server;
+    private ExecutorService executor;
+}
@@ -0,0 +1,39 @@
+//=============================================================================
+// Coding sample for Stefaan Heyvaert.
+//=============================================================================
+package client;
+
+/**
+ * Source of the current time, and a way to wait, for components that pace
+ * themselves. Tests substitute a clock that only moves when told to, so that
+ * an hour of waiting takes no time at all.
+ *
+ * @author sh
+ */
+public interface Clock
+{
+    /**
+     * @return the current time in milliseconds
+     */
+    long millis();
+
+    /**
+     * Waits for a number of milliseconds.
+     * @param millis time to wait; nothing happens if it is not positive
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    void sleep(long millis) throws InterruptedException;
+
+    /** The wall clock */
+    Clock SYSTEM = new Clock() {
+        public long millis() {
+            return System.currentTimeMillis();
+        }
+
+        public void sleep(final long millis) throws InterruptedException {
+            if (millis > 0) {
+                Thread.sleep(millis);
+            }
+        }
+    };
+}
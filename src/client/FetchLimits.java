@@ -0,0 +1,137 @@
+//=============================================================================
+// Coding sample for Stefaan Heyvaert.
+//=============================================================================
+package client;
+
+/**
+ * Caps on how much of a user {@link TwitterClient} fetches: the first so many
+ * followers and friends (the API lists the most recent ones first) and the
+ * last so many tweets and favorites. Capping bounds both the memory a user
+ * takes and the number of requests needed to fetch it, at the price of
+ * comparing users on part of their data;
+ * {@link TwitterUser#getFollowerCoverage()} and its siblings tell how large a
+ * part.
+ * <p>
+ * Limits are immutable.
+ *
+ * @author sh
+ */
+public final class FetchLimits
+{
+    /**
+     * @param maxFollowers maximum number of follower IDs, or
+     * {@link #UNLIMITED}
+     * @param maxFriends maximum number of friend IDs, or {@link #UNLIMITED}
+     * @param maxTweets maximum number of tweets, or {@link #UNLIMITED}
+     * @param maxFavorites maximum number of favorites, or {@link #UNLIMITED}
+     * @throws IllegalArgumentException if a limit is negative
+     */
+    public FetchLimits(final int maxFollowers, final int maxFriends,
+            final int maxTweets, final int maxFavorites) {
+        if (maxFollowers < 0 || maxFriends < 0 || maxTweets < 0 ||
+                maxFavorites < 0) {
+            throw new IllegalArgumentException("Negative limit");
+        }
+        this.maxFollowers = maxFollowers;
+        this.maxFriends = maxFriends;
+        this.maxTweets = maxTweets;
+        this.maxFavorites = maxFavorites;
+    }
+
+    public int getMaxFollowers() {
+        return maxFollowers;
+    }
+
+    public int getMaxFriends() {
+        return maxFriends;
+    }
+
+    public int getMaxTweets() {
+        return maxTweets;
+    }
+
+    public int getMaxFavorites() {
+        return maxFavorites;
+    }
+
+    /**
+     * @return least number of requests needed to fetch a user within these
+     * limits: a request for each page of tweets and favorites, but only one
+     * for each list of IDs, which is what a user with up to
+     * {@value #IDS_PAGE_SIZE} followers and friends takes; see
+     * {@link #getRequests(int, int)} for larger ones
+     */
+    public int getRequestsPerUser() {
+        return getRequests(0, 0);
+    }
+
+    /**
+     * @param followers number of followers of a user
+     * @param friends number of friends of the user
+     * @return number of requests needed to fetch the user within these
+     * limits, counting a request for each page of
+     * {@value #IDS_PAGE_SIZE} IDs
+     */
+    public int getRequests(final int followers, final int friends) {
+        // The rate limit check and the profile
+        int requests = 2;
+        requests += idPages(maxFollowers, followers);
+        requests += idPages(maxFriends, friends);
+        requests += pages(Math.min(maxTweets, MAX_TIMELINE),
+                MAX_TIMELINE_PAGE_SIZE);
+        requests += pages(Math.min(maxFavorites, MAX_TIMELINE),
+                FAVORITES_PAGE_SIZE);
+        return requests;
+    }
+
+    public String toString() {
+        return "followers=" + describe(maxFollowers) + ", friends="
+                + describe(maxFriends) + ", tweets=" + describe(maxTweets)
+                + ", favorites=" + describe(maxFavorites);
+    }
+
+    private static int pages(final int items, final int pageSize) {
+        return (int) (((long) items + pageSize - 1) / pageSize);
+    }
+
+    /**
+     * @return number of pages fetching a list of IDs takes: at least one,
+     * even for an empty list, unless the list is not fetched at all
+     */
+    private static int idPages(final int max, final int count) {
+        return max == 0 ? 0
+            : Math.max(1, pages(Math.min(max, count), IDS_PAGE_SIZE));
+    }
+
+    private static String describe(final int limit) {
+        return limit == UNLIMITED ? "all" : String.valueOf(limit);
+    }
+
+    /** No limit */
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+
+    /** Tweets per page of a timeline when no count is asked for */
+    public static final int DEFAULT_PAGE_SIZE = 20;
+
+    /** What was fetched before limits existed: all followers and friends, and
+     * one page of tweets and of favorites */
+    public static final FetchLimits DEFAULT = new FetchLimits(UNLIMITED,
+            UNLIMITED, DEFAULT_PAGE_SIZE, DEFAULT_PAGE_SIZE);
+
+    /** Number of follower or friend IDs the API serves per request */
+    public static final int IDS_PAGE_SIZE = 5000;
+
+    /** Largest page of tweets the API serves */
+    static final int MAX_TIMELINE_PAGE_SIZE = 200;
+
+    /** The API pages favorites by 20 whatever count is asked for */
+    static final int FAVORITES_PAGE_SIZE = DEFAULT_PAGE_SIZE;
+
+    /** The API serves no more than the 3200 most recent tweets of a user */
+    static final int MAX_TIMELINE = 3200;
+
+    private final int maxFollowers;
+    private final int maxFriends;
+    private final int maxTweets;
+    private final int maxFavorites;
+}
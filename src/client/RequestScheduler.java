@@ -0,0 +1,433 @@
+//=============================================================================
+// Coding sample for Stefaan Heyvaert.
+//=============================================================================
+package client;
+
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import winterwell.jtwitter.TwitterException;
+
+/**
+ * Fetches users through a {@link TwitterClient} one at a time, paced so that a
+ * long list of users fits within the hourly API budget instead of exhausting
+ * it halfway and failing the rest.
+ * <p>
+ * Requests are queued with a priority and served highest priority first,
+ * then in the order they were submitted. The scheduler asks the API how many
+ * calls are left whenever a window starts, assuming a window lasts an hour
+ * from that moment (the API does not say when its window resets), and spreads
+ * the users it can afford evenly over the rest of the window. Once the budget
+ * is spent it waits for the next window rather than failing. Requests that
+ * fail with a server error or a timeout are retried after an exponentially
+ * growing, jittered delay; other failures are passed on at once. Users found
+ * in the client's cache are returned without using any of the budget.
+ * <p>
+ * Requests are run either by calling {@link #runNext()} or by a thread of
+ * the scheduler's own, see {@link #start()}. All waiting goes through a
+ * {@link Clock}, so tests can run the scheduler on a fake one.
+ *
+ * @author sh
+ */
+public final class RequestScheduler
+{
+    /**
+     * Creates a scheduler running on the wall clock.
+     * @param client client fetching the users
+     */
+    public RequestScheduler(final TwitterClient client) {
+        this(client, Clock.SYSTEM, new Random());
+    }
+
+    /**
+     * @param client client fetching the users
+     * @param clock clock for pacing and backing off
+     * @param random source of the jitter added to retry delays
+     */
+    public RequestScheduler(final TwitterClient client, final Clock clock,
+            final Random random) {
+        this.client = client;
+        this.clock = clock;
+        this.random = random;
+    }
+
+    /**
+     * Queues a user with the default priority, 0.
+     * @param userName login name of the user
+     * @return future completing with the user, or exceptionally as
+     * {@link TwitterClient#createUserAsync(String)} does
+     */
+    public CompletableFuture<TwitterUser> submit(final String userName) {
+        return submit(userName, 0);
+    }
+
+    /**
+     * Queues a user.
+     * @param userName login name of the user
+     * @param priority requests with a higher priority are served first
+     * @return future completing with the user, or exceptionally as
+     * {@link TwitterClient#createUserAsync(String)} does
+     */
+    public CompletableFuture<TwitterUser> submit(final String userName,
+            final int priority) {
+        synchronized (queue) {
+            Request request = new Request(userName, priority, sequence++,
+                    clock.millis());
+            queue.add(request);
+            queue.notifyAll();
+            return request.future;
+        }
+    }
+
+    /**
+     * Serves the request at the head of the queue in the calling thread,
+     * waiting for the budget to allow it. Requests are served one at a time,
+     * whichever threads serve them.
+     * @return false if the queue was empty
+     * @throws InterruptedException if the thread is interrupted while
+     * waiting; the request then fails
+     */
+    public boolean runNext() throws InterruptedException {
+        Request request;
+        synchronized (queue) {
+            request = queue.poll();
+        }
+        if (request == null) {
+            return false;
+        }
+        run(request);
+        return true;
+    }
+
+    /**
+     * Starts a daemon thread serving requests as they are submitted. Does
+     * nothing if it is already running.
+     */
+    public synchronized void start() {
+        if (worker != null) {
+            return;
+        }
+        worker = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    while (true) {
+                        RequestScheduler.this.run(take());
+                    }
+                }
+                catch (InterruptedException e) {
+                    // Stopped
+                }
+            }
+        }, "request-scheduler");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Stops the thread started by {@link #start()} and fails all requests
+     * still queued.
+     */
+    public void stop() {
+        synchronized (this) {
+            if (worker != null) {
+                worker.interrupt();
+                worker = null;
+            }
+        }
+        synchronized (queue) {
+            for (Request request = queue.poll(); request != null;
+                    request = queue.poll()) {
+                request.future.completeExceptionally(
+                        new Exception("Request for user '" + request.userName
+                                + "' cancelled"));
+            }
+        }
+    }
+
+    /**
+     * @return number of requests waiting to be served
+     */
+    public int getQueueDepth() {
+        synchronized (queue) {
+            return queue.size();
+        }
+    }
+
+    /**
+     * @return average time requests waited between being submitted and being
+     * sent, in milliseconds
+     */
+    public double getAverageWaitMillis() {
+        return started == 0 ? 0.0 : totalWait / (double) started;
+    }
+
+    /**
+     * @return longest time a request waited before being sent, in
+     * milliseconds
+     */
+    public long getMaxWaitMillis() {
+        return maxWait;
+    }
+
+    /**
+     * @return number of requests that completed with a user
+     */
+    public long getCompleted() {
+        return completed;
+    }
+
+    /**
+     * @return number of requests that completed with an error
+     */
+    public long getFailed() {
+        return failed;
+    }
+
+    /**
+     * @return number of times a request was retried
+     */
+    public long getRetries() {
+        return retries;
+    }
+
+    /**
+     * @return number of API calls the scheduler believes are left in the
+     * current window, or -1 before the first request
+     */
+    public int getRemainingCalls() {
+        return remaining;
+    }
+
+    /**
+     * @return time at which the scheduler expects the current window to end
+     */
+    public long getResetTime() {
+        return resetAt;
+    }
+
+    public String toString() {
+        return "queued=" + getQueueDepth() + ", completed=" + completed
+                + ", failed=" + failed + ", retries=" + retries
+                + ", remaining calls=" + remaining;
+    }
+
+    /**
+     * Waits for a request to be queued and removes it.
+     */
+    private Request take() throws InterruptedException {
+        synchronized (queue) {
+            while (queue.isEmpty()) {
+                queue.wait();
+            }
+            return queue.poll();
+        }
+    }
+
+    private void run(final Request request) throws InterruptedException {
+        synchronized (dispatch) {
+            serve(request);
+        }
+    }
+
+    /**
+     * Serves a request, retrying it as long as that is worthwhile.
+     */
+    private void serve(final Request request) throws InterruptedException {
+        TwitterUser cached = client.getCachedUser(request.userName);
+        if (cached != null) {
+            recordWait(request);
+            completed++;
+            request.future.complete(cached);
+            return;
+        }
+        for (int attempt = 0; ; attempt++) {
+            Throwable failure;
+            try {
+                awaitSlot();
+                if (attempt == 0) {
+                    recordWait(request);
+                }
+                int calls = client.callsPerUser();
+                remaining -= calls;
+                TwitterUser user = client.fetchUser(request.userName).get();
+                // Long lists of IDs took a call per page
+                remaining -= client.callsFor(user) - calls;
+                completed++;
+                request.future.complete(user);
+                return;
+            }
+            catch (ExecutionException e) {
+                failure = e.getCause();
+            }
+            catch (RuntimeException e) {
+                // Checking the rate limit failed
+                failure = e;
+            }
+            catch (InterruptedException e) {
+                failed++;
+                request.future.completeExceptionally(new Exception(
+                        "Interrupted while getting user '" + request.userName
+                        + "'"));
+                throw e;
+            }
+            if (attempt < MAX_RETRIES && is(failure,
+                    TwitterException.RateLimit.class)) {
+                // Our idea of the budget was wrong: wait for the next window
+                retries++;
+                remaining = 0;
+            }
+            else if (attempt < MAX_RETRIES &&
+                    (is(failure, TwitterException.E50X.class) ||
+                     is(failure, TwitterException.Timeout.class))) {
+                retries++;
+                try {
+                    clock.sleep(backoff(attempt));
+                }
+                catch (InterruptedException e) {
+                    failed++;
+                    request.future.completeExceptionally(failure);
+                    throw e;
+                }
+            }
+            else {
+                failed++;
+                request.future.completeExceptionally(failure);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Waits until the budget allows fetching another user.
+     */
+    private void awaitSlot() throws InterruptedException {
+        long now = clock.millis();
+        if (remaining == UNKNOWN || now >= resetAt) {
+            refresh(now);
+        }
+        int calls = client.callsPerUser();
+        while (remaining < calls) {
+            clock.sleep(resetAt - now);
+            now = clock.millis();
+            refresh(now);
+        }
+        // Spread the users left in the budget evenly over the rest of the
+        // window, counting from the previous request, so that the last one
+        // is sent one interval before the window ends
+        if (lastSent >= windowStart) {
+            long users = remaining / calls;
+            long next = lastSent + (resetAt - lastSent) / (users + 1);
+            if (next > now) {
+                clock.sleep(next - now);
+                now = clock.millis();
+            }
+        }
+        lastSent = now;
+    }
+
+    /**
+     * Starts a new window with the budget reported by the API.
+     */
+    private void refresh(final long now) {
+        remaining = Math.max(client.getRateLimitStatus(), 0);
+        windowStart = now;
+        resetAt = now + WINDOW_MILLIS;
+    }
+
+    /**
+     * Returns the delay before a retry: half the exponentially growing
+     * delay, plus a random part of up to the other half, so that clients
+     * failing together do not retry together.
+     */
+    private long backoff(final int attempt) {
+        long delay = Math.min(MAX_BACKOFF_MILLIS,
+                BASE_BACKOFF_MILLIS << Math.min(attempt, 30));
+        return delay / 2 + (long) (random.nextDouble() * (delay / 2));
+    }
+
+    private void recordWait(final Request request) {
+        long wait = clock.millis() - request.submitted;
+        started++;
+        totalWait += wait;
+        maxWait = Math.max(maxWait, wait);
+    }
+
+    /**
+     * @return true if an exception or one of its causes is of a given type
+     */
+    private static boolean is(Throwable t,
+            final Class<? extends Throwable> type) {
+        for (; t != null; t = t.getCause()) {
+            if (type.isInstance(t)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A queued request for a user.
+     */
+    private static final class Request implements Comparable<Request>
+    {
+        Request(final String userName, final int priority,
+                final long sequence, final long submitted) {
+            this.userName = userName;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.submitted = submitted;
+        }
+
+        public int compareTo(final Request other) {
+            if (priority != other.priority) {
+                return priority > other.priority ? -1 : 1;
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+
+        final String userName;
+        final int priority;
+        final long sequence;
+        final long submitted;
+        final CompletableFuture<TwitterUser> future =
+            new CompletableFuture<TwitterUser>();
+    }
+
+    /** Length of the API's rate limit window */
+    static final long WINDOW_MILLIS = 60 * 60 * 1000L;
+    static final int MAX_RETRIES = 4;
+    static final long BASE_BACKOFF_MILLIS = 1000;
+    static final long MAX_BACKOFF_MILLIS = 60 * 1000;
+
+    private static final int UNKNOWN = -1;
+
+    private final TwitterClient client;
+    private final Clock clock;
+    private final Random random;
+
+    /** Requests waiting to be served; guarded by itself */
+    private final PriorityQueue<Request> queue = new PriorityQueue<Request>();
+    private long sequence;
+
+    private Thread worker;
+
+    /** Held while serving a request, so that requests are served one at a
+     * time; the fields below are only written while holding it */
+    private final Object dispatch = new Object();
+
+    // The budget, as far as the scheduler knows it
+    private volatile int remaining = UNKNOWN;
+    private long windowStart;
+    private volatile long resetAt;
+    private long lastSent = Long.MIN_VALUE;
+
+    // Metrics
+    private volatile long started;
+    private volatile long totalWait;
+    private volatile long maxWait;
+    private volatile long completed;
+    private volatile long failed;
+    private volatile long retries;
+}
@@ -4,24 +4,58 @@
 package client;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import winterwell.jtwitter.Twitter;
 import winterwell.jtwitter.TwitterException;
 import winterwell.jtwitter.Twitter.User;
 import winterwell.jtwitter.Twitter.Status;
 
+import util.Metrics;
+
 /**
  * Uses the {@link winterwell.jtwitter.Twitter} API to create a client to 
  * communicate with the Twitter web service, gather information about users, and
  * return {@link client.TwitterUser} instances containing the information most 
  * useful for similarity computations.
  * <p>
- * Requires a valid Twitter user name and password to be instantiated.
+ * Requires a valid Twitter user name and password to be instantiated, or an
+ * existing {@link winterwell.jtwitter.Twitter} instance.
+ * <p>
+ * Once the rate limit has been checked, the requests needed to build a user
+ * do not depend on each other, so {@link #createUserAsync(String)} issues
+ * them all at once on a bounded pool of threads and completes when the last
+ * one returns: fetching a user takes about as long as the check and the
+ * slowest request rather than the sum of them all. With no calls left, no
+ * other request is made.
+ * <p>
+ * How many followers, friends, tweets and favorites are fetched is capped by
+ * {@link #setFetchLimits(FetchLimits)}. Tweets and favorites are requested a
+ * page at a time and added to the user as each page arrives.
+ * <p>
+ * With a {@link UserCache} set, users fetched recently are served from the
+ * cache without any requests at all, and every user fetched is stored in it.
  *
  * @author sh
  */
-public final class TwitterClient
+public final class TwitterClient implements UserSource
 {
     /**
      * Constructs a {@link winterwell.jtwitter.Twitter} API instance.
@@ -38,8 +72,72 @@ public final class TwitterClient
         catch(TwitterException t) {
             throw new Exception(t.getMessage());
         }
+        executor = newExecutor(DEFAULT_THREADS);
+    }
+    
+    /**
+     * Uses an existing API instance, for example one configured differently or
+     * a stub for testing, and a pool of its own to issue requests on.
+     * @param twitter the API instance; it is called from several threads at
+     * once, and its paging parameters are set by the client, so it should not
+     * be shared with another client
+     */
+    public TwitterClient(final Twitter twitter) {
+        this(twitter, newExecutor(DEFAULT_THREADS));
     }
     
+    /**
+     * Uses an existing API instance and issues requests on the given executor.
+     * @param twitter the API instance; it is called from several threads at
+     * once
+     * @param executor runs the requests; its number of threads bounds the
+     * number of requests in flight
+     */
+    public TwitterClient(final Twitter twitter, final Executor executor) {
+        this.twitter = twitter;
+        this.executor = executor;
+    }
+    
+    /**
+     * Sets the cache consulted before fetching a user and filled afterwards.
+     * @param cache the cache, or null to always fetch users
+     */
+    public void setCache(final UserCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * @return the cache of users, or null if there is none
+     */
+    public UserCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Sets how much of each user to fetch. Limits apply to users fetched
+     * afterwards; users served from the cache are returned as they were
+     * fetched.
+     * <p>
+     * The API instance has a single cap on the number of IDs it fetches,
+     * which is set to the larger of the follower and friend limits; since
+     * pages of IDs are large, the API may still fetch up to a page more than
+     * the limit, which is then dropped.
+     * @param limits the limits; {@link FetchLimits#DEFAULT} unless set
+     */
+    public void setFetchLimits(final FetchLimits limits) {
+        int maxIds = Math.max(limits.getMaxFollowers(),
+                limits.getMaxFriends());
+        twitter.setMaxResults(maxIds == FetchLimits.UNLIMITED ? -1 : maxIds);
+        this.limits = limits;
+    }
+
+    /**
+     * @return how much of each user is fetched
+     */
+    public FetchLimits getFetchLimits() {
+        return limits;
+    }
+
     /**
      * Collects information for a user given a login name.
      * @param userName
@@ -50,56 +148,301 @@ public final class TwitterClient
      * overstaying one's welcome) or the server (twitter.com) side.
      */
     public TwitterUser createUser(final String userName) throws Exception {
-        if (callsLeft() < 0) {
-            throw new Exception("Rate limit exceeded for the current hour.");
+        try {
+            return createUserAsync(userName).get();
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new Exception("Interrupted while getting user '" + userName
+                    + "'");
+        }
+    }
+
+    /**
+     * Starts collecting information for a user given a login name. The
+     * requests for the user's profile, timeline, followers, friends and
+     * favorites, and the rate limit check, are all issued concurrently, and
+     * fetch no more than the {@link FetchLimits} allow. A user found in the
+     * cache is returned at once, without any requests.
+     * @param userName
+     * @return future completing with a wrapper containing a selection of the
+     * information available about a user, or exceptionally with an
+     * {@link Exception} describing what went wrong (see
+     * {@link #createUser(String)})
+     */
+    public CompletableFuture<TwitterUser> createUserAsync(final String userName) {
+        TwitterUser cached = getCachedUser(userName);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return fetchUser(userName);
+    }
+
+    /**
+     * @return the number of API calls left in the current hour
+     */
+    public int getRateLimitStatus() {
+        return callsLeft();
+    }
+
+    /**
+     * @return number of API calls fetching a user is expected to take with
+     * the current limits
+     */
+    int callsPerUser() {
+        return limits.getRequestsPerUser();
+    }
+
+    /**
+     * @param user a user fetched with the current limits
+     * @return number of API calls fetching the user took, counting a call
+     * for each page of follower and friend IDs
+     */
+    int callsFor(final TwitterUser user) {
+        return limits.getRequests(user.getFollowerCount(),
+                user.getFriendCount());
+    }
+
+    /**
+     * @return the user with a login name if it is in the cache, or null
+     */
+    TwitterUser getCachedUser(final String userName) {
+        UserCache cache = this.cache;
+        return cache == null ? null : cache.get(userName);
+    }
+
+    /**
+     * Fetches a user without looking in the cache, and stores it there.
+     */
+    CompletableFuture<TwitterUser> fetchUser(final String userName) {
+        final UserCache cache = this.cache;
+        CompletableFuture<TwitterUser> fetched = fetch(userName);
+        if (cache == null) {
+            return fetched;
         }
-        User user = null;
+        return fetched.thenApply(new Function<TwitterUser, TwitterUser>() {
+            public TwitterUser apply(TwitterUser user) {
+                cache.put(user);
+                return user;
+            }
+        });
+    }
+
+    /**
+     * Checks that calls are left for this hour, then fetches a user, so that
+     * no calls are spent once the limit is reached.
+     */
+    private CompletableFuture<TwitterUser> fetch(final String userName) {
+        final long start = Metrics.start();
+        return request(new Supplier<Integer>() {
+                public Integer get() {
+                    return callsLeft();
+                }
+            }).handle(new BiFunction<Integer, Throwable, Integer>() {
+                public Integer apply(Integer callsLeft, Throwable failure) {
+                    if (failure != null) {
+                        Metrics.record(Metrics.Stage.FETCH, start);
+                        Throwable cause =
+                            failure instanceof CompletionException &&
+                            failure.getCause() != null ?
+                                failure.getCause() : failure;
+                        throw new CompletionException(new Exception(
+                                describe(cause, userName), cause));
+                    }
+                    if (callsLeft < 0) {
+                        Metrics.record(Metrics.Stage.FETCH, start);
+                        String message =
+                            "Rate limit exceeded for the current hour.";
+                        throw new CompletionException(new Exception(message,
+                                new TwitterException.RateLimit(message)));
+                    }
+                    return callsLeft;
+                }
+            }).thenCompose(
+                new Function<Integer, CompletionStage<TwitterUser>>() {
+                    public CompletionStage<TwitterUser> apply(Integer left) {
+                        return fetchData(userName, start);
+                    }
+                });
+    }
+
+    /**
+     * Issues the requests for a user and assembles the responses. Tweets and
+     * favorites are added to the user page by page as they arrive, rather
+     * than after all of them have been buffered.
+     * @param start when fetching started, for {@link Metrics}
+     */
+    private CompletableFuture<TwitterUser> fetchData(final String userName,
+            final long start) {
+        final FetchLimits limits = this.limits;
+        // Every request fills in a different part of the user, so they can
+        // all add to it at once
+        final TwitterUser tu = new TwitterUser(userName);
+        final CompletableFuture<User> user = request(new Supplier<User>() {
+            public User get() {
+                return twitter.getUser(userName);
+            }
+        });
+        final CompletableFuture<Integer> timeline = request(
+            new Supplier<Integer>() {
+                public Integer get() {
+                    return streamStatuses(userName, false,
+                            limits.getMaxTweets(), tu);
+                }
+            });
+        final CompletableFuture<List<Long>> followers = request(
+            new Supplier<List<Long>>() {
+                public List<Long> get() {
+                    if (limits.getMaxFollowers() == 0) {
+                        return Collections.emptyList();
+                    }
+                    return first(twitter.getFollowerIDs(userName),
+                            limits.getMaxFollowers());
+                }
+            });
+        final CompletableFuture<List<Long>> friends = request(
+            new Supplier<List<Long>>() {
+                public List<Long> get() {
+                    if (limits.getMaxFriends() == 0) {
+                        return Collections.emptyList();
+                    }
+                    return first(twitter.getFriendIDs(userName),
+                            limits.getMaxFriends());
+                }
+            });
+        final CompletableFuture<Integer> favorites = request(
+            new Supplier<Integer>() {
+                public Integer get() {
+                    return streamStatuses(userName, true,
+                            limits.getMaxFavorites(), tu);
+                }
+            });
+        return CompletableFuture.allOf(user, timeline, followers, friends,
+                favorites).handle(
+            new BiFunction<Void, Throwable, TwitterUser>() {
+                public TwitterUser apply(Void ignored, Throwable failure) {
+                    Metrics.record(Metrics.Stage.FETCH, start);
+                    // Report the most telling failure: a missing user
+                    // explains the others
+                    CompletableFuture<?>[] requests = { user, timeline,
+                        followers, friends, favorites };
+                    for (CompletableFuture<?> request : requests) {
+                        if (request.isCompletedExceptionally()) {
+                            // Keep the cause so that callers can tell
+                            // transient errors from permanent ones
+                            Throwable cause = cause(request);
+                            throw new CompletionException(new Exception(
+                                    describe(cause, userName), cause));
+                        }
+                    }
+                    return assemble(tu, user.join(), followers.join(),
+                            friends.join());
+                }
+            });
+    }
+
+    /**
+     * Fetches a user's tweets or favorites a page at a time, most recent
+     * first, and adds them to the user until the limit is reached or there
+     * are no more.
+     * @return number of statuses added
+     */
+    private int streamStatuses(final String userName, final boolean favorites,
+            final int max, final TwitterUser tu) {
+        // Ask for larger pages only if the default one would not do
+        int pageSize = favorites || max <= FetchLimits.DEFAULT_PAGE_SIZE ?
+                FetchLimits.DEFAULT_PAGE_SIZE :
+                Math.min(max, FetchLimits.MAX_TIMELINE_PAGE_SIZE);
+        int added = 0;
+        for (int page = 1; added < max; page++) {
+            List<Status> statuses = statuses(userName, favorites, page,
+                    pageSize == FetchLimits.DEFAULT_PAGE_SIZE ?
+                            null : Integer.valueOf(pageSize));
+            for (Status status : statuses) {
+                if (added == max) {
+                    break;
+                }
+                if (favorites) {
+                    tu.addFavorite(status.getText());
+                }
+                else {
+                    tu.addMentions(status.getMentions());
+                    tu.addTweet(status.getText());
+                }
+                added++;
+            }
+            if (statuses.size() < pageSize) {
+                break;
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Requests a page of a user's tweets or favorites.
+     * @param count number of statuses per page, or null for the default
+     */
+    private List<Status> statuses(final String userName,
+            final boolean favorites, final int page, final Integer count) {
+        // The API instance holds on to the page number until its next
+        // timeline request, and to the count for good. Requests for the
+        // first page with the default count leave both alone and can run
+        // together; others set them and must run on their own, lest a
+        // request of another thread picks them up.
+        boolean shared = page == 1 && count == null;
+        Lock lock = shared ? paging.readLock() : paging.writeLock();
+        lock.lock();
         try {
-            user = twitter.getUser(userName);
-        } 
-        catch(TwitterException e) {
-            String message;
-            Throwable cause = e.getCause();
-            if (cause instanceof TwitterException.RateLimit) {
-                message = "Request Went over twitter's limit: please wait 1 hour and try again";
-            } else if (cause instanceof TwitterException.E401) {
-                message = "Wrong password or missing authorization";
-            } else if (cause instanceof TwitterException.E403) {
-                message = "Unauthorized request";
-            } else if (cause instanceof TwitterException.E50X) {
-                message = "Twitter server error. Please try again later";
-            } else if (cause instanceof TwitterException.E404) {
-                message = "User '" + userName + "' does not exist.";
-            } else {
-                message = "Unknown exception";
+            if (!shared) {
+                twitter.setPageNumber(page);
+                twitter.setCount(count);
+            }
+            return favorites ? twitter.getFavorites(userName) :
+                    twitter.getUserTimeline(userName);
+        }
+        finally {
+            if (!shared) {
+                // Also when the request failed before using them
+                twitter.setPageNumber(null);
+                twitter.setCount(null);
             }
-            throw new Exception(message);
+            lock.unlock();
         }
+    }
 
-        // Create the user object and set some basic information
-        TwitterUser tu = new TwitterUser(userName);
+    /**
+     * Completes a user with its profile and the responses to the requests
+     * that are not streamed.
+     */
+    private static TwitterUser assemble(final TwitterUser tu, final User user,
+            final List<Long> followers, final List<Long> friends) {
         tu.setId(user.getId());
         tu.setScreenName(user.getScreenName());
         tu.setDescription(user.getDescription());
-        
-        // Collect the user's available tweets
-        List<Status> statuses = twitter.getUserTimeline(userName);
-        for (Status status : statuses) {
-            tu.addMentions(status.getMentions());
-            tu.addTweet(status.getText());
-        }
-        
-        // Collect user's friends and followers
-        tu.addFollowers(twitter.getFollowerIDs(userName));
-        tu.addFriends(twitter.getFriendIDs(userName));
-        
-        // Collect the user's favorite tweets
-        for (Status status : twitter.getFavorites(userName)) {
-            tu.addFavorite(status.getText());
-        }
+        tu.setFollowerCount(user.getFollowersCount());
+        tu.setFriendCount(user.getFriendsCount());
+        tu.setTweetCount(user.getStatusesCount());
+        tu.setFavoriteCount(user.getFavoritesCount());
+        tu.addFollowers(followers);
+        tu.addFriends(friends);
         return tu;
     }
 
+    /**
+     * @return the first IDs of a list, as many as allowed
+     */
+    private static List<Long> first(final List<Long> ids, final int max) {
+        // The API fetches pages of IDs until it has at least as many as
+        // asked for, so the last page may bring too many
+        return ids.size() <= max ? ids : ids.subList(0, max);
+    }
+
     /**
      * Returns the 10 most discussed topics on Twitter at the time of the call. 
      * @return a list of topics
@@ -123,6 +466,98 @@ public final class TwitterClient
         return twitter.getRateLimitStatus();
     }
 
+    /**
+     * Issues a request on the executor.
+     */
+    private <T> CompletableFuture<T> request(final Supplier<T> call) {
+        if (!Metrics.ENABLED) {
+            return CompletableFuture.supplyAsync(call, executor);
+        }
+        return CompletableFuture.supplyAsync(new Supplier<T>() {
+            public T get() {
+                long start = Metrics.start();
+                long allocated = Metrics.allocated();
+                try {
+                    return call.get();
+                }
+                finally {
+                    Metrics.record(Metrics.Stage.REQUEST, start, allocated);
+                }
+            }
+        }, executor);
+    }
+
+    /**
+     * @return the exception a failed request completed with
+     */
+    private static Throwable cause(final CompletableFuture<?> request) {
+        try {
+            request.join();
+            return null;
+        }
+        catch (CompletionException e) {
+            return e.getCause();
+        }
+    }
+
+    /**
+     * Turns the exception thrown by a request into a message for the user.
+     */
+    private static String describe(final Throwable t, final String userName) {
+        // The API reports some errors wrapped in a plain TwitterException
+        Throwable cause = t.getCause() instanceof TwitterException ?
+                t.getCause() : t;
+        if (cause instanceof TwitterException.RateLimit) {
+            return "Request Went over twitter's limit: please wait 1 hour and try again";
+        } else if (cause instanceof TwitterException.E401) {
+            return "Wrong password or missing authorization";
+        } else if (cause instanceof TwitterException.E403) {
+            return "Unauthorized request";
+        } else if (cause instanceof TwitterException.E50X) {
+            return "Twitter server error. Please try again later";
+        } else if (cause instanceof TwitterException.E404) {
+            return "User '" + userName + "' does not exist.";
+        }
+        return "Unknown exception";
+    }
+
+    /**
+     * Creates a pool of daemon threads that go away when idle.
+     */
+    private static Executor newExecutor(final int threads) {
+        final AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads,
+                IDLE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r,
+                                "twitter-client-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /** Enough threads to fetch two users at once, one per request */
+    private static final int DEFAULT_THREADS = 12;
+    private static final long IDLE_SECONDS = 30;
+
     /** The {@link winterwell.jtwitter.Twitter;} API to be used throughout. */
     private final Twitter twitter;
+
+    /** Runs the requests to the API */
+    private final Executor executor;
+
+    /** Users fetched recently; null if users are always fetched */
+    private volatile UserCache cache;
+
+    /** Keeps requests that set the API instance's paging parameters apart
+     * from all other timeline requests */
+    private final ReadWriteLock paging = new ReentrantReadWriteLock();
+
+    /** How much of each user to fetch */
+    private volatile FetchLimits limits = FetchLimits.DEFAULT;
 }
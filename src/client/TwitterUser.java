@@ -7,12 +7,13 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
+import util.MinHash;
+import util.MinHashSketch;
 import util.Similarity;
+import util.SortedIdSet;
 
 /**
  * A wrapper around useful data retrieved about a user through the
@@ -84,7 +85,13 @@ public class TwitterUser implements Comparable<TwitterUser>, Serializable
     }
 
     public void setDescription(final String description) {
+        String old = bio;
         bio = description;
+        if (hasListeners()) {
+            for (TwitterUserListener listener : listeners()) {
+                listener.descriptionChanged(this, old);
+            }
+        }
     }
 
     public Map<String, Integer> getMentions() {
@@ -99,36 +106,318 @@ public class TwitterUser implements Comparable<TwitterUser>, Serializable
         return favorites_;
     }
 
-    public Collection<Long> getFollowerIds() {
+    /**
+     * @return IDs of the users following the current user, in ascending order
+     */
+    public SortedIdSet getFollowerIds() {
         return followers_;
     }
     
-    public Collection<Long> getFriendIds() {
+    /**
+     * @return IDs of the users followed by the current user, in ascending order
+     */
+    public SortedIdSet getFriendIds() {
         return friends_;
     }
 
+    /**
+     * @return MinHash signature of the follower IDs, computed on the first
+     * call and then kept up to date as followers are added; removing
+     * followers makes it be recomputed on the next call
+     */
+    public MinHashSketch getFollowerSketch() {
+        if (followerSketch_ == null) {
+            followerSketch_ = sketch(minHash_, followers_);
+        }
+        return followerSketch_;
+    }
+
+    /**
+     * @return MinHash signature of the friend IDs, computed on the first call
+     * and then kept up to date as friends are added; removing friends makes
+     * it be recomputed on the next call
+     */
+    public MinHashSketch getFriendSketch() {
+        if (friendSketch_ == null) {
+            friendSketch_ = sketch(minHash_, friends_);
+        }
+        return friendSketch_;
+    }
+
+    /**
+     * @return hash family of the follower and friend signatures
+     */
+    public MinHash getMinHash() {
+        return minHash_;
+    }
+
+    /**
+     * Changes the hash family used for the follower and friend signatures,
+     * which are recomputed when next asked for. Users can only be compared
+     * approximately if they use the same family ({@link MinHash#getDefault()}
+     * unless changed).
+     * @param minHash hash family for the signatures
+     */
+    public void setMinHash(final MinHash minHash) {
+        minHash_ = minHash;
+        followerSketch_ = null;
+        friendSketch_ = null;
+    }
+
+    /**
+     * Registers a listener to be told about every change made to the user
+     * from now on.
+     * @param listener the listener
+     */
+    public void addListener(final TwitterUserListener listener) {
+        if (listeners_ == null) {
+            listeners_ = new ArrayList<TwitterUserListener>();
+        }
+        listeners_.add(listener);
+    }
+
+    /**
+     * @param listener a listener registered earlier
+     */
+    public void removeListener(final TwitterUserListener listener) {
+        if (listeners_ != null) {
+            listeners_.remove(listener);
+        }
+    }
+
+    /**
+     * @param count number of followers the API reports for the user, which
+     * may be more than were fetched; 0 if unknown
+     */
+    public void setFollowerCount(final int count) {
+        followerCount = count;
+    }
+
+    public int getFollowerCount() {
+        return followerCount;
+    }
+
+    /**
+     * @param count number of users the API reports the user follows; 0 if
+     * unknown
+     */
+    public void setFriendCount(final int count) {
+        friendCount = count;
+    }
+
+    public int getFriendCount() {
+        return friendCount;
+    }
+
+    /**
+     * @param count number of tweets the API reports the user sent; 0 if
+     * unknown
+     */
+    public void setTweetCount(final int count) {
+        tweetCount = count;
+    }
+
+    public int getTweetCount() {
+        return tweetCount;
+    }
+
+    /**
+     * @param count number of favorites the API reports for the user; 0 if
+     * unknown
+     */
+    public void setFavoriteCount(final int count) {
+        favoriteCount = count;
+    }
+
+    public int getFavoriteCount() {
+        return favoriteCount;
+    }
+
+    /**
+     * @return fraction of the user's followers that were fetched, between 0
+     * and 1; 1 if the number of followers is unknown
+     */
+    public double getFollowerCoverage() {
+        return coverage(followers_.size(), followerCount);
+    }
+
+    /**
+     * @return fraction of the user's friends that were fetched
+     */
+    public double getFriendCoverage() {
+        return coverage(friends_.size(), friendCount);
+    }
+
+    /**
+     * @return fraction of the user's tweets that were fetched
+     */
+    public double getTweetCoverage() {
+        return coverage(tweets_.size(), tweetCount);
+    }
+
+    /**
+     * @return fraction of the user's favorites that were fetched
+     */
+    public double getFavoriteCoverage() {
+        return coverage(favorites_.size(), favoriteCount);
+    }
+
     public void addTweet(final String tweet) {
         tweets_.add(tweet);
+        if (hasListeners()) {
+            for (TwitterUserListener listener : listeners()) {
+                listener.tweetAdded(this, tweet);
+            }
+        }
     }
     
     public void addTweets(final List<String> tweets) {
+        if (hasListeners()) {
+            for (String tweet : tweets) {
+                addTweet(tweet);
+            }
+            return;
+        }
         tweets_.addAll(tweets);
     }
+
+    /**
+     * Removes one occurrence of a tweet.
+     * @param tweet text of the tweet
+     * @return true if the user had the tweet
+     */
+    public boolean removeTweet(final String tweet) {
+        if (!tweets_.remove(tweet)) {
+            return false;
+        }
+        if (hasListeners()) {
+            for (TwitterUserListener listener : listeners()) {
+                listener.tweetRemoved(this, tweet);
+            }
+        }
+        return true;
+    }
     
     public void addFavorite(final String favorite) {
         favorites_.add(favorite);
+        if (hasListeners()) {
+            for (TwitterUserListener listener : listeners()) {
+                listener.favoriteAdded(this, favorite);
+            }
+        }
+    }
+
+    /**
+     * Removes one occurrence of a favorite tweet.
+     * @param favorite text of the tweet
+     * @return true if the user had the favorite
+     */
+    public boolean removeFavorite(final String favorite) {
+        if (!favorites_.remove(favorite)) {
+            return false;
+        }
+        if (hasListeners()) {
+            for (TwitterUserListener listener : listeners()) {
+                listener.favoriteRemoved(this, favorite);
+            }
+        }
+        return true;
+    }
+
+    public void addFriends(final Collection<Long> friends) {
+        Collection<Long> added = hasListeners() ? 
+                newIds(friends, friends_) : friends;
+        friends_.addAll(added);
+        if (friendSketch_ != null) {
+            friendSketch_.addAll(added);
+        }
+        if (hasListeners() && !added.isEmpty()) {
+            for (TwitterUserListener listener : listeners()) {
+                listener.friendsAdded(this, added);
+            }
+        }
     }
 
-    public void addFriends(final List<Long> friends) {
-        friends_.addAll(friends);
+    /**
+     * @param friends IDs of users the user no longer follows
+     */
+    public void removeFriends(final Collection<Long> friends) {
+        List<Long> removed = removeIds(friends, friends_);
+        if (removed.isEmpty()) {
+            return;
+        }
+        // Signatures can not forget values
+        friendSketch_ = null;
+        if (hasListeners()) {
+            for (TwitterUserListener listener : listeners()) {
+                listener.friendsRemoved(this, removed);
+            }
+        }
     }
 
-    public void addFollowers(final List<Long> followers) {
-        followers_.addAll(followers);
+    public void addFollowers(final Collection<Long> followers) {
+        Collection<Long> added = hasListeners() ? 
+                newIds(followers, followers_) : followers;
+        followers_.addAll(added);
+        if (followerSketch_ != null) {
+            followerSketch_.addAll(added);
+        }
+        if (hasListeners() && !added.isEmpty()) {
+            for (TwitterUserListener listener : listeners()) {
+                listener.followersAdded(this, added);
+            }
+        }
+    }
+
+    /**
+     * @param followers IDs of users no longer following the user
+     */
+    public void removeFollowers(final Collection<Long> followers) {
+        List<Long> removed = removeIds(followers, followers_);
+        if (removed.isEmpty()) {
+            return;
+        }
+        followerSketch_ = null;
+        if (hasListeners()) {
+            for (TwitterUserListener listener : listeners()) {
+                listener.followersRemoved(this, removed);
+            }
+        }
     }
 
     public void addMentions(final List<String> mentions) {
         Similarity.addAllToMap(mentions, mentions_);
+        if (hasListeners() && mentions != null && !mentions.isEmpty()) {
+            for (TwitterUserListener listener : listeners()) {
+                listener.mentionsAdded(this, mentions);
+            }
+        }
+    }
+
+    /**
+     * Removes mentions, once per occurrence in the list.
+     * @param mentions names mentioned
+     */
+    public void removeMentions(final List<String> mentions) {
+        List<String> removed = new ArrayList<String>();
+        for (String name : mentions) {
+            Integer count = mentions_.get(name);
+            if (count == null) {
+                continue;
+            }
+            if (count.intValue() == 1) {
+                mentions_.remove(name);
+            }
+            else {
+                mentions_.put(name, count.intValue() - 1);
+            }
+            removed.add(name);
+        }
+        if (hasListeners() && !removed.isEmpty()) {
+            for (TwitterUserListener listener : listeners()) {
+                listener.mentionsRemoved(this, removed);
+            }
+        }
     }
     
     public String toString() {
@@ -148,6 +437,69 @@ public class TwitterUser implements Comparable<TwitterUser>, Serializable
         return id < other.getId() ? -1 : id > other.getId() ? 1 : 0;
     }
 
+    private boolean hasListeners() {
+        return listeners_ != null && !listeners_.isEmpty();
+    }
+
+    /**
+     * @return copy of the listeners, so that they can remove themselves
+     */
+    private List<TwitterUserListener> listeners() {
+        return new ArrayList<TwitterUserListener>(listeners_);
+    }
+
+    /**
+     * @return the IDs of a collection that are not in a set yet, without
+     * duplicates
+     */
+    private static SortedIdSet newIds(final Collection<Long> ids,
+            final SortedIdSet set) {
+        SortedIdSet all = new SortedIdSet(ids);
+        long[] added = new long[all.size()];
+        int count = 0;
+        for (int i = 0; i < all.size(); i++) {
+            long id = all.get(i);
+            if (!set.contains(id)) {
+                added[count++] = id;
+            }
+        }
+        return SortedIdSet.ofSorted(added, count);
+    }
+
+    /**
+     * Removes IDs from a set in one pass over it.
+     * @return the IDs that were in the set, in ascending order
+     */
+    private static List<Long> removeIds(final Collection<Long> ids,
+            final SortedIdSet set) {
+        long[] sorted = new long[ids.size()];
+        int count = 0;
+        for (Long id : ids) {
+            sorted[count++] = id.longValue();
+        }
+        count = set.removeAll(sorted, count);
+        List<Long> removed = new ArrayList<Long>(count);
+        for (int i = 0; i < count; i++) {
+            removed.add(sorted[i]);
+        }
+        return removed;
+    }
+
+    private static MinHashSketch sketch(final MinHash family,
+            final SortedIdSet ids) {
+        MinHashSketch sketch = family.newSketch();
+        sketch.addAll(ids);
+        return sketch;
+    }
+
+    /**
+     * @return fraction of a total that was fetched; counts can be out of date,
+     * so more than the total counts as all of it
+     */
+    private static double coverage(final int fetched, final int total) {
+        return total <= fetched ? 1.0 : fetched / (double) total;
+    }
+
     /** Tweets (status messages) sent by the current user */ 
     private final List<String> tweets_ = new ArrayList<String>();
 
@@ -158,10 +510,24 @@ public class TwitterUser implements Comparable<TwitterUser>, Serializable
     private final Map<String, Integer> mentions_ = new HashMap<String, Integer>();
     
     /** Users followed by th current user */
-    private final Set<Long> friends_ = new HashSet<Long>();
+    private final SortedIdSet friends_ = new SortedIdSet();
     
     /** Users following th current user */
-    private final Set<Long> followers_ = new HashSet<Long>();
+    private final SortedIdSet followers_ = new SortedIdSet();
+
+    /** Hash family of the signatures */
+    private MinHash minHash_ = MinHash.getDefault();
+
+    /** Signature of {@link #friends_} for approximate comparisons; null
+     * until asked for, and again once friends are removed */
+    private MinHashSketch friendSketch_;
+
+    /** Signature of {@link #followers_} for approximate comparisons; null
+     * until asked for, and again once followers are removed */
+    private MinHashSketch followerSketch_;
+
+    /** Told about changes; not serialized, null until one is added */
+    private transient List<TwitterUserListener> listeners_;
 
     /** Required for Serializable */
     private static final long serialVersionUID = 1L;
@@ -170,4 +536,10 @@ public class TwitterUser implements Comparable<TwitterUser>, Serializable
     private long id;
     private String screenName;
     private String bio;
+
+    // Totals reported by the API
+    private int followerCount;
+    private int friendCount;
+    private int tweetCount;
+    private int favoriteCount;
 }
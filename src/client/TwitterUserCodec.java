@@ -0,0 +1,501 @@
+//=============================================================================
+// Coding sample for Stefaan Heyvaert.
+//=============================================================================
+package client;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+import util.SortedIdSet;
+
+/**
+ * Compact, versioned binary format for {@link TwitterUser}s, several times
+ * smaller and faster than Java serialization. Users are written to and read
+ * from NIO channels through a fixed-size buffer, so a user with millions of
+ * followers can be streamed to a {@link java.nio.channels.FileChannel}
+ * without building the whole encoding in memory.
+ * <p>
+ * All integers are variable-length (seven bits per byte, least significant
+ * group first); signed values are zigzag encoded first so that small
+ * negative numbers stay short. The encoding of a user is:
+ * <ul>
+ * <li>the magic number {@code TWUC} and a version byte;</li>
+ * <li>the user ID;</li>
+ * <li>the login name, display name and bio, as UTF-8 byte counts plus one
+ * (zero stands for a missing string) followed by the bytes;</li>
+ * <li>the tweets and favorites, each as a count followed by the strings;</li>
+ * <li>the mentions, as a count followed by the names in sorted order, each
+ * written as the number of leading chars shared with the previous name, the
+ * rest of the name and the number of mentions;</li>
+ * <li>the follower and friend IDs, each as a count followed by the first ID
+ * and the gaps between successive IDs, which for the dense ID ranges of real
+ * accounts take two or three bytes instead of eight;</li>
+ * <li>since version 2, the numbers of followers, friends, tweets and
+ * favorites the API reported for the user, which may be more than were
+ * fetched.</li>
+ * </ul>
+ * The follower and friend signatures are not stored: they are rebuilt from
+ * the IDs when a user is read.
+ *
+ * @author sh
+ */
+public final class TwitterUserCodec
+{
+    /**
+     * Constructor is private, since the class contains static methods only.
+     */
+    private TwitterUserCodec() {
+    }
+
+    /**
+     * Writes a user to a channel.
+     * @param user the user
+     * @param channel channel written to; it is not closed
+     * @throws IOException if the channel can not be written
+     */
+    public static void write(final TwitterUser user,
+            final WritableByteChannel channel) throws IOException {
+        Encoder encoder = new Encoder(ByteBuffer.allocate(BUFFER_SIZE),
+                channel);
+        encoder.user(user);
+        encoder.flush();
+    }
+
+    /**
+     * Reads a user from a channel. Bytes following the user may have been
+     * read from the channel as well.
+     * @param channel channel read from; it is not closed
+     * @return the user
+     * @throws IOException if the channel can not be read, or does not hold a
+     * user in a supported version of the format
+     */
+    public static TwitterUser read(final ReadableByteChannel channel)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        buffer.flip();
+        return new Decoder(buffer, channel).user();
+    }
+
+    /**
+     * Encodes a user in memory.
+     * @param user the user
+     * @return a buffer holding the encoding between its position and limit
+     */
+    public static ByteBuffer encode(final TwitterUser user) {
+        Encoder encoder = new Encoder(ByteBuffer.allocate(BUFFER_SIZE), null);
+        try {
+            encoder.user(user);
+        }
+        catch (IOException e) {
+            // Only writing to a channel can fail
+            throw new IllegalStateException(e);
+        }
+        ByteBuffer buffer = encoder.buffer;
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Decodes a user encoded in memory. The buffer's position is advanced past
+     * the encoding.
+     * @param buffer buffer holding the encoding from its position on
+     * @return the user
+     * @throws IOException if the buffer does not hold a user in a supported
+     * version of the format
+     */
+    public static TwitterUser decode(final ByteBuffer buffer)
+            throws IOException {
+        return new Decoder(buffer, null).user();
+    }
+
+    /**
+     * Writes to a buffer, draining it to a channel when it is full or, if
+     * there is no channel, replacing it with a larger one.
+     */
+    private static final class Encoder
+    {
+        Encoder(final ByteBuffer buffer, final WritableByteChannel channel) {
+            this.buffer = buffer;
+            this.channel = channel;
+        }
+
+        void user(final TwitterUser user) throws IOException {
+            require(5);
+            buffer.putInt(MAGIC);
+            buffer.put((byte) VERSION);
+            signed(user.getId());
+            string(user.getUserName());
+            string(user.getScreenName());
+            string(user.getDescription());
+            strings(user.getTweets());
+            strings(user.getFavorites());
+            mentions(user.getMentions());
+            ids(user.getFollowerIds());
+            ids(user.getFriendIds());
+            unsigned(user.getFollowerCount() & 0xffffffffL);
+            unsigned(user.getFriendCount() & 0xffffffffL);
+            unsigned(user.getTweetCount() & 0xffffffffL);
+            unsigned(user.getFavoriteCount() & 0xffffffffL);
+        }
+
+        void strings(final Collection<String> strings) throws IOException {
+            unsigned(strings.size());
+            for (String s : strings) {
+                string(s);
+            }
+        }
+
+        void mentions(final Map<String, Integer> mentions) throws IOException {
+            String[] names = mentions.keySet().toArray(
+                    new String[mentions.size()]);
+            Arrays.sort(names);
+            unsigned(names.length);
+            String previous = "";
+            for (String name : names) {
+                int shared = 0;
+                int max = Math.min(name.length(), previous.length());
+                while (shared < max &&
+                        name.charAt(shared) == previous.charAt(shared)) {
+                    shared++;
+                }
+                // Never split a surrogate pair
+                if (shared > 0 &&
+                        Character.isHighSurrogate(name.charAt(shared - 1))) {
+                    shared--;
+                }
+                unsigned(shared);
+                string(name.substring(shared));
+                unsigned(mentions.get(name) & 0xffffffffL);
+                previous = name;
+            }
+        }
+
+        void ids(final SortedIdSet ids) throws IOException {
+            int n = ids.size();
+            unsigned(n);
+            long previous = 0;
+            for (int i = 0; i < n; i++) {
+                long id = ids.get(i);
+                if (i == 0) {
+                    signed(id);
+                }
+                else {
+                    // Gaps between sorted IDs are positive, unless the IDs
+                    // span more than the range of a long, in which case the
+                    // subtraction wraps and so does the addition reading it
+                    unsigned(id - previous);
+                }
+                previous = id;
+            }
+        }
+
+        void string(final String s) throws IOException {
+            if (s == null) {
+                unsigned(0);
+                return;
+            }
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            unsigned(bytes.length + 1L);
+            int offset = 0;
+            while (offset < bytes.length) {
+                if (!buffer.hasRemaining()) {
+                    require(1);
+                }
+                int n = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, n);
+                offset += n;
+            }
+        }
+
+        void signed(final long value) throws IOException {
+            unsigned((value << 1) ^ (value >> 63));
+        }
+
+        void unsigned(long value) throws IOException {
+            require(MAX_VARINT_BYTES);
+            int position = buffer.position();
+            while ((value & ~0x7fL) != 0) {
+                buffer.put(position++, (byte) ((value & 0x7f) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put(position++, (byte) value);
+            buffer.position(position);
+        }
+
+        /**
+         * Makes room for at least a number of bytes.
+         */
+        void require(final int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return;
+            }
+            if (channel == null) {
+                ByteBuffer larger = ByteBuffer.allocate(
+                        Math.max(2 * buffer.capacity(),
+                                buffer.position() + bytes));
+                buffer.flip();
+                buffer = larger.put(buffer);
+                return;
+            }
+            flush();
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        ByteBuffer buffer;
+        private final WritableByteChannel channel;
+    }
+
+    /**
+     * Reads from a buffer, refilling it from a channel if there is one.
+     */
+    private static final class Decoder
+    {
+        Decoder(final ByteBuffer buffer, final ReadableByteChannel channel) {
+            this.buffer = buffer;
+            this.channel = channel;
+        }
+
+        TwitterUser user() throws IOException {
+            require(5);
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not an encoded Twitter user");
+            }
+            int version = buffer.get();
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Unsupported version " + version);
+            }
+            long id = signed();
+            String userName = string();
+            if (userName == null) {
+                throw new IOException("Missing user name");
+            }
+            TwitterUser user = new TwitterUser(userName);
+            user.setId(id);
+            user.setScreenName(string());
+            user.setDescription(string());
+            for (int i = count(); i > 0; i--) {
+                user.addTweet(string());
+            }
+            for (int i = count(); i > 0; i--) {
+                user.addFavorite(string());
+            }
+            mentions(user.getMentions());
+            user.addFollowers(ids());
+            user.addFriends(ids());
+            if (version >= 2) {
+                user.setFollowerCount((int) unsigned());
+                user.setFriendCount((int) unsigned());
+                user.setTweetCount((int) unsigned());
+                user.setFavoriteCount((int) unsigned());
+            }
+            return user;
+        }
+
+        void mentions(final Map<String, Integer> mentions) throws IOException {
+            String previous = "";
+            for (int i = count(); i > 0; i--) {
+                int shared = count();
+                if (shared > previous.length()) {
+                    throw new IOException("Corrupt mention");
+                }
+                String rest = string();
+                if (rest == null) {
+                    throw new IOException("Corrupt mention");
+                }
+                String name = previous.substring(0, shared) + rest;
+                mentions.put(name, (int) unsigned());
+                previous = name;
+            }
+        }
+
+        SortedIdSet ids() throws IOException {
+            int n = count();
+            // Every ID takes at least a byte. If the number of bytes left is
+            // unknown, grow the array as IDs arrive rather than trusting the
+            // count
+            long available = available();
+            if (n > available) {
+                throw new IOException("Corrupt count " + n);
+            }
+            long[] ids = new long[available < Long.MAX_VALUE ?
+                    n : Math.min(n, INITIAL_IDS)];
+            long id = 0;
+            int i = 0;
+            if (n > 0) {
+                id = signed();
+                ids[i++] = id;
+            }
+            while (i < n) {
+                if (i == ids.length) {
+                    ids = Arrays.copyOf(ids,
+                            (int) Math.min(n, 2L * ids.length));
+                }
+                if (!buffer.hasArray() ||
+                        buffer.remaining() < MAX_VARINT_BYTES) {
+                    id += unsigned();
+                    ids[i++] = id;
+                    continue;
+                }
+                // Decode the gaps straight from the backing array for as
+                // long as a whole integer is sure to be there
+                byte[] bytes = buffer.array();
+                int offset = buffer.arrayOffset();
+                int position = offset + buffer.position();
+                int last = offset + buffer.limit() - MAX_VARINT_BYTES;
+                int stop = ids.length;
+                while (i < stop && position <= last) {
+                    long gap = 0;
+                    int shift = 0;
+                    byte b;
+                    do {
+                        b = bytes[position++];
+                        gap |= (long) (b & 0x7f) << shift;
+                        shift += 7;
+                    } while (b < 0 && shift < 64);
+                    if (b < 0) {
+                        throw new IOException(
+                                "Corrupt variable-length integer");
+                    }
+                    id += gap;
+                    ids[i++] = id;
+                }
+                buffer.position(position - offset);
+            }
+            try {
+                return SortedIdSet.ofSorted(ids, n);
+            }
+            catch (IllegalArgumentException e) {
+                throw new IOException("Corrupt IDs: " + e.getMessage());
+            }
+        }
+
+        /**
+         * @return number of bytes left to read, or {@link Long#MAX_VALUE} if
+         * the channel can not tell
+         */
+        long available() throws IOException {
+            if (channel == null) {
+                return buffer.remaining();
+            }
+            if (channel instanceof SeekableByteChannel) {
+                SeekableByteChannel seekable = (SeekableByteChannel) channel;
+                return buffer.remaining() + seekable.size()
+                        - seekable.position();
+            }
+            return Long.MAX_VALUE;
+        }
+
+        String string() throws IOException {
+            long length = unsigned() - 1;
+            if (length < 0) {
+                return null;
+            }
+            if (length > MAX_STRING_BYTES) {
+                throw new IOException("Corrupt string length " + length);
+            }
+            byte[] bytes = new byte[(int) length];
+            int offset = 0;
+            while (offset < bytes.length) {
+                if (!buffer.hasRemaining()) {
+                    require(1);
+                }
+                int n = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.get(bytes, offset, n);
+                offset += n;
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Reads the number of elements that follow, rejecting counts that
+         * can only come from corrupt input.
+         */
+        int count() throws IOException {
+            long count = unsigned();
+            if (count > MAX_COUNT) {
+                throw new IOException("Corrupt count " + count);
+            }
+            return (int) count;
+        }
+
+        long signed() throws IOException {
+            long value = unsigned();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        long unsigned() throws IOException {
+            long value = 0;
+            if (buffer.remaining() >= MAX_VARINT_BYTES) {
+                // Common case: no need to check for the end of the buffer
+                int position = buffer.position();
+                for (int shift = 0; shift < 64; shift += 7) {
+                    byte b = buffer.get(position++);
+                    value |= (long) (b & 0x7f) << shift;
+                    if (b >= 0) {
+                        buffer.position(position);
+                        return value;
+                    }
+                }
+                throw new IOException("Corrupt variable-length integer");
+            }
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (!buffer.hasRemaining()) {
+                    require(1);
+                }
+                byte b = buffer.get();
+                value |= (long) (b & 0x7f) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Corrupt variable-length integer");
+        }
+
+        /**
+         * Makes sure at least a number of bytes can be read.
+         */
+        void require(final int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return;
+            }
+            if (channel == null) {
+                throw new EOFException("Truncated Twitter user");
+            }
+            buffer.compact();
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer) < 0) {
+                    throw new EOFException("Truncated Twitter user");
+                }
+            }
+            buffer.flip();
+        }
+
+        private final ByteBuffer buffer;
+        private final ReadableByteChannel channel;
+    }
+
+    /** Version of the format written; all versions up to it can be read */
+    public static final int VERSION = 2;
+
+    private static final int MAGIC = 0x54575543;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_VARINT_BYTES = 10;
+    private static final int INITIAL_IDS = 1 << 16;
+    private static final int MAX_STRING_BYTES = 1 << 24;
+    private static final int MAX_COUNT = Integer.MAX_VALUE - 8;
+}
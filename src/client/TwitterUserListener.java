@@ -0,0 +1,88 @@
+//=============================================================================
+// Coding sample for Stefaan Heyvaert.
+//=============================================================================
+package client;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Is told about every change made to a {@link TwitterUser} it is registered
+ * with (see {@link TwitterUser#addListener(TwitterUserListener)}), so that
+ * values derived from the user can be updated by the change rather than
+ * recomputed from the whole user. Events describe what actually changed:
+ * adding an ID the user already has, or removing one it does not, is not
+ * reported.
+ * <p>
+ * Listeners are called in the thread changing the user, after the change.
+ *
+ * @author sh
+ */
+public interface TwitterUserListener
+{
+    /**
+     * @param user the user
+     * @param ids IDs of the new followers
+     */
+    void followersAdded(TwitterUser user, Collection<Long> ids);
+
+    /**
+     * @param user the user
+     * @param ids IDs of the followers removed
+     */
+    void followersRemoved(TwitterUser user, Collection<Long> ids);
+
+    /**
+     * @param user the user
+     * @param ids IDs of the new friends
+     */
+    void friendsAdded(TwitterUser user, Collection<Long> ids);
+
+    /**
+     * @param user the user
+     * @param ids IDs of the friends removed
+     */
+    void friendsRemoved(TwitterUser user, Collection<Long> ids);
+
+    /**
+     * @param user the user
+     * @param tweet text of the new tweet
+     */
+    void tweetAdded(TwitterUser user, String tweet);
+
+    /**
+     * @param user the user
+     * @param tweet text of the tweet removed
+     */
+    void tweetRemoved(TwitterUser user, String tweet);
+
+    /**
+     * @param user the user
+     * @param favorite text of the new favorite
+     */
+    void favoriteAdded(TwitterUser user, String favorite);
+
+    /**
+     * @param user the user
+     * @param favorite text of the favorite removed
+     */
+    void favoriteRemoved(TwitterUser user, String favorite);
+
+    /**
+     * @param user the user
+     * @param mentions names mentioned, once per mention
+     */
+    void mentionsAdded(TwitterUser user, List<String> mentions);
+
+    /**
+     * @param user the user
+     * @param mentions mentions removed, once per mention
+     */
+    void mentionsRemoved(TwitterUser user, List<String> mentions);
+
+    /**
+     * @param user the user, holding the new description
+     * @param oldDescription description before the change
+     */
+    void descriptionChanged(TwitterUser user, String oldDescription);
+}
@@ -0,0 +1,506 @@
+//=============================================================================
+// Coding sample for Stefaan Heyvaert.
+//=============================================================================
+package client;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Two-level cache of {@link TwitterUser}s, so that users fetched recently do
+ * not have to be downloaded again: an in-memory LRU map of the most recently
+ * used users, in front of a directory holding one file per user. Users are
+ * keyed by login name, ignoring case.
+ * <p>
+ * Every entry expires a fixed time after it was stored (the time to live can
+ * be chosen per entry), after which it is dropped and counts as a miss. Each
+ * level holds a bounded number of users and evicts the least recently used
+ * one when full; on disk, recency is the file's modification time, which is
+ * updated on every hit, so it survives restarts.
+ * <p>
+ * Each file holds the time the entry expires followed by the user, in the
+ * format of {@link TwitterUserCodec} rather than with Java serialization,
+ * which is several times slower and larger. Files that can not be read are
+ * treated as misses and removed. Cached users are shared: callers must not
+ * modify them. The cache is thread-safe; files are read and written outside
+ * its lock, under a lock per key, so that a slow disk does not hold up
+ * lookups of users in memory.
+ *
+ * @author sh
+ */
+public class UserCache
+{
+    /**
+     * Creates a cache that only keeps users in memory.
+     * @param memoryEntries maximum number of users kept in memory
+     * @param ttlMillis default time to live of an entry, in milliseconds
+     */
+    public UserCache(final int memoryEntries, final long ttlMillis) {
+        this.directory = null;
+        this.memoryEntries = memoryEntries;
+        this.diskEntries = 0;
+        this.ttlMillis = ttlMillis;
+        this.clock = Clock.SYSTEM;
+    }
+
+    /**
+     * Creates a cache that keeps users in memory and in a directory.
+     * @param directory directory for the cache files; created if needed
+     * @param memoryEntries maximum number of users kept in memory
+     * @param diskEntries maximum number of users kept on disk
+     * @param ttlMillis default time to live of an entry, in milliseconds
+     * @throws Exception if the directory can not be created or read
+     */
+    public UserCache(final File directory, final int memoryEntries,
+            final int diskEntries, final long ttlMillis) throws Exception {
+        this(directory, memoryEntries, diskEntries, ttlMillis, Clock.SYSTEM);
+    }
+
+    /**
+     * Creates a cache that keeps users in memory and in a directory, and
+     * tells the time with a clock of its own.
+     * @param directory directory for the cache files; created if needed
+     * @param memoryEntries maximum number of users kept in memory
+     * @param diskEntries maximum number of users kept on disk
+     * @param ttlMillis default time to live of an entry, in milliseconds
+     * @param clock clock the entries expire by
+     * @throws Exception if the directory can not be created or read
+     */
+    public UserCache(final File directory, final int memoryEntries,
+            final int diskEntries, final long ttlMillis, final Clock clock)
+            throws Exception {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new Exception("Could not create cache directory "
+                    + directory);
+        }
+        File[] files = directory.listFiles();
+        if (files == null) {
+            throw new Exception("Could not read cache directory " + directory);
+        }
+        this.directory = directory;
+        this.memoryEntries = memoryEntries;
+        this.diskEntries = diskEntries;
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+
+        // Register the existing files, least recently used first
+        Arrays.sort(files, new Comparator<File>() {
+            public int compare(File f1, File f2) {
+                return Long.compare(f1.lastModified(), f2.lastModified());
+            }
+        });
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(EXTENSION)) {
+                disk.put(name, Boolean.TRUE);
+            }
+        }
+        trimDisk();
+    }
+
+    /**
+     * Returns the cached user with a login name, if it has not expired.
+     * @param userName login name of the user
+     * @return the user, or null if it is not in the cache
+     */
+    public TwitterUser get(final String userName) {
+        String key = key(userName);
+        synchronized (this) {
+            Entry entry = memory.get(key);
+            if (entry != null) {
+                return fromMemory(key, entry);
+            }
+            if (directory == null || !disk.containsKey(fileName(key))) {
+                misses++;
+                return null;
+            }
+        }
+        return load(key);
+    }
+
+    /**
+     * Stores a user with the default time to live.
+     * @param user user to store
+     */
+    public void put(final TwitterUser user) {
+        put(user, ttlMillis);
+    }
+
+    /**
+     * Stores a user, replacing any cached user with the same login name.
+     * @param user user to store
+     * @param ttlMillis time to live of the entry, in milliseconds
+     * @return false if the user could not be written to disk (it is kept in
+     * memory anyway)
+     */
+    public boolean put(final TwitterUser user, final long ttlMillis) {
+        String key = key(user.getUserName());
+        Entry entry = new Entry(user, expiresAt(clock.millis(), ttlMillis));
+        if (directory == null) {
+            synchronized (this) {
+                putInMemory(key, entry);
+            }
+            return true;
+        }
+        String fileName = fileName(key);
+        File file = new File(directory, fileName);
+        synchronized (lock(key)) {
+            synchronized (this) {
+                putInMemory(key, entry);
+            }
+            boolean written = true;
+            try {
+                write(file, entry);
+            }
+            catch (IOException e) {
+                written = false;
+            }
+            synchronized (this) {
+                disk.remove(fileName);
+                if (!written) {
+                    file.delete();
+                    return false;
+                }
+                disk.put(fileName, Boolean.TRUE);
+                trimDisk();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Removes a user from both levels of the cache.
+     * @param userName login name of the user
+     */
+    public void remove(final String userName) {
+        String key = key(userName);
+        synchronized (lock(key)) {
+            synchronized (this) {
+                memory.remove(key);
+                if (directory != null && disk.remove(fileName(key)) != null) {
+                    new File(directory, fileName(key)).delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all users from memory and disk.
+     */
+    public synchronized void clear() {
+        memory.clear();
+        if (directory != null) {
+            for (String fileName : disk.keySet()) {
+                new File(directory, fileName).delete();
+            }
+            disk.clear();
+        }
+    }
+
+    /**
+     * @return number of lookups that found a live entry, in memory or on disk
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return number of lookups that found a live entry on disk only
+     */
+    public synchronized long getDiskHits() {
+        return diskHits;
+    }
+
+    /**
+     * @return number of lookups that found no live entry
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return number of entries dropped from a level because it was full
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return number of entries dropped because they had expired
+     */
+    public synchronized long getExpirations() {
+        return expirations;
+    }
+
+    /**
+     * @return number of users held in memory
+     */
+    public synchronized int memorySize() {
+        return memory.size();
+    }
+
+    /**
+     * @return number of users held on disk
+     */
+    public synchronized int diskSize() {
+        return disk.size();
+    }
+
+    public synchronized String toString() {
+        return "hits=" + hits + " (disk " + diskHits + "), misses=" + misses
+                + ", evictions=" + evictions + ", expirations=" + expirations;
+    }
+
+    /**
+     * Returns a user found in memory, or drops it if it has expired.
+     */
+    private TwitterUser fromMemory(final String key, final Entry entry) {
+        if (entry.expiresAt > clock.millis()) {
+            if (directory != null) {
+                // Keep the order of the files in step
+                disk.get(fileName(key));
+            }
+            hits++;
+            return entry.user;
+        }
+        memory.remove(key);
+        expire(fileName(key));
+        misses++;
+        return null;
+    }
+
+    /**
+     * Reads a user that is only on disk. The file is read holding the lock
+     * of its key rather than that of the cache, so lookups of other users
+     * go on meanwhile; the lock of the key keeps a put of the same user
+     * from writing the file while it is read.
+     */
+    private TwitterUser load(final String key) {
+        String fileName = fileName(key);
+        File file = new File(directory, fileName);
+        synchronized (lock(key)) {
+            synchronized (this) {
+                // Another thread may have read, stored or removed the user
+                Entry entry = memory.get(key);
+                if (entry != null) {
+                    return fromMemory(key, entry);
+                }
+                if (!disk.containsKey(fileName)) {
+                    misses++;
+                    return null;
+                }
+            }
+            Entry entry = read(file);
+            long now = clock.millis();
+            boolean live = entry != null && entry.expiresAt > now;
+            if (live) {
+                file.setLastModified(now);
+            }
+            synchronized (this) {
+                if (!live) {
+                    expire(fileName);
+                    misses++;
+                    return null;
+                }
+                disk.get(fileName);
+                putInMemory(key, entry);
+                hits++;
+                diskHits++;
+                return entry.user;
+            }
+        }
+    }
+
+    private void putInMemory(final String key, final Entry entry) {
+        memory.put(key, entry);
+        if (memory.size() > memoryEntries) {
+            Iterator<String> eldest = memory.keySet().iterator();
+            eldest.next();
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Deletes the least recently used files while there are too many.
+     */
+    private void trimDisk() {
+        Iterator<String> eldest = disk.keySet().iterator();
+        while (disk.size() > diskEntries) {
+            new File(directory, eldest.next()).delete();
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Drops an expired (or unreadable) entry from disk.
+     */
+    private void expire(final String fileName) {
+        expirations++;
+        if (directory != null && disk.remove(fileName) != null) {
+            new File(directory, fileName).delete();
+        }
+    }
+
+    /**
+     * Writes an entry to a temporary file, then moves it into place so that
+     * readers never see a partial file.
+     */
+    private static void write(final File file, final Entry entry)
+            throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        FileChannel channel = FileChannel.open(temp.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).put(VERSION).putLong(entry.expiresAt);
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            TwitterUserCodec.write(entry.user, channel);
+        }
+        finally {
+            channel.close();
+        }
+        Files.move(temp.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads an entry, or returns null if the file can not be read.
+     */
+    private static Entry read(final File file) {
+        try {
+            FileChannel channel = FileChannel.open(file.toPath(),
+                    StandardOpenOption.READ);
+            try {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                while (header.hasRemaining()) {
+                    if (channel.read(header) < 0) {
+                        return null;
+                    }
+                }
+                header.flip();
+                if (header.getInt() != MAGIC || header.get() != VERSION) {
+                    return null;
+                }
+                long expiresAt = header.getLong();
+                return new Entry(TwitterUserCodec.read(channel), expiresAt);
+            }
+            finally {
+                channel.close();
+            }
+        }
+        catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Adds a time to live to the current time, saturating at the end of time
+     * rather than overflowing for huge ones (such as Long.MAX_VALUE).
+     */
+    private static long expiresAt(final long now, final long ttlMillis) {
+        return ttlMillis > Long.MAX_VALUE - now ? Long.MAX_VALUE
+                : now + ttlMillis;
+    }
+
+    /**
+     * Returns the lock that serializes reading and writing the file of a
+     * key; keys share a fixed number of locks.
+     */
+    private Object lock(final String key) {
+        return locks[key.hashCode() & (locks.length - 1)];
+    }
+
+    private static Object[] newLocks() {
+        Object[] locks = new Object[LOCKS];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+        return locks;
+    }
+
+    /**
+     * Login names are case-insensitive.
+     */
+    private static String key(final String userName) {
+        return userName.toLowerCase(java.util.Locale.ROOT);
+    }
+
+    /**
+     * Maps a key to a file name, escaping any character that is not safe in
+     * one (login names only contain letters, digits and underscores).
+     */
+    private static String fileName(final String key) {
+        StringBuilder sb = new StringBuilder(key.length() + EXTENSION.length());
+        for (int i = 0; i < key.length(); i++) {
+            char ch = key.charAt(i);
+            if ((ch >= 'a' && ch <= 'z') || (ch >= '0' && ch <= '9') ||
+                    ch == '_') {
+                sb.append(ch);
+            }
+            else {
+                sb.append('%').append(String.format("%04x", (int) ch));
+            }
+        }
+        return sb.append(EXTENSION).toString();
+    }
+
+    /**
+     * A cached user and the time it expires.
+     */
+    private static final class Entry
+    {
+        Entry(final TwitterUser user, final long expiresAt) {
+            this.user = user;
+            this.expiresAt = expiresAt;
+        }
+
+        final TwitterUser user;
+        final long expiresAt;
+    }
+
+    private static final String EXTENSION = ".user";
+    private static final int MAGIC = 0x54555352;
+    private static final byte VERSION = 2;
+    private static final int HEADER_SIZE = 4 + 1 + 8;
+    private static final int LOCKS = 64;
+
+    /** Null if the cache only keeps users in memory */
+    private final File directory;
+    private final int memoryEntries;
+    private final int diskEntries;
+    private final long ttlMillis;
+    private final Clock clock;
+
+    /** Locks that files are read and written under, by hash of the key */
+    private final Object[] locks = newLocks();
+
+    /** Users in memory by key, least recently used first */
+    private final LinkedHashMap<String, Entry> memory =
+        new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+    /** Names of the files on disk, least recently used first */
+    private final LinkedHashMap<String, Boolean> disk =
+        new LinkedHashMap<String, Boolean>(16, 0.75f, true);
+
+    private long hits;
+    private long diskHits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+}
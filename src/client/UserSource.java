@@ -0,0 +1,25 @@
+//=============================================================================
+// Coding sample for Stefaan Heyvaert.
+//=============================================================================
+package client;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Where users come from: {@link TwitterClient} fetches them from the API,
+ * tests make them up.
+ *
+ * @author sh
+ */
+public interface UserSource
+{
+    /**
+     * Starts getting a user.
+     * @param userName login name of the user
+     * @return future completing with the user, or exceptionally with an
+     * {@link Exception} whose causes include a
+     * {@link winterwell.jtwitter.TwitterException.E404} if there is no such
+     * user
+     */
+    CompletableFuture<TwitterUser> createUserAsync(String userName);
+}
@@ -0,0 +1,175 @@
+package text;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * An immutable set of words stored as a character trie in a few flat arrays,
+ * which tests a range of a {@link CharSequence} for membership without
+ * creating any objects. Lookups are case-insensitive: words are lowercased
+ * when the trie is built, and so is every character looked up.
+ * <p>
+ * Node {@code n} owns the edges {@code first[n]} up to {@code first[n + 1]},
+ * sorted by label; edge {@code e} is labelled {@code labels[e]} and leads to
+ * node {@code targets[e]}. Nodes are numbered breadth first from the root, 0.
+ *
+ * @author sh
+ */
+final class CharTrie
+{
+    /**
+     * Builds the trie of a collection of words.
+     * @param words the words; empty words are ignored
+     */
+    CharTrie(final Collection<String> words) {
+        String[] sorted = new String[words.size()];
+        int n = 0;
+        for (String word : words) {
+            if (word.length() > 0) {
+                sorted[n++] = lowerCase(word);
+            }
+        }
+        Arrays.sort(sorted, 0, n);
+        int distinct = 0;
+        for (int i = 0; i < n; i++) {
+            if (distinct == 0 || !sorted[i].equals(sorted[distinct - 1])) {
+                sorted[distinct++] = sorted[i];
+            }
+        }
+        n = distinct;
+
+        // Build level by level: each node is a range of the sorted words
+        // sharing a prefix of the node's depth
+        List<int[]> level = new ArrayList<int[]>();
+        if (n > 0) {
+            level.add(new int[] { 0, n });
+        }
+        int[] firstEdge = new int[16];
+        char[] edgeLabels = new char[16];
+        int[] edgeTargets = new int[16];
+        boolean[] terminals = new boolean[16];
+        int nodes = Math.max(level.size(), 1);
+        int edges = 0;
+        int node = 0;
+        for (int depth = 0; !level.isEmpty(); depth++) {
+            List<int[]> next = new ArrayList<int[]>();
+            for (int[] range : level) {
+                firstEdge = ensure(firstEdge, node + 2);
+                terminals = ensure(terminals, node + 1);
+                firstEdge[node] = edges;
+                int i = range[0];
+                if (sorted[i].length() == depth) {
+                    // Sorting puts the word ending here first
+                    terminals[node] = true;
+                    i++;
+                }
+                while (i < range[1]) {
+                    char label = sorted[i].charAt(depth);
+                    int j = i + 1;
+                    while (j < range[1] && sorted[j].charAt(depth) == label) {
+                        j++;
+                    }
+                    edgeLabels = ensure(edgeLabels, edges + 1);
+                    edgeTargets = ensure(edgeTargets, edges + 1);
+                    edgeLabels[edges] = label;
+                    edgeTargets[edges] = nodes++;
+                    edges++;
+                    next.add(new int[] { i, j });
+                    i = j;
+                }
+                node++;
+            }
+            level = next;
+        }
+        firstEdge = ensure(firstEdge, nodes + 1);
+        firstEdge[nodes] = edges;
+        this.first = Arrays.copyOf(firstEdge, nodes + 1);
+        this.labels = Arrays.copyOf(edgeLabels, edges);
+        this.targets = Arrays.copyOf(edgeTargets, edges);
+        this.terminal = Arrays.copyOf(terminals, nodes);
+        this.size = n;
+    }
+
+    /**
+     * Tells whether a range of characters is one of the words, ignoring case.
+     * @param text text holding the candidate
+     * @param start index of its first character
+     * @param end index following its last character
+     * @return true if the range is a word of the trie
+     */
+    boolean contains(final CharSequence text, final int start, final int end) {
+        int node = 0;
+        for (int i = start; i < end; i++) {
+            node = child(node, Character.toLowerCase(text.charAt(i)));
+            if (node < 0) {
+                return false;
+            }
+        }
+        return terminal[node];
+    }
+
+    /**
+     * @return number of distinct words in the trie
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the node reached from a node through the edge with a label, or
+     * -1 if there is no such edge.
+     */
+    private int child(final int node, final char label) {
+        int low = first[node];
+        int high = first[node + 1] - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            char ch = labels[middle];
+            if (ch < label) {
+                low = middle + 1;
+            }
+            else if (ch > label) {
+                high = middle - 1;
+            }
+            else {
+                return targets[middle];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Lowercases a word one char at a time, the way lookups do.
+     */
+    private static String lowerCase(final String word) {
+        char[] chars = word.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    private static int[] ensure(final int[] array, final int length) {
+        return array.length >= length ? array :
+                Arrays.copyOf(array, Math.max(length, 2 * array.length));
+    }
+
+    private static char[] ensure(final char[] array, final int length) {
+        return array.length >= length ? array :
+                Arrays.copyOf(array, Math.max(length, 2 * array.length));
+    }
+
+    private static boolean[] ensure(final boolean[] array, final int length) {
+        return array.length >= length ? array :
+                Arrays.copyOf(array, Math.max(length, 2 * array.length));
+    }
+
+    /** Index of each node's first edge, plus the total number of edges */
+    private final int[] first;
+    private final char[] labels;
+    private final int[] targets;
+    private final boolean[] terminal;
+    private final int size;
+}
@@ -0,0 +1,19 @@
+package text;
+
+/**
+ * The ways a {@link Tokenizer} can find the boundaries of words.
+ *
+ * @author sh
+ */
+public enum Segmenter
+{
+    /** A {@link java.text.BreakIterator} word instance */
+    BREAK_ITERATOR,
+
+    /**
+     * A scanner classifying characters through lookup tables; it finds the
+     * same words as the break iterator at a fraction of the cost, and also
+     * keeps words made of letters outside the Basic Multilingual Plane
+     */
+    TABLE
+}
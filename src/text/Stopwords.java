@@ -10,6 +10,11 @@ import java.util.HashSet;
  * calculations. The current class creates a stop word list from a file and 
  * provides the method {@link #isStopword(String)} to determine if a given word
  * is a stop word or not.
+ * <p>
+ * Lookups go through a character trie compiled from the list the first time
+ * it is needed (and again after words are added), so that a word can be
+ * checked in place, as a range of a {@link CharSequence}, without lowercasing
+ * it into a new string first. Matching ignores case.
  * 
  * @author sh
  */
@@ -40,10 +45,41 @@ public class Stopwords
      * @return true if the word is a stopword, false otherwise.
      */
     public boolean isStopword(final String word) {
-        if (word == null || word.length() == 0) {
+        if (word == null) {
             return false;
         }
-        return stopwords.contains(word.toLowerCase());
+        return isStopword(word, 0, word.length());
+    }
+    
+    /**
+     * Checks if a token held in a character sequence is a stop word.
+     * @param word the word to check
+     * @return true if the word is a stopword, false otherwise.
+     */
+    public boolean isStopword(final CharSequence word) {
+        if (word == null) {
+            return false;
+        }
+        return isStopword(word, 0, word.length());
+    }
+    
+    /**
+     * Checks if a range of characters is a stop word, without copying it.
+     * @param text text holding the word
+     * @param start index of the first character of the word
+     * @param end index following the last character of the word
+     * @return true if the word is a stopword, false otherwise.
+     */
+    public boolean isStopword(final CharSequence text, final int start,
+            final int end) {
+        if (start >= end) {
+            return false;
+        }
+        CharTrie compiled = trie;
+        if (compiled == null) {
+            compiled = compile();
+        }
+        return compiled.contains(text, start, end);
     }
     
     /**
@@ -58,9 +94,28 @@ public class Stopwords
      * Adds a word to the stopword list.
      * @param stopword
      */
-    public void add(final String stopword) {
+    public synchronized void add(final String stopword) {
         stopwords.add(stopword);
+        trie = null;
+    }
+    
+    /**
+     * @return number of distinct stop words, ignoring case
+     */
+    public int size() {
+        CharTrie compiled = trie;
+        return compiled != null ? compiled.size() : compile().size();
+    }
+    
+    private synchronized CharTrie compile() {
+        if (trie == null) {
+            trie = new CharTrie(stopwords);
+        }
+        return trie;
     }
     
     private HashSet<String> stopwords;
+    
+    /** Lookup structure for the words, built when first needed */
+    private volatile CharTrie trie = null;
 }
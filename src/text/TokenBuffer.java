@@ -0,0 +1,103 @@
+package text;
+
+import java.util.Arrays;
+
+/**
+ * A growable character buffer holding the current token while tokenizing. It
+ * is handed to {@link TokenSink}s as a {@link CharSequence}, so that no string
+ * needs to be created unless the sink asks for one.
+ * 
+ * @author sh
+ */
+final class TokenBuffer implements CharSequence
+{
+    /**
+     * Replaces the contents of the buffer with the lowercase version of a
+     * range of characters.
+     * @param text text containing the token
+     * @param start index of the first character of the token
+     * @param end index following the last character of the token
+     */
+    void setLowerCase(final CharSequence text, final int start, final int end) {
+        length = 0;
+        appendLowerCase(text, start, end);
+    }
+
+    /**
+     * Replaces the contents of the buffer with a range of characters as is.
+     */
+    void set(final CharSequence text, final int start, final int end) {
+        ensureCapacity(end - start);
+        for (int i = start; i < end; i++) {
+            chars[i - start] = text.charAt(i);
+        }
+        length = end - start;
+    }
+
+    /**
+     * Appends the lowercase version of a range of characters.
+     */
+    void appendLowerCase(final CharSequence text, final int start, 
+            final int end) {
+        ensureCapacity(length + end - start);
+        for (int i = start; i < end; i++) {
+            char ch = text.charAt(i);
+            if (Character.isHighSurrogate(ch) && i + 1 < end &&
+                    Character.isLowSurrogate(text.charAt(i + 1))) {
+                int cp = Character.toLowerCase(
+                    Character.toCodePoint(ch, text.charAt(i + 1)));
+                length += Character.toChars(cp, chars, length);
+                i++;
+            }
+            else {
+                chars[length++] = Character.toLowerCase(ch);
+            }
+        }
+    }
+
+    /**
+     * Appends a character sequence as is.
+     */
+    void append(final CharSequence seq) {
+        ensureCapacity(length + seq.length());
+        for (int i = 0, n = seq.length(); i < n; i++) {
+            chars[length++] = seq.charAt(i);
+        }
+    }
+
+    void clear() {
+        length = 0;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(final int index) {
+        if (index >= length) {
+            throw new IndexOutOfBoundsException("Index: " + index);
+        }
+        return chars[index];
+    }
+
+    @Override
+    public CharSequence subSequence(final int start, final int end) {
+        return toString().substring(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return new String(chars, 0, length);
+    }
+
+    private void ensureCapacity(final int capacity) {
+        if (capacity > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(capacity, chars.length * 2));
+        }
+    }
+
+    private char[] chars = new char[32];
+    private int length;
+}
@@ -0,0 +1,20 @@
+package text;
+
+/**
+ * Receives the tokens found by {@link Tokenizer#tokenize(CharSequence, 
+ * TokenSink)} one at a time, as they are found.
+ * 
+ * @author sh
+ */
+public interface TokenSink
+{
+    /**
+     * Called for every token, in the order the tokens appear in the text. The
+     * character sequence passed in is a buffer owned by the tokenizer: it is
+     * only valid for the duration of the call and is overwritten afterwards.
+     * Call {@code toString()} on it to keep the token.
+     * @param token the token, already lowercased (except for URLs)
+     * @param type the kind of token
+     */
+    void token(CharSequence token, TokenType type);
+}
@@ -0,0 +1,26 @@
+package text;
+
+/**
+ * The kinds of tokens a {@link Tokenizer} hands to a {@link TokenSink}. The
+ * general tokenizer only produces words; {@link TwitterTokenizer} also
+ * recognizes the entities of tweets.
+ *
+ * @author sh
+ */
+public enum TokenType
+{
+    /** A word of running text */
+    WORD,
+
+    /** A user name preceded by {@code @}, e.g. {@code @jack} */
+    MENTION,
+
+    /** A topic preceded by {@code #}, e.g. {@code #music} */
+    HASHTAG,
+
+    /** A stock ticker preceded by {@code $}, e.g. {@code $aapl} */
+    CASHTAG,
+
+    /** A web address, e.g. {@code http://t.co/abc} */
+    URL
+}
@@ -1,30 +1,58 @@
 package text;
 
 import java.text.BreakIterator;
+import java.text.StringCharacterIterator;
 import java.util.ArrayList;
 import java.util.List;
 
 
 /**
  * General-purpose tokenizer using a {@link java.text.BreakIterator} word
- * instance. More specialized tokenizers can extend the current class and then 
- * override the {@link #isWordCharacter(Character)} method.
- * 
+ * instance, or a faster table-driven scanner that finds the same words (see
+ * {@link Segmenter}). More specialized tokenizers can extend the current class
+ * and then override the {@link #isWordCharacter(Character)} method.
+ * <p>
+ * Text is tokenized in a streaming fashion by
+ * {@link #tokenize(CharSequence, TokenSink)}, which hands each token to a
+ * {@link TokenSink} as a lowercased view of a buffer. The break iterator and
+ * the buffer are kept per thread and reused, so tokenizing does not create
+ * any objects per token. {@link #tokenize(String)} is built on top of it for
+ * callers that want a list of strings. A tokenizer can be used by several
+ * threads at once.
+ *
  * @author sh
  */
-public class Tokenizer 
+public class Tokenizer
 {
     /**
      * Creates a Tokenizer that will remove stopwords from the input text. Pass
-     * in {@code null} if no words should be removed from the input. 
+     * in {@code null} if no words should be removed from the input.
      * @param stopwords
      */
     public Tokenizer(final Stopwords stopwords) {
+        this(stopwords, Segmenter.BREAK_ITERATOR);
+    }
+
+    /**
+     * Creates a Tokenizer that will remove stopwords from the input text and
+     * find words in the given way.
+     * @param stopwords stopwords to remove, or {@code null}
+     * @param segmenter how to find the boundaries of words
+     */
+    public Tokenizer(final Stopwords stopwords, final Segmenter segmenter) {
         if (stopwords != null) {
             this.stopwords = stopwords;
         }
+        this.segmenter = segmenter;
     }
-    
+
+    /**
+     * @return how the tokenizer finds the boundaries of words
+     */
+    public Segmenter getSegmenter() {
+        return segmenter;
+    }
+
     /**
      * Removes punctuation attached to the left or right of each word in the
      * input, as well as stopwords (if defined by the constructor).
@@ -32,37 +60,210 @@ public class Tokenizer
      * @return a list of words with any attached punctuation removed
      */
     public List<String> tokenize(final String text) {
-        List<String> tokens = new ArrayList<String>();
+        final List<String> tokens = new ArrayList<String>();
         if (text == null) {
             return tokens;
         }
-        BreakIterator boundary = BreakIterator.getWordInstance();
-        boundary.setText(text);
-        int start = boundary.first();
-        for (int end = boundary.next(); 
-                end != BreakIterator.DONE;
-                start = end, end = boundary.next()) {
-            if (isWordCharacter(text.charAt(start))) {
-                String word = 
-                    new String(text.substring(start, end).toLowerCase()).intern();
-                if (stopwords != null && stopwords.isStopword(word)) {
-                    continue;
+        tokenize(text, new TokenSink() {
+            public void token(CharSequence token, TokenType type) {
+                tokens.add(token.toString());
+            }
+        });
+        return tokens;
+    }
+
+    /**
+     * Finds the words in the input, lowercases them and passes those that are
+     * not stopwords to a sink, with any attached punctuation removed.
+     * @param text text to tokenize; nothing happens if it is {@code null}
+     * @param sink receives the tokens
+     */
+    public void tokenize(final CharSequence text, final TokenSink sink) {
+        if (text == null) {
+            return;
+        }
+        segment(text, 0, text.length(), sink);
+    }
+
+    /**
+     * Finds the words in a range of the text and passes those that are not
+     * stopwords to a sink as {@link TokenType#WORD} tokens. Subclasses that
+     * recognize other kinds of tokens call this for the text between them.
+     * @param text text being tokenized
+     * @param start index of the first character of the range
+     * @param end index following the last character of the range
+     * @param sink receives the tokens
+     */
+    protected void segment(final CharSequence text, final int start,
+            final int end, final TokenSink sink) {
+        if (start >= end) {
+            return;
+        }
+        State state = acquireState();
+        try {
+            if (segmenter == Segmenter.TABLE) {
+                long[] wordCharacters = wordCharacters();
+                for (int from = start, to; from < end; from = to) {
+                    to = WordScanner.next(text, from, end);
+                    if (isWordStart(text, from, to, wordCharacters)) {
+                        word(text, from, to, state.buffer, sink);
+                    }
+                }
+            }
+            else {
+                BreakIterator boundary = state.boundary();
+                boundary.setText(new StringCharacterIterator(text.toString(),
+                        start, end, start));
+                int from = boundary.first();
+                for (int to = boundary.next();
+                        to != BreakIterator.DONE;
+                        from = to, to = boundary.next()) {
+                    if (isWordCharacter(text.charAt(from))) {
+                        word(text, from, to, state.buffer, sink);
+                    }
                 }
-                tokens.add(word);
             }
         }
-        return tokens;
+        finally {
+            state.inUse = false;
+        }
+    }
+
+    /**
+     * Passes a range of the text to a sink as a single token, without checking
+     * for stopwords.
+     * @param text text being tokenized
+     * @param start index of the first character of the token
+     * @param end index following the last character of the token
+     * @param type the kind of token
+     * @param lowerCase true to lowercase the token, false to pass it as is
+     * @param sink receives the token
+     */
+    protected void emit(final CharSequence text, final int start,
+            final int end, final TokenType type, final boolean lowerCase,
+            final TokenSink sink) {
+        State state = acquireState();
+        try {
+            if (lowerCase) {
+                state.buffer.setLowerCase(text, start, end);
+            }
+            else {
+                state.buffer.set(text, start, end);
+            }
+            sink.token(state.buffer, type);
+        }
+        finally {
+            state.inUse = false;
+        }
     }
-    
+
     /**
      * Determine if the character passed in is can legitimately start or end a
      * word. Override this method to specialize the behavior of this class.
+     * <p>
+     * With the {@link Segmenter#TABLE} segmenter, the answers for all char
+     * values are collected into a table the first time the tokenizer is used,
+     * so an override must depend on its argument only. Characters outside the
+     * Basic Multilingual Plane then start a word if they are letters or digits.
      * @param ch
      * @return true if the character can start or end a word; false otherwise.
      */
     public boolean isWordCharacter(Character ch) {
         return Character.isLetter(ch) || Character.isDigit(ch);
     }
-    
+
+    /**
+     * Unless a word is a stopword, lowercases it into the buffer and passes it
+     * to the sink. Stopwords are recognized in the text itself, so they are
+     * never copied.
+     */
+    private void word(final CharSequence text, final int start, final int end,
+            final TokenBuffer buffer, final TokenSink sink) {
+        if (stopwords == null || !stopwords.isStopword(text, start, end)) {
+            buffer.setLowerCase(text, start, end);
+            sink.token(buffer, TokenType.WORD);
+        }
+    }
+
+    /**
+     * Tells whether the segment starting at an index is a word, from its first
+     * character.
+     */
+    private static boolean isWordStart(final CharSequence text, final int start,
+            final int end, final long[] wordCharacters) {
+        char ch = text.charAt(start);
+        if (Character.isHighSurrogate(ch) && start + 1 < end &&
+                Character.isLowSurrogate(text.charAt(start + 1))) {
+            int cp = Character.toCodePoint(ch, text.charAt(start + 1));
+            return Character.isLetter(cp) || Character.isDigit(cp);
+        }
+        return (wordCharacters[ch >>> 6] & (1L << ch)) != 0;
+    }
+
+    /**
+     * Returns the set of char values for which {@link
+     * #isWordCharacter(Character)} holds, as a bit set, building it first if
+     * needed. Threads racing to build it build the same set.
+     */
+    private long[] wordCharacters() {
+        long[] table = wordCharacters;
+        if (table == null) {
+            table = new long[(Character.MAX_VALUE + 1) / 64];
+            for (int ch = 0; ch <= Character.MAX_VALUE; ch++) {
+                if (isWordCharacter((char) ch)) {
+                    table[ch >>> 6] |= 1L << ch;
+                }
+            }
+            wordCharacters = table;
+        }
+        return table;
+    }
+
+    /**
+     * Returns the current thread's tokenizing state, or a fresh one if the
+     * thread's state is already in use further up the stack (a sink
+     * tokenizing text itself).
+     */
+    private static State acquireState() {
+        State state = STATE.get();
+        if (state.inUse) {
+            state = new State();
+        }
+        state.inUse = true;
+        return state;
+    }
+
+    /**
+     * Objects reused from one call to the next on the same thread.
+     */
+    private static final class State
+    {
+        /**
+         * Returns the break iterator, creating it the first time since table
+         * segmentation does not need one.
+         */
+        BreakIterator boundary() {
+            if (boundary == null) {
+                boundary = BreakIterator.getWordInstance();
+            }
+            return boundary;
+        }
+
+        final TokenBuffer buffer = new TokenBuffer();
+        boolean inUse = false;
+        private BreakIterator boundary = null;
+    }
+
+    private static final ThreadLocal<State> STATE = new ThreadLocal<State>() {
+        @Override
+        protected State initialValue() {
+            return new State();
+        }
+    };
+
     private Stopwords stopwords = null;
+    private final Segmenter segmenter;
+
+    /** Bit set of the char values that are word characters, built lazily */
+    private volatile long[] wordCharacters = null;
 }
@@ -1,13 +1,20 @@
 package text;
 
-import java.util.ArrayList;
-import java.util.List;
-
 
 /**
- * Extends the general tokenizer by adding {@code @} and {@code #} as valid word 
- * characters because of their special meaning in Twitter text strings.
- 
+ * Extends the general tokenizer by recognizing the entities of Twitter text
+ * strings: mentions ({@code @user}), hashtags ({@code #topic}), cashtags
+ * ({@code $TICKER}) and URLs. They are found in a single pass over the text
+ * and passed on whole, with their {@link TokenType}; the text between them is
+ * split into words as usual. Entities are never treated as stopwords.
+ * <p>
+ * As on Twitter itself, an entity can not directly follow a letter or digit,
+ * so that e-mail addresses do not yield mentions, and a hashtag needs at least
+ * one character that is not a digit. An {@code @} or {@code #} that does not
+ * start an entity is dropped. URLs start with {@code http://},
+ * {@code https://} or {@code www.}; they keep their case, as paths are case
+ * sensitive, and lose trailing punctuation.
+ *
  * @author sh
  */
 public class TwitterTokenizer extends Tokenizer
@@ -15,33 +22,233 @@ public class TwitterTokenizer extends Tokenizer
     public TwitterTokenizer(final Stopwords stopwords) {
         super(stopwords);
     }
-    
+
     /**
-     * Tokenizes the text with the specialized {@link #isWordCharacter(Character)}
-     * method, then glues the special chacartes back onto the following word. 
+     * @param stopwords stopwords to remove, or {@code null}
+     * @param segmenter how to find the boundaries of words
      */
-    public List<String> tokenize(final String text) {
-        List<String> tokens = super.tokenize(text);
-        for (int i = 0; i < tokens.size(); i++) {
-            if (specialCharacters.contains(tokens.get(i).charAt(0)) && 
-                    i < tokens.size() - 1) {
-                tokens.set(i, new String(tokens.get(i) + tokens.remove(i + 1)));
+    public TwitterTokenizer(final Stopwords stopwords,
+            final Segmenter segmenter) {
+        super(stopwords, segmenter);
+    }
+
+    /**
+     * Passes the entities in the text to the sink as they are found, and the
+     * words in between them.
+     */
+    @Override
+    public void tokenize(final CharSequence text, final TokenSink sink) {
+        if (text == null) {
+            return;
+        }
+        int length = text.length();
+        int wordsStart = 0;
+        for (int i = 0; i < length; i++) {
+            char ch = text.charAt(i);
+            TokenType type;
+            int end;
+            if (ch == '@') {
+                type = TokenType.MENTION;
+                end = mentionEnd(text, i, length);
+            }
+            else if (ch == '#') {
+                type = TokenType.HASHTAG;
+                end = hashtagEnd(text, i, length);
             }
+            else if (ch == '$') {
+                type = TokenType.CASHTAG;
+                end = cashtagEnd(text, i, length);
+            }
+            else if (ch == 'h' || ch == 'H' || ch == 'w' || ch == 'W') {
+                type = TokenType.URL;
+                end = urlEnd(text, i, length);
+            }
+            else {
+                continue;
+            }
+            if (end < 0 && type != TokenType.MENTION &&
+                    type != TokenType.HASHTAG) {
+                // Leave the character to the words
+                continue;
+            }
+            segment(text, wordsStart, i, sink);
+            if (end < 0) {
+                wordsStart = i + 1;
+                continue;
+            }
+            emit(text, i, end, type, type != TokenType.URL, sink);
+            wordsStart = end;
+            i = end - 1;
         }
-        return tokens;
+        segment(text, wordsStart, length, sink);
     }
+
     /**
-     * Adds {@code @} and {@code #} as valid word characters.
+     * Returns the end of the mention starting at an index, or -1 if there is
+     * none.
      */
-    @Override
-    public boolean isWordCharacter(final Character ch) {
-        return super.isWordCharacter(ch) || specialCharacters.contains(ch);
+    private static int mentionEnd(final CharSequence text, final int start,
+            final int length) {
+        if (!isEntityStart(text, start)) {
+            return -1;
+        }
+        int i = start + 1;
+        while (i < length && isNameCharacter(text.charAt(i))) {
+            i++;
+        }
+        return i > start + 1 ? i : -1;
+    }
+
+    /**
+     * Returns the end of the hashtag starting at an index, or -1 if there is
+     * none.
+     */
+    private static int hashtagEnd(final CharSequence text, final int start,
+            final int length) {
+        if (!isEntityStart(text, start)) {
+            return -1;
+        }
+        boolean digitsOnly = true;
+        int i = start + 1;
+        while (i < length) {
+            int cp = Character.codePointAt(text, i);
+            int type = Character.getType(cp);
+            if (Character.isLetter(cp) || cp == '_' ||
+                    type == Character.NON_SPACING_MARK ||
+                    type == Character.COMBINING_SPACING_MARK) {
+                digitsOnly = false;
+            }
+            else if (!Character.isDigit(cp)) {
+                break;
+            }
+            i += Character.charCount(cp);
+        }
+        return digitsOnly ? -1 : i;
+    }
+
+    /**
+     * Returns the end of the cashtag starting at an index, or -1 if there is
+     * none: one to six letters, optionally followed by a class or market
+     * suffix of one or two letters ({@code $BRK.A}).
+     */
+    private static int cashtagEnd(final CharSequence text, final int start,
+            final int length) {
+        if (!isEntityStart(text, start)) {
+            return -1;
+        }
+        int i = asciiLetters(text, start + 1, length, MAX_TICKER);
+        if (i < 0) {
+            return -1;
+        }
+        if (i + 1 < length &&
+                (text.charAt(i) == '.' || text.charAt(i) == '_')) {
+            int suffix = asciiLetters(text, i + 1, length, MAX_TICKER_SUFFIX);
+            if (suffix > 0) {
+                i = suffix;
+            }
+        }
+        return i < length && isNameCharacter(text.charAt(i)) ? -1 : i;
+    }
+
+    /**
+     * Returns the end of the run of one to {@code max} ASCII letters at an
+     * index, or -1 if there is none.
+     */
+    private static int asciiLetters(final CharSequence text, final int start,
+            final int length, final int max) {
+        int i = start;
+        while (i < length && i - start <= max &&
+                isAsciiLetter(text.charAt(i))) {
+            i++;
+        }
+        return i > start && i - start <= max ? i : -1;
+    }
+
+    /**
+     * Returns the end of the URL starting at an index, or -1 if there is none.
+     */
+    private static int urlEnd(final CharSequence text, final int start,
+            final int length) {
+        if (start > 0 && isNameCharacter(text.charAt(start - 1))) {
+            return -1;
+        }
+        int host = -1;
+        for (String scheme : URL_PREFIXES) {
+            if (regionMatches(text, start, length, scheme)) {
+                host = start + scheme.length();
+                break;
+            }
+        }
+        if (host < 0) {
+            return -1;
+        }
+        int i = host;
+        while (i < length && !isUrlTerminator(text.charAt(i))) {
+            i++;
+        }
+        // Drop punctuation that ends the sentence rather than the URL
+        while (i > host &&
+                TRAILING_PUNCTUATION.indexOf(text.charAt(i - 1)) >= 0) {
+            i--;
+        }
+        return i > host && Character.isLetterOrDigit(text.charAt(host)) ?
+                i : -1;
     }
-    
-    // Characters that deserve special attention
-    private static List<Character> specialCharacters = new ArrayList<Character>();
-    static {
-        specialCharacters.add('@');
-        specialCharacters.add('#');
+
+    /**
+     * Tells whether an entity may start at an index, given the character that
+     * precedes it.
+     */
+    private static boolean isEntityStart(final CharSequence text,
+            final int start) {
+        if (start == 0) {
+            return true;
+        }
+        char ch = text.charAt(start - 1);
+        return !Character.isLetterOrDigit(ch) &&
+                ENTITY_PREDECESSORS.indexOf(ch) < 0;
     }
+
+    private static boolean isNameCharacter(final char ch) {
+        return isAsciiLetter(ch) || (ch >= '0' && ch <= '9') || ch == '_';
+    }
+
+    private static boolean isAsciiLetter(final char ch) {
+        return (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z');
+    }
+
+    private static boolean isUrlTerminator(final char ch) {
+        return Character.isWhitespace(ch) || Character.isSpaceChar(ch) ||
+                ch == '<' || ch == '>' || ch == '"' || ch == '\u2026';
+    }
+
+    /**
+     * Case-insensitive test for an ASCII prefix at an index.
+     */
+    private static boolean regionMatches(final CharSequence text,
+            final int start, final int length, final String prefix) {
+        if (length - start < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            char ch = text.charAt(start + i);
+            if (ch != prefix.charAt(i) &&
+                    Character.toLowerCase(ch) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final int MAX_TICKER = 6;
+    private static final int MAX_TICKER_SUFFIX = 2;
+
+    private static final String[] URL_PREFIXES = {
+        "http://", "https://", "www."
+    };
+
+    /** Characters after which no entity starts */
+    private static final String ENTITY_PREDECESSORS = "_@#$&";
+
+    private static final String TRAILING_PUNCTUATION = ".,;:!?'\")]}";
 }
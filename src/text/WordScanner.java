@@ -0,0 +1,307 @@
+package text;
+
+/**
+ * Table-driven replacement for the word instance of
+ * {@link java.text.BreakIterator}. It finds the same segments, following the
+ * JDK's word rules: a segment is a run of letters and digits which may contain
+ * single punctuation characters between two letters ({@code don't},
+ * {@code e-mail}, {@code U.S}) or two digits ({@code 1,000}, {@code 3.14}),
+ * may start with a currency sign, {@code #} or {@code .} followed by a digit
+ * and may end with {@code %} or {@code &} after a digit. Runs of whitespace
+ * and runs of kanji, katakana or hiragana are segments as well; any other
+ * character is a segment by itself. Format characters stay with the character
+ * before them, and so do combining marks, unless that character is a control
+ * or a line end.
+ * <p>
+ * Character classes are looked up in a table of all {@code char} values built
+ * once. Supplementary characters are classified on the fly and are never split
+ * in two.
+ *
+ * @author sh
+ */
+final class WordScanner
+{
+    private WordScanner() {
+    }
+
+    /**
+     * Finds the end of the segment starting at a given index.
+     * @param text text being segmented
+     * @param start index of the first character of the segment
+     * @param end index at which the text ends
+     * @return index following the last character of the segment
+     */
+    static int next(final CharSequence text, final int start, final int end) {
+        // Format characters never start a segment, except at the very start
+        // of the text where they are taken along with what follows them
+        int i = skipFormat(text, start, end);
+        if (i == end) {
+            return end;
+        }
+        int flags = flags(text, i, end);
+        if ((flags & (LETTER | DIGIT)) != 0) {
+            return alphanumeric(text, i, end);
+        }
+        i += width(text, i, end);
+        if ((flags & PREFIX) != 0) {
+            i = skipFormat(text, i, end);
+            if (i < end && (flags(text, i, end) & DIGIT) != 0) {
+                return alphanumeric(text, i, end);
+            }
+        }
+        else if ((flags & SPACE) != 0) {
+            i = run(text, i, end, SPACE);
+            if (i < end && (flags(text, i, end) & (RETURN | LINE)) != 0) {
+                return lineEnd(text, i, end);
+            }
+        }
+        else if ((flags & (RETURN | LINE)) != 0) {
+            return lineEnd(text, i - width(text, i - 1, end), end);
+        }
+        else if ((flags & (KANJI | KATAKANA | HIRAGANA | KANA_MARK)) != 0) {
+            int first = i;
+            if ((flags & KANJI) != 0) {
+                i = skip(text, i, end, KANJI);
+            }
+            else {
+                // A kana mark can start a run of either script
+                int katakana = (flags & HIRAGANA) != 0 ?
+                        i : skip(text, i, end, KATAKANA | KANA_MARK);
+                int hiragana = (flags & KATAKANA) != 0 ?
+                        i : skip(text, i, end, HIRAGANA | KANA_MARK);
+                i = Math.max(katakana, hiragana);
+            }
+            // Combining marks only follow a lone ideograph or kana
+            if (skipFormat(text, first, end) != i) {
+                return i;
+            }
+        }
+        if ((flags & (MARK | NO_MARKS)) != 0) {
+            return skipFormat(text, i, end);
+        }
+        return run(text, i, end, 0);
+    }
+
+    /**
+     * Scans alternating words and numbers, as in {@code abc123def}, optionally
+     * ended by a suffix after a number.
+     */
+    private static int alphanumeric(final CharSequence text, final int start,
+            final int end) {
+        int i = start;
+        boolean wordAllowed = true;
+        while (i < end) {
+            int flags = flags(text, i, end);
+            if ((flags & LETTER) != 0 && wordAllowed) {
+                i = joined(text, run(text, i, end, LETTER), end, LETTER,
+                        MID_WORD);
+                if (i < end && (flags(text, i, end) & DANDA) != 0) {
+                    i = skipFormat(text, i + 1, end);
+                    // Only a number can follow a danda
+                    wordAllowed = false;
+                }
+            }
+            else if ((flags & DIGIT) != 0) {
+                i = joined(text, run(text, i, end, DIGIT), end, DIGIT,
+                        MID_NUMBER);
+                if (i < end && (flags(text, i, end) & SUFFIX) != 0) {
+                    return skipFormat(text, i + 1, end);
+                }
+                wordAllowed = true;
+            }
+            else {
+                break;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Extends a run of characters of a class with any further runs joined to
+     * it by a single punctuation character.
+     */
+    private static int joined(final CharSequence text, int i, final int end,
+            final int cls, final int punctuation) {
+        while (i < end && (flags(text, i, end) & punctuation) != 0) {
+            int next = skipFormat(text, i + 1, end);
+            if (next == end || (flags(text, next, end) & cls) == 0) {
+                break;
+            }
+            i = run(text, next, end, cls);
+        }
+        return i;
+    }
+
+    /**
+     * Scans an optional carriage return followed by an optional line
+     * separator.
+     */
+    private static int lineEnd(final CharSequence text, int i, final int end) {
+        if ((flags(text, i, end) & RETURN) != 0) {
+            i = skipFormat(text, i + 1, end);
+            if (i == end || (flags(text, i, end) & LINE) == 0) {
+                return i;
+            }
+        }
+        return skipFormat(text, i + 1, end);
+    }
+
+    /**
+     * Skips characters of the given classes along with any combining marks
+     * and format characters among and after them.
+     */
+    private static int run(final CharSequence text, int i, final int end,
+            final int cls) {
+        while (i < end && (flags(text, i, end) & (cls | MARK | FORMAT)) != 0) {
+            i += width(text, i, end);
+        }
+        return i;
+    }
+
+    /**
+     * Skips characters of the given classes along with any format characters
+     * among and after them.
+     */
+    private static int skip(final CharSequence text, int i, final int end,
+            final int cls) {
+        while (i < end && (flags(text, i, end) & (cls | FORMAT)) != 0) {
+            i += width(text, i, end);
+        }
+        return i;
+    }
+
+    private static int skipFormat(final CharSequence text, final int i,
+            final int end) {
+        return skip(text, i, end, 0);
+    }
+
+    /**
+     * @return the classes of the character (or surrogate pair) at an index
+     */
+    private static int flags(final CharSequence text, final int i,
+            final int end) {
+        char ch = text.charAt(i);
+        if (Character.isHighSurrogate(ch) && i + 1 < end) {
+            char low = text.charAt(i + 1);
+            if (Character.isLowSurrogate(low)) {
+                return classify(Character.toCodePoint(ch, low));
+            }
+        }
+        return TABLE[ch];
+    }
+
+    /**
+     * @return the number of chars of the character at an index
+     */
+    private static int width(final CharSequence text, final int i,
+            final int end) {
+        return Character.isHighSurrogate(text.charAt(i)) && i + 1 < end &&
+                Character.isLowSurrogate(text.charAt(i + 1)) ? 2 : 1;
+    }
+
+    /**
+     * Determines the classes of a code point; the sets are those of the JDK's
+     * word break rules.
+     */
+    static int classify(final int cp) {
+        int flags = 0;
+        int type = Character.getType(cp);
+        if (cp == 0x3005 || (cp >= 0x4e00 && cp <= 0x9fa5) ||
+                (cp >= 0xf900 && cp <= 0xfa2d)) {
+            flags |= KANJI;
+        }
+        else if ((cp >= 0x30a1 && cp <= 0x30fa) || cp == 0x30fd ||
+                cp == 0x30fe) {
+            flags |= KATAKANA;
+        }
+        else if ((cp >= 0x3041 && cp <= 0x3094) || cp == 0x309d ||
+                cp == 0x309e) {
+            flags |= HIRAGANA;
+        }
+        else if ((cp >= 0x3099 && cp <= 0x309c) || cp == 0x30fb ||
+                cp == 0x30fc) {
+            flags |= KANA_MARK;
+        }
+        else if (Character.isLetter(cp) ||
+                type == Character.COMBINING_SPACING_MARK) {
+            flags |= LETTER;
+        }
+        if (type == Character.DECIMAL_DIGIT_NUMBER ||
+                type == Character.LETTER_NUMBER ||
+                type == Character.OTHER_NUMBER) {
+            flags |= DIGIT;
+        }
+        if (type == Character.DASH_PUNCTUATION ||
+                type == Character.CONNECTOR_PUNCTUATION ||
+                cp == 0xad || cp == 0x2027 ||
+                cp == '"' || cp == '\'' || cp == '.') {
+            flags |= MID_WORD;
+        }
+        if (cp == '"' || cp == '\'' || cp == ',' || cp == '.' || cp == 0x66b) {
+            flags |= MID_NUMBER;
+        }
+        if ((type == Character.CURRENCY_SYMBOL && cp != 0xa2) ||
+                cp == '#' || cp == '.') {
+            flags |= PREFIX;
+        }
+        if (cp == '%' || cp == '&' || cp == 0xa2 || cp == 0x66a ||
+                cp == 0x2030 || cp == 0x2031) {
+            flags |= SUFFIX;
+        }
+        if (cp == 0x964 || cp == 0x965) {
+            flags |= DANDA;
+        }
+        if (type == Character.SPACE_SEPARATOR || cp == '\t') {
+            flags |= SPACE;
+        }
+        if (cp == '\n' || cp == '\f' || cp == 0x2028 || cp == 0x2029) {
+            flags |= LINE;
+        }
+        if (cp == '\r') {
+            flags |= RETURN;
+        }
+        boolean mark = type == Character.NON_SPACING_MARK ||
+                type == Character.ENCLOSING_MARK;
+        if ((flags & ~KANA_MARK) == 0 && mark) {
+            // The combining kana marks also extend letters
+            flags |= MARK;
+        }
+        else if (flags == 0 && type == Character.FORMAT) {
+            flags |= FORMAT;
+        }
+        else if ((flags & SPACE) == 0 && (mark || type == Character.FORMAT ||
+                type == Character.CONTROL || type == Character.LINE_SEPARATOR ||
+                type == Character.PARAGRAPH_SEPARATOR)) {
+            // Controls, and marks or format characters with a role of their
+            // own, are not followed by combining marks
+            flags |= NO_MARKS;
+        }
+        return flags;
+    }
+
+    static final int LETTER = 1;
+    static final int DIGIT = 1 << 1;
+    static final int MID_WORD = 1 << 2;
+    static final int MID_NUMBER = 1 << 3;
+    static final int PREFIX = 1 << 4;
+    static final int SUFFIX = 1 << 5;
+    static final int DANDA = 1 << 6;
+    static final int SPACE = 1 << 7;
+    static final int LINE = 1 << 8;
+    static final int RETURN = 1 << 9;
+    static final int KANJI = 1 << 10;
+    static final int KATAKANA = 1 << 11;
+    static final int HIRAGANA = 1 << 12;
+    static final int KANA_MARK = 1 << 13;
+    static final int MARK = 1 << 14;
+    static final int FORMAT = 1 << 15;
+    static final int NO_MARKS = 1 << 16;
+
+    /** Classes of every char value */
+    private static final int[] TABLE = new int[Character.MAX_VALUE + 1];
+    static {
+        for (int cp = 0; cp <= Character.MAX_VALUE; cp++) {
+            TABLE[cp] = classify(cp);
+        }
+    }
+}
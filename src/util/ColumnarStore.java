@@ -0,0 +1,270 @@
+//=============================================================================
+// Coding sample for Stefaan Heyvaert.
+//=============================================================================
+package util;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Read-only store of user features for offline analysis of corpora too large
+ * to load onto the heap. The features of all users are kept column by column
+ * in memory-mapped files, so only the pages actually touched are read and the
+ * operating system, not the garbage collector, decides what stays in memory:
+ * <ul>
+ * <li>{@code followers.bin} and {@code friends.bin}: the sorted ID arrays of
+ * all users, one after the other, as 8-byte integers;</li>
+ * <li>{@code terms.bin}: the bio, mention, favorite and tweet term vectors of
+ * all users, each as its term IDs followed by their counts, as 4-byte
+ * integers;</li>
+ * <li>{@code index.bin}: a fixed-size record per user with its ID and the
+ * offset and size of each of its columns;</li>
+ * <li>{@code dictionary.bin}: the terms, in the order of their IDs.</li>
+ * </ul>
+ * Files are mapped in segments of at most 1 GB; no column straddles two of
+ * them. A store is written with {@link ColumnarStoreWriter}.
+ * <p>
+ * Users are accessed through {@link StoredUser} views, which read straight
+ * from the mapped files and can be scored with
+ * {@link Similarity#computeSumilarity(StoredUser, StoredUser)}. The store and
+ * its views can be shared between threads.
+ *
+ * @author sh
+ */
+public final class ColumnarStore
+{
+    /**
+     * Maps the files of a store.
+     * @param directory directory written by a {@link ColumnarStoreWriter}
+     * @return the store
+     * @throws IOException if the files can not be read or are not a store
+     */
+    public static ColumnarStore open(final File directory) throws IOException {
+        MappedByteBuffer[] index = map(new File(directory, INDEX_FILE),
+                Integer.MAX_VALUE);
+        if (index.length != 1) {
+            throw new IOException("Index too large to map");
+        }
+        ByteBuffer header = index[0];
+        if (header.limit() < HEADER_SIZE || header.getInt(0) != MAGIC) {
+            throw new IOException("Not a columnar store: " + directory);
+        }
+        if (header.getInt(4) != VERSION) {
+            throw new IOException("Unsupported version " + header.getInt(4));
+        }
+        int segmentSize = header.getInt(8);
+        if (segmentSize <= 0 ||
+                (header.limit() - HEADER_SIZE) % RECORD_SIZE != 0) {
+            throw new IOException("Corrupt index: " + directory);
+        }
+        return new ColumnarStore(directory, index[0],
+                map(new File(directory, FOLLOWERS_FILE), segmentSize),
+                map(new File(directory, FRIENDS_FILE), segmentSize),
+                map(new File(directory, TERMS_FILE), segmentSize),
+                segmentSize);
+    }
+
+    private ColumnarStore(final File directory, final ByteBuffer index,
+            final ByteBuffer[] followers, final ByteBuffer[] friends,
+            final ByteBuffer[] terms, final int segmentSize) {
+        this.directory = directory;
+        this.index = index;
+        this.followers = followers;
+        this.friends = friends;
+        this.terms = terms;
+        this.segmentSize = segmentSize;
+        this.size = (index.limit() - HEADER_SIZE) / RECORD_SIZE;
+    }
+
+    /**
+     * @return number of users in the store
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param position position of a user, between 0 and {@link #size()} - 1,
+     * in the order the users were written
+     * @return view of the user
+     */
+    public StoredUser get(final int position) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("No user at " + position);
+        }
+        return new StoredUser(this, position);
+    }
+
+    /**
+     * Looks a user up by ID. The first lookup sorts the IDs of all users,
+     * taking time proportional to the size of the store.
+     * @param userId a user ID
+     * @return view of the user, or null if the store does not hold it
+     */
+    public StoredUser find(final long userId) {
+        long[][] sorted = byId();
+        int pos = Arrays.binarySearch(sorted[0], userId);
+        return pos < 0 ? null : get((int) sorted[1][pos]);
+    }
+
+    /**
+     * Reads the dictionary that assigned the term IDs of the store, so that
+     * more text can be turned into comparable vectors.
+     * @return a new dictionary holding the terms of the store under the same
+     * IDs
+     * @throws IOException if the dictionary can not be read
+     */
+    public TermDictionary loadDictionary() throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(new File(directory, DICTIONARY_FILE))));
+        try {
+            TermDictionary dictionary = new TermDictionary();
+            int count = in.readInt();
+            for (int id = 0; id < count; id++) {
+                // Terms get the next free ID, so the IDs are the same
+                if (dictionary.id(in.readUTF()) != id) {
+                    throw new IOException("Duplicate term in dictionary");
+                }
+            }
+            return dictionary;
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @return the IDs of the users in ascending order, and the position of
+     * each of them
+     */
+    private long[][] byId() {
+        long[][] sorted = idIndex;
+        if (sorted == null) {
+            long[] ids = new long[size];
+            for (int i = 0; i < size; i++) {
+                ids[i] = userId(i);
+            }
+            long[] positions = new long[size];
+            sorted = new long[][] { ids.clone(), positions };
+            Arrays.sort(sorted[0]);
+            for (int i = 0; i < size; i++) {
+                positions[Arrays.binarySearch(sorted[0], ids[i])] = i;
+            }
+            idIndex = sorted;
+        }
+        return sorted;
+    }
+
+    long userId(final int position) {
+        return index.getLong(record(position));
+    }
+
+    ByteBuffer followers(final int position) {
+        int record = record(position);
+        return slice(followers, index.getLong(record + 8),
+                8L * index.getInt(record + 16));
+    }
+
+    ByteBuffer friends(final int position) {
+        int record = record(position);
+        return slice(friends, index.getLong(record + 20),
+                8L * index.getInt(record + 28));
+    }
+
+    /**
+     * @param vector 0 for the bio, 1 for mentions, 2 for favorites and 3 for
+     * tweets
+     */
+    ByteBuffer terms(final int position, final int vector) {
+        int record = record(position);
+        long offset = index.getLong(record + 32);
+        for (int v = 0; v < vector; v++) {
+            offset += 8L * index.getInt(record + 40 + 4 * v);
+        }
+        return slice(terms, offset,
+                8L * index.getInt(record + 40 + 4 * vector));
+    }
+
+    private static int record(final int position) {
+        return HEADER_SIZE + position * RECORD_SIZE;
+    }
+
+    /**
+     * Returns a buffer over a range of a mapped file; the range lies within
+     * one segment.
+     */
+    private ByteBuffer slice(final ByteBuffer[] segments, final long offset,
+            final long bytes) {
+        if (bytes == 0) {
+            return EMPTY;
+        }
+        ByteBuffer segment = segments[(int) (offset / segmentSize)];
+        int start = (int) (offset % segmentSize);
+        ByteBuffer buffer = segment.duplicate();
+        buffer.position(start);
+        buffer.limit(start + (int) bytes);
+        return buffer.slice();
+    }
+
+    /**
+     * Maps a file in read-only segments of a given size.
+     */
+    private static MappedByteBuffer[] map(final File file,
+            final int segmentSize) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ);
+        try {
+            long length = channel.size();
+            int count = (int) ((length + segmentSize - 1) / segmentSize);
+            MappedByteBuffer[] segments = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                long start = (long) i * segmentSize;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        start, Math.min(segmentSize, length - start));
+            }
+            return segments;
+        }
+        finally {
+            // Mappings stay valid after the channel is closed
+            channel.close();
+        }
+    }
+
+    static final String INDEX_FILE = "index.bin";
+    static final String FOLLOWERS_FILE = "followers.bin";
+    static final String FRIENDS_FILE = "friends.bin";
+    static final String TERMS_FILE = "terms.bin";
+    static final String DICTIONARY_FILE = "dictionary.bin";
+
+    static final int MAGIC = 0x55434f4c;
+    static final int VERSION = 1;
+    static final int SEGMENT_SIZE = 1 << 30;
+
+    /** Magic number, version and segment size */
+    private static final int HEADER_SIZE = 12;
+
+    /** User ID, offset and size of each ID column, and offset and sizes of
+     * the term vectors */
+    private static final int RECORD_SIZE = 8 + 12 + 12 + 8 + 4 * 4;
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private final File directory;
+    private final ByteBuffer index;
+    private final ByteBuffer[] followers;
+    private final ByteBuffer[] friends;
+    private final ByteBuffer[] terms;
+    private final int segmentSize;
+    private final int size;
+
+    /** Sorted user IDs and their positions; built on first use */
+    private volatile long[][] idIndex;
+}
@@ -0,0 +1,196 @@
+//=============================================================================
+// Coding sample for Stefaan Heyvaert.
+//=============================================================================
+package util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Writes {@link UserProfile}s to a directory in the format read by
+ * {@link ColumnarStore}. Profiles are appended one at a time and nothing but
+ * the current one is held in memory, so stores of any number of users can be
+ * written. The store is only complete once {@link #close()} has been called.
+ * <p>
+ * Writers are not thread-safe.
+ *
+ * @author sh
+ */
+public class ColumnarStoreWriter
+{
+    /**
+     * Starts a store in a directory, replacing any store already there.
+     * @param directory directory for the store files; created if needed
+     * @param dictionary dictionary of all the profiles that will be added
+     * @throws IOException if the directory or files can not be created
+     */
+    public ColumnarStoreWriter(final File directory,
+            final TermDictionary dictionary) throws IOException {
+        this(directory, dictionary, ColumnarStore.SEGMENT_SIZE);
+    }
+
+    /**
+     * Starts a store with a given segment size, which only tests need to
+     * change.
+     */
+    ColumnarStoreWriter(final File directory, final TermDictionary dictionary,
+            final int segmentSize) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create directory " + directory);
+        }
+        this.directory = directory;
+        this.dictionary = dictionary;
+        this.segmentSize = segmentSize;
+        index = open(ColumnarStore.INDEX_FILE);
+        followers = new Column(open(ColumnarStore.FOLLOWERS_FILE));
+        friends = new Column(open(ColumnarStore.FRIENDS_FILE));
+        terms = new Column(open(ColumnarStore.TERMS_FILE));
+        index.writeInt(ColumnarStore.MAGIC);
+        index.writeInt(ColumnarStore.VERSION);
+        index.writeInt(segmentSize);
+    }
+
+    /**
+     * Appends a profile to the store.
+     * @param profile the profile; it must have been built with the writer's
+     * dictionary
+     * @throws IOException if the store can not be written
+     * @throws IllegalArgumentException if the profile uses another dictionary
+     * or one of its columns does not fit in a segment
+     */
+    public void add(final UserProfile profile) throws IOException {
+        if (profile.getDictionary() != dictionary) {
+            throw new IllegalArgumentException(
+                "Profile was built with a different term dictionary");
+        }
+        TermVector[] vectors = {
+            profile.getBioTerms(), profile.getMentions(),
+            profile.getFavoriteTerms(), profile.getTweetTerms()
+        };
+        long termBytes = 0;
+        for (TermVector vector : vectors) {
+            termBytes += 2L * 4 * vector.size();
+        }
+        SortedIdSet followerIds = profile.getFollowerIds();
+        SortedIdSet friendIds = profile.getFriendIds();
+
+        // Place all columns before writing anything, so that a column that
+        // does not fit leaves the store as it was (give or take padding)
+        long followerOffset = followers.start(8L * followerIds.size());
+        long friendOffset = friends.start(8L * friendIds.size());
+        long termOffset = terms.start(termBytes);
+
+        index.writeLong(profile.getId());
+        index.writeLong(followerOffset);
+        index.writeInt(followerIds.size());
+        index.writeLong(friendOffset);
+        index.writeInt(friendIds.size());
+        index.writeLong(termOffset);
+        for (TermVector vector : vectors) {
+            index.writeInt(vector.size());
+        }
+
+        writeIds(followers, followerIds);
+        writeIds(friends, friendIds);
+        for (TermVector vector : vectors) {
+            for (int termId : vector.termIds) {
+                terms.out.writeInt(termId);
+            }
+            for (int count : vector.counts) {
+                terms.out.writeInt(count);
+            }
+            terms.position += 2L * 4 * vector.size();
+        }
+        size++;
+    }
+
+    /**
+     * @return number of profiles added so far
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Writes the dictionary and closes the files.
+     * @throws IOException if the store can not be written
+     */
+    public void close() throws IOException {
+        DataOutputStream out = open(ColumnarStore.DICTIONARY_FILE);
+        try {
+            int count = dictionary.size();
+            out.writeInt(count);
+            for (int id = 0; id < count; id++) {
+                out.writeUTF(dictionary.term(id));
+            }
+        }
+        finally {
+            out.close();
+            index.close();
+            followers.out.close();
+            friends.out.close();
+            terms.out.close();
+        }
+    }
+
+    private static void writeIds(final Column column, final SortedIdSet ids)
+            throws IOException {
+        long[] array = ids.array();
+        for (int i = 0, n = ids.size(); i < n; i++) {
+            column.out.writeLong(array[i]);
+        }
+        column.position += 8L * ids.size();
+    }
+
+    private DataOutputStream open(final String name) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(new File(directory, name)), BUFFER_SIZE));
+    }
+
+    /**
+     * One of the data files, with the number of bytes written to it.
+     */
+    private final class Column
+    {
+        Column(final DataOutputStream out) {
+            this.out = out;
+        }
+
+        /**
+         * Prepares for a run of bytes that must be mapped in one piece: if it
+         * would straddle two segments, the current segment is padded.
+         * @return offset at which the run starts
+         */
+        long start(final long bytes) throws IOException {
+            if (bytes > segmentSize) {
+                throw new IllegalArgumentException("Column of " + bytes
+                        + " bytes does not fit in a segment");
+            }
+            long used = position % segmentSize;
+            if (used + bytes > segmentSize) {
+                for (long i = used; i < segmentSize; i++) {
+                    out.write(0);
+                }
+                position += segmentSize - used;
+            }
+            return position;
+        }
+
+        final DataOutputStream out;
+        long position;
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File directory;
+    private final TermDictionary dictionary;
+    private final int segmentSize;
+    private final DataOutputStream index;
+    private final Column followers;
+    private final Column friends;
+    private final Column terms;
+    private int size;
+}
@@ -0,0 +1,431 @@
+//=============================================================================
+// Coding sample for Stefaan Heyvaert.
+//=============================================================================
+package util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+
+import client.TwitterUser;
+
+/**
+ * Immutable store of the whole follower graph of a set of users, for
+ * answering questions about relationships without loading the users as
+ * {@link TwitterUser} objects.
+ * <p>
+ * Every user ID appearing in a relationship is given a node number, in
+ * ascending order of ID. For every node, the graph keeps the numbers of the
+ * users it follows and of the users following it, in ascending order, in
+ * compressed sparse row form: all lists of a direction are concatenated in a
+ * single byte array and an offset per node tells where its list starts.
+ * Each list is written as its length followed by the gaps between successive
+ * numbers, as variable-length integers (seven bits per byte), so that the
+ * dense lists of real accounts take one or two bytes per relationship rather
+ * than the eight of a {@code long}. Lists of more than {@value #BLOCK}
+ * entries are cut into blocks, and the first number of every block and where
+ * it ends are kept aside, so that a search can jump to the right block
+ * rather than decode the list from the start.
+ * <p>
+ * {@link #follows(long, long)} therefore takes time logarithmic in the number
+ * of users followed, and counting the users two lists have in common (see
+ * {@link #mutualFollowers(long, long)}) leaps from block to block through the
+ * longer list, in time closer to the length of the shorter one than to the
+ * sum of both.
+ * <p>
+ * Graphs are built with a {@link FollowerGraphBuilder}, or loaded with
+ * {@link #fromUsers(Collection)} or {@link #load(File)}. All lists of a
+ * direction together must fit in 2 GB. Graphs can be shared between threads.
+ *
+ * @author sh
+ */
+public final class FollowerGraph
+{
+    /**
+     * Builds the graph of the relationships of a set of users: each user
+     * follows its friends and is followed by its followers.
+     * @param users the users
+     * @return the graph
+     */
+    public static FollowerGraph fromUsers(final Collection<TwitterUser> users) {
+        FollowerGraphBuilder builder = new FollowerGraphBuilder();
+        for (TwitterUser user : users) {
+            builder.add(user);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Reads a graph from a text file with one relationship per line: the ID
+     * of the follower and the ID of the user followed, separated by white
+     * space or a comma. Blank lines and lines starting with {@code #} are
+     * ignored.
+     * @param file the file
+     * @return the graph
+     * @throws IOException if the file can not be read or a line is not a
+     * relationship
+     */
+    public static FollowerGraph load(final File file) throws IOException {
+        FollowerGraphBuilder builder = new FollowerGraphBuilder();
+        BufferedReader in = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), StandardCharsets.US_ASCII));
+        try {
+            int lineNumber = 0;
+            for (String line = in.readLine(); line != null;
+                    line = in.readLine()) {
+                lineNumber++;
+                line = line.trim();
+                if (line.length() == 0 || line.charAt(0) == '#') {
+                    continue;
+                }
+                String[] fields = line.split("[\\s,]+");
+                if (fields.length != 2) {
+                    throw new IOException(file + ":" + lineNumber
+                            + ": expected two user IDs");
+                }
+                try {
+                    builder.addFollow(Long.parseLong(fields[0]),
+                            Long.parseLong(fields[1]));
+                }
+                catch (NumberFormatException e) {
+                    throw new IOException(file + ":" + lineNumber
+                            + ": invalid user ID");
+                }
+            }
+        }
+        finally {
+            in.close();
+        }
+        return builder.build();
+    }
+
+    FollowerGraph(final long[] ids, final Adjacency friends,
+            final Adjacency followers) {
+        this.ids = ids;
+        this.friends = friends;
+        this.followers = followers;
+    }
+
+    /**
+     * @return number of users in the graph
+     */
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * @return number of relationships in the graph
+     */
+    public long relationships() {
+        return friends.total;
+    }
+
+    /**
+     * @param userId a user ID
+     * @return true if the user follows or is followed by anyone
+     */
+    public boolean contains(final long userId) {
+        return node(userId) >= 0;
+    }
+
+    /**
+     * @param follower ID of a user
+     * @param followed ID of another user
+     * @return true if the first user follows the second
+     */
+    public boolean follows(final long follower, final long followed) {
+        int from = node(follower);
+        int to = node(followed);
+        if (from < 0 || to < 0) {
+            return false;
+        }
+        Cursor cursor = new Cursor(friends, from);
+        return cursor.advance(to) && cursor.value == to;
+    }
+
+    /**
+     * @return true if each of two users follows the other
+     */
+    public boolean isMutual(final long user1, final long user2) {
+        return follows(user1, user2) && follows(user2, user1);
+    }
+
+    /**
+     * @param userId a user ID
+     * @return number of users following the user
+     */
+    public int followerCount(final long userId) {
+        int node = node(userId);
+        return node < 0 ? 0 : new Cursor(followers, node).degree;
+    }
+
+    /**
+     * @param userId a user ID
+     * @return number of users the user follows
+     */
+    public int friendCount(final long userId) {
+        int node = node(userId);
+        return node < 0 ? 0 : new Cursor(friends, node).degree;
+    }
+
+    /**
+     * @param userId a user ID
+     * @return IDs of the users following the user, in ascending order
+     */
+    public long[] followers(final long userId) {
+        return neighbors(followers, userId);
+    }
+
+    /**
+     * @param userId a user ID
+     * @return IDs of the users the user follows, in ascending order
+     */
+    public long[] friends(final long userId) {
+        return neighbors(friends, userId);
+    }
+
+    /**
+     * @return number of users following both of two users
+     */
+    public int mutualFollowers(final long user1, final long user2) {
+        return intersectionSize(followers, user1, followers, user2);
+    }
+
+    /**
+     * @return number of users followed by both of two users
+     */
+    public int mutualFriends(final long user1, final long user2) {
+        return intersectionSize(friends, user1, friends, user2);
+    }
+
+    /**
+     * Counts the paths of two steps from one user to another: the users
+     * followed by the first that follow the second.
+     * @param from ID of the user the paths start from
+     * @param to ID of the user the paths lead to
+     * @return number of such paths
+     */
+    public int twoHopPaths(final long from, final long to) {
+        return intersectionSize(friends, from, followers, to);
+    }
+
+    /**
+     * @return number of bytes taken by the lists and their indexes
+     */
+    public long memoryUsage() {
+        return 8L * ids.length + friends.memoryUsage()
+                + followers.memoryUsage();
+    }
+
+    public String toString() {
+        return ids.length + " users, " + friends.total + " relationships";
+    }
+
+    private int node(final long userId) {
+        int node = Arrays.binarySearch(ids, userId);
+        return node < 0 ? -1 : node;
+    }
+
+    private long[] neighbors(final Adjacency adjacency, final long userId) {
+        int node = node(userId);
+        if (node < 0) {
+            return new long[0];
+        }
+        Cursor cursor = new Cursor(adjacency, node);
+        long[] result = new long[cursor.degree];
+        for (int i = 0; cursor.next(); i++) {
+            result[i] = ids[cursor.value];
+        }
+        return result;
+    }
+
+    /**
+     * Counts the nodes two lists have in common by leapfrogging: each list
+     * in turn skips ahead to the current node of the other.
+     */
+    private int intersectionSize(final Adjacency adjacency1,
+            final long user1, final Adjacency adjacency2, final long user2) {
+        int node1 = node(user1);
+        int node2 = node(user2);
+        if (node1 < 0 || node2 < 0) {
+            return 0;
+        }
+        Cursor a = new Cursor(adjacency1, node1);
+        Cursor b = new Cursor(adjacency2, node2);
+        if (a.degree > b.degree) {
+            Cursor swap = a;
+            a = b;
+            b = swap;
+        }
+        int count = 0;
+        if (!a.next()) {
+            return 0;
+        }
+        while (b.advance(a.value)) {
+            if (b.value == a.value) {
+                count++;
+                if (!a.next()) {
+                    break;
+                }
+            }
+            else if (!a.advance(b.value)) {
+                break;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The lists of one direction of the graph.
+     */
+    static final class Adjacency
+    {
+        Adjacency(final byte[] bytes, final int[] offsets,
+                final int[] skipStart, final int[] skipValues,
+                final int[] skipOffsets, final long total) {
+            this.bytes = bytes;
+            this.offsets = offsets;
+            this.skipStart = skipStart;
+            this.skipValues = skipValues;
+            this.skipOffsets = skipOffsets;
+            this.total = total;
+        }
+
+        long memoryUsage() {
+            return bytes.length + 4L * (offsets.length + skipStart.length
+                    + skipValues.length + skipOffsets.length);
+        }
+
+        /** All lists, one after the other */
+        final byte[] bytes;
+
+        /** Where the list of every node starts in {@link #bytes} */
+        final int[] offsets;
+
+        /** Where the skips of every node start in the two arrays below */
+        final int[] skipStart;
+
+        /** First node of every block of the lists that have blocks */
+        final int[] skipValues;
+
+        /** Where the rest of the block starts in {@link #bytes} */
+        final int[] skipOffsets;
+
+        /** Number of entries of all lists */
+        final long total;
+    }
+
+    /**
+     * Reads a list of nodes in ascending order.
+     */
+    private static final class Cursor
+    {
+        Cursor(final Adjacency adjacency, final int node) {
+            this.adjacency = adjacency;
+            position = adjacency.offsets[node];
+            degree = readVarint();
+            skipBase = adjacency.skipStart[node];
+            blocks = adjacency.skipStart[node + 1] - skipBase;
+        }
+
+        /**
+         * Moves to the next node of the list.
+         * @return false if there is none
+         */
+        boolean next() {
+            if (read == degree) {
+                return false;
+            }
+            value += readVarint();
+            read++;
+            return true;
+        }
+
+        /**
+         * Moves to the first node at or after a given one, jumping over
+         * whole blocks if possible.
+         * @return false if there is none
+         */
+        boolean advance(final int target) {
+            if (read > 0 && value >= target) {
+                return true;
+            }
+            if (blocks > 0) {
+                // Last block starting at or before the target, if it comes
+                // after the current one
+                int current = read == 0 ? -1 : (read - 1) / BLOCK;
+                int[] starts = adjacency.skipValues;
+                int low = current + 1;
+                int high = blocks - 1;
+                int found = -1;
+                while (low <= high) {
+                    int mid = (low + high) >>> 1;
+                    if (starts[skipBase + mid] <= target) {
+                        found = mid;
+                        low = mid + 1;
+                    }
+                    else {
+                        high = mid - 1;
+                    }
+                }
+                if (found >= 0) {
+                    value = starts[skipBase + found];
+                    position = adjacency.skipOffsets[skipBase + found];
+                    read = found * BLOCK + 1;
+                    if (value >= target) {
+                        return true;
+                    }
+                }
+            }
+            while (next()) {
+                if (value >= target) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private int readVarint() {
+            byte[] bytes = adjacency.bytes;
+            int result = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = bytes[position++];
+                result |= (b & 0x7f) << shift;
+                if (b >= 0) {
+                    return result;
+                }
+            }
+        }
+
+        private final Adjacency adjacency;
+        private final int skipBase;
+        private final int blocks;
+        private int position;
+
+        /** Number of nodes in the list */
+        final int degree;
+
+        /** Number of nodes read so far */
+        private int read;
+
+        /** The current node; valid once a node has been read */
+        int value = -1;
+    }
+
+    /** Number of entries per block of a list */
+    static final int BLOCK = 64;
+
+    /** User ID of every node */
+    private final long[] ids;
+
+    /** Users followed by every node */
+    private final Adjacency friends;
+
+    /** Users following every node */
+    private final Adjacency followers;
+}
@@ -0,0 +1,201 @@
+//=============================================================================
+// Coding sample for Stefaan Heyvaert.
+//=============================================================================
+package util;
+
+import java.util.Arrays;
+
+import client.TwitterUser;
+
+/**
+ * Collects relationships, in any order and possibly more than once, and
+ * turns them into a {@link FollowerGraph}. Relationships are held as pairs of
+ * primitive IDs until {@link #build()} sorts them, so a builder takes 16
+ * bytes per relationship added.
+ * <p>
+ * Builders are not thread-safe.
+ *
+ * @author sh
+ */
+public class FollowerGraphBuilder
+{
+    /**
+     * Adds a relationship.
+     * @param follower ID of the user following
+     * @param followed ID of the user followed
+     */
+    public void addFollow(final long follower, final long followed) {
+        if (count == from.length) {
+            int capacity = Math.max(16, count + (count >> 1));
+            from = Arrays.copyOf(from, capacity);
+            to = Arrays.copyOf(to, capacity);
+        }
+        from[count] = follower;
+        to[count] = followed;
+        count++;
+    }
+
+    /**
+     * Adds the relationships of a user: it follows its friends and is
+     * followed by its followers.
+     * @param user the user
+     * @throws IllegalArgumentException if the user's ID is not known
+     */
+    public void add(final TwitterUser user) {
+        long id = user.getId();
+        if (id == 0) {
+            throw new IllegalArgumentException("ID of user "
+                    + user.getUserName() + " is not known");
+        }
+        SortedIdSet followers = user.getFollowerIds();
+        for (int i = 0; i < followers.size(); i++) {
+            addFollow(followers.get(i), id);
+        }
+        SortedIdSet friends = user.getFriendIds();
+        for (int i = 0; i < friends.size(); i++) {
+            addFollow(id, friends.get(i));
+        }
+    }
+
+    /**
+     * @return number of relationships added, counting duplicates
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Builds the graph of the relationships added so far. The builder can
+     * be used further afterwards.
+     * @return the graph
+     * @throws IllegalArgumentException if the lists do not fit in 2 GB
+     */
+    public FollowerGraph build() {
+        long[] ids = new long[2 * count];
+        System.arraycopy(from, 0, ids, 0, count);
+        System.arraycopy(to, 0, ids, count, count);
+        Arrays.sort(ids);
+        int nodes = unique(ids, ids.length);
+        ids = Arrays.copyOf(ids, nodes);
+
+        // Node numbers fit in 32 bits, so an edge sorts as one long
+        long[] forward = new long[count];
+        long[] backward = new long[count];
+        for (int i = 0; i < count; i++) {
+            long source = Arrays.binarySearch(ids, from[i]);
+            long target = Arrays.binarySearch(ids, to[i]);
+            forward[i] = source << 32 | target;
+            backward[i] = target << 32 | source;
+        }
+        return new FollowerGraph(ids, encode(forward, nodes),
+                encode(backward, nodes));
+    }
+
+    /**
+     * Removes the duplicates from the start of a sorted array.
+     * @return number of distinct values, now at the start of the array
+     */
+    private static int unique(final long[] values, final int length) {
+        int distinct = 0;
+        for (int i = 0; i < length; i++) {
+            if (distinct == 0 || values[i] != values[distinct - 1]) {
+                values[distinct++] = values[i];
+            }
+        }
+        return distinct;
+    }
+
+    /**
+     * Writes the lists of one direction of the graph.
+     * @param edges edges, as the source node in the high 32 bits and the
+     * target node in the low ones; sorted in place
+     * @param nodes number of nodes
+     */
+    private static FollowerGraph.Adjacency encode(final long[] edges,
+            final int nodes) {
+        Arrays.sort(edges);
+        int total = unique(edges, edges.length);
+        int block = FollowerGraph.BLOCK;
+
+        int[] degrees = new int[nodes];
+        for (int i = 0; i < total; i++) {
+            degrees[(int) (edges[i] >>> 32)]++;
+        }
+        int[] skipStart = new int[nodes + 1];
+        for (int node = 0; node < nodes; node++) {
+            int blocks = degrees[node] > block
+                ? (degrees[node] + block - 1) / block : 0;
+            skipStart[node + 1] = skipStart[node] + blocks;
+        }
+        int[] skipValues = new int[skipStart[nodes]];
+        int[] skipOffsets = new int[skipStart[nodes]];
+        int[] offsets = new int[nodes + 1];
+
+        // A length and a gap take at most five bytes each, but are mostly
+        // one or two
+        Output out = new Output(nodes + 2L * total);
+        int edge = 0;
+        for (int node = 0; node < nodes; node++) {
+            offsets[node] = out.length;
+            int degree = degrees[node];
+            out.writeVarint(degree);
+            int previous = -1;
+            boolean blocks = degree > block;
+            for (int i = 0; i < degree; i++, edge++) {
+                int target = (int) edges[edge];
+                out.writeVarint(target - previous);
+                previous = target;
+                if (blocks && i % block == 0) {
+                    int skip = skipStart[node] + i / block;
+                    skipValues[skip] = target;
+                    skipOffsets[skip] = out.length;
+                }
+            }
+        }
+        offsets[nodes] = out.length;
+        return new FollowerGraph.Adjacency(Arrays.copyOf(out.bytes,
+                out.length), offsets, skipStart, skipValues, skipOffsets,
+                total);
+    }
+
+    /**
+     * A growing byte array.
+     */
+    private static final class Output
+    {
+        Output(final long capacity) {
+            bytes = new byte[(int) Math.min(MAX_ARRAY,
+                    Math.max(16, capacity))];
+        }
+
+        void writeVarint(final int value) {
+            if (bytes.length - length < 5) {
+                long capacity = bytes.length + (long) (bytes.length >> 1);
+                if (capacity > MAX_ARRAY) {
+                    if (MAX_ARRAY - length < 5) {
+                        throw new IllegalArgumentException(
+                            "Follower graph does not fit in 2 GB");
+                    }
+                    capacity = MAX_ARRAY;
+                }
+                bytes = Arrays.copyOf(bytes, (int) capacity);
+            }
+            int v = value;
+            while ((v & ~0x7f) != 0) {
+                bytes[length++] = (byte) ((v & 0x7f) | 0x80);
+                v >>>= 7;
+            }
+            bytes[length++] = (byte) v;
+        }
+
+        byte[] bytes;
+        int length;
+    }
+
+    /** Largest array the virtual machines allocate */
+    private static final int MAX_ARRAY = Integer.MAX_VALUE - 8;
+
+    private long[] from = new long[0];
+    private long[] to = new long[0];
+    private int count;
+}
@@ -0,0 +1,516 @@
+//=============================================================================
+// Coding sample for Stefaan Heyvaert.
+//=============================================================================
+package util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import text.Tokenizer;
+
+import client.TwitterUser;
+
+/**
+ * Inverted index of what users talk about, for finding the users of a corpus
+ * that talk about the same things as a given user without comparing it to
+ * every one of them.
+ * <p>
+ * Each indexed user is described by a single term vector, the sum of the
+ * vectors of its biography, mentions, favorites and tweets (see
+ * {@link UserProfile}), and the index maps every term to its postings: the
+ * users using it, in the order they were added, with the frequency of the
+ * term. Users are ranked by the pseudo-cosine of their vector and the query
+ * user's (see {@link Similarity#pseudoCosine(TermVector, TermVector)}).
+ * <p>
+ * {@link #candidates(TwitterUser, int)} finds the best ranked users with the
+ * WAND algorithm. The pseudo-cosine of vectors {@code q} and {@code d} is
+ * {@code I / (|q| + |d| - I)}, where {@code I} is the sum over all terms of
+ * the smaller of the two frequencies. A term adds at most the smaller of its
+ * frequency in the query and its highest frequency in any posting to
+ * {@code I}, and {@code |d|} is at least the smallest total of any user in
+ * the postings of the terms; as the score grows with {@code I} and shrinks
+ * with {@code |d|} (which can not be less than {@code I}), these bound the
+ * score of any user using a set of terms. The postings of the query terms
+ * are walked together, in user order, and a user is only scored once the
+ * terms it could have may beat the current K-th best; users with too few of
+ * the query terms are skipped without looking at them.
+ * <p>
+ * {@link #topK(TwitterUser, int)} then compares the query user to the winners
+ * in full, with {@link Similarity#computeSumilarity(UserProfile,
+ * UserProfile)}. The profiles of indexed users are kept for that purpose, so
+ * an indexed user must be added again after it changes. Users can be added
+ * and removed at any time; removed users are dropped from the postings once
+ * they make up half of them. The index is not synchronized.
+ * <p>
+ * Callers that already hold the profiles of their users can index and query
+ * those instead, with {@link #add(UserProfile)} and
+ * {@link #candidates(UserProfile, int)}, so that no user is tokenized twice
+ * and the index keeps the very profiles the caller does. The candidates can
+ * then be compared in full outside whatever lock guards the index. Users
+ * added by their profile alone are only returned by the methods taking
+ * profiles.
+ *
+ * @author sh
+ */
+public class InvertedIndex
+{
+    /**
+     * @param tokenizer tokenizer for the text fields of the users
+     */
+    public InvertedIndex(final Tokenizer tokenizer) {
+        this.tokenizer = tokenizer;
+    }
+
+    /**
+     * Adds a user to the index, replacing any user with the same ID.
+     * @param user user to add
+     */
+    public void add(final TwitterUser user) {
+        add(user, new UserProfile(user, tokenizer));
+    }
+
+    /**
+     * Adds a user to the index by its profile, replacing any user with the
+     * same ID. The profile is kept, not copied.
+     * @param profile profile of the user to add, built with the tokenizer of
+     * the index
+     */
+    public void add(final UserProfile profile) {
+        add(null, profile);
+    }
+
+    /**
+     * @param user the user, or null if only its profile is known
+     */
+    private void add(final TwitterUser user, final UserProfile profile) {
+        remove(profile.getId());
+        TermVector terms = terms(profile);
+        int doc = profiles.size();
+        profiles.add(profile);
+        users.add(user);
+        totals.add(terms.total());
+        docs.put(profile.getId(), doc);
+        for (int i = 0; i < terms.size(); i++) {
+            Postings list = postings.get(terms.termIds[i]);
+            if (list == null) {
+                list = new Postings();
+                postings.put(terms.termIds[i], list);
+            }
+            list.add(doc, terms.counts[i], terms.total());
+        }
+    }
+
+    /**
+     * Adds all users of a collection.
+     * @param corpus users to add
+     */
+    public void addAll(final Collection<TwitterUser> corpus) {
+        for (TwitterUser user : corpus) {
+            add(user);
+        }
+    }
+
+    /**
+     * Removes a user (or rather, the user with the same ID) from the index.
+     * @param user user to remove
+     * @return true if the user was in the index
+     */
+    public boolean remove(final TwitterUser user) {
+        return remove(user.getId());
+    }
+
+    /**
+     * Removes the user with an ID from the index.
+     * @param userId ID of the user to remove
+     * @return true if the user was in the index
+     */
+    public boolean remove(final long userId) {
+        Integer doc = docs.remove(userId);
+        if (doc == null) {
+            return false;
+        }
+        // Postings keep the user until they are compacted
+        users.set(doc, null);
+        profiles.set(doc, null);
+        removed++;
+        if (2 * removed > profiles.size()) {
+            compact();
+        }
+        return true;
+    }
+
+    /**
+     * @return number of users in the index
+     */
+    public int size() {
+        return docs.size();
+    }
+
+    /**
+     * Finds the indexed users whose terms are most similar to those of the
+     * given user.
+     * @param query user to find similar users for; need not be in the index
+     * @param k maximum number of users to return
+     * @return at most k users with terms in common with the query user,
+     * excluding the user itself, most similar first
+     */
+    public List<TwitterUser> candidates(final TwitterUser query, final int k) {
+        int[] hits = search(terms(new UserProfile(query, tokenizer)),
+                query.getId(), k);
+        List<TwitterUser> result = new ArrayList<TwitterUser>(hits.length);
+        for (int doc : hits) {
+            if (users.get(doc) != null) {
+                result.add(users.get(doc));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Finds the indexed users whose terms are most similar to those of the
+     * user with the given profile, as {@link #candidates(TwitterUser, int)}
+     * does.
+     * @param query profile of the user to find similar users for; need not
+     * be in the index
+     * @param k maximum number of users to return
+     * @return the profiles of at most k users with terms in common with the
+     * query user, excluding the user itself, most similar first
+     */
+    public List<UserProfile> candidates(final UserProfile query,
+            final int k) {
+        int[] hits = search(terms(query), query.getId(), k);
+        List<UserProfile> result = new ArrayList<UserProfile>(hits.length);
+        for (int doc : hits) {
+            result.add(profiles.get(doc));
+        }
+        return result;
+    }
+
+    /**
+     * Finds the indexed users most similar to the given one by comparing the
+     * candidates from {@link #candidates(TwitterUser, int)} in full.
+     * @param query user to find similar users for; need not be in the index
+     * @param k maximum number of users to return
+     * @return at most k users, most similar first
+     */
+    public List<ScoredUser> topK(final TwitterUser query, final int k) {
+        UserProfile queryProfile = new UserProfile(query, tokenizer);
+        int[] hits = search(terms(queryProfile), query.getId(), k);
+        List<ScoredUser> scored = new ArrayList<ScoredUser>(hits.length);
+        for (int doc : hits) {
+            TwitterUser candidate = users.get(doc);
+            if (candidate != null) {
+                scored.add(new ScoredUser(candidate,
+                        Similarity.computeSumilarity(queryProfile,
+                                profiles.get(doc))));
+            }
+        }
+        Collections.sort(scored);
+        return scored;
+    }
+
+    /**
+     * @return number of users scored by the last search, as opposed to
+     * skipped
+     */
+    int getScored() {
+        return scored;
+    }
+
+    /**
+     * @return the vector a user is indexed and searched by
+     */
+    static TermVector terms(final UserProfile profile) {
+        return TermVector.sum(profile.getBioTerms(), profile.getMentions(),
+                profile.getFavoriteTerms(), profile.getTweetTerms());
+    }
+
+    /**
+     * Finds the k users with the highest pseudo-cosine with a vector.
+     * @param excluded ID of a user not to return
+     * @return positions of the users in {@link #users}, best first
+     */
+    private int[] search(final TermVector query, final long excluded,
+            final int k) {
+        scored = 0;
+        List<Cursor> cursors = new ArrayList<Cursor>();
+        for (int i = 0; i < query.size(); i++) {
+            Postings list = postings.get(query.termIds[i]);
+            if (list != null) {
+                cursors.add(new Cursor(list, query.counts[i]));
+            }
+        }
+        if (k <= 0 || cursors.isEmpty()) {
+            return new int[0];
+        }
+        Integer excludedDoc = docs.get(excluded);
+        double queryTotal = query.total();
+        PriorityQueue<Hit> top = new PriorityQueue<Hit>();
+        Cursor[] order = cursors.toArray(new Cursor[cursors.size()]);
+        while (true) {
+            // Order the cursors by the user they are on; finished ones last
+            Arrays.sort(order);
+            // A user must beat the K-th best score to get in. Scores are
+            // compared as computed: division rounds monotonically, so a
+            // bound that does not beat the score as a quotient can not
+            // either as the score of a user.
+            double threshold = top.size() < k ? 0.0 : top.peek().score;
+            long bound = 0;
+            long minTotal = Long.MAX_VALUE;
+            int pivot = -1;
+            for (int i = 0; i < order.length && !order[i].done(); i++) {
+                bound += order[i].bound;
+                minTotal = Math.min(minTotal, order[i].postings.minTotal);
+                if (bound / (queryTotal + Math.max(minTotal, bound) - bound)
+                        > threshold) {
+                    pivot = i;
+                    break;
+                }
+            }
+            if (pivot < 0) {
+                // Not even all remaining terms together would do
+                break;
+            }
+            int doc = order[pivot].doc();
+            if (order[0].doc() == doc) {
+                // All terms before the pivot are on the user: score it
+                long intersection = 0;
+                for (int i = 0; i < order.length && !order[i].done() &&
+                        order[i].doc() == doc; i++) {
+                    intersection += Math.min(order[i].queryCount,
+                            order[i].count());
+                    order[i].next();
+                }
+                if (profiles.get(doc) != null &&
+                        (excludedDoc == null || doc != excludedDoc)) {
+                    scored++;
+                    double score = intersection / (queryTotal +
+                            totals.get(doc) - intersection);
+                    if (top.size() < k) {
+                        top.add(new Hit(doc, score));
+                    }
+                    else if (score > top.peek().score) {
+                        top.poll();
+                        top.add(new Hit(doc, score));
+                    }
+                }
+            }
+            else {
+                // The terms before the pivot can not make up the score of
+                // any user before it on their own: skip those users
+                for (int i = 0; i < pivot; i++) {
+                    order[i].advance(doc);
+                }
+            }
+        }
+        Hit[] hits = top.toArray(new Hit[top.size()]);
+        Arrays.sort(hits, Collections.reverseOrder());
+        int[] result = new int[hits.length];
+        for (int i = 0; i < hits.length; i++) {
+            result[i] = hits[i].doc;
+        }
+        return result;
+    }
+
+    /**
+     * Drops removed users from the postings and renumbers the others.
+     */
+    private void compact() {
+        int[] renumbered = new int[profiles.size()];
+        List<UserProfile> live = new ArrayList<UserProfile>(docs.size());
+        List<TwitterUser> liveUsers = new ArrayList<TwitterUser>(docs.size());
+        List<Long> liveTotals = new ArrayList<Long>(docs.size());
+        for (int doc = 0; doc < profiles.size(); doc++) {
+            UserProfile profile = profiles.get(doc);
+            renumbered[doc] = profile == null ? -1 : live.size();
+            if (profile != null) {
+                docs.put(profile.getId(), live.size());
+                live.add(profile);
+                liveUsers.add(users.get(doc));
+                liveTotals.add(totals.get(doc));
+            }
+        }
+        for (Iterator<Postings> it = postings.values().iterator();
+                it.hasNext();) {
+            Postings list = it.next();
+            list.renumber(renumbered, liveTotals);
+            if (list.size == 0) {
+                it.remove();
+            }
+        }
+        profiles.clear();
+        profiles.addAll(live);
+        users.clear();
+        users.addAll(liveUsers);
+        totals.clear();
+        totals.addAll(liveTotals);
+        removed = 0;
+    }
+
+    /**
+     * The users using a term, in ascending order, and the frequency of the
+     * term for each of them.
+     */
+    private static final class Postings
+    {
+        /**
+         * @param total sum of the frequencies of all terms of the user
+         */
+        void add(final int doc, final int count, final long total) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, 2 * size);
+                counts = Arrays.copyOf(counts, 2 * size);
+            }
+            docs[size] = doc;
+            counts[size++] = count;
+            max = Math.max(max, count);
+            minTotal = Math.min(minTotal, total);
+        }
+
+        /**
+         * Maps every user to its new number, dropping those mapped to -1.
+         * @param totals totals of the users by new number
+         */
+        void renumber(final int[] renumbered, final List<Long> totals) {
+            int n = 0;
+            max = 0;
+            minTotal = Long.MAX_VALUE;
+            for (int i = 0; i < size; i++) {
+                int doc = renumbered[docs[i]];
+                if (doc >= 0) {
+                    docs[n] = doc;
+                    counts[n++] = counts[i];
+                    max = Math.max(max, counts[i]);
+                    minTotal = Math.min(minTotal, totals.get(doc));
+                }
+            }
+            size = n;
+        }
+
+        int[] docs = new int[4];
+        int[] counts = new int[4];
+        int size;
+
+        /** Highest frequency of the term, which bounds its contribution */
+        int max;
+
+        /** Smallest total of any user in the postings; removing users does
+         * not raise it until the postings are compacted */
+        long minTotal = Long.MAX_VALUE;
+    }
+
+    /**
+     * Position in the postings of a query term.
+     */
+    private static final class Cursor implements Comparable<Cursor>
+    {
+        Cursor(final Postings postings, final int queryCount) {
+            this.postings = postings;
+            this.queryCount = queryCount;
+            bound = Math.min(queryCount, postings.max);
+        }
+
+        boolean done() {
+            return position >= postings.size;
+        }
+
+        int doc() {
+            return postings.docs[position];
+        }
+
+        int count() {
+            return postings.counts[position];
+        }
+
+        void next() {
+            position++;
+        }
+
+        /**
+         * Moves to the first user at or after a given one, by galloping
+         * ahead and then searching the last step.
+         */
+        void advance(final int target) {
+            int[] docs = postings.docs;
+            int size = postings.size;
+            int low = position;
+            int high = position;
+            for (int step = 1; high < size && docs[high] < target;
+                    step <<= 1) {
+                low = high + 1;
+                high += step;
+            }
+            int pos = Arrays.binarySearch(docs, low,
+                    Math.min(high + 1, size), target);
+            position = pos >= 0 ? pos : -(pos + 1);
+        }
+
+        public int compareTo(final Cursor other) {
+            int doc = done() ? Integer.MAX_VALUE : doc();
+            int otherDoc = other.done() ? Integer.MAX_VALUE : other.doc();
+            return doc < otherDoc ? -1 : doc > otherDoc ? 1 : 0;
+        }
+
+        final Postings postings;
+        final int queryCount;
+
+        /** Most the term can add to the intersection of any user */
+        final long bound;
+        private int position;
+    }
+
+    /**
+     * A scored user; hits sort by ascending score, then by descending
+     * position, so that the worst is at the head of a priority queue and
+     * users added first win ties.
+     */
+    private static final class Hit implements Comparable<Hit>
+    {
+        Hit(final int doc, final double score) {
+            this.doc = doc;
+            this.score = score;
+        }
+
+        public int compareTo(final Hit other) {
+            int cmp = Double.compare(score, other.score);
+            return cmp != 0 ? cmp : Integer.compare(other.doc, doc);
+        }
+
+        final int doc;
+        final double score;
+    }
+
+    private final Tokenizer tokenizer;
+
+
+    /** Postings of every term */
+    private final Map<Integer, Postings> postings =
+        new HashMap<Integer, Postings>();
+
+    /** Profiles of the indexed users by their position in the postings, for
+     * ranking them in full; null once removed */
+    private final List<UserProfile> profiles = new ArrayList<UserProfile>();
+
+    /** Indexed users by position; null once removed, or if only the profile
+     * was added */
+    private final List<TwitterUser> users = new ArrayList<TwitterUser>();
+
+    /** Sum of the frequencies of all terms of every user, by position */
+    private final List<Long> totals = new ArrayList<Long>();
+
+    /** Positions of the indexed users by ID */
+    private final Map<Long, Integer> docs = new HashMap<Long, Integer>();
+
+    /** Number of removed users still in the postings */
+    private int removed;
+
+    /** Number of users scored by the last search */
+    private int scored;
+}
@@ -0,0 +1,159 @@
+//=============================================================================
+// Coding sample for Stefaan Heyvaert.
+//=============================================================================
+package util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Distribution of durations, recorded from any number of threads without
+ * locks, in the manner of HdrHistogram: durations under {@value #LINEAR}
+ * nanoseconds are counted exactly, and longer ones in buckets as wide as a
+ * 64th of the value, so every power of two takes 64 counters and percentiles
+ * are within 1.6% of the true value up to about 18 minutes, the longest
+ * duration told apart. Recording is an array index computed from the
+ * position of the highest bit and an atomic increment.
+ * <p>
+ * Reading while other threads record gives values that are each accurate,
+ * but not necessarily consistent with each other.
+ *
+ * @author sh
+ */
+public final class LatencyHistogram
+{
+    /**
+     * Records a duration.
+     * @param nanos duration in nanoseconds; negative values count as 0
+     */
+    public void record(final long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucket(value));
+        total.add(value);
+        long max = this.max.get();
+        while (value > max && !this.max.compareAndSet(max, value)) {
+            max = this.max.get();
+        }
+    }
+
+    /**
+     * @return number of durations recorded
+     */
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * @return sum of the durations recorded, in nanoseconds
+     */
+    public long getTotal() {
+        return total.sum();
+    }
+
+    /**
+     * @return longest duration recorded, in nanoseconds
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @return mean duration, in nanoseconds, or 0 if none was recorded
+     */
+    public double getMean() {
+        long count = getCount();
+        return count == 0 ? 0.0 : getTotal() / (double) count;
+    }
+
+    /**
+     * @param percentile a percentile between 0 and 100
+     * @return duration in nanoseconds that the given percentage of the
+     * durations recorded do not exceed, rounded up to the end of its bucket
+     * but not beyond the longest duration, or 0 if none was recorded
+     */
+    public long getPercentile(final double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException(
+                "Percentile must be between 0 and 100");
+        }
+        long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(highestValue(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Forgets all durations recorded. Durations recorded meanwhile may be
+     * partly forgotten.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        total.reset();
+        max.set(0);
+    }
+
+    /**
+     * @return index of the counter of a value
+     */
+    static int bucket(final long value) {
+        if (value < LINEAR) {
+            return (int) value;
+        }
+        long v = Math.min(value, MAX_VALUE);
+        // Keep the highest SUB_BITS + 1 bits: the top one is always set
+        int shift = 63 - Long.numberOfLeadingZeros(v) - SUB_BITS;
+        int sub = (int) (v >>> shift) - SUB_BUCKETS;
+        return LINEAR + (shift - 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @return largest value counted by a counter
+     */
+    static long highestValue(final int bucket) {
+        if (bucket < LINEAR) {
+            return bucket;
+        }
+        int shift = (bucket - LINEAR) / SUB_BUCKETS + 1;
+        long sub = (bucket - LINEAR) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    /** Bits of precision beyond the highest one */
+    private static final int SUB_BITS = 6;
+
+    /** Counters per power of two */
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    /** Values counted exactly */
+    static final int LINEAR = 2 * SUB_BUCKETS;
+
+    /** Longest duration told apart from longer ones: about 18 minutes */
+    private static final long MAX_VALUE = (1L << 40) - 1;
+
+    private static final int BUCKETS = bucket(MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+}
@@ -0,0 +1,271 @@
+//=============================================================================
+// Coding sample for Stefaan Heyvaert.
+//=============================================================================
+package util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import text.TokenSink;
+import text.TokenType;
+import text.Tokenizer;
+
+import client.TwitterUser;
+
+/**
+ * Locality-sensitive hashing index for finding the users of a corpus that are
+ * most similar to a given user without comparing it to every one of them.
+ * <p>
+ * Each user is described by three MinHash signatures: of its follower IDs, of
+ * its friend IDs and of the set of tokens in its tweets. Every signature is cut
+ * into {@code bands} groups of {@code rows} consecutive bins, and each group
+ * is hashed into a bucket. Users whose signatures agree on all rows of at least
+ * one band share a bucket and become candidates for each other; the probability
+ * of that happening for two sets with Jaccard coefficient {@code J} is
+ * {@code 1 - (1 - J^rows)^bands}, which rises steeply around
+ * {@code (1/bands)^(1/rows)}.
+ * <p>
+ * {@link #topK(TwitterUser, int)} then ranks the candidates with the exact
+ * scorer, {@link Similarity#computeSumilarity(UserProfile, UserProfile)}. The
+ * profiles of indexed users are kept for subsequent queries, so an indexed
+ * user must be added again after it changes. Users can be added and removed
+ * at any time. The index is not synchronized.
+ *
+ * @author sh
+ */
+public class LshIndex
+{
+    /**
+     * Creates an index using the default hash family, 64 bands and 2 rows per
+     * band, which makes users with a Jaccard coefficient above roughly 0.12 on
+     * any of the three signatures likely candidates.
+     * @param tokenizer tokenizer for the tweets, also used for re-ranking
+     */
+    public LshIndex(final Tokenizer tokenizer) {
+        this(tokenizer, MinHash.getDefault(), 64, 2);
+    }
+
+    /**
+     * @param tokenizer tokenizer for the tweets, also used for re-ranking
+     * @param minHash hash family of the signatures; follower and friend
+     * signatures kept by {@link TwitterUser} are reused if they have the same
+     * family
+     * @param bands number of bands per signature
+     * @param rows number of bins per band
+     */
+    public LshIndex(final Tokenizer tokenizer, final MinHash minHash,
+            final int bands, final int rows) {
+        if (bands < 1 || rows < 1 || bands * rows > minHash.getBins()) {
+            throw new IllegalArgumentException("Need bands * rows <= " +
+                    minHash.getBins() + " bins");
+        }
+        this.tokenizer = tokenizer;
+        this.profiles = new ProfileCache(tokenizer);
+        this.minHash = minHash;
+        this.bands = bands;
+        this.rows = rows;
+        for (int i = 0; i < CHANNELS * bands; i++) {
+            tables.add(new HashMap<Long, Set<Long>>());
+        }
+    }
+
+    /**
+     * Adds a user to the index, replacing any user with the same ID.
+     * @param user user to add
+     */
+    public void add(final TwitterUser user) {
+        remove(user);
+        long[] keys = bandKeys(user);
+        for (int t = 0; t < keys.length; t++) {
+            if (keys[t] == NO_KEY) {
+                continue;
+            }
+            Map<Long, Set<Long>> table = tables.get(t);
+            Set<Long> bucket = table.get(keys[t]);
+            if (bucket == null) {
+                bucket = new HashSet<Long>();
+                table.put(keys[t], bucket);
+            }
+            bucket.add(user.getId());
+        }
+        users.put(user.getId(), user);
+        userKeys.put(user.getId(), keys);
+        profiles.invalidate(user.getId());
+    }
+
+    /**
+     * Adds all users of a collection.
+     * @param corpus users to add
+     */
+    public void addAll(final Collection<TwitterUser> corpus) {
+        for (TwitterUser user : corpus) {
+            add(user);
+        }
+    }
+
+    /**
+     * Removes a user (or rather, the user with the same ID) from the index.
+     * @param user user to remove
+     * @return true if the user was in the index
+     */
+    public boolean remove(final TwitterUser user) {
+        long[] keys = userKeys.remove(user.getId());
+        if (keys == null) {
+            return false;
+        }
+        users.remove(user.getId());
+        profiles.invalidate(user.getId());
+        for (int t = 0; t < keys.length; t++) {
+            if (keys[t] == NO_KEY) {
+                continue;
+            }
+            Map<Long, Set<Long>> table = tables.get(t);
+            Set<Long> bucket = table.get(keys[t]);
+            bucket.remove(user.getId());
+            if (bucket.isEmpty()) {
+                table.remove(keys[t]);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return number of users in the index
+     */
+    public int size() {
+        return users.size();
+    }
+
+    /**
+     * Returns the indexed users sharing at least one bucket with the given
+     * user, excluding the user itself.
+     * @param query user to find candidates for; need not be in the index
+     * @return the candidate shortlist
+     */
+    public List<TwitterUser> candidates(final TwitterUser query) {
+        long[] keys = userKeys.get(query.getId());
+        if (keys == null) {
+            keys = bandKeys(query);
+        }
+        Set<Long> ids = new HashSet<Long>();
+        for (int t = 0; t < keys.length; t++) {
+            if (keys[t] == NO_KEY) {
+                continue;
+            }
+            Set<Long> bucket = tables.get(t).get(keys[t]);
+            if (bucket != null) {
+                ids.addAll(bucket);
+            }
+        }
+        ids.remove(query.getId());
+        List<TwitterUser> result = new ArrayList<TwitterUser>(ids.size());
+        for (Long id : ids) {
+            result.add(users.get(id));
+        }
+        return result;
+    }
+
+    /**
+     * Finds the indexed users most similar to the given one by scoring the
+     * candidates from {@link #candidates(TwitterUser)} exactly.
+     * @param query user to find similar users for; need not be in the index
+     * @param k maximum number of users to return
+     * @return at most k users, most similar first
+     */
+    public List<ScoredUser> topK(final TwitterUser query, final int k) {
+        List<ScoredUser> scored = new ArrayList<ScoredUser>();
+        UserProfile queryProfile = new UserProfile(query, tokenizer);
+        for (TwitterUser candidate : candidates(query)) {
+            scored.add(new ScoredUser(candidate, Similarity.computeSumilarity(
+                queryProfile, profiles.get(candidate))));
+        }
+        Collections.sort(scored);
+        return scored.size() > k ?
+                new ArrayList<ScoredUser>(scored.subList(0, k)) : scored;
+    }
+
+    /**
+     * Computes the bucket key of every band of every signature of a user.
+     * Signatures of empty sets get {@link #NO_KEY} for all their bands.
+     */
+    private long[] bandKeys(final TwitterUser user) {
+        long[] keys = new long[CHANNELS * bands];
+        fillKeys(sketch(user.getFollowerSketch(), user.getFollowerIds()),
+                keys, FOLLOWERS);
+        fillKeys(sketch(user.getFriendSketch(), user.getFriendIds()),
+                keys, FRIENDS);
+        final MinHashSketch tokens = minHash.newSketch();
+        TokenSink sink = new TokenSink() {
+            public void token(CharSequence token, TokenType type) {
+                tokens.add(token);
+            }
+        };
+        for (String tweet : user.getTweets()) {
+            tokenizer.tokenize(tweet, sink);
+        }
+        fillKeys(tokens, keys, TWEETS);
+        return keys;
+    }
+
+    /**
+     * Returns the user's own signature if it was built by the index's hash
+     * family, or a new one otherwise.
+     */
+    private MinHashSketch sketch(final MinHashSketch own, final SortedIdSet ids) {
+        if (own.getFamily().equals(minHash)) {
+            return own;
+        }
+        MinHashSketch sketch = minHash.newSketch();
+        sketch.addAll(ids);
+        return sketch;
+    }
+
+    private void fillKeys(final MinHashSketch sketch, final long[] keys,
+            final int channel) {
+        int[] signature = sketch.densified();
+        for (int b = 0; b < bands; b++) {
+            int slot = channel * bands + b;
+            if (signature == null) {
+                keys[slot] = NO_KEY;
+                continue;
+            }
+            long key = b;
+            for (int r = 0; r < rows; r++) {
+                key = minHash.hash(key ^ (signature[b * rows + r] & 0xffffffffL));
+            }
+            keys[slot] = key == NO_KEY ? key + 1 : key;
+        }
+    }
+
+    private static final int FOLLOWERS = 0;
+    private static final int FRIENDS = 1;
+    private static final int TWEETS = 2;
+    private static final int CHANNELS = 3;
+
+    /** Key of bands of empty signatures, which are not indexed */
+    private static final long NO_KEY = 0L;
+
+    private final Tokenizer tokenizer;
+    private final MinHash minHash;
+
+    /** Profiles of the indexed users, built the first time they are ranked */
+    private final ProfileCache profiles;
+    private final int bands;
+    private final int rows;
+
+    /** One table per band of each signature: bucket key to user IDs */
+    private final List<Map<Long, Set<Long>>> tables =
+        new ArrayList<Map<Long, Set<Long>>>();
+
+    /** Indexed users by ID */
+    private final Map<Long, TwitterUser> users = new HashMap<Long, TwitterUser>();
+
+    /** Bucket keys of the indexed users, needed to remove them */
+    private final Map<Long, long[]> userKeys = new HashMap<Long, long[]>();
+}
@@ -0,0 +1,307 @@
+//=============================================================================
+// Coding sample for Stefaan Heyvaert.
+//=============================================================================
+package util;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Records where the time of a run goes: fetching users, tokenizing their
+ * text, and scoring pairs, down to each of the six scores a similarity is
+ * made of. Each {@link Stage} has its {@link StageStats}: a histogram of its
+ * durations, the number of items it processed (tokens for tokenization, so
+ * that the report shows tokens per second) and, for the stages that run on
+ * a single thread, the bytes it allocated.
+ * <p>
+ * Code is timed like this:
+ * <pre>
+ *     long start = Metrics.start();
+ *     ...
+ *     Metrics.record(Metrics.Stage.SCORE, start);
+ * </pre>
+ * Metrics are only recorded if the system property {@value #PROPERTY} is
+ * {@code true} when the class is loaded. Otherwise {@link #ENABLED} is a
+ * false constant, every method returns at once, and the JIT compiler removes
+ * the calls altogether, so instrumented code runs as fast as it did before.
+ * <p>
+ * The statistics can be read through JMX once {@link #registerMBeans()} has
+ * been called, printed with {@link #report(boolean)}, or printed
+ * periodically with {@link #startDump(PrintStream, long, TimeUnit,
+ * boolean)}.
+ *
+ * @author sh
+ */
+public final class Metrics
+{
+    /**
+     * The parts of a run that are timed.
+     */
+    public enum Stage
+    {
+        /** Fetching a user, from the first request to the last response */
+        FETCH("fetch"),
+
+        /** One request to the API */
+        REQUEST("fetch.request"),
+
+        /** Tokenizing the text of a user into a profile; items are tokens */
+        TOKENIZE("tokenize"),
+
+        /** Scoring a pair of users */
+        SCORE("score"),
+
+        SCORE_FOLLOWERS("score.followers"),
+        SCORE_FRIENDS("score.friends"),
+        SCORE_BIO("score.bio"),
+        SCORE_MENTIONS("score.mentions"),
+        SCORE_FAVORITES("score.favorites"),
+        SCORE_TWEETS("score.tweets");
+
+        private Stage(final String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        private final String name;
+    }
+
+    /**
+     * @return the time to pass to {@link #record(Stage, long)} at the end of
+     * the code timed
+     */
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records a run of a stage.
+     * @param stage the stage
+     * @param start what {@link #start()} returned when the stage started
+     */
+    public static void record(final Stage stage, final long start) {
+        if (ENABLED) {
+            STATS[stage.ordinal()].getHistogram().record(
+                    System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @return bytes allocated by the current thread so far, to pass to
+     * {@link #record(Stage, long, long)}; 0 if not measured
+     */
+    public static long allocated() {
+        if (ENABLED && THREADS != null) {
+            return THREADS.getThreadAllocatedBytes(
+                    Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    /**
+     * Records a run of a stage that ran on the current thread, and what it
+     * allocated.
+     * @param stage the stage
+     * @param start what {@link #start()} returned when the stage started
+     * @param allocated what {@link #allocated()} returned then
+     */
+    public static void record(final Stage stage, final long start,
+            final long allocated) {
+        if (ENABLED) {
+            record(stage, start);
+            if (THREADS != null) {
+                STATS[stage.ordinal()].addAllocated(allocated() - allocated);
+            }
+        }
+    }
+
+    /**
+     * Adds to the number of items a stage processed.
+     */
+    public static void count(final Stage stage, final long items) {
+        if (ENABLED) {
+            STATS[stage.ordinal()].addItems(items);
+        }
+    }
+
+    /**
+     * @return what was recorded for a stage
+     */
+    public static StageStats get(final Stage stage) {
+        return STATS[stage.ordinal()];
+    }
+
+    /**
+     * Forgets everything recorded so far.
+     */
+    public static void reset() {
+        for (StageStats stats : STATS) {
+            stats.reset();
+        }
+    }
+
+    /**
+     * Makes the statistics of every stage available through the platform
+     * MBean server, as {@code similarity:type=Stage,name=<stage>}. Calling
+     * the method again has no effect.
+     * @throws JMException if the beans can not be registered
+     */
+    public static synchronized void registerMBeans() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (StageStats stats : STATS) {
+            ObjectName name = new ObjectName(
+                    "similarity:type=Stage,name=" + stats.getName());
+            if (!server.isRegistered(name)) {
+                server.registerMBean(stats, name);
+            }
+        }
+    }
+
+    /**
+     * Prints a report periodically, from a daemon thread.
+     * @param out where to print
+     * @param period time between reports
+     * @param unit unit of the period
+     * @param json true for JSON, false for a table
+     * @return the task printing the reports; cancel it to stop them
+     */
+    public static synchronized ScheduledFuture<?> startDump(
+            final PrintStream out, final long period, final TimeUnit unit,
+            final boolean json) {
+        if (dumper == null) {
+            dumper = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "metrics-dump");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        }
+        return dumper.scheduleAtFixedRate(new Runnable() {
+            public void run() {
+                out.println(report(json));
+                out.flush();
+            }
+        }, period, period, unit);
+    }
+
+    /**
+     * @param json true for JSON, false for a table
+     * @return the statistics of the stages that ran
+     */
+    public static String report(final boolean json) {
+        return json ? jsonReport() : textReport();
+    }
+
+    private static String textReport() {
+        StringBuilder report = new StringBuilder(String.format(Locale.ROOT,
+                "%-16s %8s %10s %10s %10s %10s %12s %10s%n", "stage",
+                "count", "mean us", "p50 us", "p99 us", "max us", "items/s",
+                "alloc KB"));
+        for (StageStats stats : STATS) {
+            if (stats.getCount() == 0) {
+                continue;
+            }
+            report.append(String.format(Locale.ROOT,
+                    "%-16s %8d %10.1f %10.1f %10.1f %10.1f %12.0f %10d%n",
+                    stats.getName(), stats.getCount(), stats.getMeanMicros(),
+                    stats.getMedianMicros(), stats.getP99Micros(),
+                    stats.getMaxMicros(), stats.getItemsPerSecond(),
+                    stats.getAllocatedBytes() / 1024));
+        }
+        return report.toString();
+    }
+
+    private static String jsonReport() {
+        StringBuilder report = new StringBuilder("{\"time\":")
+            .append(System.currentTimeMillis()).append(",\"stages\":{");
+        boolean first = true;
+        for (StageStats stats : STATS) {
+            if (stats.getCount() == 0) {
+                continue;
+            }
+            if (!first) {
+                report.append(',');
+            }
+            first = false;
+            report.append(String.format(Locale.ROOT, "\"%s\":{\"count\":%d,"
+                    + "\"meanMicros\":%.1f,\"p50Micros\":%.1f,"
+                    + "\"p90Micros\":%.1f,\"p99Micros\":%.1f,"
+                    + "\"maxMicros\":%.1f,\"items\":%d,"
+                    + "\"itemsPerSecond\":%.1f,\"allocatedBytes\":%d}",
+                    stats.getName(), stats.getCount(), stats.getMeanMicros(),
+                    stats.getMedianMicros(), stats.getP90Micros(),
+                    stats.getP99Micros(), stats.getMaxMicros(),
+                    stats.getItems(), stats.getItemsPerSecond(),
+                    stats.getAllocatedBytes()));
+        }
+        return report.append("}}").toString();
+    }
+
+    /**
+     * @return the bean measuring allocations, or null if the virtual machine
+     * can not
+     */
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        if (!ENABLED) {
+            return null;
+        }
+        try {
+            ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (bean instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean threads =
+                    (com.sun.management.ThreadMXBean) bean;
+                if (threads.isThreadAllocatedMemorySupported()) {
+                    threads.setThreadAllocatedMemoryEnabled(true);
+                    return threads;
+                }
+            }
+        }
+        catch (LinkageError e) {
+            // Not a HotSpot virtual machine
+        }
+        catch (UnsupportedOperationException e) {
+            // Measuring can not be enabled
+        }
+        return null;
+    }
+
+    private Metrics() {}
+
+    /** System property enabling metrics */
+    public static final String PROPERTY = "similarity.metrics";
+
+    /** Whether metrics are recorded; constant, so that the JIT compiler
+     * removes the recording code when false */
+    public static final boolean ENABLED = Boolean.getBoolean(PROPERTY);
+
+    private static final StageStats[] STATS;
+    static {
+        Stage[] stages = Stage.values();
+        STATS = new StageStats[stages.length];
+        for (int i = 0; i < stages.length; i++) {
+            STATS[i] = new StageStats(stages[i].getName());
+        }
+    }
+
+    /** Measures allocations; null when they are not measured */
+    private static final com.sun.management.ThreadMXBean THREADS =
+        allocationBean();
+
+    private static ScheduledExecutorService dumper;
+}
@@ -0,0 +1,122 @@
+//=============================================================================
+// Coding sample for Stefaan Heyvaert.
+//=============================================================================
+package util;
+
+import java.io.Serializable;
+
+/**
+ * A seeded family of hash functions used to build {@link MinHashSketch}
+ * instances. Two sketches can only be compared if they were created by equal
+ * families, i.e. with the same number of bins and the same seed.
+ * <p>
+ * The sketches use one-permutation hashing: every value is hashed once, the
+ * high bits of the hash select one of {@code k} bins, and each bin keeps the
+ * minimum of the low bits of the values that fall into it. This costs a single
+ * hash per value added (rather than {@code k} as in classic MinHash), while the
+ * fraction of bins in which two sketches agree still estimates the Jaccard
+ * coefficient of the underlying sets with a standard error of about
+ * {@code sqrt(J(1-J)/k)}.
+ *
+ * @author sh
+ */
+public final class MinHash implements Serializable
+{
+    /**
+     * @param bins number of bins ({@code k}) in the sketches; larger values
+     * give more accurate estimates but use 4 bytes per bin per sketch
+     * @param seed selects a member of the hash family
+     */
+    public MinHash(final int bins, final long seed) {
+        if (bins < 1) {
+            throw new IllegalArgumentException("Number of bins must be positive");
+        }
+        this.bins = bins;
+        this.seed = seed;
+    }
+
+    /**
+     * @return the family used by {@link client.TwitterUser} unless configured
+     * otherwise: 1024 bins, which keeps the standard error of the estimates
+     * below 1.6% (below 1% for coefficients under 0.1).
+     */
+    public static MinHash getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @return a new, empty sketch using this hash family
+     */
+    public MinHashSketch newSketch() {
+        return new MinHashSketch(this);
+    }
+
+    public int getBins() {
+        return bins;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Hashes a value with the member of the family selected by the seed
+     * (the finalizer of the SplitMix64 generator, which mixes every input bit
+     * into every output bit).
+     * @param value value to hash
+     * @return a 64-bit hash
+     */
+    public long hash(final long value) {
+        long h = value * GOLDEN_GAMMA + seed;
+        h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+        h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+        return h ^ (h >>> 31);
+    }
+
+    /**
+     * Hashes a string (typically a token) with the member of the family
+     * selected by the seed.
+     * @param value string to hash
+     * @return a 64-bit hash
+     */
+    public long hash(final CharSequence value) {
+        // FNV-1a over the characters, then mixed like numeric values
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0, n = value.length(); i < n; i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return hash(h);
+    }
+
+    /**
+     * @return the bin selected by a hash value, using its high 32 bits
+     */
+    int bin(final long hash) {
+        return (int) (((hash >>> 32) * bins) >>> 32);
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (!(obj instanceof MinHash)) {
+            return false;
+        }
+        MinHash other = (MinHash) obj;
+        return bins == other.bins && seed == other.seed;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * bins + (int) (seed ^ (seed >>> 32));
+    }
+
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private static final MinHash DEFAULT = new MinHash(1024, 0x2545f4914f6cdd1dL);
+
+    /** Required for Serializable */
+    private static final long serialVersionUID = 1L;
+
+    private final int bins;
+    private final long seed;
+}
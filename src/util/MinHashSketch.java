@@ -0,0 +1,228 @@
+//=============================================================================
+// Coding sample for Stefaan Heyvaert.
+//=============================================================================
+package util;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * A MinHash signature of a set of IDs, built with a {@link MinHash} family.
+ * Values can be added at any time (the signature of a growing set is simply
+ * updated), but not removed.
+ * <p>
+ * Comparing two sketches with {@link #jaccard(MinHashSketch)} takes time
+ * proportional to the number of bins, regardless of the size of the sets they
+ * summarize.
+ *
+ * @author sh
+ */
+public class MinHashSketch implements Serializable
+{
+    /**
+     * Creates an empty sketch. Use {@link MinHash#newSketch()}.
+     */
+    MinHashSketch(final MinHash family) {
+        this.family = family;
+        mins = new int[family.getBins()];
+        Arrays.fill(mins, EMPTY);
+    }
+
+    /**
+     * Adds a value to the summarized set.
+     * @param value an ID
+     */
+    public void add(final long value) {
+        addHash(family.hash(value));
+    }
+
+    private void addHash(final long h) {
+        int bin = family.bin(h);
+        int low = (int) h;
+        // Unsigned comparison, so that EMPTY (all bits set) is the largest
+        if (low + Integer.MIN_VALUE < mins[bin] + Integer.MIN_VALUE) {
+            mins[bin] = low;
+        }
+        count++;
+    }
+
+    /**
+     * Adds a string (typically a token) to the summarized set.
+     * @param value a string
+     */
+    public void add(final CharSequence value) {
+        addHash(family.hash(value));
+    }
+
+    /**
+     * Adds all IDs of a set.
+     * @param ids set of IDs
+     */
+    public void addAll(final SortedIdSet ids) {
+        long[] array = ids.array();
+        for (int i = 0, n = ids.size(); i < n; i++) {
+            add(array[i]);
+        }
+    }
+
+    /**
+     * Adds all IDs of a collection.
+     * @param ids collection of IDs
+     */
+    public void addAll(final Collection<Long> ids) {
+        if (ids instanceof SortedIdSet) {
+            addAll((SortedIdSet) ids);
+            return;
+        }
+        for (Long id : ids) {
+            add(id.longValue());
+        }
+    }
+
+    /**
+     * @return true if no values have been added to the sketch
+     */
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    public MinHash getFamily() {
+        return family;
+    }
+
+    /**
+     * @param other another sketch
+     * @return true if the other sketch was built by an equal hash family
+     */
+    public boolean isCompatible(final MinHashSketch other) {
+        return other != null && family.equals(other.family);
+    }
+
+    /**
+     * Estimates the Jaccard coefficient of the sets summarized by the current
+     * and another sketch: the number of bins holding the same minimum divided
+     * by the number of bins that are not empty in both sketches.
+     * @param other sketch built by the same hash family
+     * @return an estimate between 0 and 1
+     * @throws IllegalArgumentException if the sketches are not compatible
+     */
+    public double jaccard(final MinHashSketch other) {
+        checkCompatible(other);
+        int matches = 0;
+        int used = 0;
+        int[] otherMins = other.mins;
+        for (int i = 0; i < mins.length; i++) {
+            int a = mins[i];
+            int b = otherMins[i];
+            if (a != EMPTY || b != EMPTY) {
+                used++;
+                if (a == b) {
+                    matches++;
+                }
+            }
+        }
+        return used == 0 ? 0.0 : matches / (double) used;
+    }
+
+    /**
+     * Returns a bound on the error of {@link #jaccard(MinHashSketch)}: two
+     * standard errors of the estimate, i.e. the true value lies within this
+     * distance of the estimate in about 95% of the cases.
+     * @param other sketch built by the same hash family
+     * @param estimate value returned by {@link #jaccard(MinHashSketch)}
+     * @return the error bound
+     */
+    public double errorBound(final MinHashSketch other, final double estimate) {
+        checkCompatible(other);
+        int used = 0;
+        for (int i = 0; i < mins.length; i++) {
+            if (mins[i] != EMPTY || other.mins[i] != EMPTY) {
+                used++;
+            }
+        }
+        if (used == 0) {
+            return 0.0;
+        }
+        // The variance vanishes for estimates of exactly 0 or 1, which would
+        // understate the error, so never go below one bin's worth.
+        double variance = Math.max(estimate * (1.0 - estimate), 1.0 / used) / used;
+        return 2.0 * Math.sqrt(variance);
+    }
+
+    /**
+     * @return an independent copy of the current sketch
+     */
+    public MinHashSketch copy() {
+        MinHashSketch copy = new MinHashSketch(family);
+        System.arraycopy(mins, 0, copy.mins, 0, mins.length);
+        copy.count = count;
+        return copy;
+    }
+
+    /**
+     * Returns the signature with empty bins filled in from the nearest 
+     * non-empty bin to their right (wrapping around), offset by the distance
+     * to it. Sketches of small sets leave most bins empty, and the filled-in
+     * signature keeps the property that two sketches agree in a bin with a
+     * probability close to the Jaccard coefficient of their sets, which is
+     * what banding in {@link LshIndex} relies on.
+     * @return the densified signature, or null if the sketch is empty
+     */
+    int[] densified() {
+        int n = mins.length;
+        int start = -1;
+        for (int i = 0; i < n; i++) {
+            if (mins[i] != EMPTY) {
+                start = i;
+                break;
+            }
+        }
+        if (start < 0) {
+            return null;
+        }
+        int[] dense = new int[n];
+        int next = mins[start];
+        int distance = 0;
+        dense[start] = next;
+        // Walk backwards (circularly) from the first non-empty bin so that
+        // "next" is always the nearest non-empty bin to the right.
+        for (int step = 1; step < n; step++) {
+            int i = (start - step + n) % n;
+            if (mins[i] != EMPTY) {
+                next = mins[i];
+                distance = 0;
+                dense[i] = next;
+            }
+            else {
+                distance++;
+                dense[i] = next + distance * DENSIFY_OFFSET;
+            }
+        }
+        return dense;
+    }
+
+    private void checkCompatible(final MinHashSketch other) {
+        if (!isCompatible(other)) {
+            throw new IllegalArgumentException(
+                "Sketches were built by different hash families");
+        }
+    }
+
+    /** Marks a bin no value has been hashed into */
+    static final int EMPTY = -1;
+
+    /** Odd constant separating values borrowed from different distances */
+    private static final int DENSIFY_OFFSET = 0x6a09e667;
+
+    /** Required for Serializable */
+    private static final long serialVersionUID = 1L;
+
+    private final MinHash family;
+
+    /** Per bin, the minimum (unsigned) low 32 bits of the hashes */
+    final int[] mins;
+
+    /** Number of values added (including duplicates) */
+    private long count;
+}
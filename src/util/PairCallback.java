@@ -0,0 +1,23 @@
+//=============================================================================
+// Coding sample for Stefaan Heyvaert.
+//=============================================================================
+package util;
+
+/**
+ * Receives the results of a batch similarity computation one pair at a time,
+ * see {@link SimilarityMatrix#computePairs(java.util.List, PairCallback)}.
+ *
+ * @author sh
+ */
+public interface PairCallback
+{
+    /**
+     * Called once for every pair of users {@code i < j}. Calls are made from
+     * several threads at once and in no particular order, so implementations
+     * must be thread-safe.
+     * @param i index of the first user in the list being scored
+     * @param j index of the second user in the list being scored
+     * @param result similarity of the two users
+     */
+    void pairScored(int i, int j, SimilarityResult result);
+}
@@ -0,0 +1,336 @@
+//=============================================================================
+// Coding sample for Stefaan Heyvaert.
+//=============================================================================
+package util;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import text.Tokenizer;
+
+import client.TwitterUser;
+import client.TwitterUserListener;
+
+/**
+ * Keeps the similarity of a pair of users up to date as the users change,
+ * for jobs that score the same pairs over and over while only a few
+ * followers or tweets change in between.
+ * <p>
+ * The tracker compares the users in full once, keeping what the similarity
+ * is made of rather than just the result: the number of followers and of
+ * friends the users have in common, and for the biographies, mentions,
+ * favorites and tweets the frequency of every term in each user and the sum
+ * of the smaller frequencies. It then listens to both users (see
+ * {@link TwitterUser#addListener(TwitterUserListener)}) and updates these
+ * counts from each change, in time proportional to the size of the change
+ * rather than of the users. {@link #getResult()} turns the counts into the
+ * result {@link Similarity#computeSumilarity(TwitterUser, TwitterUser,
+ * Tokenizer)} would give, without estimates.
+ * <p>
+ * Trackers are thread-safe, but like all changes to a user, changes to the
+ * pair must not be made from several threads at once. Call {@link #close()}
+ * to stop tracking.
+ *
+ * @author sh
+ */
+public final class PairTracker
+{
+    /**
+     * Starts tracking two users, using the default term dictionary.
+     * @param t1 first user
+     * @param t2 second user
+     * @param tokenizer tokenizer for the text fields
+     */
+    public PairTracker(final TwitterUser t1, final TwitterUser t2,
+            final Tokenizer tokenizer) {
+        this(t1, t2, tokenizer, TermDictionary.getDefault());
+    }
+
+    /**
+     * Starts tracking two users.
+     * @param t1 first user
+     * @param t2 second user
+     * @param tokenizer tokenizer for the text fields
+     * @param dictionary dictionary assigning IDs to the terms
+     */
+    public PairTracker(final TwitterUser t1, final TwitterUser t2,
+            final Tokenizer tokenizer, final TermDictionary dictionary) {
+        this.t1 = t1;
+        this.t2 = t2;
+        this.tokenizer = tokenizer;
+        this.dictionary = dictionary;
+        builder = new TermVectorBuilder(dictionary);
+        synchronized (this) {
+            if (t1 == t2) {
+                // Nothing to track: users are identical to themselves
+                return;
+            }
+            UserProfile[] profiles = {
+                new UserProfile(t1, tokenizer, dictionary),
+                new UserProfile(t2, tokenizer, dictionary)
+            };
+            SortedIdSet ids1 = profiles[0].getFollowerIds();
+            SortedIdSet ids2 = profiles[1].getFollowerIds();
+            sharedFollowers = Similarity.intersectionSize(ids1.array(),
+                    ids1.size(), ids2.array(), ids2.size());
+            followers[0] = ids1.size();
+            followers[1] = ids2.size();
+            ids1 = profiles[0].getFriendIds();
+            ids2 = profiles[1].getFriendIds();
+            sharedFriends = Similarity.intersectionSize(ids1.array(),
+                    ids1.size(), ids2.array(), ids2.size());
+            friends[0] = ids1.size();
+            friends[1] = ids2.size();
+            for (int side = 0; side < 2; side++) {
+                bio.add(side, profiles[side].getBioTerms(), 1);
+                mentions.add(side, profiles[side].getMentions(), 1);
+                favorites.add(side, profiles[side].getFavoriteTerms(), 1);
+                tweets.add(side, profiles[side].getTweetTerms(), 1);
+            }
+            t1.addListener(listener);
+            t2.addListener(listener);
+        }
+    }
+
+    /**
+     * @return the similarity of the users as they are now
+     */
+    public synchronized SimilarityResult getResult() {
+        if (t1.equals(t2)) {
+            return Similarity.identical();
+        }
+        SimilarityResult result = new SimilarityResult();
+        result.setSharedFollowers(
+                jaccard(sharedFollowers, followers[0], followers[1]));
+        result.setFollowerCount(followers[0], followers[1]);
+        result.setSharedFriends(
+                jaccard(sharedFriends, friends[0], friends[1]));
+        result.setFriendCount(friends[0], friends[1]);
+        result.setFollowerCoverage(
+                t1.getFollowerCoverage(), t2.getFollowerCoverage());
+        result.setFriendCoverage(
+                t1.getFriendCoverage(), t2.getFriendCoverage());
+        result.setTweetCoverage(
+                t1.getTweetCoverage(), t2.getTweetCoverage());
+        result.setFavoriteCoverage(
+                t1.getFavoriteCoverage(), t2.getFavoriteCoverage());
+        result.setBioSimilarity(bio.similarity());
+        result.setSharedMentions(mentions.similarity());
+        result.setFavoriteSimilarity(favorites.similarity());
+        result.setTweetSimilarity(tweets.similarity());
+        result.computeFinalScore();
+        return result;
+    }
+
+    public TwitterUser getFirstUser() {
+        return t1;
+    }
+
+    public TwitterUser getSecondUser() {
+        return t2;
+    }
+
+    /**
+     * Stops listening to the users; the result no longer changes, except for
+     * the coverage, which is read from the users.
+     */
+    public void close() {
+        t1.removeListener(listener);
+        t2.removeListener(listener);
+    }
+
+    private static double jaccard(final int intersection, final int size1,
+            final int size2) {
+        if (size1 == 0 || size2 == 0) {
+            return 0.0;
+        }
+        return intersection / (double) (size1 + size2 - intersection);
+    }
+
+    /**
+     * @return 0 for the first user, 1 for the second
+     */
+    private int side(final TwitterUser user) {
+        return user == t1 ? 0 : 1;
+    }
+
+    /**
+     * @return the other user of the pair
+     */
+    private TwitterUser other(final TwitterUser user) {
+        return user == t1 ? t2 : t1;
+    }
+
+    /**
+     * @return how many of the IDs a set holds
+     */
+    private static int countIn(final Collection<Long> ids,
+            final SortedIdSet set) {
+        int count = 0;
+        for (Long id : ids) {
+            if (set.contains(id.longValue())) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private TermVector tokenize(final String text) {
+        builder.clear();
+        tokenizer.tokenize(text, builder);
+        return builder.build();
+    }
+
+    /**
+     * Term frequencies of a text field of both users, and the sum over all
+     * terms of the smaller of the two frequencies: the numerator of
+     * {@link Similarity#pseudoCosine(TermVector, TermVector)}.
+     */
+    private static final class TermOverlap
+    {
+        /**
+         * Adds the terms of a vector to, or subtracts them from, one user.
+         * @param side 0 for the first user, 1 for the second
+         * @param sign 1 to add, -1 to subtract
+         */
+        void add(final int side, final TermVector vector, final int sign) {
+            for (int i = 0; i < vector.size(); i++) {
+                Integer termId = vector.termId(i);
+                int[] pair = counts.get(termId);
+                if (pair == null) {
+                    pair = new int[2];
+                    counts.put(termId, pair);
+                }
+                int before = Math.min(pair[0], pair[1]);
+                pair[side] += sign * vector.count(i);
+                intersection += Math.min(pair[0], pair[1]) - before;
+                if (pair[0] == 0 && pair[1] == 0) {
+                    counts.remove(termId);
+                }
+            }
+            totals[side] += sign * vector.total();
+        }
+
+        double similarity() {
+            if (totals[0] == 0 || totals[1] == 0) {
+                return 0.0;
+            }
+            return intersection /
+                (double) (totals[0] + totals[1] - intersection);
+        }
+
+        /** Frequency of each term in the first and second user */
+        private final Map<Integer, int[]> counts =
+            new HashMap<Integer, int[]>();
+        private final long[] totals = new long[2];
+        private long intersection;
+    }
+
+    /**
+     * Updates the counts from the changes made to either user.
+     */
+    private final class Listener implements TwitterUserListener
+    {
+        public void followersAdded(final TwitterUser user,
+                final Collection<Long> ids) {
+            synchronized (PairTracker.this) {
+                followers[side(user)] += ids.size();
+                sharedFollowers += countIn(ids, other(user).getFollowerIds());
+            }
+        }
+
+        public void followersRemoved(final TwitterUser user,
+                final Collection<Long> ids) {
+            synchronized (PairTracker.this) {
+                followers[side(user)] -= ids.size();
+                sharedFollowers -= countIn(ids, other(user).getFollowerIds());
+            }
+        }
+
+        public void friendsAdded(final TwitterUser user,
+                final Collection<Long> ids) {
+            synchronized (PairTracker.this) {
+                friends[side(user)] += ids.size();
+                sharedFriends += countIn(ids, other(user).getFriendIds());
+            }
+        }
+
+        public void friendsRemoved(final TwitterUser user,
+                final Collection<Long> ids) {
+            synchronized (PairTracker.this) {
+                friends[side(user)] -= ids.size();
+                sharedFriends -= countIn(ids, other(user).getFriendIds());
+            }
+        }
+
+        public void tweetAdded(final TwitterUser user, final String tweet) {
+            synchronized (PairTracker.this) {
+                tweets.add(side(user), tokenize(tweet), 1);
+            }
+        }
+
+        public void tweetRemoved(final TwitterUser user, final String tweet) {
+            synchronized (PairTracker.this) {
+                tweets.add(side(user), tokenize(tweet), -1);
+            }
+        }
+
+        public void favoriteAdded(final TwitterUser user,
+                final String favorite) {
+            synchronized (PairTracker.this) {
+                favorites.add(side(user), tokenize(favorite), 1);
+            }
+        }
+
+        public void favoriteRemoved(final TwitterUser user,
+                final String favorite) {
+            synchronized (PairTracker.this) {
+                favorites.add(side(user), tokenize(favorite), -1);
+            }
+        }
+
+        public void mentionsAdded(final TwitterUser user,
+                final List<String> names) {
+            synchronized (PairTracker.this) {
+                mentions.add(side(user), TermVector.of(names, dictionary), 1);
+            }
+        }
+
+        public void mentionsRemoved(final TwitterUser user,
+                final List<String> names) {
+            synchronized (PairTracker.this) {
+                mentions.add(side(user), TermVector.of(names, dictionary), -1);
+            }
+        }
+
+        public void descriptionChanged(final TwitterUser user,
+                final String oldDescription) {
+            synchronized (PairTracker.this) {
+                bio.add(side(user), tokenize(oldDescription), -1);
+                bio.add(side(user), tokenize(user.getDescription()), 1);
+            }
+        }
+    }
+
+    private final TwitterUser t1;
+    private final TwitterUser t2;
+    private final Tokenizer tokenizer;
+    private final TermDictionary dictionary;
+
+    /** Tokenizes changed text; guarded by the tracker */
+    private final TermVectorBuilder builder;
+
+    private final Listener listener = new Listener();
+
+    // What the similarity is made of; guarded by the tracker
+    private final int[] followers = new int[2];
+    private final int[] friends = new int[2];
+    private int sharedFollowers;
+    private int sharedFriends;
+    private final TermOverlap bio = new TermOverlap();
+    private final TermOverlap mentions = new TermOverlap();
+    private final TermOverlap favorites = new TermOverlap();
+    private final TermOverlap tweets = new TermOverlap();
+}
@@ -0,0 +1,83 @@
+//=============================================================================
+// Coding sample for Stefaan Heyvaert.
+//=============================================================================
+package util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import text.Tokenizer;
+
+import client.TwitterUser;
+
+/**
+ * Keeps the {@link UserProfile} of users by user ID so that each user is only
+ * tokenized once, however many comparisons it takes part in. The cache can be
+ * used from several threads at once.
+ * <p>
+ * Since profiles are snapshots, {@link #invalidate(long)} must be called when
+ * a cached user changes.
+ *
+ * @author sh
+ */
+public class ProfileCache
+{
+    /**
+     * @param tokenizer tokenizer used to build the profiles; it is used from
+     * several threads at once
+     */
+    public ProfileCache(final Tokenizer tokenizer) {
+        this.tokenizer = tokenizer;
+    }
+
+    /**
+     * Returns the cached profile of a user, building it if necessary. Two
+     * threads asking for the same missing profile may both build it, but
+     * both receive the same instance.
+     * @param user the user
+     * @return the user's profile
+     */
+    public UserProfile get(final TwitterUser user) {
+        UserProfile profile = profiles.get(user.getId());
+        if (profile == null) {
+            profile = new UserProfile(user, tokenizer);
+            UserProfile existing = profiles.putIfAbsent(user.getId(), profile);
+            if (existing != null) {
+                profile = existing;
+            }
+        }
+        return profile;
+    }
+
+    /**
+     * @param userId a user ID
+     * @return the cached profile of the user, or null if there is none
+     */
+    public UserProfile getIfPresent(final long userId) {
+        return profiles.get(userId);
+    }
+
+    /**
+     * Discards the cached profile of a user.
+     * @param userId a user ID
+     */
+    public void invalidate(final long userId) {
+        profiles.remove(userId);
+    }
+
+    public void clear() {
+        profiles.clear();
+    }
+
+    public int size() {
+        return profiles.size();
+    }
+
+    public Tokenizer getTokenizer() {
+        return tokenizer;
+    }
+
+    private final Tokenizer tokenizer;
+    private final ConcurrentMap<Long, UserProfile> profiles =
+        new ConcurrentHashMap<Long, UserProfile>();
+}
@@ -0,0 +1,215 @@
+//=============================================================================
+// Coding sample for Stefaan Heyvaert.
+//=============================================================================
+package util;
+
+/**
+ * The scores of many pairs of users kept in a single {@code double} array,
+ * one row of {@link #WIDTH} values per pair, for jobs scoring millions of
+ * pairs: a {@link SimilarityResult} per pair would cost an object, a few
+ * arrays and, once printed, an explanation, where a row costs 64 bytes.
+ * <p>
+ * Rows are filled by {@link Similarity#score(UserProfile, UserProfile,
+ * ScoreTable, int)}, or copied from results with
+ * {@link #set(int, SimilarityResult)}, and read by column, or through a
+ * {@link Row}: a view that can be moved from one row to another, so reading
+ * the whole table takes one object. {@link #toResult(int)} turns a row back
+ * into a result when its explanation is wanted after all.
+ * <p>
+ * The table does not synchronize; threads may fill different rows at once
+ * if the table is only read once they are done.
+ *
+ * @author sh
+ */
+public final class ScoreTable
+{
+    /**
+     * Creates a table of rows that are all 0.
+     * @param rows number of rows
+     */
+    public ScoreTable(final int rows) {
+        if (rows < 0 || (long) rows * WIDTH > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid number of rows: "
+                    + rows);
+        }
+        values = new double[rows * WIDTH];
+    }
+
+    /**
+     * @return number of rows
+     */
+    public int size() {
+        return values.length / WIDTH;
+    }
+
+    /**
+     * @param row a row
+     * @param column one of the column constants, {@link #SCORE} to
+     * {@link #COVERAGE}
+     * @return the value at a row and column
+     */
+    public double get(final int row, final int column) {
+        return values[index(row, column)];
+    }
+
+    /**
+     * Sets a value.
+     * @param row a row
+     * @param column one of the column constants
+     * @param value the value
+     */
+    public void set(final int row, final int column, final double value) {
+        values[index(row, column)] = value;
+    }
+
+    /**
+     * @return the final score of a row
+     */
+    public double getScore(final int row) {
+        return get(row, SCORE);
+    }
+
+    /**
+     * Copies the scores of a result into a row.
+     * @param row a row
+     * @param result the result
+     */
+    public void set(final int row, final SimilarityResult result) {
+        int i = index(row, 0);
+        values[i + SCORE] = result.getScore();
+        values[i + FOLLOWERS] = result.getSharedFollowers();
+        values[i + FRIENDS] = result.getSharedFriends();
+        values[i + BIO] = result.getBioSimilarity();
+        values[i + MENTIONS] = result.getSharedMentions();
+        values[i + FAVORITES] = result.getFavoriteSimilarity();
+        values[i + TWEETS] = result.getTweetSimilarity();
+        values[i + COVERAGE] = result.getCoverage();
+    }
+
+    /**
+     * Makes a result of a row. Only the scores are kept in a row, so the
+     * result has no follower and friend counts, and its coverage is that of
+     * the least covered list, for both users.
+     * @param row a row
+     * @return a new result
+     */
+    public SimilarityResult toResult(final int row) {
+        int i = index(row, 0);
+        SimilarityResult result = new SimilarityResult();
+        result.setScore(values[i + SCORE]);
+        result.setSharedFollowers(values[i + FOLLOWERS]);
+        result.setSharedFriends(values[i + FRIENDS]);
+        result.setBioSimilarity(values[i + BIO]);
+        result.setSharedMentions(values[i + MENTIONS]);
+        result.setFavoriteSimilarity(values[i + FAVORITES]);
+        result.setTweetSimilarity(values[i + TWEETS]);
+        double coverage = values[i + COVERAGE];
+        result.setFollowerCoverage(coverage, coverage);
+        return result;
+    }
+
+    /**
+     * @param row the row to start at
+     * @return a view of a row
+     */
+    public Row row(final int row) {
+        return new Row().moveTo(row);
+    }
+
+    private int index(final int row, final int column) {
+        if (column < 0 || column >= WIDTH) {
+            throw new IndexOutOfBoundsException("No column " + column);
+        }
+        return row * WIDTH + column;
+    }
+
+    /**
+     * A view of a row of the table, which can be moved to any other row.
+     */
+    public final class Row
+    {
+        private Row() {}
+
+        /**
+         * @param row the row to view
+         * @return this view
+         */
+        public Row moveTo(final int row) {
+            if (row < 0 || row >= size()) {
+                throw new IndexOutOfBoundsException("No row " + row);
+            }
+            offset = row * WIDTH;
+            return this;
+        }
+
+        /**
+         * @return the row viewed
+         */
+        public int getIndex() {
+            return offset / WIDTH;
+        }
+
+        public double getScore() {
+            return values[offset + SCORE];
+        }
+
+        public double getSharedFollowers() {
+            return values[offset + FOLLOWERS];
+        }
+
+        public double getSharedFriends() {
+            return values[offset + FRIENDS];
+        }
+
+        public double getBioSimilarity() {
+            return values[offset + BIO];
+        }
+
+        public double getSharedMentions() {
+            return values[offset + MENTIONS];
+        }
+
+        public double getFavoriteSimilarity() {
+            return values[offset + FAVORITES];
+        }
+
+        public double getTweetSimilarity() {
+            return values[offset + TWEETS];
+        }
+
+        public double getCoverage() {
+            return values[offset + COVERAGE];
+        }
+
+        private int offset;
+    }
+
+    /** Column of the final score */
+    public static final int SCORE = 0;
+
+    /** Column of the follower similarity */
+    public static final int FOLLOWERS = 1;
+
+    /** Column of the friend similarity */
+    public static final int FRIENDS = 2;
+
+    /** Column of the biography similarity */
+    public static final int BIO = 3;
+
+    /** Column of the mention similarity */
+    public static final int MENTIONS = 4;
+
+    /** Column of the favorite similarity */
+    public static final int FAVORITES = 5;
+
+    /** Column of the tweet similarity */
+    public static final int TWEETS = 6;
+
+    /** Column of the coverage (see {@link SimilarityResult#getCoverage()}) */
+    public static final int COVERAGE = 7;
+
+    /** Number of values per row */
+    public static final int WIDTH = 8;
+
+    private final double[] values;
+}
@@ -0,0 +1,49 @@
+//=============================================================================
+// Coding sample for Stefaan Heyvaert.
+//=============================================================================
+package util;
+
+import client.TwitterUser;
+
+/**
+ * A user returned by a similarity search, together with the result of
+ * comparing it to the user the search was for. Instances sort by descending
+ * score, so that the most similar user comes first.
+ *
+ * @author sh
+ */
+public class ScoredUser implements Comparable<ScoredUser>
+{
+    public ScoredUser(final TwitterUser user, final SimilarityResult result) {
+        this.user = user;
+        this.result = result;
+    }
+
+    public TwitterUser getUser() {
+        return user;
+    }
+
+    public SimilarityResult getResult() {
+        return result;
+    }
+
+    public double getScore() {
+        return result.getScore();
+    }
+
+    /**
+     * Orders by descending score, then by ascending user ID.
+     */
+    @Override
+    public int compareTo(final ScoredUser other) {
+        int cmp = Double.compare(other.getScore(), getScore());
+        return cmp != 0 ? cmp : user.compareTo(other.user);
+    }
+
+    public String toString() {
+        return user.getUserName() + String.format(" %6.4f", getScore());
+    }
+
+    private final TwitterUser user;
+    private final SimilarityResult result;
+}
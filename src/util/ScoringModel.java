@@ -0,0 +1,262 @@
+//=============================================================================
+// Coding sample for Stefaan Heyvaert.
+//=============================================================================
+package util;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * How the individual similarities of two users make their final score: which
+ * of them count, how much each weighs, and how they are combined. The
+ * {@link #DEFAULT} model is the one that
+ * {@link SimilarityResult#computeFinalScore()} applies: every similarity
+ * counts equally, and the final score is the product of those that are not 0.
+ * <p>
+ * Besides combining scores, a model can bound the final score when only
+ * some of the similarities are known, which is what lets
+ * {@link Similarity#isAtLeast(UserProfile, UserProfile, ScoringModel,
+ * double)} stop before computing them all.
+ * <p>
+ * Models are immutable; the {@code with} methods return modified copies.
+ *
+ * @author sh
+ */
+public final class ScoringModel
+{
+    /**
+     * The individual similarities.
+     */
+    public enum Field
+    {
+        FOLLOWERS, FRIENDS, BIO, MENTIONS, FAVORITES, TWEETS
+    }
+
+    /**
+     * Ways of combining individual similarities, each between 0 and 1, into
+     * a final score between 0 and 1.
+     */
+    public enum Combination
+    {
+        /**
+         * The product of the similarities that are not 0, each raised to
+         * the power of its weight; 0 if all are 0. A single weak similarity
+         * drags the score down, but a missing one does not.
+         */
+        PRODUCT {
+            double combine(final double[] scores, final ScoringModel model,
+                    final int known) {
+                double score = 1.0;
+                boolean haveCommonality = false;
+                for (int f = 0; f < FIELDS; f++) {
+                    if ((known & 1 << f) != 0 && scores[f] > 0.0) {
+                        double weight = model.weights[f];
+                        score *= weight == 1.0 ? scores[f]
+                            : Math.pow(scores[f], weight);
+                        haveCommonality = true;
+                    }
+                }
+                return haveCommonality ? score : 0.0;
+            }
+
+            double upperBound(final double[] scores, final ScoringModel model,
+                    final int known) {
+                // Unknown similarities can only lower the product, unless
+                // there is nothing yet for them to lower
+                double score = combine(scores, model, known);
+                return score > 0.0 || known == model.enabled ? score : 1.0;
+            }
+
+            double lowerBound(final double[] scores, final ScoringModel model,
+                    final int known) {
+                // Any unknown similarity could be tiny without being 0
+                return known == model.enabled
+                    ? combine(scores, model, known) : 0.0;
+            }
+        },
+
+        /**
+         * The weighted mean of the similarities, 0 ones included.
+         */
+        MEAN {
+            double combine(final double[] scores, final ScoringModel model,
+                    final int known) {
+                return lowerBound(scores, model, known);
+            }
+
+            double upperBound(final double[] scores, final ScoringModel model,
+                    final int known) {
+                double sum = 0.0;
+                for (int f = 0; f < FIELDS; f++) {
+                    if ((model.enabled & 1 << f) != 0) {
+                        sum += model.weights[f]
+                            * ((known & 1 << f) != 0 ? scores[f] : 1.0);
+                    }
+                }
+                return model.totalWeight == 0.0 ? 0.0
+                    : sum / model.totalWeight;
+            }
+
+            double lowerBound(final double[] scores, final ScoringModel model,
+                    final int known) {
+                double sum = 0.0;
+                for (int f = 0; f < FIELDS; f++) {
+                    if ((known & 1 << f) != 0) {
+                        sum += model.weights[f] * scores[f];
+                    }
+                }
+                return model.totalWeight == 0.0 ? 0.0
+                    : sum / model.totalWeight;
+            }
+        };
+
+        /**
+         * @return the final score, from the similarities whose bits are set
+         * in {@code known}: all the enabled ones
+         */
+        abstract double combine(double[] scores, ScoringModel model,
+                int known);
+
+        /**
+         * @return the highest final score possible whatever the similarities
+         * not known yet turn out to be
+         */
+        abstract double upperBound(double[] scores, ScoringModel model,
+                int known);
+
+        /**
+         * @return the lowest final score possible whatever the similarities
+         * not known yet turn out to be
+         */
+        abstract double lowerBound(double[] scores, ScoringModel model,
+                int known);
+    }
+
+    /**
+     * Creates a model in which all similarities count with a weight of 1.
+     * @param combination how they are combined
+     */
+    public ScoringModel(final Combination combination) {
+        this.combination = combination;
+        weights = new double[FIELDS];
+        Arrays.fill(weights, 1.0);
+        enabled = (1 << FIELDS) - 1;
+        totalWeight = FIELDS;
+    }
+
+    private ScoringModel(final Combination combination,
+            final double[] weights, final int enabled) {
+        this.combination = combination;
+        this.weights = weights;
+        this.enabled = enabled;
+        double total = 0.0;
+        for (int f = 0; f < FIELDS; f++) {
+            if ((enabled & 1 << f) != 0) {
+                total += weights[f];
+            }
+        }
+        totalWeight = total;
+    }
+
+    /**
+     * @param field a similarity
+     * @param weight its weight, positive
+     * @return a copy of this model with a different weight for a similarity
+     */
+    public ScoringModel withWeight(final Field field, final double weight) {
+        if (!(weight > 0.0) || Double.isInfinite(weight)) {
+            throw new IllegalArgumentException("Invalid weight " + weight
+                    + " for " + field);
+        }
+        double[] copy = weights.clone();
+        copy[field.ordinal()] = weight;
+        return new ScoringModel(combination, copy, enabled);
+    }
+
+    /**
+     * @param field a similarity
+     * @param enable true for the similarity to count, false for it to be
+     * ignored, and not even computed
+     * @return a copy of this model with a similarity enabled or disabled
+     */
+    public ScoringModel withField(final Field field, final boolean enable) {
+        int bit = 1 << field.ordinal();
+        return new ScoringModel(combination, weights,
+                enable ? enabled | bit : enabled & ~bit);
+    }
+
+    /**
+     * @param combination how similarities are combined
+     * @return a copy of this model combining similarities differently
+     */
+    public ScoringModel withCombination(final Combination combination) {
+        return new ScoringModel(combination, weights, enabled);
+    }
+
+    public Combination getCombination() {
+        return combination;
+    }
+
+    public double getWeight(final Field field) {
+        return weights[field.ordinal()];
+    }
+
+    public boolean isEnabled(final Field field) {
+        return (enabled & 1 << field.ordinal()) != 0;
+    }
+
+    /**
+     * @param scores the similarities, indexed by {@link Field#ordinal()};
+     * those of disabled fields are ignored
+     * @return the final score
+     */
+    public double combine(final double[] scores) {
+        return combination.combine(scores, this, enabled);
+    }
+
+    /**
+     * @param scores the similarities known so far, indexed by
+     * {@link Field#ordinal()}
+     * @param known bit {@code 1 << f.ordinal()} set for every field
+     * {@code f} whose similarity is known
+     * @return the highest final score the users can get
+     */
+    double upperBound(final double[] scores, final int known) {
+        return combination.upperBound(scores, this, known & enabled);
+    }
+
+    /**
+     * @param scores the similarities known so far
+     * @param known the fields whose similarity is known
+     * @return the lowest final score the users can get
+     */
+    double lowerBound(final double[] scores, final int known) {
+        return combination.lowerBound(scores, this, known & enabled);
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder(combination.toString());
+        for (Field field : Field.values()) {
+            if (isEnabled(field)) {
+                sb.append(' ').append(field.toString().toLowerCase(Locale.ROOT))
+                    .append('=').append(getWeight(field));
+            }
+        }
+        return sb.toString();
+    }
+
+    /** Number of similarities */
+    static final int FIELDS = Field.values().length;
+
+    /** Every similarity with a weight of 1, multiplied */
+    public static final ScoringModel DEFAULT =
+        new ScoringModel(Combination.PRODUCT);
+
+    private final Combination combination;
+    private final double[] weights;
+
+    /** Bit {@code 1 << f.ordinal()} set for every enabled field {@code f} */
+    private final int enabled;
+
+    private final double totalWeight;
+}
@@ -3,11 +3,12 @@
 //=============================================================================
 package util;
 
-import java.util.ArrayList;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -31,9 +32,12 @@ import client.TwitterUser;
  * <li>- the text similarity between their regular tweets</li>
  * </l>
  * * 
- * All these individual simlarity scores are given equal weight. Experiments or
- * better knowledge of Twitter should make it possible to assign each a different
- * weight and thus obtain perhaps a more reliable overall score.
+ * All these individual simlarity scores are given equal weight by default. A
+ * {@link ScoringModel} can weigh them differently, leave some out, or average
+ * them instead of multiplying them, as experiments or better knowledge of
+ * Twitter suggest; it also lets {@link #isAtLeast(UserProfile, UserProfile,
+ * ScoringModel, double)} tell whether two users are similar enough without
+ * computing every score.
  * 
  * @author sh
  */
@@ -51,49 +55,351 @@ public final class Similarity
      */
     public static SimilarityResult computeSumilarity(final TwitterUser t1,
     		final TwitterUser t2, final Tokenizer tokenizer) {
-        SimilarityResult result = new SimilarityResult();
+        return computeSumilarity(t1, t2, tokenizer, false);
+    }
+
+    /**
+     * Computes the similarity between two Twitter users, optionally estimating
+     * the follower and friend similarities from the users' MinHash signatures
+     * (see {@link TwitterUser#getFollowerSketch()}) in time proportional to
+     * the signature size instead of the number of IDs. Lists that are small
+     * enough to be compared exactly at a similar cost are always compared
+     * exactly; {@link SimilarityResult#isFollowersEstimated()} and
+     * {@link SimilarityResult#isFriendsEstimated()} tell which values are
+     * estimates.
+     * @param t1 first Twitter user instance
+     * @param t2 second Twitter user instance
+     * @param tokenizer tokenizer to analize the text fields collected for each
+     * user.
+     * @param approximate true to allow estimated follower and friend 
+     * similarities
+     * @return {@link util.SimilarityResult} describing the similarity of the
+     * two users
+     */
+    public static SimilarityResult computeSumilarity(final TwitterUser t1,
+            final TwitterUser t2, final Tokenizer tokenizer, 
+            final boolean approximate) {
         // Users are 100% similar to themselves
         if (t1.equals(t2)) {
-            result.setScore(1.0);
-            result.setReason("User ID values are identical");
+            return identical();
+        }
+        // The profiles do not outlive the comparison, so they need not copy
+        // the IDs
+        return computeSumilarity(UserProfile.view(t1, tokenizer),
+                UserProfile.view(t2, tokenizer), approximate);
+    }
+
+    /**
+     * Computes the similarity between two users from their profiles, so that a
+     * user compared to many others is only tokenized once.
+     * @param p1 profile of the first user
+     * @param p2 profile of the second user
+     * @return {@link util.SimilarityResult} describing the similarity of the
+     * two users
+     */
+    public static SimilarityResult computeSumilarity(final UserProfile p1,
+            final UserProfile p2) {
+        return computeSumilarity(p1, p2, false);
+    }
+
+    /**
+     * Computes the similarity between two users from their profiles, 
+     * optionally estimating the follower and friend similarities (see
+     * {@link #computeSumilarity(TwitterUser, TwitterUser, Tokenizer, boolean)}).
+     * @param p1 profile of the first user
+     * @param p2 profile of the second user
+     * @param approximate true to allow estimated follower and friend 
+     * similarities
+     * @return {@link util.SimilarityResult} describing the similarity of the
+     * two users
+     */
+    public static SimilarityResult computeSumilarity(final UserProfile p1,
+            final UserProfile p2, final boolean approximate) {
+        if (p1.getId() == p2.getId()) {
+            return identical();
+        }
+        long start = Metrics.start();
+        long allocated = Metrics.allocated();
+        SimilarityResult result = new SimilarityResult();
+        // List similarities
+        long stageStart = start;
+        if (approximate && shouldEstimate(p1.getFollowerIds(),
+                p2.getFollowerIds(), p1.getMinHash(), p2.getMinHash())) {
+            MinHashSketch sketch1 = p1.getFollowerSketch();
+            MinHashSketch sketch2 = p2.getFollowerSketch();
+            double estimate = sketch1.jaccard(sketch2);
+            result.setSharedFollowers(estimate);
+            result.setFollowersEstimated(sketch1.errorBound(sketch2, estimate));
         }
         else {
-            // List similarities
             result.setSharedFollowers( 
-                jaccardCoefficient(t1.getFollowerIds(), t2.getFollowerIds()));
-            result.setFollowerCount(
-                    t1.getFollowerIds().size(), t2.getFollowerIds().size());
+                jaccardCoefficient(p1.getFollowerIds(), p2.getFollowerIds()));
+        }
+        result.setFollowerCount(
+                p1.getFollowerIds().size(), p2.getFollowerIds().size());
+        Metrics.record(Metrics.Stage.SCORE_FOLLOWERS, stageStart);
+        stageStart = Metrics.start();
+        if (approximate && shouldEstimate(p1.getFriendIds(),
+                p2.getFriendIds(), p1.getMinHash(), p2.getMinHash())) {
+            MinHashSketch sketch1 = p1.getFriendSketch();
+            MinHashSketch sketch2 = p2.getFriendSketch();
+            double estimate = sketch1.jaccard(sketch2);
+            result.setSharedFriends(estimate);
+            result.setFriendsEstimated(sketch1.errorBound(sketch2, estimate));
+        }
+        else {
             result.setSharedFriends(
-                jaccardCoefficient(t1.getFriendIds(), t2.getFriendIds()));
-            result.setFriendCount(
-                    t1.getFriendIds().size(), t2.getFriendIds().size());
-            
-            // Text-basec similarities
-            // 1. Descriptions ("bios")
-            Map<String, Integer> bio1 = new HashMap<String, Integer>();
-            Map<String, Integer> bio2 = new HashMap<String, Integer>();
-            // Descriptions are simple string, so use regular tokenizer
-            addAllToMap(tokenizer.tokenize(t1.getDescription()), bio1);
-            addAllToMap(tokenizer.tokenize(t2.getDescription()), bio2);
-            result.setBioSimilarity(pseudoCosine(bio1, bio2));
-            // 2. Mentions
-            result.setSharedMentions(
-                pseudoCosine(t1.getMentions(), t2.getMentions()));
-            // 3. Favorite tweets
-            Map<String, Integer> favorites1 = new HashMap<String, Integer>();
-            Map<String, Integer> favorites2 = new HashMap<String, Integer>();
-            addAllToMap(tokenize(t1.getFavorites(), tokenizer), favorites1);
-            addAllToMap(tokenize(t2.getFavorites(), tokenizer), favorites2);
-            result.setFavoriteSimilarity(pseudoCosine(favorites1, favorites2));
-            // 4. Regular tweets
-            Map<String, Integer> tweets1 = new HashMap<String, Integer>();
-            Map<String, Integer> tweets2 = new HashMap<String, Integer>();
-            addAllToMap(tokenize(t1.getTweets(), tokenizer), tweets1);
-            addAllToMap(tokenize(t2.getTweets(), tokenizer), tweets2);
-            result.setTweetSimilarity(pseudoCosine(tweets1, tweets2));
-            
-            result.computeFinalScore();
+                jaccardCoefficient(p1.getFriendIds(), p2.getFriendIds()));
+        }
+        result.setFriendCount(
+                p1.getFriendIds().size(), p2.getFriendIds().size());
+        Metrics.record(Metrics.Stage.SCORE_FRIENDS, stageStart);
+        result.setFollowerCoverage(
+                p1.getFollowerCoverage(), p2.getFollowerCoverage());
+        result.setFriendCoverage(
+                p1.getFriendCoverage(), p2.getFriendCoverage());
+        result.setTweetCoverage(
+                p1.getTweetCoverage(), p2.getTweetCoverage());
+        result.setFavoriteCoverage(
+                p1.getFavoriteCoverage(), p2.getFavoriteCoverage());
+        
+        // Text-basec similarities
+        checkDictionaries(p1, p2);
+        stageStart = Metrics.start();
+        result.setBioSimilarity(
+            pseudoCosine(p1.getBioTerms(), p2.getBioTerms()));
+        Metrics.record(Metrics.Stage.SCORE_BIO, stageStart);
+        stageStart = Metrics.start();
+        result.setSharedMentions(
+            pseudoCosine(p1.getMentions(), p2.getMentions()));
+        Metrics.record(Metrics.Stage.SCORE_MENTIONS, stageStart);
+        stageStart = Metrics.start();
+        result.setFavoriteSimilarity(
+            pseudoCosine(p1.getFavoriteTerms(), p2.getFavoriteTerms()));
+        Metrics.record(Metrics.Stage.SCORE_FAVORITES, stageStart);
+        stageStart = Metrics.start();
+        result.setTweetSimilarity(
+            pseudoCosine(p1.getTweetTerms(), p2.getTweetTerms()));
+        Metrics.record(Metrics.Stage.SCORE_TWEETS, stageStart);
+        
+        result.computeFinalScore();
+        Metrics.record(Metrics.Stage.SCORE, start, allocated);
+        return result;
+    }
+
+    /**
+     * Computes the similarity between two users from their profiles with a
+     * scoring model other than the default one. Only the similarities the
+     * model uses are computed; the others are left at 0. Follower and friend
+     * similarities are exact.
+     * @param p1 profile of the first user
+     * @param p2 profile of the second user
+     * @param model how the final score is made
+     * @return {@link util.SimilarityResult} describing the similarity of the
+     * two users
+     */
+    public static SimilarityResult computeSumilarity(final UserProfile p1,
+            final UserProfile p2, final ScoringModel model) {
+        if (p1.getId() == p2.getId()) {
+            return identical();
+        }
+        checkDictionaries(p1, p2);
+        long start = Metrics.start();
+        long allocated = Metrics.allocated();
+        double[] scores = new double[ScoringModel.FIELDS];
+        for (ScoringModel.Field field : ScoringModel.Field.values()) {
+            if (model.isEnabled(field)) {
+                scores[field.ordinal()] = score(field, p1, p2);
+            }
         }
+        SimilarityResult result = new SimilarityResult();
+        result.setSharedFollowers(
+                scores[ScoringModel.Field.FOLLOWERS.ordinal()]);
+        result.setSharedFriends(scores[ScoringModel.Field.FRIENDS.ordinal()]);
+        result.setBioSimilarity(scores[ScoringModel.Field.BIO.ordinal()]);
+        result.setSharedMentions(
+                scores[ScoringModel.Field.MENTIONS.ordinal()]);
+        result.setFavoriteSimilarity(
+                scores[ScoringModel.Field.FAVORITES.ordinal()]);
+        result.setTweetSimilarity(scores[ScoringModel.Field.TWEETS.ordinal()]);
+        result.setFollowerCount(
+                p1.getFollowerIds().size(), p2.getFollowerIds().size());
+        result.setFriendCount(
+                p1.getFriendIds().size(), p2.getFriendIds().size());
+        result.setFollowerCoverage(
+                p1.getFollowerCoverage(), p2.getFollowerCoverage());
+        result.setFriendCoverage(
+                p1.getFriendCoverage(), p2.getFriendCoverage());
+        result.setTweetCoverage(
+                p1.getTweetCoverage(), p2.getTweetCoverage());
+        result.setFavoriteCoverage(
+                p1.getFavoriteCoverage(), p2.getFavoriteCoverage());
+        result.setScore(model.combine(scores));
+        Metrics.record(Metrics.Stage.SCORE, start, allocated);
+        return result;
+    }
+
+    /**
+     * Tells whether the similarity of two users, as a model scores it, is at
+     * least a threshold, computing as little as possible to find out. The
+     * similarities the model uses are computed from the cheapest to the most
+     * expensive for this pair (so the followers of huge accounts come last),
+     * and computing stops as soon as the similarities known so far decide
+     * the answer whatever the others turn out to be: with the default model,
+     * as soon as their product falls below the threshold.
+     * @param p1 profile of the first user
+     * @param p2 profile of the second user
+     * @param model how the final score is made
+     * @param threshold the score to reach
+     * @return true if the final score is at least the threshold
+     */
+    public static boolean isAtLeast(final UserProfile p1,
+            final UserProfile p2, final ScoringModel model,
+            final double threshold) {
+        if (p1.getId() == p2.getId()) {
+            return 1.0 >= threshold;
+        }
+        checkDictionaries(p1, p2);
+        long start = Metrics.start();
+        ScoringModel.Field[] fields = ScoringModel.Field.values();
+        long[] costs = new long[fields.length];
+        int n = 0;
+        // Insertion sort of the enabled fields by cost
+        for (ScoringModel.Field field : ScoringModel.Field.values()) {
+            if (!model.isEnabled(field)) {
+                continue;
+            }
+            long cost = cost(field, p1, p2);
+            int i = n++;
+            for (; i > 0 && costs[i - 1] > cost; i--) {
+                costs[i] = costs[i - 1];
+                fields[i] = fields[i - 1];
+            }
+            costs[i] = cost;
+            fields[i] = field;
+        }
+        double[] scores = new double[ScoringModel.FIELDS];
+        int known = 0;
+        boolean atLeast;
+        int i = 0;
+        while (true) {
+            if (model.upperBound(scores, known) < threshold) {
+                atLeast = false;
+                break;
+            }
+            if (model.lowerBound(scores, known) >= threshold) {
+                atLeast = true;
+                break;
+            }
+            if (i == n) {
+                // Only when the threshold is out of reach of rounding
+                atLeast = model.combine(scores) >= threshold;
+                break;
+            }
+            ScoringModel.Field field = fields[i++];
+            scores[field.ordinal()] = score(field, p1, p2);
+            known |= 1 << field.ordinal();
+        }
+        Metrics.record(Metrics.Stage.SCORE, start);
+        return atLeast;
+    }
+
+    /**
+     * Computes the similarity between two users from their profiles into a
+     * row of a table rather than into a new {@link SimilarityResult}, for
+     * jobs scoring so many pairs that a result for each would be a burden.
+     * Follower and friend similarities are exact.
+     * @param p1 profile of the first user
+     * @param p2 profile of the second user
+     * @param table table receiving the scores
+     * @param row row of the table to fill
+     * @return the final score
+     */
+    public static double score(final UserProfile p1, final UserProfile p2,
+            final ScoreTable table, final int row) {
+        if (p1.getId() == p2.getId()) {
+            table.set(row, ScoreTable.SCORE, 1.0);
+            table.set(row, ScoreTable.COVERAGE, 1.0);
+            return 1.0;
+        }
+        checkDictionaries(p1, p2);
+        long start = Metrics.start();
+        double followers =
+            jaccardCoefficient(p1.getFollowerIds(), p2.getFollowerIds());
+        double friends =
+            jaccardCoefficient(p1.getFriendIds(), p2.getFriendIds());
+        double bio = pseudoCosine(p1.getBioTerms(), p2.getBioTerms());
+        double mentions = pseudoCosine(p1.getMentions(), p2.getMentions());
+        double favorites =
+            pseudoCosine(p1.getFavoriteTerms(), p2.getFavoriteTerms());
+        double tweets = pseudoCosine(p1.getTweetTerms(), p2.getTweetTerms());
+        double score = SimilarityResult.combine(followers, friends, bio,
+                mentions, favorites, tweets);
+        table.set(row, ScoreTable.SCORE, score);
+        table.set(row, ScoreTable.FOLLOWERS, followers);
+        table.set(row, ScoreTable.FRIENDS, friends);
+        table.set(row, ScoreTable.BIO, bio);
+        table.set(row, ScoreTable.MENTIONS, mentions);
+        table.set(row, ScoreTable.FAVORITES, favorites);
+        table.set(row, ScoreTable.TWEETS, tweets);
+        table.set(row, ScoreTable.COVERAGE, Math.min(
+                Math.min(coverage(p1), coverage(p2)), 1.0));
+        Metrics.record(Metrics.Stage.SCORE, start);
+        return score;
+    }
+
+    /**
+     * Computes the similarity between two users of a {@link ColumnarStore}
+     * straight from the store's mapped files, without loading either user
+     * onto the heap. The store keeps no signatures, so follower and friend
+     * similarities are always exact.
+     * @param u1 first user
+     * @param u2 second user, from the same store
+     * @return {@link util.SimilarityResult} describing the similarity of the
+     * two users
+     */
+    public static SimilarityResult computeSumilarity(final StoredUser u1,
+            final StoredUser u2) {
+        if (u1.getId() == u2.getId()) {
+            return identical();
+        }
+        if (u1.getStore() != u2.getStore()) {
+            throw new IllegalArgumentException(
+                "Users come from stores with different term dictionaries");
+        }
+        long start = Metrics.start();
+        long allocated = Metrics.allocated();
+        SimilarityResult result = new SimilarityResult();
+        LongBuffer ids1 = u1.getFollowerIds();
+        LongBuffer ids2 = u2.getFollowerIds();
+        result.setSharedFollowers(jaccardCoefficient(ids1, ids2));
+        result.setFollowerCount(ids1.remaining(), ids2.remaining());
+        ids1 = u1.getFriendIds();
+        ids2 = u2.getFriendIds();
+        result.setSharedFriends(jaccardCoefficient(ids1, ids2));
+        result.setFriendCount(ids1.remaining(), ids2.remaining());
+
+        result.setBioSimilarity(
+            pseudoCosine(u1.getBioTerms(), u2.getBioTerms()));
+        result.setSharedMentions(
+            pseudoCosine(u1.getMentions(), u2.getMentions()));
+        result.setFavoriteSimilarity(
+            pseudoCosine(u1.getFavoriteTerms(), u2.getFavoriteTerms()));
+        result.setTweetSimilarity(
+            pseudoCosine(u1.getTweetTerms(), u2.getTweetTerms()));
+
+        result.computeFinalScore();
+        Metrics.record(Metrics.Stage.SCORE, start, allocated);
+        return result;
+    }
+
+    /**
+     * @return the result of comparing a user to itself
+     */
+    static SimilarityResult identical() {
+        SimilarityResult result = new SimilarityResult();
+        result.setScore(1.0);
+        result.setReason("User ID values are identical");
         return result;
     }
     
@@ -108,6 +414,9 @@ public final class Similarity
      */
     public static <T> double jaccardCoefficient(
             Collection<T> collA, Collection<T> collB) {
+        if (collA instanceof SortedIdSet && collB instanceof SortedIdSet) {
+            return jaccardCoefficient((SortedIdSet) collA, (SortedIdSet) collB);
+        }
         if (collA == null || collB == null || 
                 collA.size() == 0 || collB.size() == 0) {
             return 0.0;
@@ -129,6 +438,207 @@ public final class Similarity
         }
         return (double)(intersection / (double)union);
     }
+
+    /**
+     * Computes the Jaccard coefficient of two ID sets without allocating
+     * anything: since both sets are sorted, the size of the intersection is
+     * found by merging them (see {@link #intersectionSize(long[], int, long[], 
+     * int)}) and the size of the union follows from it.
+     * @param setA a set of user IDs
+     * @param setB another set of user IDs
+     * @return a value between 0 and 1 indicating the similarity of the sets
+     */
+    public static double jaccardCoefficient(SortedIdSet setA, SortedIdSet setB) {
+        if (setA == null || setB == null || 
+                setA.size() == 0 || setB.size() == 0) {
+            return 0.0;
+        }
+        int intersection = intersectionSize(
+            setA.array(), setA.size(), setB.array(), setB.size());
+        int union = setA.size() + setB.size() - intersection;
+        return intersection / (double) union;
+    }
+
+    /**
+     * Counts the values two sorted, duplicate-free arrays have in common. 
+     * Arrays of comparable length are merged in a single linear pass; when one
+     * is much smaller than the other, each of its values is located in the 
+     * larger one by galloping (exponential) search, so the cost becomes
+     * proportional to the size of the small array times the logarithm of the
+     * size ratio rather than to the size of the large array.
+     * @param a first sorted array
+     * @param aLen number of valid entries in the first array
+     * @param b second sorted array
+     * @param bLen number of valid entries in the second array
+     * @return the number of values present in both arrays
+     */
+    static int intersectionSize(final long[] a, final int aLen, 
+            final long[] b, final int bLen) {
+        if (aLen > bLen) {
+            return intersectionSize(b, bLen, a, aLen);
+        }
+        if (aLen == 0 || a[aLen - 1] < b[0] || b[bLen - 1] < a[0]) {
+            return 0;
+        }
+        if ((long) aLen * GALLOP_RATIO < bLen) {
+            return gallopingIntersectionSize(a, aLen, b, bLen);
+        }
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < aLen && j < bLen) {
+            long x = a[i];
+            long y = b[j];
+            if (x < y) {
+                i++;
+            }
+            else if (x > y) {
+                j++;
+            }
+            else {
+                count++;
+                i++;
+                j++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Intersection for very skewed sizes: for each value of the small array,
+     * probe the large array at exponentially growing distances from the last
+     * match position, then binary search inside the bracket found.
+     */
+    private static int gallopingIntersectionSize(final long[] small, 
+            final int smallLen, final long[] large, final int largeLen) {
+        int count = 0;
+        int low = 0;
+        for (int i = 0; i < smallLen && low < largeLen; i++) {
+            long x = small[i];
+            if (large[low] >= x) {
+                if (large[low] == x) {
+                    count++;
+                    low++;
+                }
+                continue;
+            }
+            // large[low] < x: gallop until large[low + step] >= x
+            int step = 1;
+            int high = low + step;
+            while (high < largeLen && large[high] < x) {
+                low = high;
+                step <<= 1;
+                high = low + step;
+            }
+            // large[low] < x <= large[high] (if high is in range)
+            int end = high < largeLen ? high + 1 : largeLen;
+            int pos = Arrays.binarySearch(large, low + 1, end, x);
+            if (pos >= 0) {
+                count++;
+                low = pos + 1;
+            }
+            else {
+                low = -(pos + 1);
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * Computes the Jaccard coefficient of two ID sets held in buffers, such as
+     * the columns of a {@link ColumnarStore}, in the same way as
+     * {@link #jaccardCoefficient(SortedIdSet, SortedIdSet)}. The buffers'
+     * positions are left unchanged.
+     * @param idsA IDs in ascending order, without duplicates, between the
+     * buffer's position and limit
+     * @param idsB another such buffer
+     * @return a value between 0 and 1 indicating the similarity of the sets
+     */
+    public static double jaccardCoefficient(final LongBuffer idsA,
+            final LongBuffer idsB) {
+        if (idsA == null || idsB == null ||
+                !idsA.hasRemaining() || !idsB.hasRemaining()) {
+            return 0.0;
+        }
+        int intersection = intersectionSize(idsA, idsB);
+        int union = idsA.remaining() + idsB.remaining() - intersection;
+        return intersection / (double) union;
+    }
+
+    /**
+     * Counts the values two sorted, duplicate-free buffers have in common,
+     * merging them or galloping through the larger one as
+     * {@link #intersectionSize(long[], int, long[], int)} does.
+     */
+    static int intersectionSize(final LongBuffer a, final LongBuffer b) {
+        if (a.remaining() > b.remaining()) {
+            return intersectionSize(b, a);
+        }
+        int i = a.position();
+        int aEnd = a.limit();
+        int j = b.position();
+        int bEnd = b.limit();
+        if (i == aEnd || a.get(aEnd - 1) < b.get(j) ||
+                b.get(bEnd - 1) < a.get(i)) {
+            return 0;
+        }
+        int count = 0;
+        if ((long) a.remaining() * GALLOP_RATIO < b.remaining()) {
+            for (; i < aEnd && j < bEnd; i++) {
+                long x = a.get(i);
+                if (b.get(j) < x) {
+                    // Gallop until b[j + step] >= x, then search the bracket
+                    int step = 1;
+                    int high = j + step;
+                    while (high < bEnd && b.get(high) < x) {
+                        j = high;
+                        step <<= 1;
+                        high = j + step;
+                    }
+                    j = lowerBound(b, j + 1, Math.min(high + 1, bEnd), x);
+                }
+                if (j < bEnd && b.get(j) == x) {
+                    count++;
+                    j++;
+                }
+            }
+            return count;
+        }
+        while (i < aEnd && j < bEnd) {
+            long x = a.get(i);
+            long y = b.get(j);
+            if (x < y) {
+                i++;
+            }
+            else if (x > y) {
+                j++;
+            }
+            else {
+                count++;
+                i++;
+                j++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the first index between {@code from} and {@code to} at which a
+     * sorted buffer holds a value not smaller than {@code x}, or {@code to}
+     */
+    private static int lowerBound(final LongBuffer buffer, int from, int to,
+            final long x) {
+        while (from < to) {
+            int middle = (from + to) >>> 1;
+            if (buffer.get(middle) < x) {
+                from = middle + 1;
+            }
+            else {
+                to = middle;
+            }
+        }
+        return from;
+    }
     
     /**
      * Simulates the cosine metric used in vector-based information-retrieval
@@ -180,6 +690,102 @@ public final class Similarity
         return (double)(intersection / (double)unionCount);
     }
 
+    /**
+     * Computes the same metric as {@link #pseudoCosine(Map, Map)} on sparse 
+     * term vectors without allocating anything. The size of the intersection
+     * (the sum of the smaller frequency of each shared term) is found by 
+     * merging the sorted term IDs; since the larger and smaller frequency of a
+     * term add up to the sum of both, the size of the union follows from the
+     * totals of the two vectors.
+     * @param vecA a vector of term frequencies
+     * @param vecB a second such vector, built with the same dictionary
+     * @return a value between 0 and 1 indicating the similarity of the 
+     * vectors
+     */
+    public static double pseudoCosine(final TermVector vecA, 
+            final TermVector vecB) {
+        if (vecA == null || vecB == null || 
+                vecA.size() == 0 || vecB.size() == 0) {
+            return 0.0;
+        }
+        int[] idsA = vecA.termIds;
+        int[] idsB = vecB.termIds;
+        int[] countsA = vecA.counts;
+        int[] countsB = vecB.counts;
+        long intersection = 0;
+        int i = 0;
+        int j = 0;
+        while (i < idsA.length && j < idsB.length) {
+            int a = idsA[i];
+            int b = idsB[j];
+            if (a < b) {
+                i++;
+            }
+            else if (a > b) {
+                j++;
+            }
+            else {
+                intersection += Math.min(countsA[i], countsB[j]);
+                i++;
+                j++;
+            }
+        }
+        long union = vecA.total() + vecB.total() - intersection;
+        return intersection / (double) union;
+    }
+
+    /**
+     * Computes the same metric as {@link #pseudoCosine(TermVector, TermVector)}
+     * on term vectors held in buffers, such as those of a
+     * {@link ColumnarStore}. The buffers' positions are left unchanged.
+     * @param vecA between the buffer's position and limit, the IDs of the
+     * {@code n} distinct terms in ascending order followed by the frequency of
+     * each term
+     * @param vecB a second such vector, built with the same dictionary
+     * @return a value between 0 and 1 indicating the similarity of the 
+     * vectors
+     */
+    public static double pseudoCosine(final IntBuffer vecA,
+            final IntBuffer vecB) {
+        if (vecA == null || vecB == null ||
+                !vecA.hasRemaining() || !vecB.hasRemaining()) {
+            return 0.0;
+        }
+        int startA = vecA.position();
+        int startB = vecB.position();
+        int sizeA = vecA.remaining() / 2;
+        int sizeB = vecB.remaining() / 2;
+        long totalA = 0;
+        for (int i = 0; i < sizeA; i++) {
+            totalA += vecA.get(startA + sizeA + i);
+        }
+        long totalB = 0;
+        for (int j = 0; j < sizeB; j++) {
+            totalB += vecB.get(startB + sizeB + j);
+        }
+        long intersection = 0;
+        int i = 0;
+        int j = 0;
+        while (i < sizeA && j < sizeB) {
+            int a = vecA.get(startA + i);
+            int b = vecB.get(startB + j);
+            if (a < b) {
+                i++;
+            }
+            else if (a > b) {
+                j++;
+            }
+            else {
+                intersection += Math.min(vecA.get(startA + sizeA + i),
+                        vecB.get(startB + sizeB + j));
+                i++;
+                j++;
+            }
+        }
+        long union = totalA + totalB - intersection;
+        return intersection / (double) union;
+    }
+
     /**
      * Takes a collection of strings and increments the frequency of each item
      * in the list in the corresponding map of String/Integer pairs.
@@ -202,21 +808,129 @@ public final class Similarity
     }
     
     /**
-     * Utility method for tokenizing a list of strings rather than a single 
-     * string.
-     * @param textList a list of strings
-     * @param tokenizer tokenizer to use on the strings
-     * @return
+     * Computes one of the similarities of two users, exactly.
      */
-    private static Collection<String> tokenize(final Collection<String> textList,
-            Tokenizer tokenizer) {
-        List<String> tokList = new ArrayList<String>();
-        for (String str : textList) {
-            tokList.addAll(tokenizer.tokenize(str));
+    private static double score(final ScoringModel.Field field,
+            final UserProfile p1, final UserProfile p2) {
+        long start = Metrics.start();
+        double score;
+        Metrics.Stage stage;
+        switch (field) {
+        case FOLLOWERS:
+            score = jaccardCoefficient(p1.getFollowerIds(),
+                    p2.getFollowerIds());
+            stage = Metrics.Stage.SCORE_FOLLOWERS;
+            break;
+        case FRIENDS:
+            score = jaccardCoefficient(p1.getFriendIds(), p2.getFriendIds());
+            stage = Metrics.Stage.SCORE_FRIENDS;
+            break;
+        case BIO:
+            score = pseudoCosine(p1.getBioTerms(), p2.getBioTerms());
+            stage = Metrics.Stage.SCORE_BIO;
+            break;
+        case MENTIONS:
+            score = pseudoCosine(p1.getMentions(), p2.getMentions());
+            stage = Metrics.Stage.SCORE_MENTIONS;
+            break;
+        case FAVORITES:
+            score = pseudoCosine(p1.getFavoriteTerms(),
+                    p2.getFavoriteTerms());
+            stage = Metrics.Stage.SCORE_FAVORITES;
+            break;
+        default:
+            score = pseudoCosine(p1.getTweetTerms(), p2.getTweetTerms());
+            stage = Metrics.Stage.SCORE_TWEETS;
+            break;
         }
-        return tokList;
+        Metrics.record(stage, start);
+        return score;
     }
-    
+
+    /**
+     * Estimates the work of computing one of the similarities of two users,
+     * in entries visited: both lists are merged, unless one is small enough
+     * for the other to be galloped through (see
+     * {@link #intersectionSize(long[], int, long[], int)}), and nothing is
+     * done if either is empty.
+     */
+    private static long cost(final ScoringModel.Field field,
+            final UserProfile p1, final UserProfile p2) {
+        switch (field) {
+        case FOLLOWERS:
+            return cost(p1.getFollowerIds().size(),
+                    p2.getFollowerIds().size());
+        case FRIENDS:
+            return cost(p1.getFriendIds().size(), p2.getFriendIds().size());
+        case BIO:
+            return cost(p1.getBioTerms().size(), p2.getBioTerms().size());
+        case MENTIONS:
+            return cost(p1.getMentions().size(), p2.getMentions().size());
+        case FAVORITES:
+            return cost(p1.getFavoriteTerms().size(),
+                    p2.getFavoriteTerms().size());
+        default:
+            return cost(p1.getTweetTerms().size(), p2.getTweetTerms().size());
+        }
+    }
+
+    private static long cost(final int size1, final int size2) {
+        long small = Math.min(size1, size2);
+        long large = Math.max(size1, size2);
+        if (small == 0) {
+            return 0;
+        }
+        if (small * GALLOP_RATIO < large) {
+            return small * (64 - Long.numberOfLeadingZeros(large / small));
+        }
+        return small + large;
+    }
+
+    private static void checkDictionaries(final UserProfile p1,
+            final UserProfile p2) {
+        if (p1.getDictionary() != p2.getDictionary()) {
+            throw new IllegalArgumentException(
+                "Profiles were built with different term dictionaries");
+        }
+    }
+
+    /**
+     * @return the smallest fraction of any list of a user that was fetched
+     */
+    private static double coverage(final UserProfile profile) {
+        return Math.min(
+                Math.min(profile.getFollowerCoverage(),
+                        profile.getFriendCoverage()),
+                Math.min(profile.getTweetCoverage(),
+                        profile.getFavoriteCoverage()));
+    }
+
+    /**
+     * Decides whether estimating the Jaccard coefficient of two ID sets from
+     * their signatures is worthwhile: the signatures must be built by equal
+     * hash families, and merging the sets must cost more than comparing the
+     * signatures, which are only built once this holds.
+     */
+    private static boolean shouldEstimate(final SortedIdSet ids1,
+            final SortedIdSet ids2, final MinHash family1,
+            final MinHash family2) {
+        return family1.equals(family2) &&
+            (long) ids1.size() + ids2.size() >
+                ESTIMATE_THRESHOLD * family1.getBins();
+    }
+
+    /**
+     * Size ratio above which {@link #intersectionSize(long[], int, long[], int)}
+     * switches from a linear merge to galloping search.
+     */
+    private static final int GALLOP_RATIO = 32;
+
+    /**
+     * Number of IDs per signature bin below which exact follower and friend
+     * similarities are computed even in approximate mode.
+     */
+    private static final int ESTIMATE_THRESHOLD = 4;
+
     /**
      * Constructor is private, since the class contains static methods only and
      * does not need to be instantiated.
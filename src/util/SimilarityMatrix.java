@@ -0,0 +1,275 @@
+//=============================================================================
+// Coding sample for Stefaan Heyvaert.
+//=============================================================================
+package util;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import text.Tokenizer;
+
+import client.TwitterUser;
+
+/**
+ * Computes the similarity of every pair of users in a list, in parallel.
+ * <p>
+ * The features of each user are extracted once up front (rather than once per
+ * comparison as a loop over {@link Similarity#computeSumilarity(TwitterUser,
+ * TwitterUser, Tokenizer)} would do). The upper triangle of the N x N matrix
+ * is then cut into square tiles of {@code blockSize} rows and columns, which
+ * are scored as separate tasks on a {@link ForkJoinPool}; tiles keep the
+ * profiles being compared within a small working set.
+ * <p>
+ * Results can be collected into a dense matrix with
+ * {@link #computeMatrix(List)}, or streamed to a {@link PairCallback} with
+ * {@link #computePairs(List, PairCallback)} so that the matrix never has to be
+ * held in memory, or, with all their individual scores but without a
+ * {@link SimilarityResult} per pair, into a {@link ScoreTable} with
+ * {@link #computeTable(List)}.
+ *
+ * @author sh
+ */
+public class SimilarityMatrix
+{
+    /**
+     * Creates an instance using the common fork/join pool.
+     * @param tokenizer tokenizer for the users' text fields; it is used from
+     * several threads at once
+     */
+    public SimilarityMatrix(final Tokenizer tokenizer) {
+        this(tokenizer, ForkJoinPool.commonPool(), DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @param tokenizer tokenizer for the users' text fields; it is used from
+     * several threads at once
+     * @param pool pool to run the computation on
+     * @param blockSize number of rows and columns per tile
+     */
+    public SimilarityMatrix(final Tokenizer tokenizer, final ForkJoinPool pool,
+            final int blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Block size must be positive");
+        }
+        this.tokenizer = tokenizer;
+        this.pool = pool;
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * @param approximate true to allow follower and friend similarities to be
+     * estimated from MinHash signatures (see {@link Similarity#computeSumilarity(
+     * TwitterUser, TwitterUser, Tokenizer, boolean)})
+     */
+    public void setApproximate(final boolean approximate) {
+        this.approximate = approximate;
+    }
+
+    /**
+     * Computes the full similarity matrix of a list of users.
+     * @param users users to compare
+     * @return an N x N matrix in row-major order: the similarity between users
+     * {@code i} and {@code j} is at index {@code i * N + j} (and at
+     * {@code j * N + i}); the diagonal is 1
+     */
+    public double[] computeMatrix(final List<TwitterUser> users) {
+        final int n = users.size();
+        if ((long) n * n > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(
+                "Too many users for a matrix: " + n);
+        }
+        final double[] matrix = new double[n * n];
+        for (int i = 0; i < n; i++) {
+            matrix[i * n + i] = 1.0;
+        }
+        // Each pair writes to its own two cells, so no synchronization is
+        // needed; completion of the pool task makes the writes visible.
+        computePairs(users, new PairCallback() {
+            public void pairScored(int i, int j, SimilarityResult result) {
+                matrix[i * n + j] = result.getScore();
+                matrix[j * n + i] = result.getScore();
+            }
+        });
+        return matrix;
+    }
+
+    /**
+     * Computes the similarity of every pair of users {@code i < j} in a list
+     * into a table, with one row per pair (see {@link #row(int, int, int)}).
+     * Follower and friend similarities are exact, whatever
+     * {@link #setApproximate(boolean)} says.
+     * @param users users to compare
+     * @return the table
+     */
+    public ScoreTable computeTable(final List<TwitterUser> users) {
+        long n = users.size();
+        if (n * (n - 1) / 2 * ScoreTable.WIDTH > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(
+                "Too many users for a table: " + n);
+        }
+        ScoreTable table = new ScoreTable((int) (n * (n - 1) / 2));
+        compute(users, null, table);
+        return table;
+    }
+
+    /**
+     * @param i first user, smaller than {@code j}
+     * @param j second user
+     * @param n number of users
+     * @return the row of the pair in the table made by
+     * {@link #computeTable(List)}: pairs are in the order (0, 1), (0, 2) ...
+     * (0, n - 1), (1, 2) ...
+     */
+    public static int row(final int i, final int j, final int n) {
+        if (i < 0 || i >= j || j >= n) {
+            throw new IllegalArgumentException("Not a pair: " + i + ", " + j);
+        }
+        return (int) ((long) i * (2L * n - i - 1) / 2 + j - i - 1);
+    }
+
+    /**
+     * Computes the similarity of every pair of users {@code i < j} in a list
+     * and passes each result to a callback as soon as it is available.
+     * @param users users to compare
+     * @param callback receives the results, from several threads at once
+     */
+    public void computePairs(final List<TwitterUser> users,
+            final PairCallback callback) {
+        compute(users, callback, null);
+    }
+
+    /**
+     * Scores every pair, passing the results to a callback or writing them to
+     * a table.
+     */
+    private void compute(final List<TwitterUser> users,
+            final PairCallback callback, final ScoreTable table) {
+        UserProfile[] profiles = new UserProfile[users.size()];
+        pool.invoke(new ProfileTask(users, profiles, 0, profiles.length));
+        int blocks = (profiles.length + blockSize - 1) / blockSize;
+        int tiles = blocks * (blocks + 1) / 2;
+        int[] rowBlocks = new int[tiles];
+        int[] columnBlocks = new int[tiles];
+        int t = 0;
+        for (int row = 0; row < blocks; row++) {
+            for (int column = row; column < blocks; column++) {
+                rowBlocks[t] = row;
+                columnBlocks[t] = column;
+                t++;
+            }
+        }
+        pool.invoke(new TileTask(profiles, rowBlocks, columnBlocks, 0, tiles,
+                callback, table));
+    }
+
+    /**
+     * Extracts the profiles of a range of users, splitting the range in half
+     * until it is small enough.
+     */
+    private class ProfileTask extends RecursiveAction
+    {
+        ProfileTask(final List<TwitterUser> users, final UserProfile[] profiles,
+                final int from, final int to) {
+            this.users = users;
+            this.profiles = profiles;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PROFILES_PER_TASK) {
+                for (int i = from; i < to; i++) {
+                    profiles[i] = new UserProfile(users.get(i), tokenizer);
+                }
+            }
+            else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ProfileTask(users, profiles, from, middle),
+                        new ProfileTask(users, profiles, middle, to));
+            }
+        }
+
+        private final List<TwitterUser> users;
+        private final UserProfile[] profiles;
+        private final int from;
+        private final int to;
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Scores a range of tiles, splitting the range in half until a single
+     * tile is left.
+     */
+    private class TileTask extends RecursiveAction
+    {
+        TileTask(final UserProfile[] profiles, final int[] rowBlocks,
+                final int[] columnBlocks, final int from, final int to,
+                final PairCallback callback, final ScoreTable table) {
+            this.profiles = profiles;
+            this.rowBlocks = rowBlocks;
+            this.columnBlocks = columnBlocks;
+            this.from = from;
+            this.to = to;
+            this.callback = callback;
+            this.table = table;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                scoreTile(rowBlocks[from], columnBlocks[from]);
+            }
+            else if (to > from) {
+                int middle = (from + to) >>> 1;
+                invokeAll(
+                    new TileTask(profiles, rowBlocks, columnBlocks, from,
+                            middle, callback, table),
+                    new TileTask(profiles, rowBlocks, columnBlocks, middle,
+                            to, callback, table));
+            }
+        }
+
+        private void scoreTile(final int rowBlock, final int columnBlock) {
+            int rowEnd = Math.min((rowBlock + 1) * blockSize, profiles.length);
+            int columnEnd =
+                Math.min((columnBlock + 1) * blockSize, profiles.length);
+            for (int i = rowBlock * blockSize; i < rowEnd; i++) {
+                // Tiles on the diagonal only cover the pairs above it
+                int j = rowBlock == columnBlock ? i + 1 : columnBlock * blockSize;
+                for (; j < columnEnd; j++) {
+                    if (table != null) {
+                        Similarity.score(profiles[i], profiles[j], table,
+                                row(i, j, profiles.length));
+                    }
+                    else {
+                        callback.pairScored(i, j, Similarity.computeSumilarity(
+                                profiles[i], profiles[j], approximate));
+                    }
+                }
+            }
+        }
+
+        private final UserProfile[] profiles;
+        private final int[] rowBlocks;
+        private final int[] columnBlocks;
+        private final int from;
+        private final int to;
+        private final PairCallback callback;
+
+        /** Where scores go instead of to the callback, if not null */
+        private final ScoreTable table;
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    private static final int DEFAULT_BLOCK_SIZE = 32;
+    private static final int PROFILES_PER_TASK = 16;
+
+    private final Tokenizer tokenizer;
+    private final ForkJoinPool pool;
+    private final int blockSize;
+    private volatile boolean approximate = false;
+}
@@ -13,75 +13,120 @@ public class SimilarityResult
 
     /**
      * Computes the final score by multiplying together all the non-zero
-     * individual scores.
+     * individual scores. The explanation of the score is only written when
+     * it is asked for (see {@link #getReason()}), so scoring many pairs for
+     * their numbers alone costs no formatting. An explanation already
+     * written is dropped, since the scores may have changed since.
      */
     public void computeFinalScore() {
+        setScore(combine(sharedFollowers, sharedFriends, bioSimilarity,
+                sharedMentions, favoriteSimilarity, tweetSimilarity));
+        reason = null;
+    }
+
+    /**
+     * Combines individual scores into a final score as
+     * {@link #computeFinalScore()} does.
+     * @return the product of the non-zero scores, or 0 if all are 0
+     */
+    public static double combine(final double followers,
+            final double friends, final double bio, final double mentions,
+            final double favorites, final double tweets) {
+        // Zero scores are left out of the product
+        double score = nonZero(followers) * nonZero(friends) * nonZero(bio)
+            * nonZero(mentions) * nonZero(favorites) * nonZero(tweets);
+        return followers > 0.0 || friends > 0.0 || bio > 0.0 ||
+            mentions > 0.0 || favorites > 0.0 || tweets > 0.0 ? score : 0.0;
+    }
+
+    private static double nonZero(final double value) {
+        return value > 0.0 ? value : 1.0;
+    }
+
+    public void setScore(final double score) {
+        this.score = score;
+    }
+    
+    public double getScore() {
+        return score;
+    }
+    
+    public void setReason(final String reason) {
+        this.reason = reason;
+    }
+
+    /**
+     * @return why the score is what it is, one line per score that counted;
+     * written the first time it is asked for, unless set
+     */
+    public String getReason() {
+        // Racing threads write equal immutable strings, so no lock is needed
+        if (reason == null) {
+            reason = describe();
+        }
+        return reason;
+    }
+    
+    public String toString() {
+        return "Similarity score: " + String.format("%6.4f", score) 
+                +  "\n" + getReason();
+    }
+
+    /**
+     * Explains the individual scores that were not 0, the way they were
+     * measured and what part of the users they are based on.
+     */
+    private String describe() {
         StringBuilder sb = new StringBuilder("\n");
         boolean haveCommonality = false;
-        double score = 1.0;
         if (sharedFriends > 0.0) {
             sb.append(String.format("%6.4f", sharedFriends) + 
                     " (similarity between friends [" + t1Friends +
-                    " / " + t2Friends + "])\n");
-            score *= sharedFriends;
+                    " / " + t2Friends + "]" + 
+                    describeEstimate(friendsEstimated, friendErrorBound) +
+                    describeCoverage(friendCoverage) + ")\n");
             haveCommonality = true;
         }
         if (sharedFollowers > 0.0) {
             sb.append(String.format("%6.4f", sharedFollowers) +
                     " (similarity between followers [" + t1Followers +
-                    " / " + t2Followers + "])\n");
-            score *= sharedFollowers;
+                    " / " + t2Followers + "]" +
+                    describeEstimate(followersEstimated, followerErrorBound) +
+                    describeCoverage(followerCoverage) + ")\n");
             haveCommonality = true;
         }
         if (sharedMentions > 0.0) {
             sb.append(String.format("%6.4f", sharedMentions) +
                     " (similarity between users/topics mentioned)\n");
-            score *= sharedMentions;
             haveCommonality = true;
         }
         if (bioSimilarity > 0.0) {
             sb.append(String.format("%6.4f", bioSimilarity) +
                     " (similarity between biographies)");
-            score *= bioSimilarity;
             haveCommonality = true;
         }
         
         if (favoriteSimilarity > 0.0) {
             sb.append(String.format("%6.4f", favoriteSimilarity) + 
-                    " (similarity between favorite tweets)\n");
-            score *= favoriteSimilarity;
+                    " (similarity between favorite tweets" +
+                    describeCoverage(favoriteCoverage) + ")\n");
             haveCommonality = true;
         }
         if (tweetSimilarity > 0.0) {
             sb.append(String.format("%6.4f", tweetSimilarity) + 
-                    " (similarity between regular tweets)\n");
-            score *= tweetSimilarity;
+                    " (similarity between regular tweets" +
+                    describeCoverage(tweetCoverage) + ")\n");
             haveCommonality = true;
         }
-        if (haveCommonality) {
-            setScore(score);
-            reason = sb.toString();
-        }
-        else {
-            reason = "Users have nothing in common.";
+        String text = haveCommonality ? sb.toString()
+            : "Users have nothing in common.";
+        if (getCoverage() < 1.0) {
+            text += String.format(
+                    "\nBased on partially fetched users: at least %.0f%% of "
+                    + "each list of followers, friends, tweets and favorites",
+                    100 * getCoverage());
         }
-    }
-
-    public void setScore(final double score) {
-        this.score = score;
-    }
-    
-    public double getScore() {
-        return score;
-    }
-    
-    public void setReason(final String reason) {
-        this.reason = reason;
-    }
-    
-    public String toString() {
-        return "Similarity score: " + String.format("%6.4f", score) 
-                +  "\n" + reason;
+        return text;
     }
     
     public double getBioSimilarity() {
@@ -132,6 +177,56 @@ public class SimilarityResult
         this.tweetSimilarity = tweetSimilarity;
     }
     
+    /**
+     * Records that {@link #getSharedFollowers()} was estimated from MinHash
+     * signatures rather than computed exactly.
+     * @param errorBound maximum expected distance from the exact value
+     */
+    public void setFollowersEstimated(final double errorBound) {
+        followersEstimated = true;
+        followerErrorBound = errorBound;
+    }
+
+    /**
+     * @return true if the follower similarity is an estimate; false if it is
+     * exact
+     */
+    public boolean isFollowersEstimated() {
+        return followersEstimated;
+    }
+
+    /**
+     * @return the error bound of the follower similarity (0 if exact)
+     */
+    public double getFollowerErrorBound() {
+        return followerErrorBound;
+    }
+
+    /**
+     * Records that {@link #getSharedFriends()} was estimated from MinHash
+     * signatures rather than computed exactly.
+     * @param errorBound maximum expected distance from the exact value
+     */
+    public void setFriendsEstimated(final double errorBound) {
+        friendsEstimated = true;
+        friendErrorBound = errorBound;
+    }
+
+    /**
+     * @return true if the friend similarity is an estimate; false if it is
+     * exact
+     */
+    public boolean isFriendsEstimated() {
+        return friendsEstimated;
+    }
+
+    /**
+     * @return the error bound of the friend similarity (0 if exact)
+     */
+    public double getFriendErrorBound() {
+        return friendErrorBound;
+    }
+
     public void setFollowerCount(final int count1, final int count2) {
         t1Followers = count1;
         t2Followers = count2;
@@ -142,7 +237,63 @@ public class SimilarityResult
         t2Friends = count2;
     }
     
+    /**
+     * Records how much of each user's followers were compared.
+     * @param coverage1 fraction of the first user's followers, between 0 and
+     * 1
+     * @param coverage2 fraction of the second user's followers
+     */
+    public void setFollowerCoverage(final double coverage1,
+            final double coverage2) {
+        followerCoverage = new double[] { coverage1, coverage2 };
+    }
+
+    public void setFriendCoverage(final double coverage1,
+            final double coverage2) {
+        friendCoverage = new double[] { coverage1, coverage2 };
+    }
+
+    public void setTweetCoverage(final double coverage1,
+            final double coverage2) {
+        tweetCoverage = new double[] { coverage1, coverage2 };
+    }
+
+    public void setFavoriteCoverage(final double coverage1,
+            final double coverage2) {
+        favoriteCoverage = new double[] { coverage1, coverage2 };
+    }
+
+    /**
+     * @return the smallest fraction of any list of either user that the
+     * score is based on: 1 if the users were fetched in full, less if they
+     * were fetched within {@link client.FetchLimits}
+     */
+    public double getCoverage() {
+        double coverage = 1.0;
+        for (double[] pair : new double[][] { followerCoverage,
+                friendCoverage, tweetCoverage, favoriteCoverage }) {
+            coverage = Math.min(coverage, Math.min(pair[0], pair[1]));
+        }
+        return coverage;
+    }
+
+    private static String describeCoverage(final double[] coverage) {
+        if (coverage[0] >= 1.0 && coverage[1] >= 1.0) {
+            return "";
+        }
+        return String.format(", %.0f%% / %.0f%% fetched",
+                100 * coverage[0], 100 * coverage[1]);
+    }
+
+    private static String describeEstimate(final boolean estimated, 
+            final double errorBound) {
+        return estimated ? 
+                String.format(", estimated +/- %6.4f", errorBound) : "";
+    }
+
     private double score = 0.0;
+
+    /** Explanation of the score, null until set or first asked for */
     private String reason;
     private double bioSimilarity;
     private double sharedFollowers; 
@@ -154,4 +305,14 @@ public class SimilarityResult
     private int t2Friends;
     private int t1Followers;
     private int t2Followers;
+    private boolean friendsEstimated;
+    private double friendErrorBound;
+    private boolean followersEstimated;
+    private double followerErrorBound;
+    private double[] followerCoverage = FULL;
+    private double[] friendCoverage = FULL;
+    private double[] tweetCoverage = FULL;
+    private double[] favoriteCoverage = FULL;
+
+    private static final double[] FULL = { 1.0, 1.0 };
 }
@@ -0,0 +1,485 @@
+//=============================================================================
+// Coding sample for Stefaan Heyvaert.
+//=============================================================================
+package util;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A set of Twitter user IDs kept as a sorted array of primitive {@code long}
+ * values. Compared to a {@code HashSet<Long>} it uses a fraction of the memory
+ * (8 bytes per ID instead of a boxed value plus a hash table entry) and allows
+ * set intersections to be computed by merging two arrays, which is what
+ * {@link Similarity#jaccardCoefficient(SortedIdSet, SortedIdSet)} does.
+ * <p>
+ * Membership tests are binary searches. Adding a single ID is linear in the
+ * size of the set, so IDs should be added in bulk through
+ * {@link #addAll(Collection)} whenever possible.
+ * <p>
+ * The class implements {@link java.util.Set} so it can be used wherever a
+ * collection of IDs was expected before, but the boxed methods exist for
+ * compatibility only and are not meant for hot paths.
+ *
+ * @author sh
+ */
+public class SortedIdSet extends AbstractSet<Long> implements Serializable
+{
+    /**
+     * Creates an empty set.
+     */
+    public SortedIdSet() {
+        ids = EMPTY;
+    }
+
+    /**
+     * Creates a set containing the IDs of the collection passed in.
+     * @param ids a collection of IDs, possibly unsorted and with duplicates
+     */
+    public SortedIdSet(final Collection<Long> ids) {
+        this();
+        addAll(ids);
+    }
+
+    /**
+     * Creates a set from an array of IDs. The array is copied.
+     * @param ids IDs in any order, possibly with duplicates
+     * @return a new set
+     */
+    public static SortedIdSet of(final long... ids) {
+        SortedIdSet set = new SortedIdSet();
+        set.addAll(ids.clone(), ids.length);
+        return set;
+    }
+
+    /**
+     * Creates a set from an array of IDs that is already in strictly
+     * ascending order, such as one read back from storage. The array is not
+     * sorted or copied, so the caller must not modify it afterwards; the set
+     * copies it the first time it would change it in place.
+     * @param ids IDs in strictly ascending order
+     * @param count number of valid entries in the array
+     * @return a new set backed by the array
+     * @throws IllegalArgumentException if the IDs are not strictly ascending
+     */
+    public static SortedIdSet ofSorted(final long[] ids, final int count) {
+        for (int i = 1; i < count; i++) {
+            if (ids[i - 1] >= ids[i]) {
+                throw new IllegalArgumentException(
+                        "IDs not in ascending order at index " + i);
+            }
+        }
+        SortedIdSet set = new SortedIdSet();
+        set.ids = ids;
+        set.size = count;
+        set.shared = true;
+        return set;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param id a user ID
+     * @return true if the ID is in the set
+     */
+    public boolean contains(final long id) {
+        return Arrays.binarySearch(ids, 0, size, id) >= 0;
+    }
+
+    @Override
+    public boolean contains(final Object obj) {
+        return obj instanceof Long && contains(((Long) obj).longValue());
+    }
+
+    /**
+     * Adds a single ID to the set.
+     * @param id a user ID
+     * @return true if the set did not already contain the ID
+     */
+    public boolean add(final long id) {
+        checkWritable();
+        int pos = Arrays.binarySearch(ids, 0, size, id);
+        if (pos >= 0) {
+            return false;
+        }
+        pos = -(pos + 1);
+        unshare();
+        ensureCapacity(size + 1);
+        System.arraycopy(ids, pos, ids, pos + 1, size - pos);
+        ids[pos] = id;
+        size += 1;
+        modCount += 1;
+        return true;
+    }
+
+    @Override
+    public boolean add(final Long id) {
+        return add(id.longValue());
+    }
+
+    /**
+     * Adds all IDs of a collection by sorting them and merging them into the
+     * current contents, which is much faster than adding them one by one.
+     */
+    @Override
+    public boolean addAll(final Collection<? extends Long> coll) {
+        checkWritable();
+        if (coll instanceof SortedIdSet) {
+            SortedIdSet other = (SortedIdSet) coll;
+            return mergeSorted(other.ids, other.size);
+        }
+        long[] added = new long[coll.size()];
+        int count = 0;
+        for (Long id : coll) {
+            added[count++] = id.longValue();
+        }
+        return addAll(added, count);
+    }
+
+    /**
+     * Adds the first {@code count} IDs of an array. The array is sorted in
+     * place.
+     * @param added IDs in any order, possibly with duplicates
+     * @param count number of valid entries in the array
+     * @return true if the set changed
+     */
+    public boolean addAll(final long[] added, final int count) {
+        checkWritable();
+        Arrays.sort(added, 0, count);
+        return mergeSorted(added, dedupe(added, count));
+    }
+
+    /**
+     * Removes a single ID from the set.
+     * @param id a user ID
+     * @return true if the set contained the ID
+     */
+    public boolean remove(final long id) {
+        int pos = Arrays.binarySearch(ids, 0, size, id);
+        if (pos < 0) {
+            return false;
+        }
+        removeAt(pos);
+        return true;
+    }
+
+    /**
+     * Removes the first {@code count} IDs of an array by sorting them and
+     * compacting the current contents in a single pass, which is much faster
+     * than removing them one by one. The array is sorted in place, and the
+     * IDs that were in the set are moved to its start.
+     * @param removed IDs in any order, possibly with duplicates
+     * @param count number of valid entries in the array
+     * @return the number of IDs that were in the set, now at the start of
+     * the array in ascending order
+     */
+    public int removeAll(final long[] removed, final int count) {
+        checkWritable();
+        Arrays.sort(removed, 0, count);
+        int distinct = dedupe(removed, count);
+        if (size == 0 || distinct == 0) {
+            return 0;
+        }
+        unshare();
+        int i = 0;
+        int j = 0;
+        int kept = 0;
+        int found = 0;
+        while (i < size && j < distinct) {
+            long a = ids[i];
+            long b = removed[j];
+            if (a < b) {
+                ids[kept++] = a;
+                i++;
+            }
+            else if (a > b) {
+                j++;
+            }
+            else {
+                removed[found++] = b;
+                i++;
+                j++;
+            }
+        }
+        if (found == 0) {
+            return 0;
+        }
+        while (i < size) {
+            ids[kept++] = ids[i++];
+        }
+        size = kept;
+        modCount += 1;
+        return found;
+    }
+
+    @Override
+    public boolean remove(final Object obj) {
+        return obj instanceof Long && remove(((Long) obj).longValue());
+    }
+
+    @Override
+    public void clear() {
+        checkWritable();
+        size = 0;
+        modCount += 1;
+    }
+
+    /**
+     * @param index position in the set, between 0 and {@link #size()} - 1
+     * @return the ID at the given position in ascending order
+     */
+    public long get(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index);
+        }
+        return ids[index];
+    }
+
+    /**
+     * @return a copy of the IDs in ascending order
+     */
+    public long[] toLongArray() {
+        return Arrays.copyOf(ids, size);
+    }
+
+    @Override
+    public Iterator<Long> iterator() {
+        return new Iterator<Long>() {
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            public Long next() {
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                last = next;
+                return ids[next++];
+            }
+
+            public void remove() {
+                if (last < 0) {
+                    throw new IllegalStateException();
+                }
+                removeAt(last);
+                next = last;
+                last = -1;
+                expectedModCount = modCount;
+            }
+
+            private int next = 0;
+            private int last = -1;
+            private int expectedModCount = modCount;
+        };
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (obj instanceof SortedIdSet) {
+            SortedIdSet other = (SortedIdSet) obj;
+            if (size != other.size) {
+                return false;
+            }
+            for (int i = 0; i < size; i++) {
+                if (ids[i] != other.ids[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return super.equals(obj);
+    }
+
+    @Override
+    public int hashCode() {
+        // Same value as Set.hashCode() requires: the sum of Long.hashCode()
+        int hash = 0;
+        for (int i = 0; i < size; i++) {
+            hash += (int) (ids[i] ^ (ids[i] >>> 32));
+        }
+        return hash;
+    }
+
+    /**
+     * @return a read-only copy of the current set, which can safely be shared
+     * between threads
+     */
+    public SortedIdSet immutableCopy() {
+        SortedIdSet copy = new SortedIdSet();
+        copy.ids = toLongArray();
+        copy.size = size;
+        copy.readOnly = true;
+        return copy;
+    }
+
+    /**
+     * Gives classes of this package direct access to the backing array. Only
+     * the first {@link #size()} entries are valid.
+     */
+    long[] array() {
+        return ids;
+    }
+
+    /**
+     * Merges a sorted, duplicate-free array into the current contents.
+     */
+    private boolean mergeSorted(final long[] added, final int count) {
+        if (count == 0) {
+            return false;
+        }
+        if (size == 0) {
+            ids = Arrays.copyOf(added, count);
+            size = count;
+            shared = false;
+            modCount += 1;
+            return true;
+        }
+        // Skip the IDs that are already in the set, so that nothing is
+        // allocated when all of them are
+        int i = 0;
+        int j = 0;
+        while (j < count) {
+            while (i < size && ids[i] < added[j]) {
+                i++;
+            }
+            if (i == size || ids[i] != added[j]) {
+                break;
+            }
+            i++;
+            j++;
+        }
+        if (j == count) {
+            return false;
+        }
+        long[] merged = new long[size + count - j];
+        System.arraycopy(ids, 0, merged, 0, i);
+        int k = i;
+        while (i < size && j < count) {
+            long a = ids[i];
+            long b = added[j];
+            if (a < b) {
+                merged[k++] = a;
+                i++;
+            }
+            else if (a > b) {
+                merged[k++] = b;
+                j++;
+            }
+            else {
+                merged[k++] = a;
+                i++;
+                j++;
+            }
+        }
+        while (i < size) {
+            merged[k++] = ids[i++];
+        }
+        while (j < count) {
+            merged[k++] = added[j++];
+        }
+        ids = merged;
+        size = k;
+        shared = false;
+        modCount += 1;
+        return true;
+    }
+
+    /**
+     * Removes duplicates from a sorted array in place.
+     * @return the number of distinct values at the start of the array
+     */
+    private static int dedupe(final long[] sorted, final int count) {
+        if (count == 0) {
+            return 0;
+        }
+        int last = 0;
+        for (int i = 1; i < count; i++) {
+            if (sorted[i] != sorted[last]) {
+                sorted[++last] = sorted[i];
+            }
+        }
+        return last + 1;
+    }
+
+    private void removeAt(final int pos) {
+        checkWritable();
+        unshare();
+        System.arraycopy(ids, pos + 1, ids, pos, size - pos - 1);
+        size -= 1;
+        modCount += 1;
+    }
+
+    private void checkWritable() {
+        if (readOnly) {
+            throw new UnsupportedOperationException("Set is read-only");
+        }
+    }
+
+    /**
+     * Copies an array adopted by {@link #ofSorted(long[], int)} before it is
+     * changed in place.
+     */
+    private void unshare() {
+        if (shared) {
+            ids = Arrays.copyOf(ids, size);
+            shared = false;
+        }
+    }
+
+    private void ensureCapacity(final int capacity) {
+        if (capacity > ids.length) {
+            ids = Arrays.copyOf(ids, Math.max(capacity, ids.length * 3 / 2 + 1));
+        }
+    }
+
+    /**
+     * Only the valid part of the array is written, preceded by its length.
+     */
+    private void writeObject(final ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeLong(ids[i]);
+        }
+    }
+
+    private void readObject(final ObjectInputStream in)
+            throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        size = in.readInt();
+        ids = new long[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = in.readLong();
+        }
+    }
+
+    private static final long[] EMPTY = new long[0];
+
+    /** Required for Serializable */
+    private static final long serialVersionUID = 1L;
+
+    /** IDs in ascending order; only the first {@code size} are valid */
+    private transient long[] ids;
+    private transient int size;
+    private transient int modCount;
+
+    /** Set while the array is the one passed to {@link #ofSorted} */
+    private transient boolean shared;
+
+    /** Set by {@link #immutableCopy()} */
+    private boolean readOnly;
+}
@@ -0,0 +1,93 @@
+//=============================================================================
+// Coding sample for Stefaan Heyvaert.
+//=============================================================================
+package util;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Everything {@link Metrics} records about one stage: how long each run took,
+ * how many items the runs processed, and how many bytes they allocated.
+ * Recording is lock-free.
+ *
+ * @author sh
+ */
+public final class StageStats implements StageStatsMXBean
+{
+    StageStats(final String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return durations of the runs of the stage
+     */
+    public LatencyHistogram getHistogram() {
+        return histogram;
+    }
+
+    public long getCount() {
+        return histogram.getCount();
+    }
+
+    public double getMeanMicros() {
+        return histogram.getMean() / NANOS_PER_MICRO;
+    }
+
+    public double getMedianMicros() {
+        return histogram.getPercentile(50) / NANOS_PER_MICRO;
+    }
+
+    public double getP90Micros() {
+        return histogram.getPercentile(90) / NANOS_PER_MICRO;
+    }
+
+    public double getP99Micros() {
+        return histogram.getPercentile(99) / NANOS_PER_MICRO;
+    }
+
+    public double getMaxMicros() {
+        return histogram.getMax() / NANOS_PER_MICRO;
+    }
+
+    public double getTotalSeconds() {
+        return histogram.getTotal() / 1e9;
+    }
+
+    public long getItems() {
+        return items.sum();
+    }
+
+    public double getItemsPerSecond() {
+        double seconds = getTotalSeconds();
+        return seconds == 0 ? 0.0 : getItems() / seconds;
+    }
+
+    public long getAllocatedBytes() {
+        return allocated.sum();
+    }
+
+    public void reset() {
+        histogram.reset();
+        items.reset();
+        allocated.reset();
+    }
+
+    void addItems(final long count) {
+        items.add(count);
+    }
+
+    void addAllocated(final long bytes) {
+        allocated.add(bytes);
+    }
+
+    private static final double NANOS_PER_MICRO = 1000.0;
+
+    private final String name;
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private final LongAdder items = new LongAdder();
+    private final LongAdder allocated = new LongAdder();
+}
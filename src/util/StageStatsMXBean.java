@@ -0,0 +1,58 @@
+//=============================================================================
+// Coding sample for Stefaan Heyvaert.
+//=============================================================================
+package util;
+
+/**
+ * What JMX clients see of the {@link StageStats} of a stage. Durations are in
+ * microseconds.
+ *
+ * @author sh
+ */
+public interface StageStatsMXBean
+{
+    /**
+     * @return name of the stage
+     */
+    String getName();
+
+    /**
+     * @return number of times the stage ran
+     */
+    long getCount();
+
+    double getMeanMicros();
+
+    double getMedianMicros();
+
+    double getP90Micros();
+
+    double getP99Micros();
+
+    double getMaxMicros();
+
+    /**
+     * @return time spent in the stage, in seconds, summed over all threads
+     */
+    double getTotalSeconds();
+
+    /**
+     * @return number of items processed, such as tokens for tokenization
+     */
+    long getItems();
+
+    /**
+     * @return items processed per second spent in the stage
+     */
+    double getItemsPerSecond();
+
+    /**
+     * @return bytes allocated by the stage, where measured
+     */
+    long getAllocatedBytes();
+
+    /**
+     * Forgets everything recorded so far.
+     */
+    void reset();
+}
@@ -0,0 +1,102 @@
+//=============================================================================
+// Coding sample for Stefaan Heyvaert.
+//=============================================================================
+package util;
+
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * View of one user of a {@link ColumnarStore}: the same features as a
+ * {@link UserProfile}, read from the store's mapped files on demand instead of
+ * held on the heap. A view takes a few dozen bytes, however many followers the
+ * user has, and each accessor returns a new read-only buffer over the data.
+ * <p>
+ * ID columns are {@link LongBuffer}s of IDs in ascending order. Term vectors
+ * are {@link IntBuffer}s of twice the number of distinct terms: the term IDs
+ * in ascending order, then the frequency of each term. Both are the layouts
+ * that {@link Similarity#jaccardCoefficient(LongBuffer, LongBuffer)} and
+ * {@link Similarity#pseudoCosine(IntBuffer, IntBuffer)} expect.
+ *
+ * @author sh
+ */
+public final class StoredUser
+{
+    StoredUser(final ColumnarStore store, final int position) {
+        this.store = store;
+        this.position = position;
+    }
+
+    public long getId() {
+        return store.userId(position);
+    }
+
+    /**
+     * @return position of the user in the store
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    /**
+     * @return IDs of the user's followers, in ascending order
+     */
+    public LongBuffer getFollowerIds() {
+        return store.followers(position).asLongBuffer();
+    }
+
+    /**
+     * @return IDs of the users the user follows, in ascending order
+     */
+    public LongBuffer getFriendIds() {
+        return store.friends(position).asLongBuffer();
+    }
+
+    /**
+     * @return vector of the terms in the user's biography
+     */
+    public IntBuffer getBioTerms() {
+        return store.terms(position, BIO).asIntBuffer();
+    }
+
+    /**
+     * @return vector of the users and topics mentioned by the user
+     */
+    public IntBuffer getMentions() {
+        return store.terms(position, MENTIONS).asIntBuffer();
+    }
+
+    /**
+     * @return vector of the terms in the user's favorite tweets
+     */
+    public IntBuffer getFavoriteTerms() {
+        return store.terms(position, FAVORITES).asIntBuffer();
+    }
+
+    /**
+     * @return vector of the terms in the user's tweets
+     */
+    public IntBuffer getTweetTerms() {
+        return store.terms(position, TWEETS).asIntBuffer();
+    }
+
+    /**
+     * @return the store holding the user
+     */
+    public ColumnarStore getStore() {
+        return store;
+    }
+
+    public String toString() {
+        return getId() + "@" + position;
+    }
+
+    /** Order of the term vectors of a user in the store */
+    static final int BIO = 0;
+    static final int MENTIONS = 1;
+    static final int FAVORITES = 2;
+    static final int TWEETS = 3;
+
+    private final ColumnarStore store;
+    private final int position;
+}
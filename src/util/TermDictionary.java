@@ -0,0 +1,204 @@
+//=============================================================================
+// Coding sample for Stefaan Heyvaert.
+//=============================================================================
+package util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Assigns dense integer IDs (0, 1, 2, ...) to terms, so that text can be
+ * represented as {@link TermVector}s and compared without hashing or comparing
+ * strings. Looking up a known term is lock-free; only the assignment of a new
+ * ID is synchronized. Terms are looked up by their characters, in place, so
+ * that a term read from a buffer is only copied the first time it is seen.
+ * The dictionary can be shared by any number of threads.
+ * <p>
+ * Term IDs are only meaningful within the dictionary that assigned them. The
+ * dictionary never forgets a term, so the default one grows with every new
+ * term any profile uses. A long-running process should use a dictionary of
+ * its own and, when it grows too large, move the profiles it still holds to
+ * a fresh one with {@link UserProfile#withDictionary(TermDictionary)}, as
+ * {@code app.SimilarityServer} does.
+ *
+ * @author sh
+ */
+public class TermDictionary
+{
+    public TermDictionary() {}
+
+    /**
+     * Returns the dictionary shared by all profiles and components that are
+     * not given one explicitly: {@link UserProfile#UserProfile(
+     * client.TwitterUser, text.Tokenizer)}, {@link PairTracker},
+     * {@link LshIndex}, {@link InvertedIndex} and {@link ProfileCache}. It
+     * never forgets a term, so it grows with every distinct term the process
+     * sees; long-running jobs should give their profiles a dictionary of
+     * their own instead.
+     * @return the default dictionary
+     */
+    public static TermDictionary getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Returns the ID of a term, assigning the next free ID if the term has not
+     * been seen before.
+     * @param term a term
+     * @return the term's ID
+     */
+    public int id(final String term) {
+        return id((CharSequence) term);
+    }
+
+    /**
+     * Returns the ID of a term held in a character sequence (such as the
+     * buffer passed to a {@link text.TokenSink}), assigning the next free ID
+     * if the term has not been seen before. The characters are only copied
+     * when the term is new.
+     * @param term a term
+     * @return the term's ID
+     */
+    public int id(final CharSequence term) {
+        int hash = hash(term);
+        int id = find(table, term, hash);
+        if (id >= 0) {
+            return id;
+        }
+        synchronized (terms) {
+            Entry[] current = table;
+            id = find(current, term, hash);
+            if (id < 0) {
+                String copy = term.toString();
+                id = terms.size();
+                terms.add(copy);
+                // Keep the table at most half full, so probes stay short
+                if (2 * (id + 1) > current.length) {
+                    current = grow(current);
+                }
+                insert(current, new Entry(copy, hash, id));
+                table = current;
+                size = id + 1;
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Returns the ID of a term without assigning one.
+     * @param term a term
+     * @return the term's ID, or -1 if the term is not in the dictionary
+     */
+    public int lookup(final String term) {
+        return find(table, term, hash(term));
+    }
+
+    /**
+     * @param id a term ID assigned by this dictionary
+     * @return the term with the given ID
+     */
+    public String term(final int id) {
+        synchronized (terms) {
+            return terms.get(id);
+        }
+    }
+
+    /**
+     * @return number of terms in the dictionary
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the hash of a term, the same as {@link String#hashCode()} with
+     * its high bits folded into the low ones
+     */
+    private static int hash(final CharSequence term) {
+        int h = 0;
+        for (int i = 0, n = term.length(); i < n; i++) {
+            h = 31 * h + term.charAt(i);
+        }
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Probes a table for a term. Entries are immutable, so a racing insert
+     * is either seen whole or not at all; callers missing a term look again
+     * under the lock.
+     * @return the term's ID, or -1 if it is not in the table
+     */
+    private static int find(final Entry[] table, final CharSequence term,
+            final int hash) {
+        int mask = table.length - 1;
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            Entry entry = table[i];
+            if (entry == null) {
+                return -1;
+            }
+            if (entry.hash == hash && contentEquals(entry.term, term)) {
+                return entry.id;
+            }
+        }
+    }
+
+    private static boolean contentEquals(final String s,
+            final CharSequence term) {
+        int n = s.length();
+        if (n != term.length()) {
+            return false;
+        }
+        for (int i = 0; i < n; i++) {
+            if (s.charAt(i) != term.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void insert(final Entry[] table, final Entry entry) {
+        int mask = table.length - 1;
+        int i = entry.hash & mask;
+        while (table[i] != null) {
+            i = (i + 1) & mask;
+        }
+        table[i] = entry;
+    }
+
+    private static Entry[] grow(final Entry[] table) {
+        Entry[] grown = new Entry[2 * table.length];
+        for (Entry entry : table) {
+            if (entry != null) {
+                insert(grown, entry);
+            }
+        }
+        return grown;
+    }
+
+    /**
+     * A term and its ID.
+     */
+    private static final class Entry
+    {
+        Entry(final String term, final int hash, final int id) {
+            this.term = term;
+            this.hash = hash;
+            this.id = id;
+        }
+
+        final String term;
+        final int hash;
+        final int id;
+    }
+
+    private static final TermDictionary DEFAULT = new TermDictionary();
+
+    /** Open-addressing hash table of the terms, its length a power of two;
+     * replaced, never shrunk, when it fills up */
+    private volatile Entry[] table = new Entry[16];
+
+    /** Terms by ID; guarded by itself, as are changes to the table */
+    private final List<String> terms = new ArrayList<String>();
+
+    private volatile int size;
+}
@@ -0,0 +1,223 @@
+//=============================================================================
+// Coding sample for Stefaan Heyvaert.
+//=============================================================================
+package util;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * A sparse vector of term frequencies: parallel arrays of term IDs (assigned by
+ * a {@link TermDictionary}) in ascending order and of their counts. Two vectors
+ * are compared by merging their ID arrays, see
+ * {@link Similarity#pseudoCosine(TermVector, TermVector)}.
+ * <p>
+ * Instances are immutable.
+ *
+ * @author sh
+ */
+public final class TermVector
+{
+    /**
+     * Builds the vector of a list of tokens.
+     * @param tokens tokens, in any order and with repetitions
+     * @param dictionary dictionary assigning the term IDs
+     * @return the vector of term frequencies
+     */
+    public static TermVector of(final Collection<String> tokens,
+            final TermDictionary dictionary) {
+        int[] ids = new int[tokens.size()];
+        int n = 0;
+        for (String token : tokens) {
+            ids[n++] = dictionary.id(token);
+        }
+        return of(ids, n);
+    }
+
+    /**
+     * Builds the vector of a map of terms to their frequency.
+     * @param frequencies map of terms to their frequency
+     * @param dictionary dictionary assigning the term IDs
+     * @return the vector of term frequencies
+     */
+    public static TermVector of(final Map<String, Integer> frequencies,
+            final TermDictionary dictionary) {
+        long[] packed = new long[frequencies.size()];
+        int n = 0;
+        for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+            // Sort IDs and counts together by packing them into one value
+            packed[n++] = ((long) dictionary.id(entry.getKey()) << 32) |
+                (entry.getValue() & 0xffffffffL);
+        }
+        Arrays.sort(packed);
+        int[] termIds = new int[n];
+        int[] counts = new int[n];
+        long total = 0;
+        for (int i = 0; i < n; i++) {
+            termIds[i] = (int) (packed[i] >>> 32);
+            counts[i] = (int) packed[i];
+            total += counts[i];
+        }
+        return new TermVector(termIds, counts, total);
+    }
+
+    /**
+     * Builds a vector from the first {@code n} entries of an array of term
+     * IDs, one entry per token. The array is sorted in place.
+     * @param ids term IDs of the tokens
+     * @param n number of valid entries
+     * @return the vector of term frequencies
+     */
+    public static TermVector of(final int[] ids, final int n) {
+        Arrays.sort(ids, 0, n);
+        int distinct = 0;
+        for (int i = 0; i < n; i++) {
+            if (i == 0 || ids[i] != ids[i - 1]) {
+                distinct++;
+            }
+        }
+        int[] termIds = new int[distinct];
+        int[] counts = new int[distinct];
+        int k = -1;
+        for (int i = 0; i < n; i++) {
+            if (i == 0 || ids[i] != ids[i - 1]) {
+                termIds[++k] = ids[i];
+            }
+            counts[k]++;
+        }
+        return new TermVector(termIds, counts, n);
+    }
+
+    /**
+     * Adds vectors up: the frequency of each term in the sum is the sum of
+     * its frequencies in the vectors.
+     * @param vectors vectors built with the same dictionary
+     * @return the sum of the vectors
+     */
+    public static TermVector sum(final TermVector... vectors) {
+        int[] termIds = new int[0];
+        int[] counts = new int[0];
+        int n = 0;
+        long total = 0;
+        for (TermVector vector : vectors) {
+            // Merge the vector into the sum so far
+            int[] ids = new int[n + vector.size()];
+            int[] sums = new int[ids.length];
+            int i = 0;
+            int j = 0;
+            int k = 0;
+            while (i < n || j < vector.size()) {
+                if (j == vector.size() ||
+                        (i < n && termIds[i] < vector.termIds[j])) {
+                    ids[k] = termIds[i];
+                    sums[k++] = counts[i++];
+                }
+                else if (i == n || vector.termIds[j] < termIds[i]) {
+                    ids[k] = vector.termIds[j];
+                    sums[k++] = vector.counts[j++];
+                }
+                else {
+                    ids[k] = termIds[i];
+                    sums[k++] = counts[i++] + vector.counts[j++];
+                }
+            }
+            termIds = ids;
+            counts = sums;
+            n = k;
+            total += vector.total;
+        }
+        return n == 0 ? EMPTY : new TermVector(Arrays.copyOf(termIds, n),
+                Arrays.copyOf(counts, n), total);
+    }
+
+    /**
+     * Numbers the terms of a vector as another dictionary does.
+     * @param from dictionary the vector was built with
+     * @param to dictionary to use instead, which is given the terms it does
+     * not have yet
+     * @return the same vector with the term IDs of the other dictionary
+     */
+    public TermVector translate(final TermDictionary from,
+            final TermDictionary to) {
+        if (size() == 0) {
+            return this;
+        }
+        long[] packed = new long[termIds.length];
+        for (int i = 0; i < termIds.length; i++) {
+            packed[i] = ((long) to.id(from.term(termIds[i])) << 32) |
+                (counts[i] & 0xffffffffL);
+        }
+        Arrays.sort(packed);
+        int[] ids = new int[packed.length];
+        int[] sorted = new int[packed.length];
+        for (int i = 0; i < packed.length; i++) {
+            ids[i] = (int) (packed[i] >>> 32);
+            sorted[i] = (int) packed[i];
+        }
+        return new TermVector(ids, sorted, total);
+    }
+
+    /**
+     * @return the vector without any terms
+     */
+    public static TermVector empty() {
+        return EMPTY;
+    }
+
+    /**
+     * @return number of distinct terms
+     */
+    public int size() {
+        return termIds.length;
+    }
+
+    /**
+     * @return sum of the frequencies of all terms
+     */
+    public long total() {
+        return total;
+    }
+
+    /**
+     * @param index position between 0 and {@link #size()} - 1
+     * @return the term ID at the given position (in ascending order)
+     */
+    public int termId(final int index) {
+        return termIds[index];
+    }
+
+    /**
+     * @param index position between 0 and {@link #size()} - 1
+     * @return the frequency of the term at the given position
+     */
+    public int count(final int index) {
+        return counts[index];
+    }
+
+    /**
+     * @param termId a term ID
+     * @return the frequency of the term, 0 if it does not occur
+     */
+    public int frequency(final int termId) {
+        int pos = Arrays.binarySearch(termIds, termId);
+        return pos < 0 ? 0 : counts[pos];
+    }
+
+    private TermVector(final int[] termIds, final int[] counts, final long total) {
+        this.termIds = termIds;
+        this.counts = counts;
+        this.total = total;
+    }
+
+    private static final TermVector EMPTY = 
+        new TermVector(new int[0], new int[0], 0);
+
+    /** Term IDs in ascending order */
+    final int[] termIds;
+
+    /** Frequency of the term at the same position in {@link #termIds} */
+    final int[] counts;
+
+    private final long total;
+}
@@ -0,0 +1,66 @@
+//=============================================================================
+// Coding sample for Stefaan Heyvaert.
+//=============================================================================
+package util;
+
+import java.util.Arrays;
+
+import text.TokenSink;
+import text.TokenType;
+
+/**
+ * Collects the tokens produced by a {@link text.Tokenizer} as term IDs and
+ * turns them into a {@link TermVector}, without building a list of token
+ * strings first. Pass an instance to 
+ * {@link text.Tokenizer#tokenize(CharSequence, TokenSink)} once per text to
+ * include in the vector, then call {@link #build()}.
+ * <p>
+ * Builders are not thread-safe.
+ *
+ * @author sh
+ */
+public class TermVectorBuilder implements TokenSink
+{
+    /**
+     * @param dictionary dictionary assigning the term IDs
+     */
+    public TermVectorBuilder(final TermDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    @Override
+    public void token(final CharSequence token, final TokenType type) {
+        add(dictionary.id(token));
+    }
+
+    /**
+     * Adds one occurrence of a term.
+     * @param termId ID of the term
+     */
+    public void add(final int termId) {
+        if (count == ids.length) {
+            ids = Arrays.copyOf(ids, ids.length * 2);
+        }
+        ids[count++] = termId;
+    }
+
+    /**
+     * @return the vector of the terms collected since the builder was created
+     * or last cleared
+     */
+    public TermVector build() {
+        return count == 0 ? TermVector.empty() : 
+            TermVector.of(Arrays.copyOf(ids, count), count);
+    }
+
+    /**
+     * Forgets the terms collected so far.
+     */
+    public void clear() {
+        count = 0;
+    }
+
+    private final TermDictionary dictionary;
+    private int[] ids = new int[64];
+    private int count = 0;
+}
@@ -0,0 +1,277 @@
+//=============================================================================
+// Coding sample for Stefaan Heyvaert.
+//=============================================================================
+package util;
+
+import java.util.Collection;
+
+import text.Tokenizer;
+
+import client.TwitterUser;
+
+/**
+ * The features of a {@link TwitterUser} that similarity computations use,
+ * extracted once so that comparing a user to many others does not tokenize
+ * its text over and over: term vectors of its biography, favorite tweets,
+ * regular tweets and mentions, and its follower and friend IDs as sorted
+ * arrays. Term IDs are assigned by a {@link TermDictionary}; only profiles
+ * built with the same dictionary can be compared. A profile also records how
+ * much of the user's followers, friends, tweets and favorites had been
+ * fetched, so that results based on partially fetched users can say so.
+ * <p>
+ * Profiles are immutable snapshots: changes made to the user afterwards are
+ * not reflected. They can therefore be cached (see {@link ProfileCache}) and
+ * shared between threads freely. Follower and friend signatures are only
+ * computed when an approximate comparison asks for them. Use
+ * {@link Similarity#computeSumilarity(UserProfile, UserProfile)} to compare
+ * two profiles.
+ *
+ * @author sh
+ */
+public final class UserProfile
+{
+    /**
+     * Extracts the features of a user, using the default term dictionary.
+     * @param user the user
+     * @param tokenizer tokenizer for the text fields
+     */
+    public UserProfile(final TwitterUser user, final Tokenizer tokenizer) {
+        this(user, tokenizer, TermDictionary.getDefault());
+    }
+
+    /**
+     * Extracts the features of a user.
+     * @param user the user
+     * @param tokenizer tokenizer for the text fields
+     * @param dictionary dictionary assigning IDs to the terms
+     */
+    public UserProfile(final TwitterUser user, final Tokenizer tokenizer,
+            final TermDictionary dictionary) {
+        this(user, tokenizer, dictionary, user.getFollowerIds().immutableCopy(),
+                user.getFriendIds().immutableCopy());
+    }
+
+    /**
+     * Extracts the features of a user for a comparison made at once: the
+     * follower and friend IDs are read in place rather than copied, so the
+     * profile is not a snapshot and must not outlive the comparison.
+     * @param user the user
+     * @param tokenizer tokenizer for the text fields
+     * @return a profile using the default term dictionary
+     */
+    static UserProfile view(final TwitterUser user,
+            final Tokenizer tokenizer) {
+        return new UserProfile(user, tokenizer, TermDictionary.getDefault(),
+                user.getFollowerIds(), user.getFriendIds());
+    }
+
+    private UserProfile(final TwitterUser user, final Tokenizer tokenizer,
+            final TermDictionary dictionary, final SortedIdSet followers,
+            final SortedIdSet friends) {
+        id = user.getId();
+        userName = user.getUserName();
+        this.dictionary = dictionary;
+        this.followers = followers;
+        this.friends = friends;
+        minHash = user.getMinHash();
+        followerCoverage = user.getFollowerCoverage();
+        friendCoverage = user.getFriendCoverage();
+        tweetCoverage = user.getTweetCoverage();
+        favoriteCoverage = user.getFavoriteCoverage();
+        mentions = TermVector.of(user.getMentions(), dictionary);
+        long start = Metrics.start();
+        long allocated = Metrics.allocated();
+        TermVectorBuilder builder = new TermVectorBuilder(dictionary);
+        // Descriptions are simple string, so use regular tokenizer
+        tokenizer.tokenize(user.getDescription(), builder);
+        bioTerms = builder.build();
+        favoriteTerms = termVector(user.getFavorites(), tokenizer, builder);
+        tweetTerms = termVector(user.getTweets(), tokenizer, builder);
+        Metrics.record(Metrics.Stage.TOKENIZE, start, allocated);
+        Metrics.count(Metrics.Stage.TOKENIZE, bioTerms.total()
+                + favoriteTerms.total() + tweetTerms.total());
+    }
+
+    /**
+     * Copies a profile into another dictionary, for instance into a new one
+     * holding only the terms of the profiles still in use, so that a
+     * long-running process does not keep every term it ever saw.
+     * @param dictionary the dictionary to use
+     * @return a profile whose vectors use the term IDs of the dictionary
+     */
+    public UserProfile withDictionary(final TermDictionary dictionary) {
+        return dictionary == this.dictionary ? this
+            : new UserProfile(this, dictionary);
+    }
+
+    private UserProfile(final UserProfile profile,
+            final TermDictionary dictionary) {
+        TermDictionary from = profile.dictionary;
+        id = profile.id;
+        userName = profile.userName;
+        this.dictionary = dictionary;
+        followers = profile.followers;
+        friends = profile.friends;
+        minHash = profile.minHash;
+        followerSketch = profile.followerSketch;
+        friendSketch = profile.friendSketch;
+        followerCoverage = profile.followerCoverage;
+        friendCoverage = profile.friendCoverage;
+        tweetCoverage = profile.tweetCoverage;
+        favoriteCoverage = profile.favoriteCoverage;
+        mentions = profile.mentions.translate(from, dictionary);
+        bioTerms = profile.bioTerms.translate(from, dictionary);
+        favoriteTerms = profile.favoriteTerms.translate(from, dictionary);
+        tweetTerms = profile.tweetTerms.translate(from, dictionary);
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getUserName() {
+        return userName;
+    }
+
+    /**
+     * @return dictionary that assigned the term IDs of the profile's vectors
+     */
+    public TermDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * @return read-only set of the IDs of the user's followers
+     */
+    public SortedIdSet getFollowerIds() {
+        return followers;
+    }
+
+    /**
+     * @return read-only set of the IDs of the user's friends
+     */
+    public SortedIdSet getFriendIds() {
+        return friends;
+    }
+
+    /**
+     * @return vector of the terms in the user's biography
+     */
+    public TermVector getBioTerms() {
+        return bioTerms;
+    }
+
+    /**
+     * @return vector of the users and topics mentioned by the user
+     */
+    public TermVector getMentions() {
+        return mentions;
+    }
+
+    /**
+     * @return vector of the terms in the user's favorite tweets
+     */
+    public TermVector getFavoriteTerms() {
+        return favoriteTerms;
+    }
+
+    /**
+     * @return vector of the terms in the user's tweets
+     */
+    public TermVector getTweetTerms() {
+        return tweetTerms;
+    }
+
+    /**
+     * @return fraction of the user's followers the profile holds, between 0
+     * and 1 (see {@link TwitterUser#getFollowerCoverage()})
+     */
+    public double getFollowerCoverage() {
+        return followerCoverage;
+    }
+
+    /**
+     * @return fraction of the user's friends the profile holds
+     */
+    public double getFriendCoverage() {
+        return friendCoverage;
+    }
+
+    /**
+     * @return fraction of the user's tweets the profile holds
+     */
+    public double getTweetCoverage() {
+        return tweetCoverage;
+    }
+
+    /**
+     * @return fraction of the user's favorites the profile holds
+     */
+    public double getFavoriteCoverage() {
+        return favoriteCoverage;
+    }
+
+    /**
+     * @return hash family of the follower and friend signatures
+     */
+    MinHash getMinHash() {
+        return minHash;
+    }
+
+    /**
+     * Not exposed publicly since sketches are mutable. Built the first time it
+     * is asked for, as only approximate comparisons need it; threads racing
+     * to build it build equal sketches.
+     */
+    MinHashSketch getFollowerSketch() {
+        MinHashSketch sketch = followerSketch;
+        if (sketch == null) {
+            sketch = minHash.newSketch();
+            sketch.addAll(followers);
+            followerSketch = sketch;
+        }
+        return sketch;
+    }
+
+    MinHashSketch getFriendSketch() {
+        MinHashSketch sketch = friendSketch;
+        if (sketch == null) {
+            sketch = minHash.newSketch();
+            sketch.addAll(friends);
+            friendSketch = sketch;
+        }
+        return sketch;
+    }
+
+    public String toString() {
+        return id + "|" + userName;
+    }
+
+    private static TermVector termVector(final Collection<String> texts,
+            final Tokenizer tokenizer, final TermVectorBuilder builder) {
+        builder.clear();
+        for (String text : texts) {
+            tokenizer.tokenize(text, builder);
+        }
+        return builder.build();
+    }
+
+    private final long id;
+    private final String userName;
+    private final TermDictionary dictionary;
+    private final SortedIdSet followers;
+    private final SortedIdSet friends;
+    private final MinHash minHash;
+
+    /** Null until asked for */
+    private volatile MinHashSketch followerSketch;
+    private volatile MinHashSketch friendSketch;
+    private final TermVector mentions;
+    private final TermVector bioTerms;
+    private final TermVector favoriteTerms;
+    private final TermVector tweetTerms;
+    private final double followerCoverage;
+    private final double friendCoverage;
+    private final double tweetCoverage;
+    private final double favoriteCoverage;
+}
@@ -0,0 +1,117 @@
+package util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import client.TwitterUser;
+import client.TwitterUserCodec;
+
+/**
+ * Compares the size and the encoding and decoding speed of
+ * {@link TwitterUserCodec} with those of Java serialization, on a user with a
+ * million followers. Run with {@code java util.CodecBenchmark [followers]}.
+ *
+ * @author sh
+ */
+public class CodecBenchmark
+{
+    public static void main(final String[] args) throws Exception {
+        int followers = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        final TwitterUser user = user(followers);
+
+        final ByteBuffer encoded = TwitterUserCodec.encode(user);
+        final byte[] serialized = serialize(user);
+        System.out.println("Followers: " + followers);
+        System.out.println("Codec size:         " + encoded.remaining()
+                + " bytes");
+        System.out.println("Serialization size: " + serialized.length
+                + " bytes");
+
+        // Warm up, then time each operation
+        for (int round = 0; round < WARMUP_ROUNDS + 1; round++) {
+            boolean report = round == WARMUP_ROUNDS;
+            time("Codec encode", report, new Task() {
+                public void run() throws Exception {
+                    TwitterUserCodec.encode(user);
+                }
+            });
+            time("Codec decode", report, new Task() {
+                public void run() throws Exception {
+                    TwitterUserCodec.decode(encoded.duplicate());
+                }
+            });
+            time("Serialization encode", report, new Task() {
+                public void run() throws Exception {
+                    serialize(user);
+                }
+            });
+            time("Serialization decode", report, new Task() {
+                public void run() throws Exception {
+                    new ObjectInputStream(new ByteArrayInputStream(
+                            serialized)).readObject();
+                }
+            });
+        }
+    }
+
+    private interface Task
+    {
+        void run() throws Exception;
+    }
+
+    private static void time(final String name, final boolean report,
+            final Task task) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            task.run();
+        }
+        double millis = (System.nanoTime() - start) / 1e6 / ITERATIONS;
+        if (report) {
+            System.out.println(String.format("%-22s %8.2f ms", name + ":",
+                    millis));
+        }
+    }
+
+    private static byte[] serialize(final TwitterUser user) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(user);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Builds a user with followers spread over the ID range of a large
+     * account, and a typical number of tweets and friends.
+     */
+    private static TwitterUser user(final int followers) {
+        Random random = new Random(42);
+        TwitterUser user = new TwitterUser("benchmark");
+        user.setId(12345);
+        user.setScreenName("Benchmark");
+        user.setDescription("A user with many followers");
+        for (int i = 0; i < 200; i++) {
+            user.addTweet("Tweet number " + i + " mentioning @user" +
+                    random.nextInt(50) + " #tag" + random.nextInt(20));
+            user.addFavorite("Favorite number " + i);
+        }
+        long[] ids = new long[followers];
+        for (int i = 0; i < followers; i++) {
+            ids[i] = (long) (random.nextDouble() * 200000000);
+        }
+        user.addFollowers(SortedIdSet.of(ids));
+        long[] friends = new long[500];
+        for (int i = 0; i < friends.length; i++) {
+            friends[i] = (long) (random.nextDouble() * 200000000);
+        }
+        user.addFriends(SortedIdSet.of(friends));
+        return user;
+    }
+
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int ITERATIONS = 10;
+}
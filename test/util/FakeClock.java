@@ -0,0 +1,26 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import client.Clock;
+
+/**
+ * A clock that only moves when slept on, or when a test sets {@link #now}.
+ */
+class FakeClock implements Clock
+{
+    public long millis() {
+        return now;
+    }
+
+    public void sleep(final long millis) {
+        if (millis > 0) {
+            sleeps.add(millis);
+            now += millis;
+        }
+    }
+
+    long now = 0;
+    final List<Long> sleeps = new ArrayList<Long>();
+}
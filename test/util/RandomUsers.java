@@ -0,0 +1,71 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import client.TwitterUser;
+
+/**
+ * Makes up users with random followers and friends, and biographies and
+ * tweets drawn from a handful of {@link #WORDS}, so that any two of them
+ * share a little of everything, for tests comparing many users.
+ */
+final class RandomUsers
+{
+    private RandomUsers() {}
+
+    /**
+     * @param random source of randomness
+     * @param count number of users, with IDs from 1 to {@code count}
+     * @param followers number of follower IDs drawn for each user
+     * @param range follower and friend IDs are below it
+     * @return the users
+     */
+    static List<TwitterUser> create(final Random random, final int count,
+            final int followers, final int range) {
+        List<TwitterUser> users = new ArrayList<TwitterUser>();
+        for (int u = 1; u <= count; u++) {
+            users.add(user(random, u, followers, range));
+        }
+        return users;
+    }
+
+    /**
+     * @param random source of randomness
+     * @param id ID of the user, also in its name
+     * @param followers number of follower IDs drawn, some of them twice
+     * @param range follower and friend IDs are below it
+     * @return a user following some of its followers, without a biography
+     * a quarter of the time, and with one tweet
+     */
+    static TwitterUser user(final Random random, final long id,
+            final int followers, final int range) {
+        TwitterUser user = new TwitterUser("user" + id);
+        user.setId(id);
+        List<Long> ids = new ArrayList<Long>();
+        for (int i = 0; i < followers; i++) {
+            ids.add((long) random.nextInt(range));
+        }
+        user.addFollowers(ids);
+        user.addFriends(ids.subList(0, random.nextInt(followers / 2 + 1)));
+        if (random.nextInt(4) != 0) {
+            user.setDescription(random.nextBoolean() ? word(random)
+                    : word(random) + " " + word(random));
+        }
+        user.addTweet(word(random) + " " + word(random));
+        return user;
+    }
+
+    /**
+     * @return one of the {@link #WORDS}
+     */
+    static String word(final Random random) {
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+
+    /** Words of the biographies and tweets */
+    static final String[] WORDS = {
+        "java", "coffee", "music", "soccer", "news", "art"
+    };
+}
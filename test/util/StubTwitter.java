@@ -0,0 +1,129 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import winterwell.jtwitter.Twitter;
+import winterwell.jtwitter.TwitterException;
+
+/**
+ * Answers every request for any user with the same canned data, after
+ * sleeping for a fixed time.
+ */
+@SuppressWarnings("deprecation")
+class StubTwitter extends Twitter
+{
+    StubTwitter(final long latency) {
+        super(null, (IHttpClient) null);
+        this.latency = latency;
+    }
+
+    @Override
+    public User getUser(final String screenName) {
+        respond();
+        users.add(screenName);
+        if (screenName.equals(missing)) {
+            throw new TwitterException.E404("Not found");
+        }
+        if (serverErrors.getAndDecrement() > 0) {
+            throw new TwitterException.E50X("Bad gateway");
+        }
+        User user = new User(screenName);
+        user.followersCount = followerCount;
+        return user;
+    }
+
+    @Override
+    public void setPageNumber(final Integer pageNumber) {
+        page = pageNumber;
+    }
+
+    @Override
+    public void setCount(final Integer count) {
+        this.count = count;
+    }
+
+    /**
+     * Serves the page asked for of a timeline of {@link #tweets} tweets, and
+     * forgets the page number as the API does.
+     */
+    @Override
+    public List<Status> getUserTimeline(final String screenName) {
+        respond();
+        int pageSize = count == null ? 20 : count;
+        int from = page == null ? 0 : (page - 1) * pageSize;
+        pages.add(page);
+        page = null;
+        User user = new User(screenName);
+        List<Status> statuses = new ArrayList<Status>();
+        for (int i = from; i < Math.min(tweets, from + pageSize); i++) {
+            String text = i == 0 ? "hello from " + screenName :
+                i == 1 ? "second tweet" : "tweet " + i;
+            statuses.add(new Status(user, text, i + 1L, new Date()));
+        }
+        return statuses;
+    }
+
+    @Override
+    public List<Long> getFollowerIDs(final String screenName) {
+        respond();
+        if (followers == null) {
+            return Arrays.asList(3L, 1L, 2L);
+        }
+        return followers;
+    }
+
+    @Override
+    public List<Long> getFriendIDs(final String screenName) {
+        respond();
+        return Arrays.asList(5L, 4L);
+    }
+
+    @Override
+    public List<Status> getFavorites(final String screenName) {
+        respond();
+        return Arrays.asList(new Status(new User("someone"), "a favorite",
+                3L, new Date()));
+    }
+
+    @Override
+    public int getRateLimitStatus() {
+        respond();
+        return callsLeft;
+    }
+
+    private void respond() {
+        calls.incrementAndGet();
+        try {
+            Thread.sleep(latency);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private final long latency;
+    final AtomicInteger calls = new AtomicInteger();
+    /** Users asked for, in order */
+    final List<String> users =
+        Collections.synchronizedList(new ArrayList<String>());
+    /** Number of user requests still to fail with a server error */
+    final AtomicInteger serverErrors = new AtomicInteger();
+    volatile String missing = null;
+    volatile int callsLeft = 100;
+    /** Number of tweets in every timeline */
+    volatile int tweets = 2;
+    /** Follower IDs of every user, if not the default ones */
+    volatile List<Long> followers = null;
+    /** Number of followers every user claims to have */
+    volatile int followerCount = 0;
+    /** Pages of timelines asked for, in order */
+    final List<Integer> pages =
+        Collections.synchronizedList(new ArrayList<Integer>());
+    private volatile Integer page;
+    private volatile Integer count;
+}
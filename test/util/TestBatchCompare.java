@@ -0,0 +1,120 @@
+package util;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import text.Tokenizer;
+
+import app.BatchCompare;
+import client.RequestScheduler;
+import client.TwitterClient;
+
+public class TestBatchCompare
+{
+    @Test
+    public void testCsv() throws Exception {
+        StubTwitter stub = new StubTwitter(0);
+        stub.callsLeft = Integer.MAX_VALUE;
+        stub.missing = "ghost";
+        String input = "# nightly pairs\n"
+            + "alice bob\n"
+            + "\n"
+            + "bob,carol\n"
+            + "not a pair\n"
+            + "alice ghost\n"
+            + "carol alice\n"
+            + "alice bob\n";
+        String[] lines = run(stub, input, BatchCompare.Format.CSV, 2, 10);
+        assertEquals(6, lines.length);
+        assertEquals("user1,user2,score,followers,friends,bio,mentions,"
+                + "favorites,tweets,coverage,error", lines[0]);
+        assertTrue(lines[1].startsWith("alice,bob,"));
+        assertTrue(lines[1].endsWith(","));
+        assertEquals(11, lines[1].split(",", -1).length);
+        assertTrue(lines[2].startsWith("bob,carol,"));
+        assertEquals("alice,ghost,,,,,,,,,User 'ghost' does not exist.",
+                lines[3]);
+        assertTrue(lines[4].startsWith("carol,alice,"));
+        assertTrue(lines[5].startsWith("alice,bob,"));
+
+        // Every user is fetched once, across chunks too
+        List<String> fetched = new ArrayList<String>(stub.users);
+        Collections.sort(fetched);
+        assertEquals("[alice, bob, carol, ghost]", fetched.toString());
+    }
+
+    @Test
+    public void testJsonAndProfileLimit() throws Exception {
+        StubTwitter stub = new StubTwitter(0);
+        stub.callsLeft = Integer.MAX_VALUE;
+        String input = "a \"b\"\na c\na \"b\"\n";
+        // No profiles kept between chunks of one pair: a is fetched thrice
+        String[] lines = run(stub, input, BatchCompare.Format.JSON, 1, 0);
+        assertEquals(3, lines.length);
+        assertTrue(lines[0], lines[0].startsWith(
+                "{\"user1\":\"a\",\"user2\":\"\\\"b\\\"\",\"score\":"));
+        assertTrue(lines[0].endsWith("}"));
+        assertEquals(6, stub.users.size());
+    }
+
+    @Test
+    public void testTermsRebuilt() throws Exception {
+        StubTwitter stub = new StubTwitter(0);
+        stub.callsLeft = Integer.MAX_VALUE;
+        String input = "a b\na c\nb c\nc a\n";
+        String[] expected = run(stub, input, BatchCompare.Format.CSV, 1, 10);
+        // Profiles kept across a rebuild score as before, against new ones
+        String[] lines = run(stub, input, BatchCompare.Format.CSV, 1, 10, 1);
+        assertArrayEquals(expected, lines);
+        assertTrue(lines[4], lines[4].endsWith(","));
+    }
+
+    private static String[] run(final StubTwitter stub, final String input,
+            final BatchCompare.Format format, final int chunkSize,
+            final int maxProfiles) throws Exception {
+        return run(stub, input, format, chunkSize, maxProfiles, 1 << 20);
+    }
+
+    private static String[] run(final StubTwitter stub, final String input,
+            final BatchCompare.Format format, final int chunkSize,
+            final int maxProfiles, final int maxTerms) throws Exception {
+        RequestScheduler scheduler =
+            new RequestScheduler(new TwitterClient(stub));
+        scheduler.start();
+        try {
+            BatchCompare batch = new BatchCompare(scheduler,
+                    new Tokenizer(null), format, 2);
+            batch.setChunkSize(chunkSize);
+            batch.setMaxProfiles(maxProfiles);
+            batch.setMaxTerms(maxTerms);
+            StringWriter out = new StringWriter();
+            batch.run(new StringReader(input), out);
+            assertEquals(input.split("\n").length - countSkipped(input),
+                    batch.getPairs());
+            return out.toString().split("\n");
+        }
+        finally {
+            scheduler.stop();
+        }
+    }
+
+    /**
+     * @return number of lines that are not pairs
+     */
+    private static int countSkipped(final String input) {
+        int skipped = 0;
+        for (String line : input.split("\n")) {
+            if (line.trim().split("[\\s,]+").length != 2) {
+                skipped++;
+            }
+        }
+        return skipped;
+    }
+}
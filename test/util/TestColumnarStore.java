@@ -0,0 +1,142 @@
+package util;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import text.Tokenizer;
+import text.TwitterTokenizer;
+
+import client.TwitterUser;
+
+public class TestColumnarStore
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testScoresMatchProfiles() throws Exception {
+        List<UserProfile> profiles = profiles(new TermDictionary());
+        // A tiny segment size makes the writer pad between columns
+        ColumnarStore store = write(profiles, 1024);
+        assertEquals(profiles.size(), store.size());
+        for (int i = 0; i < profiles.size(); i++) {
+            for (int j = 0; j < profiles.size(); j++) {
+                SimilarityResult expected = Similarity.computeSumilarity(
+                    profiles.get(i), profiles.get(j));
+                SimilarityResult actual = Similarity.computeSumilarity(
+                    store.get(i), store.get(j));
+                assertEquals(expected.getScore(), actual.getScore(), 0.0);
+                assertEquals(expected.getSharedFollowers(),
+                    actual.getSharedFollowers(), 0.0);
+                assertEquals(expected.getSharedFriends(),
+                    actual.getSharedFriends(), 0.0);
+                assertEquals(expected.getTweetSimilarity(),
+                    actual.getTweetSimilarity(), 0.0);
+                assertEquals(expected.getSharedMentions(),
+                    actual.getSharedMentions(), 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void testViews() throws Exception {
+        TermDictionary dictionary = new TermDictionary();
+        List<UserProfile> profiles = profiles(dictionary);
+        ColumnarStore store = write(profiles, ColumnarStore.SEGMENT_SIZE);
+        UserProfile profile = profiles.get(3);
+        StoredUser user = store.find(profile.getId());
+        assertEquals(3, user.getPosition());
+        assertEquals(profile.getId(), user.getId());
+        assertNull(store.find(-42));
+
+        LongBuffer followers = user.getFollowerIds();
+        assertEquals(profile.getFollowerIds().size(), followers.remaining());
+        for (int i = 0; i < followers.remaining(); i++) {
+            assertEquals(profile.getFollowerIds().get(i), followers.get(i));
+        }
+        assertTrue(followers.isReadOnly());
+        assertEquals(2 * profile.getTweetTerms().size(),
+            user.getTweetTerms().remaining());
+
+        TermDictionary loaded = store.loadDictionary();
+        assertEquals(dictionary.size(), loaded.size());
+        assertEquals(dictionary.lookup("coffee"), loaded.lookup("coffee"));
+    }
+
+    @Test
+    public void testBufferIntersection() {
+        Random random = new Random(3);
+        for (int round = 0; round < 50; round++) {
+            // Include very skewed sizes, which take the galloping path
+            SortedIdSet a = randomSet(random, 1 + random.nextInt(20));
+            SortedIdSet b = randomSet(random, 1 + random.nextInt(2000));
+            LongBuffer bufferA = LongBuffer.wrap(new long[a.size() + 2], 1,
+                    a.size()).slice();
+            bufferA.put(a.toLongArray()).flip();
+            assertEquals(Similarity.jaccardCoefficient(a, b),
+                Similarity.jaccardCoefficient(bufferA,
+                    LongBuffer.wrap(b.toLongArray())), 0.0);
+            assertEquals(a.size(), bufferA.remaining());
+        }
+    }
+
+    private ColumnarStore write(final List<UserProfile> profiles,
+            final int segmentSize) throws Exception {
+        File directory = folder.newFolder("store");
+        ColumnarStoreWriter writer = new ColumnarStoreWriter(directory,
+                profiles.get(0).getDictionary(), segmentSize);
+        for (UserProfile profile : profiles) {
+            writer.add(profile);
+        }
+        writer.close();
+        return ColumnarStore.open(directory);
+    }
+
+    private static List<UserProfile> profiles(final TermDictionary dictionary) {
+        Tokenizer tokenizer = new TwitterTokenizer(null);
+        Random random = new Random(7);
+        String[] words = { "coffee", "code", "java", "@bob", "#tea", "rain",
+            "music", "@alice", "run", "book" };
+        List<UserProfile> profiles = new ArrayList<UserProfile>();
+        for (int u = 0; u < 8; u++) {
+            TwitterUser user = new TwitterUser("user" + u);
+            user.setId(1000 - u);
+            StringBuilder bio = new StringBuilder();
+            for (int i = 0; i < 4; i++) {
+                bio.append(words[random.nextInt(words.length)]).append(' ');
+            }
+            user.setDescription(bio.toString());
+            for (int t = 0; t < 5; t++) {
+                user.addTweet(words[random.nextInt(words.length)] + " and " +
+                        words[random.nextInt(words.length)]);
+            }
+            List<String> mentions = new ArrayList<String>();
+            mentions.add("@friend" + random.nextInt(3));
+            user.addMentions(mentions);
+            // User 0 has no friends at all
+            user.addFollowers(randomSet(random, 20 + random.nextInt(60)));
+            if (u > 0) {
+                user.addFriends(randomSet(random, random.nextInt(30)));
+            }
+            profiles.add(new UserProfile(user, tokenizer, dictionary));
+        }
+        return profiles;
+    }
+
+    private static SortedIdSet randomSet(final Random random, final int n) {
+        long[] ids = new long[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = random.nextInt(2000);
+        }
+        return SortedIdSet.of(ids);
+    }
+}
@@ -0,0 +1,186 @@
+package util;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import client.TwitterUser;
+
+public class TestFollowerGraph
+{
+    @Test
+    public void testMatchesBruteForce() {
+        Random random = new Random(19);
+        FollowerGraphBuilder builder = new FollowerGraphBuilder();
+        Set<String> edges = new HashSet<String>();
+        long[] ids = new long[USERS];
+        for (int i = 0; i < USERS; i++) {
+            ids[i] = 1000L * i + random.nextInt(1000);
+        }
+        // A few users with long lists, so that searches jump over blocks
+        for (int i = 0; i < 20000; i++) {
+            long follower = ids[skewed(random)];
+            long followed = ids[skewed(random)];
+            builder.addFollow(follower, followed);
+            edges.add(follower + " " + followed);
+        }
+        FollowerGraph graph = builder.build();
+        assertEquals(edges.size(), graph.relationships());
+        for (int i = 0; i < 300; i++) {
+            long a = ids[skewed(random)];
+            long b = ids[random.nextInt(USERS)];
+            assertEquals(edges.contains(a + " " + b), graph.follows(a, b));
+            assertEquals(bruteFollowers(edges, ids, a).size(),
+                    graph.followerCount(a));
+            assertEquals(bruteFriends(edges, ids, a).size(),
+                    graph.friendCount(a));
+            assertArrayEquals(toArray(bruteFollowers(edges, ids, a)),
+                    graph.followers(a));
+            assertArrayEquals(toArray(bruteFriends(edges, ids, a)),
+                    graph.friends(a));
+            assertEquals(common(bruteFollowers(edges, ids, a),
+                    bruteFollowers(edges, ids, b)),
+                    graph.mutualFollowers(a, b));
+            assertEquals(common(bruteFriends(edges, ids, a),
+                    bruteFriends(edges, ids, b)),
+                    graph.mutualFriends(a, b));
+            assertEquals(common(bruteFriends(edges, ids, a),
+                    bruteFollowers(edges, ids, b)),
+                    graph.twoHopPaths(a, b));
+        }
+    }
+
+    @Test
+    public void testUnknownUsers() {
+        FollowerGraphBuilder builder = new FollowerGraphBuilder();
+        builder.addFollow(1, 2);
+        FollowerGraph graph = builder.build();
+        assertTrue(graph.follows(1, 2));
+        assertFalse(graph.follows(2, 1));
+        assertFalse(graph.follows(1, 3));
+        assertFalse(graph.contains(3));
+        assertEquals(0, graph.followerCount(3));
+        assertEquals(0, graph.followers(3).length);
+        assertEquals(0, graph.mutualFollowers(2, 3));
+        assertEquals(0, new FollowerGraphBuilder().build().size());
+    }
+
+    @Test
+    public void testFromUsers() {
+        TwitterUser t1 = new TwitterUser("a");
+        t1.setId(1);
+        t1.addFollowers(Arrays.asList(2L, 3L));
+        t1.addFriends(Arrays.asList(2L, 4L));
+        TwitterUser t2 = new TwitterUser("b");
+        t2.setId(2);
+        t2.addFollowers(Arrays.asList(1L, 3L));
+        List<TwitterUser> users = new ArrayList<TwitterUser>();
+        users.add(t1);
+        users.add(t2);
+        FollowerGraph graph = FollowerGraph.fromUsers(users);
+        assertEquals(4, graph.size());
+        // 1 -> 2 is listed by both users but counted once
+        assertEquals(5, graph.relationships());
+        assertTrue(graph.isMutual(1, 2));
+        assertTrue(graph.follows(1, 4));
+        assertEquals(1, graph.mutualFollowers(1, 2));
+        assertEquals(1, graph.twoHopPaths(3, 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUserWithoutId() {
+        new FollowerGraphBuilder().add(new TwitterUser("a"));
+    }
+
+    @Test
+    public void testLoad() throws IOException {
+        File file = File.createTempFile("graph", ".txt");
+        try {
+            write(file, "# follower followed\n1 2\n\n2,1\n3\t1\n");
+            FollowerGraph graph = FollowerGraph.load(file);
+            assertEquals(3, graph.relationships());
+            assertTrue(graph.isMutual(1, 2));
+            assertArrayEquals(new long[] {2, 3}, graph.followers(1));
+            write(file, "1 2\n1 x\n");
+            try {
+                FollowerGraph.load(file);
+                fail("Invalid ID accepted");
+            }
+            catch (IOException e) {
+                assertTrue(e.getMessage().endsWith(":2: invalid user ID"));
+            }
+        }
+        finally {
+            file.delete();
+        }
+    }
+
+    private static void write(final File file, final String text)
+        throws IOException {
+        Writer out = new FileWriter(file);
+        try {
+            out.write(text);
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @return a user index, low ones being far more likely
+     */
+    private static int skewed(final Random random) {
+        double x = random.nextDouble();
+        return (int) (USERS * x * x * x);
+    }
+
+    private static List<Long> bruteFollowers(final Set<String> edges,
+            final long[] ids, final long user) {
+        List<Long> result = new ArrayList<Long>();
+        for (long id : ids) {
+            if (edges.contains(id + " " + user)) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    private static List<Long> bruteFriends(final Set<String> edges,
+            final long[] ids, final long user) {
+        List<Long> result = new ArrayList<Long>();
+        for (long id : ids) {
+            if (edges.contains(user + " " + id)) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    private static int common(final List<Long> list1,
+            final List<Long> list2) {
+        Set<Long> set = new HashSet<Long>(list1);
+        set.retainAll(list2);
+        return set.size();
+    }
+
+    private static long[] toArray(final List<Long> list) {
+        long[] result = new long[list.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = list.get(i);
+        }
+        return result;
+    }
+
+    private static final int USERS = 2000;
+}
@@ -0,0 +1,177 @@
+package util;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import text.Tokenizer;
+
+import client.TwitterUser;
+
+
+public class TestInvertedIndex
+{
+    @Test
+    public void testTopKMatchesBruteForce() {
+        Tokenizer tokenizer = new Tokenizer(null);
+        List<TwitterUser> corpus = createCorpus(new Random(5), 400, 1);
+        InvertedIndex index = new InvertedIndex(tokenizer);
+        index.addAll(corpus);
+        assertEquals(corpus.size(), index.size());
+        int scored = 0;
+        int queries = 0;
+        for (int q = 0; q < corpus.size(); q += 13) {
+            TwitterUser query = corpus.get(q);
+            for (int k : new int[] { 1, K, 50 }) {
+                assertEquals(bruteForceScores(query, corpus, tokenizer, k),
+                        scores(query, index.candidates(query, k), tokenizer));
+            }
+            index.candidates(query, K);
+            scored += index.getScored();
+            queries++;
+        }
+        // WAND skips most of the users: about 80 of 400 are scored
+        assertTrue("Scored on average " + scored / queries,
+                scored / queries < corpus.size() / 4);
+    }
+
+    @Test
+    public void testTopKScoresInFull() {
+        Tokenizer tokenizer = new Tokenizer(null);
+        List<TwitterUser> corpus = createCorpus(new Random(6), 50, 1);
+        InvertedIndex index = new InvertedIndex(tokenizer);
+        index.addAll(corpus);
+        TwitterUser query = corpus.get(0);
+        List<ScoredUser> top = index.topK(query, K);
+        assertEquals(K, top.size());
+        for (int i = 0; i < top.size(); i++) {
+            ScoredUser su = top.get(i);
+            assertFalse(su.getUser().getId() == query.getId());
+            assertEquals(Similarity.computeSumilarity(query, su.getUser(),
+                    tokenizer).getScore(), su.getScore(), 1e-12);
+            if (i > 0) {
+                assertTrue(top.get(i - 1).getScore() >= su.getScore());
+            }
+        }
+        assertTrue(index.candidates(new TwitterUser("nobody"), K).isEmpty());
+    }
+
+    @Test
+    public void testProfiles() {
+        Tokenizer tokenizer = new Tokenizer(null);
+        List<TwitterUser> corpus = createCorpus(new Random(8), 60, 1);
+        InvertedIndex byUser = new InvertedIndex(tokenizer);
+        InvertedIndex byProfile = new InvertedIndex(tokenizer);
+        List<UserProfile> profiles = new ArrayList<UserProfile>();
+        for (TwitterUser user : corpus) {
+            byUser.add(user);
+            UserProfile profile = new UserProfile(user, tokenizer);
+            profiles.add(profile);
+            byProfile.add(profile);
+        }
+        UserProfile query = profiles.get(0);
+        List<UserProfile> found = byProfile.candidates(query, K);
+        List<TwitterUser> expected = byUser.candidates(corpus.get(0), K);
+        assertEquals(expected.size(), found.size());
+        for (int i = 0; i < found.size(); i++) {
+            assertEquals(expected.get(i).getId(), found.get(i).getId());
+            // The index hands back the profiles it was given
+            assertSame(profiles.get((int) found.get(i).getId() - 1),
+                    found.get(i));
+        }
+        // Users known by their profile alone are not returned as users
+        assertTrue(byProfile.candidates(corpus.get(0), K).isEmpty());
+        assertTrue(byProfile.remove(found.get(0).getId()));
+        assertFalse(byProfile.candidates(query, K).contains(found.get(0)));
+    }
+
+    @Test
+    public void testRemoveAndCompact() {
+        Tokenizer tokenizer = new Tokenizer(null);
+        List<TwitterUser> corpus = createCorpus(new Random(7), 100, 1);
+        InvertedIndex index = new InvertedIndex(tokenizer);
+        index.addAll(corpus);
+        // Removing more than half compacts the postings
+        List<TwitterUser> remaining = new ArrayList<TwitterUser>();
+        for (int i = 0; i < corpus.size(); i++) {
+            if (i % 3 == 0) {
+                remaining.add(corpus.get(i));
+            }
+            else {
+                assertTrue(index.remove(corpus.get(i)));
+            }
+        }
+        assertFalse(index.remove(corpus.get(1)));
+        assertEquals(remaining.size(), index.size());
+        TwitterUser query = corpus.get(1);
+        assertEquals(bruteForceScores(query, remaining, tokenizer, K),
+                scores(query, index.candidates(query, K), tokenizer));
+        index.add(corpus.get(2));
+        remaining.add(corpus.get(2));
+        assertEquals(bruteForceScores(query, remaining, tokenizer, K),
+                scores(query, index.candidates(query, K), tokenizer));
+    }
+
+    /**
+     * Creates users whose tweets use a few words a lot and most words
+     * rarely, as real tweets do.
+     */
+    private static List<TwitterUser> createCorpus(final Random random,
+            final int count, final long firstId) {
+        List<TwitterUser> corpus = new ArrayList<TwitterUser>();
+        for (int u = 0; u < count; u++) {
+            TwitterUser user = new TwitterUser("user" + u);
+            user.setId(firstId + u);
+            user.setDescription(word(random) + " " + word(random));
+            for (int t = 0; t < 5; t++) {
+                StringBuilder tweet = new StringBuilder();
+                for (int w = 0; w < 6; w++) {
+                    tweet.append(' ').append(word(random));
+                }
+                user.addTweet(tweet.toString());
+            }
+            user.addMentions(Arrays.asList("@" + word(random)));
+            corpus.add(user);
+        }
+        return corpus;
+    }
+
+    private static String word(final Random random) {
+        double r = random.nextDouble();
+        return "w" + (int) (1000 * r * r * r);
+    }
+
+    private static List<Double> scores(final TwitterUser query,
+            final List<TwitterUser> users, final Tokenizer tokenizer) {
+        TermVector q = InvertedIndex.terms(new UserProfile(query, tokenizer));
+        List<Double> scores = new ArrayList<Double>();
+        for (TwitterUser user : users) {
+            scores.add(Similarity.pseudoCosine(q,
+                    InvertedIndex.terms(new UserProfile(user, tokenizer))));
+        }
+        return scores;
+    }
+
+    private static List<Double> bruteForceScores(final TwitterUser query,
+            final List<TwitterUser> corpus, final Tokenizer tokenizer,
+            final int k) {
+        List<TwitterUser> others = new ArrayList<TwitterUser>();
+        for (TwitterUser user : corpus) {
+            if (user.getId() != query.getId()) {
+                others.add(user);
+            }
+        }
+        List<Double> scores = scores(query, others, tokenizer);
+        scores.removeAll(Collections.singleton(0.0));
+        Collections.sort(scores, Collections.reverseOrder());
+        return scores.subList(0, Math.min(k, scores.size()));
+    }
+
+    private static final int K = 10;
+}
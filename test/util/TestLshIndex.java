@@ -0,0 +1,132 @@
+package util;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import text.Tokenizer;
+
+import client.TwitterUser;
+
+
+public class TestLshIndex
+{
+    @Test
+    public void testRecallAgainstBruteForce() {
+        Tokenizer tokenizer = new Tokenizer(null);
+        List<TwitterUser> corpus = createCorpus(new Random(1), 30, 10);
+        LshIndex index = new LshIndex(tokenizer);
+        index.addAll(corpus);
+        assertEquals(corpus.size(), index.size());
+
+        int found = 0;
+        int expected = 0;
+        int candidates = 0;
+        for (int q = 0; q < corpus.size(); q += 7) {
+            TwitterUser query = corpus.get(q);
+            Set<Long> exact = bruteForceTopK(query, corpus, tokenizer, K);
+            for (ScoredUser su : index.topK(query, K)) {
+                if (exact.contains(su.getUser().getId())) {
+                    found++;
+                }
+            }
+            expected += exact.size();
+            candidates += index.candidates(query).size();
+        }
+        double recall = found / (double) expected;
+        int queries = (corpus.size() + 6) / 7;
+        // All of the true top K are found among about 9 candidates of 300
+        assertTrue("Recall " + recall, recall >= 0.9);
+        assertTrue("Candidates on average " + candidates / queries,
+                candidates / queries < corpus.size() / 10);
+    }
+
+    @Test
+    public void testInsertRemove() {
+        Tokenizer tokenizer = new Tokenizer(null);
+        List<TwitterUser> corpus = createCorpus(new Random(2), 3, 4);
+        LshIndex index = new LshIndex(tokenizer);
+        index.addAll(corpus);
+        TwitterUser query = corpus.get(0);
+        TwitterUser neighbor = corpus.get(1);
+        assertTrue(ids(index.topK(query, 3)).contains(neighbor.getId()));
+        assertTrue(index.remove(neighbor));
+        assertFalse(index.remove(neighbor));
+        assertEquals(corpus.size() - 1, index.size());
+        assertFalse(ids(index.topK(query, 3)).contains(neighbor.getId()));
+        index.add(neighbor);
+        assertTrue(ids(index.topK(query, 3)).contains(neighbor.getId()));
+    }
+
+    /**
+     * Creates clusters of users who draw their followers, friends and tweet
+     * vocabulary from a pool shared by the cluster only.
+     */
+    private static List<TwitterUser> createCorpus(final Random random,
+            final int clusters, final int clusterSize) {
+        List<TwitterUser> corpus = new ArrayList<TwitterUser>();
+        long nextId = 1;
+        for (int c = 0; c < clusters; c++) {
+            long poolStart = 1000000L * (c + 1);
+            for (int u = 0; u < clusterSize; u++) {
+                TwitterUser user = new TwitterUser("user" + nextId);
+                user.setId(nextId++);
+                user.addFollowers(sample(random, poolStart, 2000, 300));
+                user.addFriends(sample(random, poolStart + 500000, 1000, 100));
+                for (int t = 0; t < 20; t++) {
+                    StringBuilder tweet = new StringBuilder();
+                    for (int w = 0; w < 8; w++) {
+                        tweet.append(" c").append(c).append("w")
+                            .append(random.nextInt(200));
+                    }
+                    user.addTweet(tweet.toString());
+                }
+                corpus.add(user);
+            }
+        }
+        return corpus;
+    }
+
+    private static List<Long> sample(final Random random, final long start,
+            final int range, final int count) {
+        List<Long> ids = new ArrayList<Long>();
+        for (int i = 0; i < count; i++) {
+            ids.add(start + random.nextInt(range));
+        }
+        return ids;
+    }
+
+    private static Set<Long> bruteForceTopK(final TwitterUser query,
+            final List<TwitterUser> corpus, final Tokenizer tokenizer, 
+            final int k) {
+        List<ScoredUser> scored = new ArrayList<ScoredUser>();
+        for (TwitterUser user : corpus) {
+            if (user.getId() != query.getId()) {
+                SimilarityResult r = 
+                    Similarity.computeSumilarity(query, user, tokenizer);
+                if (r.getScore() > 0.0) {
+                    scored.add(new ScoredUser(user, r));
+                }
+            }
+        }
+        Collections.sort(scored);
+        return ids(scored.subList(0, Math.min(k, scored.size())));
+    }
+
+    private static Set<Long> ids(final List<ScoredUser> users) {
+        Set<Long> ids = new HashSet<Long>();
+        for (ScoredUser su : users) {
+            ids.add(su.getUser().getId());
+        }
+        return ids;
+    }
+
+    private static final int K = 5;
+}
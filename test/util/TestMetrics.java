@@ -0,0 +1,94 @@
+package util;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.management.ObjectName;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import text.Tokenizer;
+
+import client.TwitterUser;
+
+public class TestMetrics
+{
+    @Test
+    public void testBucketsCoverAllValues() {
+        int previous = -1;
+        for (long value = 0; value < 100000; value++) {
+            int bucket = LatencyHistogram.bucket(value);
+            assertTrue(bucket == previous || bucket == previous + 1);
+            assertTrue(value <= LatencyHistogram.highestValue(bucket));
+            previous = bucket;
+        }
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Random random = new Random(3);
+        long[] values = new long[10000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) Math.exp(random.nextDouble() * 20);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+        assertEquals(values.length, histogram.getCount());
+        assertEquals(values[values.length - 1], histogram.getMax());
+        for (double p : new double[] {1, 50, 90, 99, 99.9}) {
+            long exact = values[(int) Math.ceil(p / 100 * values.length) - 1];
+            long reported = histogram.getPercentile(p);
+            assertTrue(reported >= exact);
+            assertTrue(reported <= exact + exact / 64 + 1);
+        }
+        assertEquals(histogram.getMax(), histogram.getPercentile(100));
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(50));
+    }
+
+    @Test
+    public void testRecordsStages() throws Exception {
+        Assume.assumeTrue(Metrics.ENABLED);
+        Metrics.reset();
+        TwitterUser t1 = new TwitterUser("a");
+        t1.setId(1);
+        t1.addTweet("Cats and dogs");
+        t1.addFollowers(Arrays.asList(1L, 2L));
+        TwitterUser t2 = new TwitterUser("b");
+        t2.setId(2);
+        t2.addTweet("Dogs and birds");
+        Similarity.computeSumilarity(t1, t2, new Tokenizer(null));
+
+        StageStats tokenize = Metrics.get(Metrics.Stage.TOKENIZE);
+        assertEquals(2, tokenize.getCount());
+        assertEquals(6, tokenize.getItems());
+        assertTrue(tokenize.getItemsPerSecond() > 0);
+        assertEquals(1, Metrics.get(Metrics.Stage.SCORE).getCount());
+        for (Metrics.Stage stage : new Metrics.Stage[] {
+            Metrics.Stage.SCORE_FOLLOWERS, Metrics.Stage.SCORE_FRIENDS,
+            Metrics.Stage.SCORE_BIO, Metrics.Stage.SCORE_MENTIONS,
+            Metrics.Stage.SCORE_FAVORITES, Metrics.Stage.SCORE_TWEETS}) {
+            assertEquals(1, Metrics.get(stage).getCount());
+        }
+        assertEquals(0, Metrics.get(Metrics.Stage.FETCH).getCount());
+
+        String json = Metrics.report(true);
+        assertTrue(json.contains("\"tokenize\":{\"count\":2,"));
+        assertFalse(json.contains("\"fetch\""));
+        assertTrue(Metrics.report(false).contains("score.tweets"));
+
+        Metrics.registerMBeans();
+        Metrics.registerMBeans();
+        Object count = ManagementFactory.getPlatformMBeanServer().getAttribute(
+                new ObjectName("similarity:type=Stage,name=score"), "Count");
+        assertEquals(Long.valueOf(1), count);
+        Metrics.reset();
+        assertEquals(0, Metrics.get(Metrics.Stage.SCORE).getCount());
+    }
+}
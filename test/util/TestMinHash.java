@@ -0,0 +1,104 @@
+package util;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import text.Tokenizer;
+
+import client.TwitterUser;
+
+
+public class TestMinHash
+{
+    @Test
+    public void testEstimateWithinBound() {
+        // Two sets of 100,000 IDs sharing 50,000: Jaccard = 1/3
+        MinHash minHash = MinHash.getDefault();
+        MinHashSketch a = minHash.newSketch();
+        MinHashSketch b = minHash.newSketch();
+        for (long id = 0; id < 100000; id++) {
+            a.add(id);
+            b.add(id + 50000);
+        }
+        double estimate = a.jaccard(b);
+        double bound = a.errorBound(b, estimate);
+        assertTrue(bound > 0.0 && bound < 0.05);
+        assertEquals(1.0 / 3.0, estimate, bound);
+    }
+
+    @Test
+    public void testIdenticalAndDisjoint() {
+        MinHash minHash = new MinHash(64, 7L);
+        MinHashSketch a = minHash.newSketch();
+        MinHashSketch b = minHash.newSketch();
+        MinHashSketch c = minHash.newSketch();
+        for (long id = 0; id < 1000; id++) {
+            a.add(id);
+            b.add(id);
+            c.add(id + 1000);
+        }
+        assertEquals(1.0, a.jaccard(b), 0.0);
+        assertEquals(0.0, a.jaccard(c), 0.0);
+        assertEquals(0.0, minHash.newSketch().jaccard(minHash.newSketch()), 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIncompatibleFamilies() {
+        new MinHash(64, 1L).newSketch().jaccard(new MinHash(64, 2L).newSketch());
+    }
+
+    @Test
+    public void testApproximateUserSimilarity() {
+        TwitterUser t1 = new TwitterUser("abc");
+        TwitterUser t2 = new TwitterUser("def");
+        t1.setId(1);
+        t2.setId(2);
+        List<Long> followers1 = new ArrayList<Long>();
+        List<Long> followers2 = new ArrayList<Long>();
+        for (long id = 0; id < 20000; id++) {
+            followers1.add(id);
+            followers2.add(id + 10000);
+        }
+        t1.addFollowers(followers1);
+        t2.addFollowers(followers2);
+        Tokenizer tokenizer = new Tokenizer(null);
+        SimilarityResult exact = 
+            Similarity.computeSumilarity(t1, t2, tokenizer, false);
+        SimilarityResult approx = 
+            Similarity.computeSumilarity(t1, t2, tokenizer, true);
+        assertFalse(exact.isFollowersEstimated());
+        assertTrue(approx.isFollowersEstimated());
+        // Friend lists are empty, hence small enough to be compared exactly
+        assertFalse(approx.isFriendsEstimated());
+        assertEquals(exact.getSharedFollowers(), approx.getSharedFollowers(),
+            approx.getFollowerErrorBound());
+    }
+
+    @Test
+    public void testUserSketchesFollowIds() {
+        TwitterUser user = new TwitterUser("abc");
+        List<Long> ids = new ArrayList<Long>();
+        for (long id = 0; id < 1000; id++) {
+            ids.add(id);
+        }
+        user.addFollowers(ids.subList(0, 500));
+        MinHashSketch sketch = user.getFollowerSketch();
+        assertSame(sketch, user.getFollowerSketch());
+        // Kept up to date once built
+        user.addFollowers(ids.subList(500, 1000));
+        MinHashSketch all = MinHash.getDefault().newSketch();
+        all.addAll(ids);
+        assertEquals(1.0, all.jaccard(user.getFollowerSketch()), 0.0);
+        // And built again after a removal
+        user.removeFollowers(ids.subList(0, 500));
+        MinHashSketch rest = MinHash.getDefault().newSketch();
+        rest.addAll(ids.subList(500, 1000));
+        assertEquals(1.0, rest.jaccard(user.getFollowerSketch()), 0.0);
+        user.addFriends(ids);
+        assertEquals(1.0, all.jaccard(user.getFriendSketch()), 0.0);
+    }
+}
@@ -0,0 +1,122 @@
+package util;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import text.Tokenizer;
+
+import client.TwitterUser;
+
+public class TestPairTracker
+{
+    @Test
+    public void testTracksRandomChanges() {
+        Tokenizer tokenizer = new Tokenizer(null);
+        Random random = new Random(17);
+        TwitterUser t1 = RandomUsers.user(random, 1, 40, 100);
+        TwitterUser t2 = RandomUsers.user(random, 2, 40, 100);
+        PairTracker tracker = new PairTracker(t1, t2, tokenizer);
+        assertSameResult(t1, t2, tokenizer, tracker);
+        for (int step = 0; step < 500; step++) {
+            TwitterUser user = random.nextBoolean() ? t1 : t2;
+            List<Long> ids = Arrays.asList((long) random.nextInt(100),
+                    (long) random.nextInt(100));
+            String text = RandomUsers.word(random) + " " +
+                RandomUsers.word(random);
+            List<String> mentions = Arrays.asList(
+                    "@" + RandomUsers.word(random));
+            switch (random.nextInt(11)) {
+            case 0: user.addFollowers(ids); break;
+            case 1: user.removeFollowers(ids); break;
+            case 2: user.addFriends(ids); break;
+            case 3: user.removeFriends(ids); break;
+            case 4: user.addTweet(text); break;
+            case 5: user.removeTweet(pick(random, user.getTweets())); break;
+            case 6: user.addFavorite(text); break;
+            case 7: user.removeFavorite(pick(random, user.getFavorites()));
+                break;
+            case 8: user.addMentions(mentions); break;
+            case 9: user.removeMentions(mentions); break;
+            default: user.setDescription(random.nextInt(5) == 0 ? null : text);
+            }
+            assertSameResult(t1, t2, tokenizer, tracker);
+        }
+    }
+
+    @Test
+    public void testCloseStopsTracking() {
+        Tokenizer tokenizer = new Tokenizer(null);
+        TwitterUser t1 = new TwitterUser("a");
+        t1.setId(1);
+        TwitterUser t2 = new TwitterUser("b");
+        t2.setId(2);
+        t1.addFollowers(Arrays.asList(1L, 2L));
+        t2.addFollowers(Arrays.asList(2L, 3L));
+        PairTracker tracker = new PairTracker(t1, t2, tokenizer);
+        assertEquals(1 / 3.0, tracker.getResult().getSharedFollowers(), 0.0);
+        t2.addFollowers(Arrays.asList(1L));
+        assertEquals(2 / 3.0, tracker.getResult().getSharedFollowers(), 0.0);
+        tracker.close();
+        t2.removeFollowers(Arrays.asList(1L, 2L));
+        assertEquals(2 / 3.0, tracker.getResult().getSharedFollowers(), 0.0);
+    }
+
+    @Test
+    public void testSameUser() {
+        TwitterUser t1 = new TwitterUser("a");
+        PairTracker tracker = new PairTracker(t1, t1, new Tokenizer(null));
+        assertEquals(1.0, tracker.getResult().getScore(), 0.0);
+        t1.addTweet("hello");
+        assertEquals(1.0, tracker.getResult().getScore(), 0.0);
+    }
+
+    @Test
+    public void testRemovalRebuildsSketch() {
+        TwitterUser user = new TwitterUser("a");
+        List<Long> ids = new ArrayList<Long>();
+        for (long id = 0; id < 1000; id++) {
+            ids.add(id);
+        }
+        user.addFollowers(ids);
+        user.removeFollowers(ids.subList(500, 1000));
+        TwitterUser fresh = new TwitterUser("b");
+        fresh.addFollowers(ids.subList(0, 500));
+        assertEquals(1.0, user.getFollowerSketch().jaccard(
+                fresh.getFollowerSketch()), 0.0);
+    }
+
+    private static void assertSameResult(final TwitterUser t1,
+            final TwitterUser t2, final Tokenizer tokenizer,
+            final PairTracker tracker) {
+        SimilarityResult expected = Similarity.computeSumilarity(t1, t2,
+                tokenizer);
+        SimilarityResult actual = tracker.getResult();
+        assertEquals(expected.getSharedFollowers(),
+                actual.getSharedFollowers(), 1e-12);
+        assertEquals(expected.getSharedFriends(),
+                actual.getSharedFriends(), 1e-12);
+        assertEquals(expected.getBioSimilarity(),
+                actual.getBioSimilarity(), 1e-12);
+        assertEquals(expected.getSharedMentions(),
+                actual.getSharedMentions(), 1e-12);
+        assertEquals(expected.getFavoriteSimilarity(),
+                actual.getFavoriteSimilarity(), 1e-12);
+        assertEquals(expected.getTweetSimilarity(),
+                actual.getTweetSimilarity(), 1e-12);
+        assertEquals(expected.getScore(), actual.getScore(), 1e-12);
+        assertEquals(expected.toString(), actual.toString());
+    }
+
+    private static String pick(final Random random,
+            final Collection<String> texts) {
+        return texts.isEmpty() ? "missing" : new ArrayList<String>(texts)
+            .get(random.nextInt(texts.size()));
+    }
+}
@@ -0,0 +1,165 @@
+package util;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import client.Clock;
+import client.RequestScheduler;
+import client.TwitterClient;
+import client.TwitterUser;
+import client.UserCache;
+
+public class TestRequestScheduler
+{
+    @Test
+    public void testPriorityOrder() throws Exception {
+        StubTwitter stub = new StubTwitter(0);
+        RequestScheduler scheduler = scheduler(stub, new FakeClock());
+        scheduler.submit("low", 1);
+        scheduler.submit("high", 5);
+        scheduler.submit("default");
+        scheduler.submit("high2", 5);
+        assertEquals(4, scheduler.getQueueDepth());
+        while (scheduler.runNext()) {
+        }
+        assertEquals(Arrays.asList("high", "high2", "low", "default"),
+                stub.users);
+        assertEquals(0, scheduler.getQueueDepth());
+        assertEquals(4, scheduler.getCompleted());
+    }
+
+    @Test
+    public void testPacing() throws Exception {
+        StubTwitter stub = new StubTwitter(0);
+        // Enough for ten users an hour
+        stub.callsLeft = 60;
+        FakeClock clock = new FakeClock();
+        RequestScheduler scheduler = scheduler(stub, clock);
+        List<CompletableFuture<TwitterUser>> users =
+            new ArrayList<CompletableFuture<TwitterUser>>();
+        for (int i = 0; i < 12; i++) {
+            users.add(scheduler.submit("user" + i));
+        }
+        for (int i = 0; i < 10; i++) {
+            scheduler.runNext();
+        }
+        // Ten users are spread evenly over the hour
+        assertEquals(9 * HOUR / 10, clock.now);
+        for (long sleep : clock.sleeps) {
+            assertTrue("slept " + sleep, sleep >= HOUR / 10);
+        }
+        assertEquals(0, scheduler.getRemainingCalls());
+
+        // The next user has to wait for the next window
+        scheduler.runNext();
+        assertTrue(clock.now >= HOUR);
+        assertEquals(54, scheduler.getRemainingCalls());
+        assertEquals("user10", users.get(10).get().getUserName());
+        assertFalse(users.get(11).isDone());
+        assertTrue(scheduler.getMaxWaitMillis() >= HOUR);
+        assertTrue(scheduler.getAverageWaitMillis() > 0);
+    }
+
+    @Test
+    public void testChargesPagesOfIds() throws Exception {
+        StubTwitter stub = new StubTwitter(0);
+        stub.callsLeft = 60;
+        // Four pages of follower IDs
+        stub.followerCount = 20000;
+        FakeClock clock = new FakeClock();
+        RequestScheduler scheduler = scheduler(stub, clock);
+        scheduler.submit("big");
+        scheduler.runNext();
+        assertEquals(60 - 6 - 3, scheduler.getRemainingCalls());
+    }
+
+    @Test
+    public void testRetryServerErrors() throws Exception {
+        StubTwitter stub = new StubTwitter(0);
+        // A budget so large that pacing never sleeps
+        stub.callsLeft = Integer.MAX_VALUE;
+        stub.serverErrors.set(2);
+        FakeClock clock = new FakeClock();
+        RequestScheduler scheduler = scheduler(stub, clock);
+        CompletableFuture<TwitterUser> user = scheduler.submit("flaky");
+        scheduler.runNext();
+        assertEquals("flaky", user.get().getUserName());
+        assertEquals(2, scheduler.getRetries());
+        // Jittered exponential backoff: 0.5-1 s, then 1-2 s
+        assertEquals(2, clock.sleeps.size());
+        assertTrue(clock.sleeps.get(0) >= 500 && clock.sleeps.get(0) <= 1000);
+        assertTrue(clock.sleeps.get(1) >= 1000 && clock.sleeps.get(1) <= 2000);
+
+        // Persistent server errors give up eventually
+        stub.serverErrors.set(100);
+        user = scheduler.submit("down");
+        scheduler.runNext();
+        try {
+            user.get();
+            fail("Expected an exception");
+        }
+        catch (ExecutionException e) {
+            assertEquals("Twitter server error. Please try again later",
+                    e.getCause().getMessage());
+        }
+        assertEquals(1, scheduler.getFailed());
+    }
+
+    @Test
+    public void testPermanentErrorsAreNotRetried() throws Exception {
+        StubTwitter stub = new StubTwitter(0);
+        stub.missing = "nobody";
+        RequestScheduler scheduler = scheduler(stub, new FakeClock());
+        CompletableFuture<TwitterUser> user = scheduler.submit("nobody");
+        scheduler.runNext();
+        assertTrue(user.isCompletedExceptionally());
+        assertEquals(0, scheduler.getRetries());
+        assertEquals(1, scheduler.getFailed());
+    }
+
+    @Test
+    public void testCachedUsersAreFree() throws Exception {
+        StubTwitter stub = new StubTwitter(0);
+        TwitterClient client = new TwitterClient(stub);
+        client.setCache(new UserCache(10, HOUR));
+        TwitterUser cached = client.createUser("cached");
+        int calls = stub.calls.get();
+        RequestScheduler scheduler = new RequestScheduler(client,
+                new FakeClock(), new Random(1));
+        CompletableFuture<TwitterUser> user = scheduler.submit("cached");
+        scheduler.runNext();
+        assertSame(cached, user.get());
+        assertEquals(calls, stub.calls.get());
+    }
+
+    @Test
+    public void testOwnThread() throws Exception {
+        StubTwitter stub = new StubTwitter(0);
+        stub.callsLeft = Integer.MAX_VALUE;
+        RequestScheduler scheduler = new RequestScheduler(
+                new TwitterClient(stub));
+        scheduler.start();
+        CompletableFuture<TwitterUser> a = scheduler.submit("a");
+        CompletableFuture<TwitterUser> b = scheduler.submit("b");
+        assertEquals("a", a.get(5, TimeUnit.SECONDS).getUserName());
+        assertEquals("b", b.get(5, TimeUnit.SECONDS).getUserName());
+        scheduler.stop();
+    }
+
+    private static RequestScheduler scheduler(final StubTwitter stub,
+            final Clock clock) {
+        return new RequestScheduler(new TwitterClient(stub), clock,
+                new Random(1));
+    }
+
+    private static final long HOUR = 60 * 60 * 1000L;
+}
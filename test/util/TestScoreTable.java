@@ -0,0 +1,65 @@
+package util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TestScoreTable
+{
+    @Test
+    public void testRows() {
+        ScoreTable table = new ScoreTable(3);
+        assertEquals(3, table.size());
+        table.set(1, result(0.5, 0.25));
+        table.set(2, ScoreTable.BIO, 0.75);
+        assertEquals(0.0, table.getScore(0), 0.0);
+        assertEquals(0.125, table.getScore(1), 0.0);
+        assertEquals(0.75, table.get(2, ScoreTable.BIO), 0.0);
+
+        ScoreTable.Row row = table.row(1);
+        assertEquals(1, row.getIndex());
+        assertEquals(0.5, row.getSharedFollowers(), 0.0);
+        assertEquals(0.25, row.getTweetSimilarity(), 0.0);
+        assertEquals(1.0, row.getCoverage(), 0.0);
+        assertSame(row, row.moveTo(2));
+        assertEquals(0.75, row.getBioSimilarity(), 0.0);
+        try {
+            row.moveTo(3);
+            fail();
+        }
+        catch (IndexOutOfBoundsException e) {
+            // Expected
+        }
+
+        SimilarityResult copy = table.toResult(1);
+        assertEquals(0.125, copy.getScore(), 0.0);
+        assertEquals(result(0.5, 0.25).getReason(), copy.getReason());
+    }
+
+    @Test
+    public void testReasonWrittenOnDemand() {
+        SimilarityResult result = result(0.5, 0.25);
+        String reason = result.getReason();
+        assertEquals("\n0.5000 (similarity between followers [0 / 0])\n"
+                + "0.2500 (similarity between regular tweets)\n", reason);
+        assertSame(reason, result.getReason());
+        assertEquals("Similarity score: 0.1250\n" + reason,
+                result.toString());
+
+        SimilarityResult none = new SimilarityResult();
+        none.computeFinalScore();
+        assertEquals(0.0, none.getScore(), 0.0);
+        assertEquals("Users have nothing in common.", none.getReason());
+        none.setReason("Given");
+        assertEquals("Given", none.getReason());
+    }
+
+    private static SimilarityResult result(final double followers,
+            final double tweets) {
+        SimilarityResult result = new SimilarityResult();
+        result.setSharedFollowers(followers);
+        result.setTweetSimilarity(tweets);
+        result.computeFinalScore();
+        return result;
+    }
+}
@@ -0,0 +1,130 @@
+package util;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import text.Tokenizer;
+
+import client.TwitterUser;
+
+public class TestScoringModel
+{
+    @Test
+    public void testDefaultModelMatchesFinalScore() {
+        List<UserProfile> profiles = createProfiles(new Random(6), 20);
+        for (int i = 0; i < profiles.size(); i++) {
+            for (int j = i + 1; j < profiles.size(); j++) {
+                UserProfile p1 = profiles.get(i);
+                UserProfile p2 = profiles.get(j);
+                assertEquals(Similarity.computeSumilarity(p1, p2).getScore(),
+                        Similarity.computeSumilarity(p1, p2,
+                                ScoringModel.DEFAULT).getScore(), 1e-12);
+            }
+        }
+    }
+
+    @Test
+    public void testCombinations() {
+        double[] scores = {0.5, 0.0, 0.25, 0.0, 0.0, 1.0};
+        assertEquals(0.125, ScoringModel.DEFAULT.combine(scores), 1e-12);
+        ScoringModel model = ScoringModel.DEFAULT
+            .withWeight(ScoringModel.Field.FOLLOWERS, 2.0)
+            .withField(ScoringModel.Field.BIO, false);
+        assertEquals(0.25, model.combine(scores), 1e-12);
+        assertEquals(0.0, model.combine(new double[6]), 0.0);
+
+        ScoringModel mean =
+            model.withCombination(ScoringModel.Combination.MEAN);
+        // (2 * 0.5 + 1.0) / 6: disabled bio neither counts nor weighs
+        assertEquals(2.0 / 6, mean.combine(scores), 1e-12);
+        assertFalse(mean.isEnabled(ScoringModel.Field.BIO));
+        assertEquals(2.0, mean.getWeight(ScoringModel.Field.FOLLOWERS), 0.0);
+        assertTrue(ScoringModel.DEFAULT.isEnabled(ScoringModel.Field.BIO));
+        try {
+            model.withWeight(ScoringModel.Field.TWEETS, -1);
+            fail();
+        }
+        catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testThresholdMatchesScore() {
+        List<UserProfile> profiles = createProfiles(new Random(7), 15);
+        ScoringModel[] models = {
+            ScoringModel.DEFAULT,
+            ScoringModel.DEFAULT.withWeight(ScoringModel.Field.TWEETS, 0.5)
+                .withField(ScoringModel.Field.FRIENDS, false),
+            new ScoringModel(ScoringModel.Combination.MEAN)
+                .withWeight(ScoringModel.Field.FOLLOWERS, 3.0)
+        };
+        double[] thresholds = {0.0, 0.001, 0.01, 0.05, 0.1, 0.3, 0.7, 1.0};
+        for (ScoringModel model : models) {
+            for (int i = 0; i < profiles.size(); i++) {
+                for (int j = i + 1; j < profiles.size(); j++) {
+                    UserProfile p1 = profiles.get(i);
+                    UserProfile p2 = profiles.get(j);
+                    double score = Similarity.computeSumilarity(p1, p2,
+                            model).getScore();
+                    for (double threshold : thresholds) {
+                        assertEquals(model + " " + threshold,
+                                score >= threshold, Similarity.isAtLeast(
+                                        p1, p2, model, threshold));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testStopsEarly() {
+        Assume.assumeTrue(Metrics.ENABLED);
+        Tokenizer tokenizer = new Tokenizer(null);
+        TwitterUser t1 = new TwitterUser("a");
+        t1.setId(1);
+        TwitterUser t2 = new TwitterUser("b");
+        t2.setId(2);
+        List<Long> followers = new ArrayList<Long>();
+        for (long id = 0; id < 100000; id++) {
+            followers.add(id);
+        }
+        t1.addFollowers(followers);
+        t2.addFollowers(followers.subList(0, 50000));
+        t1.addTweet("cats dogs birds fish");
+        t2.addTweet("cats cars boats planes");
+        UserProfile p1 = new UserProfile(t1, tokenizer);
+        UserProfile p2 = new UserProfile(t2, tokenizer);
+
+        // Tweets alone bring the product down to 1/7, so the followers are
+        // never compared
+        Metrics.reset();
+        assertFalse(Similarity.isAtLeast(p1, p2, ScoringModel.DEFAULT, 0.5));
+        assertEquals(1, Metrics.get(Metrics.Stage.SCORE_TWEETS).getCount());
+        assertEquals(0,
+                Metrics.get(Metrics.Stage.SCORE_FOLLOWERS).getCount());
+
+        // The mean of six is at least (1/7 + 1/2) / 6
+        ScoringModel mean = new ScoringModel(ScoringModel.Combination.MEAN);
+        assertTrue(Similarity.isAtLeast(p1, p2, mean, 0.1));
+        assertEquals(1,
+                Metrics.get(Metrics.Stage.SCORE_FOLLOWERS).getCount());
+        Metrics.reset();
+    }
+
+    private static List<UserProfile> createProfiles(final Random random,
+            final int count) {
+        Tokenizer tokenizer = new Tokenizer(null);
+        List<UserProfile> profiles = new ArrayList<UserProfile>();
+        for (TwitterUser user : RandomUsers.create(random, count, 40, 150)) {
+            profiles.add(new UserProfile(user, tokenizer));
+        }
+        return profiles;
+    }
+}
@@ -14,6 +14,7 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
 
 public class TestSimilarity 
@@ -34,6 +35,40 @@ public class TestSimilarity
         assertEquals(0.0, Similarity.jaccardCoefficient(listA, listB), 0.01);
     }
 
+    @Test
+    public void testSortedIdSetJaccard() {
+        // Compare the merge and galloping paths against the generic one,
+        // including very skewed set sizes.
+        Random random = new Random(42);
+        int[][] sizes = {{0, 10}, {10, 10}, {100, 120}, {5, 10000}, {3000, 2}};
+        for (int[] size : sizes) {
+            List<Long> listA = new ArrayList<Long>();
+            List<Long> listB = new ArrayList<Long>();
+            for (int i = 0; i < size[0]; i++) {
+                listA.add((long) random.nextInt(20000));
+            }
+            for (int i = 0; i < size[1]; i++) {
+                listB.add((long) random.nextInt(20000));
+            }
+            SortedIdSet setA = new SortedIdSet(listA);
+            SortedIdSet setB = new SortedIdSet(listB);
+            double expected = Similarity.jaccardCoefficient(
+                new ArrayList<Long>(setA), new ArrayList<Long>(setB));
+            assertEquals(expected, Similarity.jaccardCoefficient(setA, setB), 1e-12);
+            Collection<Long> collA = setA;
+            Collection<Long> collB = setB;
+            assertEquals(expected, Similarity.jaccardCoefficient(collA, collB), 1e-12);
+        }
+        SortedIdSet small = SortedIdSet.of(0L, 500L, 9999L);
+        SortedIdSet large = new SortedIdSet();
+        long[] all = new long[10000];
+        for (int i = 0; i < all.length; i++) {
+            all[i] = i;
+        }
+        large.addAll(all, all.length);
+        assertEquals(3 / 10000.0, Similarity.jaccardCoefficient(small, large), 1e-12);
+    }
+
     @Test
     public void testPseudoCosine() {
         Map<String, Integer> mapA = new HashMap<String, Integer>();
@@ -48,6 +83,59 @@ public class TestSimilarity
         assertEquals(0.25, Similarity.pseudoCosine(mapA, mapB), 0.01);
     }
     
+    @Test
+    public void testTermVectorPseudoCosine() {
+        // The map-based method is the reference the vectors must agree with
+        TermDictionary dictionary = new TermDictionary();
+        Random random = new Random(7);
+        for (int round = 0; round < 50; round++) {
+            Map<String, Integer> mapA = new HashMap<String, Integer>();
+            Map<String, Integer> mapB = new HashMap<String, Integer>();
+            for (int i = random.nextInt(30); i > 0; i--) {
+                mapA.put("t" + random.nextInt(40), 1 + random.nextInt(5));
+            }
+            for (int i = random.nextInt(30); i > 0; i--) {
+                mapB.put("t" + random.nextInt(40), 1 + random.nextInt(5));
+            }
+            assertEquals(Similarity.pseudoCosine(mapA, mapB),
+                Similarity.pseudoCosine(TermVector.of(mapA, dictionary),
+                        TermVector.of(mapB, dictionary)), 0.0);
+        }
+        List<String> tokens = new ArrayList<String>();
+        tokens.add("abc");
+        tokens.add("def");
+        tokens.add("abc");
+        TermVector vector = TermVector.of(tokens, dictionary);
+        assertEquals(2, vector.size());
+        assertEquals(3, vector.total());
+        assertEquals(2, vector.frequency(dictionary.lookup("abc")));
+        assertEquals(-1, dictionary.lookup("ghi"));
+    }
+
+    @Test
+    public void testTermDictionary() {
+        TermDictionary dictionary = new TermDictionary();
+        StringBuilder buffer = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            buffer.setLength(0);
+            buffer.append("term").append(i);
+            assertEquals(i, dictionary.id(buffer));
+        }
+        assertEquals(1000, dictionary.size());
+        // Looked up in place, whatever holds the characters
+        buffer.setLength(0);
+        buffer.append("term").append(517);
+        assertEquals(517, dictionary.id(buffer));
+        assertEquals(517, dictionary.id("term517"));
+        assertEquals(517, dictionary.lookup("term517"));
+        assertEquals("term517", dictionary.term(517));
+        // The buffer was copied, not kept
+        buffer.setLength(0);
+        assertEquals("term999", dictionary.term(999));
+        assertEquals(-1, dictionary.lookup("term1000"));
+        assertEquals(1000, dictionary.size());
+    }
+
     @Test
     public void testUserSimilarity() throws Exception {
         Stopwords stopwords = new Stopwords("data/stopwords.txt");
@@ -77,4 +165,48 @@ public class TestSimilarity
         SimilarityResult r5 = Similarity.computeSumilarity(t1, t2, tokenizer);
         assertEquals(0.375, r5.getScore(), 0.01);
     }
+
+    @Test
+    public void testCoverage() throws Exception {
+        Tokenizer tokenizer = new TwitterTokenizer(
+                new Stopwords("data/stopwords.txt"));
+        TwitterUser t1 = new TwitterUser("abc");
+        TwitterUser t2 = new TwitterUser("def");
+        t1.setId(123);
+        t2.setId(456);
+        List<Long> followers = new ArrayList<Long>();
+        followers.add(1L);
+        followers.add(2L);
+        t1.addFollowers(followers);
+        t2.addFollowers(followers);
+        SimilarityResult full = Similarity.computeSumilarity(t1, t2,
+                tokenizer);
+        assertEquals(1.0, full.getCoverage(), 0.0);
+        assertFalse(full.toString().contains("fetched"));
+
+        // Only 2 of the 8 followers the API reports were fetched
+        t1.setFollowerCount(8);
+        // Counts lag behind, so fetching more than the total is all of it
+        t2.setFollowerCount(1);
+        assertEquals(0.25, t1.getFollowerCoverage(), 0.0);
+        assertEquals(1.0, t2.getFollowerCoverage(), 0.0);
+        SimilarityResult partial = Similarity.computeSumilarity(t1, t2,
+                tokenizer);
+        assertEquals(full.getScore(), partial.getScore(), 0.0);
+        assertEquals(0.25, partial.getCoverage(), 0.0);
+        assertTrue(partial.toString(),
+                partial.toString().contains("25% / 100% fetched"));
+    }
+
+    @Test
+    public void testReasonFollowsScores() {
+        SimilarityResult result = new SimilarityResult();
+        result.setSharedFollowers(0.5);
+        result.computeFinalScore();
+        assertFalse(result.getReason().contains("biographies"));
+        result.setBioSimilarity(0.25);
+        result.computeFinalScore();
+        assertTrue(result.getReason(),
+                result.getReason().contains("biographies"));
+    }
 }
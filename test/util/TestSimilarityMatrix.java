@@ -0,0 +1,96 @@
+package util;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import text.Tokenizer;
+
+import client.TwitterUser;
+
+
+public class TestSimilarityMatrix
+{
+    @Test
+    public void testMatrixMatchesPairwise() {
+        Tokenizer tokenizer = new Tokenizer(null);
+        List<TwitterUser> users = RandomUsers.create(new Random(3), 37,
+                50, 200);
+        SimilarityMatrix batch = 
+            new SimilarityMatrix(tokenizer, new ForkJoinPool(4), 8);
+        double[] matrix = batch.computeMatrix(users);
+        int n = users.size();
+        for (int i = 0; i < n; i++) {
+            assertEquals(1.0, matrix[i * n + i], 0.0);
+            for (int j = i + 1; j < n; j++) {
+                double expected = Similarity.computeSumilarity(
+                    users.get(i), users.get(j), tokenizer).getScore();
+                assertEquals(expected, matrix[i * n + j], 1e-12);
+                assertEquals(expected, matrix[j * n + i], 1e-12);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMatrixTooLarge() {
+        // 46341 squared does not fit in an int
+        new SimilarityMatrix(new Tokenizer(null), new ForkJoinPool(1), 8)
+            .computeMatrix(Collections.nCopies(46341, (TwitterUser) null));
+    }
+
+    @Test
+    public void testTableMatchesPairwise() {
+        Tokenizer tokenizer = new Tokenizer(null);
+        List<TwitterUser> users = RandomUsers.create(new Random(5), 21,
+                50, 200);
+        ScoreTable table = new SimilarityMatrix(tokenizer, new ForkJoinPool(4),
+                4).computeTable(users);
+        int n = users.size();
+        assertEquals(n * (n - 1) / 2, table.size());
+        ScoreTable.Row row = table.row(0);
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                SimilarityResult expected = Similarity.computeSumilarity(
+                    users.get(i), users.get(j), tokenizer);
+                row.moveTo(SimilarityMatrix.row(i, j, n));
+                assertEquals(expected.getScore(), row.getScore(), 1e-12);
+                assertEquals(expected.getSharedFollowers(),
+                        row.getSharedFollowers(), 1e-12);
+                assertEquals(expected.getTweetSimilarity(),
+                        row.getTweetSimilarity(), 1e-12);
+                assertEquals(1.0, row.getCoverage(), 0.0);
+            }
+        }
+        assertEquals(0, SimilarityMatrix.row(0, 1, n));
+        assertEquals(n - 1, SimilarityMatrix.row(1, 2, n));
+        assertEquals(table.size() - 1, SimilarityMatrix.row(n - 2, n - 1, n));
+    }
+
+    @Test
+    public void testEachPairScoredOnce() {
+        List<TwitterUser> users = RandomUsers.create(new Random(4), 50,
+                50, 200);
+        final Set<Long> seen = new HashSet<Long>();
+        final int[] duplicates = new int[1];
+        new SimilarityMatrix(new Tokenizer(null)).computePairs(users,
+            new PairCallback() {
+                public void pairScored(int i, int j, SimilarityResult result) {
+                    synchronized (seen) {
+                        assertTrue(i < j);
+                        if (!seen.add(i * 1000L + j)) {
+                            duplicates[0]++;
+                        }
+                    }
+                }
+            });
+        assertEquals(0, duplicates[0]);
+        assertEquals(50 * 49 / 2, seen.size());
+    }
+}
@@ -0,0 +1,203 @@
+package util;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import winterwell.jtwitter.TwitterException;
+
+import text.Tokenizer;
+
+import app.SimilarityServer;
+import client.TwitterUser;
+import client.UserSource;
+
+public class TestSimilarityServer
+{
+    @Before
+    public void setUp() throws Exception {
+        source = new Source();
+        server = new SimilarityServer(source, new Tokenizer(null), 100,
+                TimeUnit.HOURS.toMillis(1));
+        server.start(0);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void testScore() throws Exception {
+        String json = get("/score?user1=cats&user2=Dogs", 200);
+        assertTrue(json, json.startsWith(
+                "{\"user1\":\"cats\",\"user2\":\"Dogs\",\"score\":"));
+        assertTrue(json, json.contains("\"reason\":"));
+        // Users are kept, whatever the case of their names
+        get("/score?user1=CATS&user2=dogs", 200);
+        assertEquals(2, source.fetches.get());
+        assertTrue(get("/stats", 200).startsWith(
+                "{\"users\":2,\"indexed\":2,"));
+    }
+
+    @Test
+    public void testSimilar() throws Exception {
+        get("/score?user1=cats&user2=dogs", 200);
+        get("/score?user1=birds&user2=fish", 200);
+        String json = get("/similar?user=cats&k=1", 200);
+        assertTrue(json, json.startsWith(
+                "{\"user\":\"cats\",\"similar\":[{\"user\":\"dogs\","));
+        assertTrue(json, json.endsWith("}]}"));
+        assertEquals(json, 1, json.split("\"user\"").length - 2);
+    }
+
+    @Test
+    public void testTermsBounded() throws Exception {
+        server.stop();
+        server = new SimilarityServer(source, new Tokenizer(null), 4,
+                TimeUnit.HOURS.toMillis(1));
+        server.setMaxTerms(10);
+        server.start(0);
+        // Every user brings a term of its own, which evicted users take
+        // with them
+        for (int i = 0; i < 100; i += 2) {
+            get("/score?user1=cats" + i + "&user2=dogs" + (i + 1), 200);
+        }
+        assertTrue(get("/similar?user=cats98&k=3", 200)
+                .contains("\"user\":\"dogs99\""));
+        Matcher terms = Pattern.compile("\"terms\":(\\d+)")
+            .matcher(get("/stats", 200));
+        assertTrue(terms.find());
+        assertTrue(terms.group(), Integer.parseInt(terms.group(1)) < 50);
+    }
+
+    @Test
+    public void testErrors() throws Exception {
+        assertTrue(get("/score?user1=cats&user2=ghost", 404)
+                .startsWith("{\"error\":"));
+        get("/score?user1=cats", 400);
+        get("/similar?user=cats&k=zero", 400);
+        get("/similar?user=cats&k=1000", 400);
+    }
+
+    @Test
+    public void testCoalescing() throws Exception {
+        source.gate = new CountDownLatch(1);
+        ExecutorService clients = Executors.newFixedThreadPool(8);
+        try {
+            Future<?>[] responses = new Future<?>[8];
+            for (int i = 0; i < responses.length; i++) {
+                responses[i] = clients.submit(new Callable<String>() {
+                    public String call() throws Exception {
+                        return get("/similar?user=cats", 200);
+                    }
+                });
+            }
+            // Let the requests pile up behind the first fetch
+            long deadline = System.currentTimeMillis() + 10000;
+            while (server.getCoalesced() < responses.length - 1 &&
+                    System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            source.gate.countDown();
+            for (Future<?> response : responses) {
+                response.get(10, TimeUnit.SECONDS);
+            }
+        }
+        finally {
+            clients.shutdownNow();
+        }
+        assertEquals(1, source.fetches.get());
+        assertEquals(1, server.getFetches());
+        assertEquals(7, server.getCoalesced());
+    }
+
+    private String get(final String path, final int status)
+        throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(
+                "http://localhost:" + server.getPort() + path).openConnection();
+        assertEquals(status, connection.getResponseCode());
+        assertEquals("application/json; charset=utf-8",
+                connection.getContentType());
+        InputStream in = status == 200 ? connection.getInputStream()
+                : connection.getErrorStream();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+            body.write(buffer, 0, n);
+        }
+        in.close();
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Makes up users tweeting about animals, answering on another thread;
+     * "ghost" does not exist.
+     */
+    private static class Source implements UserSource
+    {
+        public CompletableFuture<TwitterUser> createUserAsync(
+                final String userName) {
+            fetches.incrementAndGet();
+            return CompletableFuture.supplyAsync(
+                new Supplier<TwitterUser>() {
+                    public TwitterUser get() {
+                        return create(userName);
+                    }
+                });
+        }
+
+        private TwitterUser create(final String userName) {
+            if (gate != null) {
+                try {
+                    gate.await(10, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            String name = userName.toLowerCase();
+            if (name.equals("ghost")) {
+                throw new IllegalStateException(new Exception(
+                        "User 'ghost' does not exist.",
+                        new TwitterException.E404("Not found")));
+            }
+            TwitterUser user = new TwitterUser(name);
+            user.setId(ids.incrementAndGet());
+            boolean pets = name.equals("cats") || name.equals("dogs");
+            user.addTweet(pets ? "My pets sleep on the sofa all day"
+                    : "The sea is deep and the sky is wide");
+            user.addTweet("Feeding the " + name);
+            user.addFollowers(Arrays.asList(pets ? 7L : 8L, 9L));
+            return user;
+        }
+
+        final AtomicInteger fetches = new AtomicInteger();
+        final AtomicInteger ids = new AtomicInteger();
+        volatile CountDownLatch gate;
+    }
+
+    private Source source;
+    private SimilarityServer server;
+}
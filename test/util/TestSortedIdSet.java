@@ -0,0 +1,111 @@
+package util;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+
+public class TestSortedIdSet
+{
+    @Test
+    public void testAddAndContains() {
+        SortedIdSet set = new SortedIdSet();
+        assertTrue(set.add(5L));
+        assertTrue(set.add(1L));
+        assertFalse(set.add(5L));
+        assertEquals(2, set.size());
+        assertTrue(set.contains(1L));
+        assertFalse(set.contains(3L));
+        assertEquals(1L, set.get(0));
+        assertEquals(5L, set.get(1));
+    }
+
+    @Test
+    public void testAddAllSortsAndDedupes() {
+        List<Long> ids = new ArrayList<Long>();
+        ids.add(9L);
+        ids.add(3L);
+        ids.add(9L);
+        ids.add(-4L);
+        SortedIdSet set = new SortedIdSet(ids);
+        assertEquals(3, set.size());
+        assertArrayEquals(new long[] {-4L, 3L, 9L}, set.toLongArray());
+        set.addAll(SortedIdSet.of(3L, 7L));
+        assertArrayEquals(new long[] {-4L, 3L, 7L, 9L}, set.toLongArray());
+    }
+
+    @Test
+    public void testRemove() {
+        SortedIdSet set = SortedIdSet.of(1L, 2L, 3L, 4L);
+        assertTrue(set.remove(2L));
+        assertFalse(set.remove(2L));
+        Iterator<Long> it = set.iterator();
+        while (it.hasNext()) {
+            if (it.next() == 3L) {
+                it.remove();
+            }
+        }
+        assertArrayEquals(new long[] {1L, 4L}, set.toLongArray());
+    }
+
+    @Test
+    public void testRemoveAll() {
+        SortedIdSet set = SortedIdSet.of(1L, 2L, 3L, 4L, 5L, 6L);
+        long[] removed = {6L, 9L, 2L, 6L, 0L, 4L};
+        assertEquals(3, set.removeAll(removed, removed.length));
+        assertArrayEquals(new long[] {2L, 4L, 6L},
+                Arrays.copyOf(removed, 3));
+        assertArrayEquals(new long[] {1L, 3L, 5L}, set.toLongArray());
+        assertEquals(0, set.removeAll(new long[] {2L, 7L}, 2));
+        assertEquals(3, set.size());
+    }
+
+    @Test
+    public void testOfSortedCopiesOnWrite() {
+        long[] array = {1L, 3L, 5L, 0L};
+        SortedIdSet set = SortedIdSet.ofSorted(array, 3);
+        assertSame(array, set.array());
+        assertTrue(set.add(4L));
+        assertTrue(set.remove(1L));
+        assertArrayEquals(new long[] {3L, 4L, 5L}, set.toLongArray());
+        assertArrayEquals(new long[] {1L, 3L, 5L, 0L}, array);
+
+        SortedIdSet removing = SortedIdSet.ofSorted(array, 3);
+        assertEquals(1, removing.removeAll(new long[] {3L}, 1));
+        assertArrayEquals(new long[] {1L, 5L}, removing.toLongArray());
+        assertArrayEquals(new long[] {1L, 3L, 5L, 0L}, array);
+    }
+
+    @Test
+    public void testAddAllPresentKeepsArray() {
+        SortedIdSet set = SortedIdSet.of(1L, 3L, 5L, 7L);
+        long[] before = set.array();
+        assertFalse(set.addAll(new long[] {7L, 3L, 3L}, 3));
+        assertFalse(set.addAll(SortedIdSet.of(1L, 5L)));
+        assertSame(before, set.array());
+        assertTrue(set.addAll(new long[] {3L, 4L, 8L}, 3));
+        assertArrayEquals(new long[] {1L, 3L, 4L, 5L, 7L, 8L},
+                set.toLongArray());
+        assertTrue(set.addAll(new long[] {0L}, 1));
+        assertEquals(0L, set.get(0));
+        assertEquals(7, set.size());
+    }
+
+    @Test
+    public void testEqualsHashSet() {
+        Set<Long> hashed = new HashSet<Long>();
+        hashed.add(10L);
+        hashed.add(20L);
+        SortedIdSet set = SortedIdSet.of(20L, 10L);
+        assertEquals(hashed, set);
+        assertEquals(set, hashed);
+        assertEquals(hashed.hashCode(), set.hashCode());
+    }
+}
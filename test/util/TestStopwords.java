@@ -0,0 +1,74 @@
+package util;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+
+import org.junit.Test;
+
+import text.Stopwords;
+
+public class TestStopwords
+{
+    @Test
+    public void testCaseInsensitive() {
+        Stopwords stopwords = new Stopwords();
+        stopwords.add("the");
+        stopwords.add("they");
+        stopwords.add("don't");
+        assertTrue(stopwords.isStopword("the"));
+        assertTrue(stopwords.isStopword("The"));
+        assertTrue(stopwords.isStopword("THEY"));
+        assertTrue(stopwords.isStopword("Don't"));
+        assertFalse(stopwords.isStopword("th"));
+        assertFalse(stopwords.isStopword("them"));
+        assertFalse(stopwords.isStopword("theyre"));
+        assertFalse(stopwords.isStopword(""));
+        assertFalse(stopwords.isStopword((String) null));
+        assertEquals(3, stopwords.size());
+    }
+
+    @Test
+    public void testSlices() {
+        Stopwords stopwords = new Stopwords();
+        stopwords.add("and");
+        String text = "Rock AND roll";
+        assertTrue(stopwords.isStopword(text, 5, 8));
+        assertFalse(stopwords.isStopword(text, 5, 7));
+        assertFalse(stopwords.isStopword(text, 4, 8));
+        assertFalse(stopwords.isStopword(text, 5, 5));
+        assertTrue(stopwords.isStopword(new StringBuilder(text), 5, 8));
+    }
+
+    @Test
+    public void testAddAfterLookup() {
+        Stopwords stopwords = new Stopwords();
+        stopwords.add("a");
+        assertFalse(stopwords.isStopword("b"));
+        stopwords.add("b");
+        stopwords.add("B");
+        assertTrue(stopwords.isStopword("b"));
+        assertTrue(stopwords.isStopword("a"));
+        assertEquals(2, stopwords.size());
+    }
+
+    @Test
+    public void testStopwordFiles() throws Exception {
+        for (String file : new String[] { "data/stopwords.txt",
+                "data/stopwords.long.txt" }) {
+            Stopwords stopwords = new Stopwords(file);
+            BufferedReader br = new BufferedReader(new FileReader(file));
+            String line;
+            while ((line = br.readLine()) != null) {
+                String word = line.trim();
+                if (word.length() > 0) {
+                    assertTrue(word, stopwords.isStopword(word));
+                    assertTrue(word, stopwords.isStopword(word.toUpperCase()));
+                    assertFalse(word, stopwords.isStopword(word + "q"));
+                }
+            }
+            br.close();
+        }
+    }
+}
@@ -2,11 +2,16 @@ package util;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.junit.Test;
 
+import text.Segmenter;
 import text.Stopwords;
+import text.TokenSink;
+import text.TokenType;
+import text.Tokenizer;
 import text.TwitterTokenizer;
 
 public class TestTokenizer
@@ -37,4 +42,117 @@ public class TestTokenizer
         assertEquals("thing", tokList.get(8));
         assertEquals(7, tokList.indexOf("other"));
     }
+
+    @Test
+    public void testTokenizeStreaming() {
+        final Tokenizer tokenizer = new TwitterTokenizer(null);
+        String text = "RT @Someone: Streaming TOKENS, one #at a time";
+        final List<String> streamed = new ArrayList<String>();
+        final List<String> nested = new ArrayList<String>();
+        tokenizer.tokenize(text, new TokenSink() {
+            public void token(CharSequence token, TokenType type) {
+                streamed.add(token.toString());
+                // Tokenizing from within a sink must not disturb the caller
+                nested.addAll(tokenizer.tokenize("Inner Text"));
+            }
+        });
+        assertEquals(tokenizer.tokenize(text), streamed);
+        assertEquals("@someone", streamed.get(1));
+        assertEquals("#at", streamed.get(5));
+        assertEquals(2 * streamed.size(), nested.size());
+        assertEquals("inner", nested.get(0));
+    }
+
+    @Test
+    public void testTableSegmenterMatchesBreakIterator() {
+        Stopwords stopwords = new Stopwords();
+        stopwords.add("the");
+        stopwords.add("a");
+        Tokenizer[][] pairs = {
+            { new Tokenizer(null),
+              new Tokenizer(null, Segmenter.TABLE) },
+            { new TwitterTokenizer(stopwords),
+              new TwitterTokenizer(stopwords, Segmenter.TABLE) },
+        };
+        for (Tokenizer[] pair : pairs) {
+            for (String tweet : TWEETS) {
+                assertEquals(tweet, pair[0].tokenize(tweet),
+                        pair[1].tokenize(tweet));
+            }
+        }
+    }
+
+    @Test
+    public void testTableSegmenterSupplementary() {
+        Tokenizer tokenizer = new Tokenizer(null, Segmenter.TABLE);
+        // Mathematical bold letters form a word; an emoji does not
+        List<String> tokens = tokenizer.tokenize(
+            "x \uD835\uDC00\uD835\uDC01 \uD83D\uDE00 \uD83D\uDE00y");
+        assertEquals(3, tokens.size());
+        assertEquals("\uD835\uDC00\uD835\uDC01", tokens.get(1));
+        assertEquals("y", tokens.get(2));
+    }
+
+    @Test
+    public void testTableSegmenterHonorsOverride() {
+        Tokenizer breakIterator = lettersOnly(Segmenter.BREAK_ITERATOR);
+        Tokenizer table = lettersOnly(Segmenter.TABLE);
+        List<String> tokens = table.tokenize("abc 123 def 4th 1.5");
+        assertEquals(2, tokens.size());
+        assertEquals("def", tokens.get(1));
+        for (String tweet : TWEETS) {
+            assertEquals(tweet, breakIterator.tokenize(tweet),
+                    table.tokenize(tweet));
+        }
+    }
+
+    /**
+     * @return a tokenizer for which numbers are not words
+     */
+    private static Tokenizer lettersOnly(final Segmenter segmenter) {
+        return new Tokenizer(null, segmenter) {
+            public boolean isWordCharacter(Character ch) {
+                return Character.isLetter(ch);
+            }
+        };
+    }
+
+    // Tweets with the punctuation, numbers, entities and scripts that occur
+    // in real timelines
+    private static final String[] TWEETS = {
+        "Just setting up my twttr",
+        "RT @nytimes: Breaking: Senate passes $1.2 trillion bill, 69-30 #politics",
+        "can't believe it's already 2:30am... #insomnia #cantsleep",
+        "Check out http://t.co/abc123XyZ and https://example.com/path?q=1&r=2",
+        "@bob @alice lol that's what she said!!!1",
+        "Up 15% today, $AAPL and $GOOG at all-time highs. 3.14159 is pi, 1,000,000 is a lot",
+        "e-mail me at john.doe@example.com or call 555-123-4567 (ext. 12)",
+        "I'm lovin' it... #McDonalds #fastfood #yum",
+        "U.S.A. vs. U.K. -- who wins?? \u2014 not sure",
+        "Caf\u00e9 cr\u00e8me br\u00fbl\u00e9e na\u00efve r\u00e9sum\u00e9 \u00fcber stra\u00dfe",
+        "Ich w\u00fcnsche euch allen einen sch\u00f6nen Sonntag! \uD83D\uDE0A\uD83C\uDF1E",
+        "\u00bfQu\u00e9 pas\u00f3? \u00a1Incre\u00edble partido! #LaLiga #ElCl\u00e1sico",
+        "\u041f\u0440\u0438\u0432\u0435\u0442, \u043c\u0438\u0440! \u041a\u0430\u043a \u0434\u0435\u043b\u0430?",
+        "\u03ba\u03b1\u03bb\u03b7\u03bc\u03ad\u03c1\u03b1 \u0391\u03b8\u03ae\u03bd\u03b1 #greece",
+        "\u0645\u0631\u062d\u0628\u0627 \u0628\u0627\u0644\u0639\u0627\u0644\u0645 123 \u0661\u0662\u0663",
+        "\u05e9\u05dc\u05d5\u05dd \u05e2\u05d5\u05dc\u05dd!",
+        "\u0928\u092e\u0938\u094d\u0924\u0947 \u0926\u0941\u0928\u093f\u092f\u093e\u0964 \u0915\u0948\u0938\u0947 \u0939\u094b?",
+        "\u0e2a\u0e27\u0e31\u0e2a\u0e14\u0e35\u0e04\u0e23\u0e31\u0e1a #thailand",
+        "\u4eca\u65e5\u306f\u3044\u3044\u5929\u6c17\u3067\u3059\u306d\uff01\u30c6\u30ec\u30d3\u3092\u898b\u307e\u3059 #\u65e5\u672c",
+        "\uc548\ub155\ud558\uc138\uc694 \uc5ec\ub7ec\ubd84! #kpop @BTS_twt",
+        "Family \uD83D\uDC68\u200D\uD83D\uDC69\u200D\uD83D\uDC67 and flags \uD83C\uDDFA\uD83C\uDDF8 \u2764\uFE0F",
+        "soft\u00adhyphen and zero\u200bwidth and co\u0301mbining",
+        "Tabs\tand\r\nnew lines\n\nand\u00a0non-breaking\u2003spaces",
+        "#1 song in the country!!! 100% fire \uD83D\uDD25\uD83D\uDD25 #music",
+        "\u00a350 or \u20ac45 or \u00a56000, price is 50\u00a2 & up",
+        "Score: 3-2 (OT). Next game 7/4 @ 7:05pm ET #NHL",
+        "omg!!!!! sooooo goooood :) :-( ;P <3 xD",
+        "\"Quotes\" and 'single quotes' and \u201ccurly\u201d and \u2018curly\u2019",
+        "snake_case_var and CamelCase and file.name.txt and v2.0.1-beta",
+        "@user_name1 #hash_tag2 ##double @@double #123 #a1b2",
+        "...leading dots and trailing dots... and a.b.c. and 1.2.3.",
+        "",
+        "   ",
+        "\u200bstarts with zero width",
+    };
 }
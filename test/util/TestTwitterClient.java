@@ -0,0 +1,158 @@
+package util;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Test;
+
+import client.FetchLimits;
+import client.TwitterClient;
+import client.TwitterUser;
+import client.UserCache;
+
+public class TestTwitterClient
+{
+    @Test
+    public void testRequestsRunConcurrently() throws Exception {
+        StubTwitter stub = new StubTwitter(LATENCY);
+        TwitterClient client = new TwitterClient(stub);
+        long start = System.nanoTime();
+        CompletableFuture<TwitterUser> f1 = client.createUserAsync("alice");
+        CompletableFuture<TwitterUser> f2 = client.createUserAsync("bob");
+        TwitterUser alice = f1.get();
+        TwitterUser bob = f2.get();
+        long elapsed = (System.nanoTime() - start) / 1000000;
+
+        // Sequentially, the twelve requests would take 12 * LATENCY; the
+        // rate limit checks and then the other requests take 2 * LATENCY
+        assertTrue("took " + elapsed + " ms", elapsed < 4 * LATENCY);
+        assertEquals(12, stub.calls.get());
+        assertEquals("alice", alice.getScreenName());
+        assertEquals(Arrays.asList("hello from alice", "second tweet"),
+                new ArrayList<String>(alice.getTweets()));
+        assertEquals(SortedIdSet.of(1, 2, 3), alice.getFollowerIds());
+        assertEquals(SortedIdSet.of(4, 5), alice.getFriendIds());
+        assertEquals(1, alice.getFavorites().size());
+        assertEquals("bob", bob.getScreenName());
+    }
+
+    @Test
+    public void testSynchronousCreateUser() throws Exception {
+        TwitterClient client = new TwitterClient(new StubTwitter(0));
+        TwitterUser user = client.createUser("carol");
+        assertEquals("carol", user.getUserName());
+        assertEquals(2, user.getTweets().size());
+    }
+
+    @Test
+    public void testCachedUserNeedsNoRequests() throws Exception {
+        StubTwitter stub = new StubTwitter(0);
+        TwitterClient client = new TwitterClient(stub);
+        client.setCache(new UserCache(10, 60000));
+        TwitterUser first = client.createUser("dave");
+        assertEquals(6, stub.calls.get());
+        assertSame(first, client.createUser("Dave"));
+        assertEquals(6, stub.calls.get());
+        assertEquals(1, client.getCache().getHits());
+    }
+
+    @Test
+    public void testErrors() {
+        StubTwitter stub = new StubTwitter(0);
+        stub.missing = "nobody";
+        TwitterClient client = new TwitterClient(stub);
+        try {
+            client.createUser("nobody");
+            fail("Expected an exception");
+        }
+        catch (Exception e) {
+            assertEquals("User 'nobody' does not exist.", e.getMessage());
+        }
+        stub.callsLeft = -1;
+        int calls = stub.calls.get();
+        try {
+            client.createUser("alice");
+            fail("Expected an exception");
+        }
+        catch (Exception e) {
+            assertEquals("Rate limit exceeded for the current hour.",
+                    e.getMessage());
+        }
+        // Only the rate limit was asked for
+        assertEquals(calls + 1, stub.calls.get());
+    }
+
+    @Test
+    public void testTimelineIsPagedUpToLimit() throws Exception {
+        StubTwitter stub = new StubTwitter(0);
+        stub.tweets = 450;
+        TwitterClient client = new TwitterClient(stub);
+        client.setFetchLimits(new FetchLimits(FetchLimits.UNLIMITED,
+                FetchLimits.UNLIMITED, 300, 0));
+        TwitterUser user = client.createUser("erin");
+        assertEquals(300, user.getTweets().size());
+        assertEquals("hello from erin", user.getTweets().iterator().next());
+        assertEquals(Arrays.asList(1, 2), stub.pages);
+        assertEquals(0, user.getFavorites().size());
+        // Rate limit check, profile, followers, friends and two pages
+        assertEquals(6, stub.calls.get());
+        assertEquals(6, client.getFetchLimits().getRequestsPerUser());
+        // Lists of IDs take a request per page of 5000
+        assertEquals(6, client.getFetchLimits().getRequests(5000, 0));
+        assertEquals(2 + 2 + 19 + 2, client.getFetchLimits().getRequests(
+                10000, 95000));
+        // A cap bounds the pages
+        assertEquals(3, new FetchLimits(5000, 0, 0, 0).getRequests(
+                FetchLimits.UNLIMITED, 12));
+    }
+
+    @Test
+    public void testShortTimelineEndsPaging() throws Exception {
+        StubTwitter stub = new StubTwitter(0);
+        TwitterClient client = new TwitterClient(stub);
+        client.setFetchLimits(new FetchLimits(FetchLimits.UNLIMITED,
+                FetchLimits.UNLIMITED, 100, FetchLimits.DEFAULT_PAGE_SIZE));
+        assertEquals(2, client.createUser("frank").getTweets().size());
+        assertEquals(Arrays.asList(1), stub.pages);
+
+        // The default page needs no paging parameters at all
+        stub.pages.clear();
+        client.setFetchLimits(FetchLimits.DEFAULT);
+        client.createUser("frank");
+        assertEquals(Arrays.asList((Integer) null), stub.pages);
+    }
+
+    @Test
+    public void testFollowersAreCapped() throws Exception {
+        StubTwitter stub = new StubTwitter(0);
+        List<Long> followers = new ArrayList<Long>();
+        for (long id = 100; id > 0; id--) {
+            followers.add(id);
+        }
+        stub.followers = followers;
+        stub.followerCount = 400;
+        TwitterClient client = new TwitterClient(stub);
+        client.setFetchLimits(new FetchLimits(10, 10, 0, 0));
+        assertEquals(10, stub.getMaxResults());
+        TwitterUser user = client.createUser("gina");
+        // The most recent followers come first
+        assertEquals(10, user.getFollowerIds().size());
+        assertTrue(user.getFollowerIds().contains(100));
+        assertFalse(user.getFollowerIds().contains(1));
+        assertEquals(400, user.getFollowerCount());
+        assertEquals(0.025, user.getFollowerCoverage(), 1e-9);
+        assertEquals(1.0, user.getTweetCoverage(), 0.0);
+        assertEquals(4, stub.calls.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeLimit() {
+        new FetchLimits(-1, 0, 0, 0);
+    }
+
+    private static final long LATENCY = 200;
+}
@@ -2,10 +2,14 @@ package util;
 
 import static org.junit.Assert.assertEquals;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.junit.Test;
 
+import text.TokenSink;
+import text.TokenType;
 import text.TwitterTokenizer;
 
 
@@ -20,4 +24,28 @@ public class TestTwitterTokeizer
         assertEquals("@abdur", tokList.get(10));
         assertEquals("cul-de-sac", tokList.get(24));
     }
+
+    @Test
+    public void testEntities() {
+        TwitterTokenizer tokenizer = new TwitterTokenizer(null);
+        String tweet = "RT @Jack: #1 song, $AAPL up! see https://t.co/AbC1, " +
+            "mail me@example.com #NowPlaying#2 $5 www.example.com/x.";
+        final List<String> tokens = new ArrayList<String>();
+        final List<TokenType> types = new ArrayList<TokenType>();
+        tokenizer.tokenize(tweet, new TokenSink() {
+            public void token(CharSequence token, TokenType type) {
+                tokens.add(token.toString());
+                types.add(type);
+            }
+        });
+        String[] expectedTokens = { "rt", "@jack", "1", "song", "$aapl", "up",
+            "see", "https://t.co/AbC1", "mail", "me", "example.com",
+            "#nowplaying", "2", "www.example.com/x" };
+        TokenType[] expectedTypes = { TokenType.WORD, TokenType.MENTION,
+            TokenType.WORD, TokenType.WORD, TokenType.CASHTAG, TokenType.WORD,
+            TokenType.WORD, TokenType.URL, TokenType.WORD, TokenType.WORD,
+            TokenType.WORD, TokenType.HASHTAG, TokenType.WORD, TokenType.URL };
+        assertEquals(Arrays.asList(expectedTokens), tokens);
+        assertEquals(Arrays.asList(expectedTypes), types);
+    }
 }
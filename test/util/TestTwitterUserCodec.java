@@ -0,0 +1,164 @@
+package util;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import client.TwitterUser;
+import client.TwitterUserCodec;
+
+public class TestTwitterUserCodec
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        TwitterUser user = sample();
+        ByteBuffer buffer = TwitterUserCodec.encode(user);
+        int size = buffer.remaining();
+        TwitterUser copy = TwitterUserCodec.decode(buffer);
+        assertFalse(buffer.hasRemaining());
+        assertEquals(TwitterUserCodec.encode(copy).remaining(), size);
+        assertSameUser(user, copy);
+    }
+
+    @Test
+    public void testStreamingThroughFile() throws Exception {
+        TwitterUser user = sample();
+        // Far more IDs than fit in the codec's buffer
+        long[] followers = new long[200000];
+        for (int i = 0; i < followers.length; i++) {
+            followers[i] = 1000000L + 3 * i;
+        }
+        user.addFollowers(SortedIdSet.of(followers));
+        File file = folder.newFile("user.bin");
+        FileChannel out = FileChannel.open(file.toPath(),
+                StandardOpenOption.WRITE);
+        TwitterUserCodec.write(user, out);
+        TwitterUserCodec.write(sample(), out);
+        out.close();
+        // The gaps are small, so each ID takes a single byte
+        assertTrue(file.length() < followers.length + 1000);
+
+        FileChannel in = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ);
+        TwitterUser copy = TwitterUserCodec.read(in);
+        in.close();
+        assertSameUser(user, copy);
+        assertEquals(user.getFollowerSketch().jaccard(
+                copy.getFollowerSketch()), 1.0, 0.0);
+    }
+
+    @Test
+    public void testExtremeIds() throws Exception {
+        TwitterUser user = new TwitterUser("edge");
+        user.setId(-1);
+        user.addFriends(SortedIdSet.of(Long.MIN_VALUE, -5, 0,
+                Long.MAX_VALUE));
+        TwitterUser copy = TwitterUserCodec.decode(
+                TwitterUserCodec.encode(user));
+        assertEquals(-1, copy.getId());
+        assertNull(copy.getScreenName());
+        assertEquals(user.getFriendIds(), copy.getFriendIds());
+    }
+
+    @Test
+    public void testSmallerThanSerialization() throws Exception {
+        TwitterUser user = sample();
+        long[] followers = new long[10000];
+        for (int i = 0; i < followers.length; i++) {
+            followers[i] = 14000000L + 17 * i;
+        }
+        user.addFollowers(SortedIdSet.of(followers));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(user);
+        out.close();
+        int encoded = TwitterUserCodec.encode(user).remaining();
+        assertTrue(encoded + " vs. " + bytes.size(),
+                4 * encoded < bytes.size());
+    }
+
+    @Test
+    public void testCorruptInput() throws Exception {
+        ByteBuffer buffer = TwitterUserCodec.encode(sample());
+        ByteBuffer truncated = ByteBuffer.wrap(Arrays.copyOf(buffer.array(),
+                buffer.remaining() - 3));
+        try {
+            TwitterUserCodec.decode(truncated);
+            fail("Expected an exception");
+        }
+        catch (EOFException e) {
+            // Expected
+        }
+        try {
+            TwitterUserCodec.decode(ByteBuffer.wrap("not a user".getBytes()));
+            fail("Expected an exception");
+        }
+        catch (IOException e) {
+            assertEquals("Not an encoded Twitter user", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testReadsVersion1() throws Exception {
+        // Version 1 ends before the counts, which take a byte each when 0
+        TwitterUser user = new TwitterUser("old");
+        user.addFollowers(Arrays.asList(1L, 2L));
+        ByteBuffer buffer = TwitterUserCodec.encode(user);
+        buffer.put(4, (byte) 1);
+        buffer.limit(buffer.limit() - 4);
+        TwitterUser copy = TwitterUserCodec.decode(buffer);
+        assertFalse(buffer.hasRemaining());
+        assertSameUser(user, copy);
+    }
+
+    private static TwitterUser sample() {
+        TwitterUser user = new TwitterUser("Alice");
+        user.setId(12345678901L);
+        user.setScreenName("Alice \u00C5.");
+        user.setDescription("Tweets about \u65E5\u672C and \uD83D\uDE00");
+        user.addTweet("hello @bob and @bobby");
+        user.addTweet("");
+        user.addFavorite("a favorite");
+        user.addMentions(Arrays.asList("@bob", "@bobby", "@bob", "@carol",
+                "@\uD83D\uDE00", "@\uD83D\uDE01"));
+        user.addFollowers(Arrays.asList(7L, 3L, 5L));
+        user.addFriends(Arrays.asList(100L, 2000000000000L));
+        user.setFollowerCount(3000000);
+        user.setFriendCount(2);
+        user.setTweetCount(4500);
+        user.setFavoriteCount(1);
+        return user;
+    }
+
+    private static void assertSameUser(final TwitterUser expected,
+            final TwitterUser actual) {
+        assertEquals(expected.getUserName(), actual.getUserName());
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getScreenName(), actual.getScreenName());
+        assertEquals(expected.getDescription(), actual.getDescription());
+        assertEquals(expected.getTweets(), actual.getTweets());
+        assertEquals(expected.getFavorites(), actual.getFavorites());
+        assertEquals(expected.getMentions(), actual.getMentions());
+        assertEquals(expected.getFollowerIds(), actual.getFollowerIds());
+        assertEquals(expected.getFriendIds(), actual.getFriendIds());
+        assertEquals(expected.getFollowerCount(), actual.getFollowerCount());
+        assertEquals(expected.getFriendCount(), actual.getFriendCount());
+        assertEquals(expected.getTweetCount(), actual.getTweetCount());
+        assertEquals(expected.getFavoriteCount(), actual.getFavoriteCount());
+    }
+}
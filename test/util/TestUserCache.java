@@ -0,0 +1,199 @@
+package util;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import client.TwitterUser;
+import client.UserCache;
+
+public class TestUserCache
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRoundTripThroughDisk() throws Exception {
+        File directory = folder.newFolder("cache");
+        UserCache cache = new UserCache(directory, 10, 10, DAY);
+        TwitterUser alice = user("Alice", 7);
+        cache.put(alice);
+
+        // A new instance only has the file to go by
+        UserCache reopened = new UserCache(directory, 10, 10, DAY);
+        assertEquals(1, reopened.diskSize());
+        TwitterUser read = reopened.get("alice");
+        assertNotNull(read);
+        assertEquals("Alice", read.getUserName());
+        assertEquals(7, read.getId());
+        assertEquals("Alice A.", read.getScreenName());
+        assertNull(read.getDescription());
+        assertEquals(alice.getTweets(), read.getTweets());
+        assertEquals(alice.getFavorites(), read.getFavorites());
+        assertEquals(alice.getMentions(), read.getMentions());
+        assertEquals(alice.getFollowerIds(), read.getFollowerIds());
+        assertEquals(alice.getFriendIds(), read.getFriendIds());
+        assertEquals(alice.getFollowerSketch().jaccard(
+                read.getFollowerSketch()), 1.0, 0.0);
+        assertEquals(1, reopened.getHits());
+        assertEquals(1, reopened.getDiskHits());
+
+        // Now it is in memory as well
+        assertSame(read, reopened.get("ALICE"));
+        assertEquals(1, reopened.getDiskHits());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction() throws Exception {
+        File directory = folder.newFolder("cache");
+        UserCache cache = new UserCache(directory, 2, 3, DAY);
+        cache.put(user("a", 1));
+        cache.put(user("b", 2));
+        cache.get("a");
+        cache.put(user("c", 3));
+        // b was used least recently
+        assertEquals(2, cache.memorySize());
+        assertEquals(3, cache.diskSize());
+        assertEquals(1, cache.getEvictions());
+
+        cache.get("b");
+        cache.put(user("d", 4));
+        // a has been used least recently on disk
+        assertEquals(3, cache.diskSize());
+        assertFalse(new File(directory, "a.user").exists());
+        assertNull(cache.get("a"));
+        assertNotNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+        assertNotNull(cache.get("d"));
+
+        UserCache reopened = new UserCache(directory, 2, 2, DAY);
+        assertEquals(2, reopened.diskSize());
+    }
+
+    @Test
+    public void testExpiry() throws Exception {
+        FakeClock clock = new FakeClock();
+        UserCache cache = new UserCache(folder.newFolder("cache"), 10, 10,
+                DAY, clock);
+        cache.put(user("short", 1), 50);
+        cache.put(user("long", 2));
+        clock.now = 49;
+        assertNotNull(cache.get("short"));
+        clock.now = 50;
+        assertNull(cache.get("short"));
+        assertNotNull(cache.get("long"));
+        assertEquals(1, cache.getExpirations());
+        assertEquals(1, cache.diskSize());
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testHugeTimeToLive() throws Exception {
+        FakeClock clock = new FakeClock();
+        clock.now = 1000;
+        File directory = folder.newFolder("cache");
+        UserCache cache = new UserCache(directory, 10, 10, Long.MAX_VALUE,
+                clock);
+        cache.put(user("forever", 1));
+        cache.put(user("long", 2), Long.MAX_VALUE - 10);
+        clock.now = Long.MAX_VALUE - 1;
+        assertNotNull(cache.get("forever"));
+        assertNotNull(cache.get("long"));
+        UserCache reopened = new UserCache(directory, 10, 10, DAY, clock);
+        assertNotNull(reopened.get("forever"));
+        assertNotNull(reopened.get("long"));
+        assertEquals(0, reopened.getExpirations());
+    }
+
+    @Test
+    public void testConcurrentUse() throws Exception {
+        final UserCache cache = new UserCache(folder.newFolder("cache"), 8,
+                1000, DAY);
+        final int users = 200;
+        final List<Throwable> errors =
+            Collections.synchronizedList(new ArrayList<Throwable>());
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            final int offset = t;
+            threads[t] = new Thread() {
+                public void run() {
+                    try {
+                        for (int i = 0; i < users; i++) {
+                            int id = (i * 7 + offset) % users;
+                            String name = "user" + id;
+                            TwitterUser found = cache.get(name);
+                            if (found == null) {
+                                cache.put(user(name, id));
+                            }
+                            else {
+                                assertEquals(id, found.getId());
+                            }
+                        }
+                    }
+                    catch (Throwable e) {
+                        errors.add(e);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(Collections.emptyList(), errors);
+        assertEquals(users, cache.diskSize());
+        assertEquals(8, cache.memorySize());
+        for (int id = 0; id < users; id++) {
+            assertEquals(id, cache.get("user" + id).getId());
+        }
+    }
+
+    @Test
+    public void testCorruptFileIsMiss() throws Exception {
+        File directory = folder.newFolder("cache");
+        FileOutputStream out = new FileOutputStream(
+                new File(directory, "bad.user"));
+        out.write(new byte[] { 1, 2, 3 });
+        out.close();
+        UserCache cache = new UserCache(directory, 10, 10, DAY);
+        assertNull(cache.get("bad"));
+        assertFalse(new File(directory, "bad.user").exists());
+        assertEquals(0, cache.diskSize());
+    }
+
+    @Test
+    public void testMemoryOnly() {
+        UserCache cache = new UserCache(1, DAY);
+        cache.put(user("a", 1));
+        cache.put(user("b", 2));
+        assertNull(cache.get("a"));
+        assertNotNull(cache.get("b"));
+        cache.remove("b");
+        assertNull(cache.get("b"));
+    }
+
+    private static TwitterUser user(final String name, final long id) {
+        TwitterUser user = new TwitterUser(name);
+        user.setId(id);
+        user.setScreenName(name + " A.");
+        user.addTweet("first tweet by " + name);
+        user.addTweet("caf\u00e9 \uD83D\uDE00");
+        user.addFavorite("a favorite");
+        user.addMentions(Arrays.asList("@bob", "@bob", "@carol"));
+        user.addFollowers(Arrays.asList(3L, 1L, 2L));
+        user.addFriends(Arrays.asList(5L, 4L));
+        return user;
+    }
+
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+}
@@ -0,0 +1,133 @@
+package util;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import text.Tokenizer;
+import text.TwitterTokenizer;
+
+import client.TwitterUser;
+
+
+public class TestUserProfile
+{
+    @Test
+    public void testProfileScoresMatchUsers() {
+        Tokenizer tokenizer = new TwitterTokenizer(null);
+        TwitterUser t1 = createUser(1, "Coffee and code", "@bob loves #java");
+        TwitterUser t2 = createUser(2, "code all day", "#java and coffee @bob");
+        // Sub-scores of the original set and map implementations
+        double followers = Similarity.jaccardCoefficient(
+                new HashSet<Long>(t1.getFollowerIds()),
+                new HashSet<Long>(t2.getFollowerIds()));
+        assertEquals(1.0 / 3, followers, 1e-12);
+        double bio = Similarity.pseudoCosine(
+                terms(tokenizer, t1.getDescription()),
+                terms(tokenizer, t2.getDescription()));
+        double tweets = Similarity.pseudoCosine(
+                terms(tokenizer, t1.getTweets().iterator().next()),
+                terms(tokenizer, t2.getTweets().iterator().next()));
+        double mentions = Similarity.pseudoCosine(t1.getMentions(),
+                t2.getMentions());
+        assertTrue(bio > 0.0 && tweets > 0.0);
+
+        SimilarityResult[] results = {
+            Similarity.computeSumilarity(t1, t2, tokenizer),
+            Similarity.computeSumilarity(new UserProfile(t1, tokenizer),
+                    new UserProfile(t2, tokenizer))
+        };
+        for (SimilarityResult result : results) {
+            assertEquals(followers, result.getSharedFollowers(), 1e-12);
+            assertEquals(0.0, result.getSharedFriends(), 0.0);
+            assertEquals(bio, result.getBioSimilarity(), 1e-12);
+            assertEquals(tweets, result.getTweetSimilarity(), 1e-12);
+            assertEquals(mentions, result.getSharedMentions(), 1e-12);
+            // Zero sub-scores are left out of the product
+            assertEquals(followers * bio * tweets
+                    * (mentions > 0.0 ? mentions : 1.0),
+                    result.getScore(), 1e-12);
+        }
+    }
+
+    @Test
+    public void testProfileIsSnapshot() {
+        Tokenizer tokenizer = new Tokenizer(null);
+        TwitterUser user = createUser(1, "bio", "tweet");
+        UserProfile profile = new UserProfile(user, tokenizer);
+        List<Long> more = new ArrayList<Long>();
+        more.add(99L);
+        user.addFollowers(more);
+        user.addTweet("another tweet");
+        assertFalse(profile.getFollowerIds().contains(99L));
+        int termId = profile.getDictionary().lookup("tweet");
+        assertEquals(1, profile.getTweetTerms().frequency(termId));
+        assertEquals(1, profile.getTweetTerms().total());
+        try {
+            profile.getFollowerIds().add(100L);
+            fail("Profile ID sets must be read-only");
+        }
+        catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testWithDictionary() {
+        Tokenizer tokenizer = new Tokenizer(null);
+        TermDictionary first = new TermDictionary();
+        first.id("unused");
+        TwitterUser t1 = createUser(1, "coffee and code", "java java beans");
+        TwitterUser t2 = createUser(2, "code and tea", "java tea");
+        UserProfile p1 = new UserProfile(t1, tokenizer, first);
+        UserProfile p2 = new UserProfile(t2, tokenizer, first);
+        TermDictionary second = new TermDictionary();
+        second.id("tea");
+        UserProfile m1 = p1.withDictionary(second);
+        UserProfile m2 = p2.withDictionary(second);
+        assertSame(p1, p1.withDictionary(first));
+        assertSame(second, m1.getDictionary());
+        assertEquals(-1, second.lookup("unused"));
+        assertEquals(2, m1.getTweetTerms().frequency(second.lookup("java")));
+        assertEquals(Similarity.computeSumilarity(p1, p2).getScore(),
+                Similarity.computeSumilarity(m1, m2).getScore(), 0.0);
+    }
+
+    @Test
+    public void testCache() {
+        ProfileCache cache = new ProfileCache(new Tokenizer(null));
+        TwitterUser user = createUser(5, "bio", "tweet");
+        UserProfile profile = cache.get(user);
+        assertSame(profile, cache.get(user));
+        assertSame(profile, cache.getIfPresent(5));
+        cache.invalidate(5);
+        assertNull(cache.getIfPresent(5));
+        assertNotSame(profile, cache.get(user));
+    }
+
+    private static TwitterUser createUser(final long id, final String bio,
+            final String tweet) {
+        TwitterUser user = new TwitterUser("user" + id);
+        user.setId(id);
+        user.setDescription(bio);
+        user.addTweet(tweet);
+        List<Long> followers = new ArrayList<Long>();
+        followers.add(1L);
+        followers.add(id + 10);
+        user.addFollowers(followers);
+        return user;
+    }
+
+    private static Map<String, Integer> terms(final Tokenizer tokenizer,
+            final String text) {
+        Map<String, Integer> terms = new HashMap<String, Integer>();
+        Similarity.addAllToMap(tokenizer.tokenize(text), terms);
+        return terms;
+    }
+}